@@ -1,19 +1,32 @@
 /**
  * Player class
- * Creates a device, loads a program from a resource called "/challenge.bin", and loads keyboard commands from
- * a resource called "/solution.txt" which all get fed into the keyboard buffer for processing.
- * Connects a Debugger to the device,a d runs the device and keyboard in separate threads.
+ * Creates a device, loads a program from a resource called "/challenge.bin", and streams keyboard commands from
+ * a resource called "/solution.txt" (see InputSource), which the keyboard reads line by line when the device asks
+ * for input.
+ * Connects a Debugger to the device,a d runs the device and keyboard in separate threads. The device metrics are
+ * registered as MXBean, so the session can be monitored using JConsole or VisualVM.
+ * The system property "synacor.trace.calls" can hold a comma separated list of subroutine addresses, for which
+ * the device emits a JFR event on every call (e.g. -Dsynacor.trace.calls=1518,6027).
+ * The system property "synacor.memoize" enables memoization of pure subroutines (e.g. -Dsynacor.memoize=true), which
+ * makes the teleporter confirmation feasible without patching it out.
+ * The system property "synacor.print.intrinsic" replaces the guest print routine with a bulk write (on), or checks
+ * the guest routine against it (validate), e.g. -Dsynacor.print.intrinsic=validate.
+ * The device starts from a boot image, taken on the first run and cached on disk (see BootCache), so the self-test
+ * and decryption of challenge.bin only run once. The system property "synacor.cold.boot" forces the device to boot
+ * the program itself (e.g. -Dsynacor.cold.boot=true), which verifies the program still boots the same.
+ * The system property "synacor.engine" selects the execution engine (interpreter, cached or switch, see
+ * ExecutionEngine.Kind), e.g. -Dsynacor.engine=switch.
+ * The system property "synacor.coverage" starts the access map of the device (see AccessMap) before it runs, e.g.
+ * -Dsynacor.coverage=true, so the coverage of every command in the script can be exported using the debugger.
  */
 package com.putoet.debugger;
 
 import com.putoet.device.*;
 import lombok.SneakyThrows;
 
-import java.io.IOException;
-import java.net.URL;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Autorun {
@@ -27,12 +40,23 @@ public class Autorun {
         final Device device = new Device(registers, memory, keyboard, crt);
         final Debugger debugger = new Debugger(device);
 
-        device.loadResource("/challenge.bin");
+        final byte[] program = resource("/challenge.bin");
+        if (Boolean.getBoolean("synacor.cold.boot"))
+            memory.load(ProgramImage.of(program));
+        else
+            device.boot(new BootCache(BootCache.defaultDirectory()).image(program));
+        device.registerMBean();
+        device.traceCalls(tracedCalls(System.getProperty("synacor.trace.calls", "")));
+        device.memoize(Boolean.getBoolean("synacor.memoize"));
+        device.printIntrinsic(PrintIntrinsic.Mode.valueOf(
+                System.getProperty("synacor.print.intrinsic", "off").toUpperCase()));
+        device.engine(ExecutionEngine.Kind.valueOf(System.getProperty("synacor.engine", "cached").toUpperCase()));
+        device.trackAccess(Boolean.getBoolean("synacor.coverage"));
 
         final Thread deviceThread = new Thread(device);
         deviceThread.start();
 
-        list("/solution.txt").forEach(command -> keyboard.accept(command + "\n"));
+        keyboard.source(InputSource.resource("/solution.txt"));
         final Thread keyboardThread = new Thread(debugger);
         keyboardThread.start();
 
@@ -41,22 +65,48 @@ public class Autorun {
     }
 
     /**
-     * Load keyboard commands from a resource file
+     * Parse a comma separated list of subroutine addresses
+     *
+     * @param addresses String like "1518,6027"
+     * @return int[] of addresses
+     */
+    public static int[] tracedCalls(String addresses) {
+        return Arrays.stream(addresses.split(","))
+                .map(String::trim)
+                .filter(address -> !address.isEmpty())
+                .mapToInt(Integer::parseInt)
+                .toArray();
+    }
+
+    /**
+     * Load the bytes of a resource
      *
      * @param resourceName String
-     * @return List of commands (strings)
+     * @return byte[]
      */
     @SneakyThrows
+    public static byte[] resource(String resourceName) {
+        try (InputStream is = Autorun.class.getResourceAsStream(resourceName)) {
+            if (is == null)
+                throw new IllegalArgumentException("Invalid resource name '" + resourceName + "'");
+
+            return is.readAllBytes();
+        }
+    }
+
+    /**
+     * Load keyboard commands from a resource file, which is read as a stream, so it also works for a resource
+     * packaged in a jar. Blank lines and comments are skipped (see InputSource).
+     *
+     * @param resourceName String
+     * @return List of commands (strings)
+     */
     public static List<String> list(String resourceName) {
-        final URL url = Autorun.class.getResource(resourceName);
-        if (url == null)
-            throw new IllegalArgumentException("Invalid resource name '" + resourceName + "'");
-
-        final Path path = Paths.get(url.toURI());
-        try (var stream = Files.lines(path)){
-            return stream.toList();
-        } catch (IOException exc) {
-            throw new IllegalArgumentException("Invalid resource name '" + resourceName + "'", exc);
+        final List<String> commands = new ArrayList<>();
+        try (InputSource source = InputSource.resource(resourceName)) {
+            for (String command = source.next(); command != null; command = source.next())
+                commands.add(command);
         }
+        return commands;
     }
 }
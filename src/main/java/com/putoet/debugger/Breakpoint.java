@@ -0,0 +1,302 @@
+/**
+ * Breakpoint class
+ * A breakpoint at an address, with an optional condition on the registers, and an optional number of hits to ignore
+ * before it halts the device, like:
+ *      5489
+ *      5489 if h != 0 && a > 100
+ *      5489 after 1000
+ *      5489 if (a == 1 || a == 2) && !(b >= 0x100) after 10
+ * A condition compares registers (a-h) and numbers (decimal, or hex preceded by '0x') using ==, !=, <, <=, > and >=,
+ * and combines comparisons using &&, || and ! (with the usual precedence) and parentheses.
+ * The condition is parsed once, into a tree of small predicate objects, in which every comparison of a register with
+ * a number is a single object holding the register id and the number, so evaluating a condition on a hit doesn't
+ * involve any text. The debugger only evaluates the condition of a breakpoint when the instruction pointer is at its
+ * address.
+ */
+package com.putoet.debugger;
+
+import com.putoet.device.Registers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class Breakpoint {
+    /**
+     * Compiled condition over the registers
+     */
+    @FunctionalInterface
+    public interface Condition {
+        boolean test(Registers registers);
+    }
+
+    @FunctionalInterface
+    private interface IntComparison {
+        boolean test(int left, int right);
+    }
+
+    private final int address;
+    private final String condition;
+    private final Condition compiled;
+    private final long after;
+    private long hits;
+
+    /**
+     * Constructor
+     *
+     * @param address int address of the breakpoint
+     * @param condition String condition, or null
+     * @param after number of hits to ignore before halting
+     * @throws IllegalArgumentException for an invalid condition, or a negative number of hits
+     */
+    public Breakpoint(int address, String condition, long after) {
+        if (address < 0 || address >= Registers.ARCH_MAX_VALUE)
+            throw new IllegalArgumentException("Invalid breakpoint address: " + address);
+        if (after < 0)
+            throw new IllegalArgumentException("Invalid breakpoint hit count: " + after);
+
+        this.address = address;
+        this.condition = condition;
+        this.compiled = condition != null ? compile(condition) : null;
+        this.after = after;
+    }
+
+    /**
+     * Create a breakpoint from the arguments of the br command following the address, like "if a > 100 after 10"
+     *
+     * @param address int address of the breakpoint
+     * @param arguments String with an optional "if <condition>" and an optional "after <hits>", may be empty
+     * @return Breakpoint
+     * @throws IllegalArgumentException for invalid arguments
+     */
+    public static Breakpoint of(int address, String arguments) {
+        String rest = arguments.trim();
+        long after = 0;
+        final int index = rest.lastIndexOf("after ");
+        if (index >= 0 && (index == 0 || rest.charAt(index - 1) == ' ')) {
+            after = Long.parseLong(rest.substring(index + 6).trim());
+            rest = rest.substring(0, index).trim();
+        }
+
+        if (rest.isEmpty())
+            return new Breakpoint(address, null, after);
+        if (!rest.startsWith("if "))
+            throw new IllegalArgumentException("Invalid breakpoint arguments: " + arguments);
+
+        return new Breakpoint(address, rest.substring(3).trim(), after);
+    }
+
+    /**
+     * Address of the breakpoint
+     *
+     * @return int
+     */
+    public int address() {
+        return address;
+    }
+
+    /**
+     * Number of times the device got to the address of the breakpoint with the condition true
+     *
+     * @return long
+     */
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * Check the breakpoint when the device is at its address, counting a hit when the condition is true (or there is
+     * no condition).
+     *
+     * @param registers Registers of the device
+     * @return true when the device must halt
+     */
+    public boolean hit(Registers registers) {
+        if (compiled != null && !compiled.test(registers))
+            return false;
+
+        return ++hits > after;
+    }
+
+    @Override
+    public String toString() {
+        return address + (condition != null ? " if " + condition : "") + (after > 0 ? " after " + after : "") +
+                (hits > 0 ? " (hits " + hits + ")" : "");
+    }
+
+    /**
+     * Compile a condition into a tree of predicates
+     *
+     * @param condition String
+     * @return Condition
+     * @throws IllegalArgumentException for an invalid condition
+     */
+    public static Condition compile(String condition) {
+        final Parser parser = new Parser(tokens(condition), condition);
+        final Condition compiled = parser.or();
+        if (parser.position < parser.tokens.size())
+            throw parser.error();
+        return compiled;
+    }
+
+    private static List<String> tokens(String condition) {
+        final List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < condition.length()) {
+            final char c = condition.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (Character.isLetterOrDigit(c)) {
+                final int start = i;
+                while (i < condition.length() && Character.isLetterOrDigit(condition.charAt(i)))
+                    i++;
+                tokens.add(condition.substring(start, i));
+            } else if (i + 1 < condition.length() && List.of("==", "!=", "<=", ">=", "&&", "||")
+                    .contains(condition.substring(i, i + 2))) {
+                tokens.add(condition.substring(i, i + 2));
+                i += 2;
+            } else if ("<>!()".indexOf(c) >= 0) {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else {
+                throw new IllegalArgumentException("Invalid character '" + c + "' in condition: " + condition);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Recursive descent parser, producing the predicates while parsing
+     */
+    private static final class Parser {
+        private final List<String> tokens;
+        private final String condition;
+        private int position;
+
+        private Parser(List<String> tokens, String condition) {
+            this.tokens = tokens;
+            this.condition = condition;
+        }
+
+        private Condition or() {
+            Condition left = and();
+            while (accept("||")) {
+                final Condition l = left, r = and();
+                left = registers -> l.test(registers) || r.test(registers);
+            }
+            return left;
+        }
+
+        private Condition and() {
+            Condition left = not();
+            while (accept("&&")) {
+                final Condition l = left, r = not();
+                left = registers -> l.test(registers) && r.test(registers);
+            }
+            return left;
+        }
+
+        private Condition not() {
+            if (accept("!")) {
+                final Condition negated = not();
+                return registers -> !negated.test(registers);
+            }
+            if (accept("(")) {
+                final Condition nested = or();
+                if (!accept(")"))
+                    throw error();
+                return nested;
+            }
+            return comparison();
+        }
+
+        private Condition comparison() {
+            final String left = operand();
+            final String operator = position < tokens.size() ? tokens.get(position++) : "";
+            final String right = operand();
+
+            final boolean leftRegister = isRegister(left), rightRegister = isRegister(right);
+            if (leftRegister && !rightRegister)
+                return compare(register(left), operator, number(right));
+            if (!leftRegister && rightRegister)
+                return compare(register(right), mirror(operator), number(left));
+            final IntComparison comparison = comparison(operator);
+            if (!leftRegister) {
+                final boolean value = comparison.test(number(left), number(right));
+                return registers -> value;
+            }
+
+            final int l = register(left), r = register(right);
+            return registers -> comparison.test(registers.get(l), registers.get(r));
+        }
+
+        private static Condition compare(int id, String operator, int value) {
+            return switch (operator) {
+                case "==" -> registers -> registers.get(id) == value;
+                case "!=" -> registers -> registers.get(id) != value;
+                case "<" -> registers -> registers.get(id) < value;
+                case "<=" -> registers -> registers.get(id) <= value;
+                case ">" -> registers -> registers.get(id) > value;
+                case ">=" -> registers -> registers.get(id) >= value;
+                default -> throw new IllegalArgumentException("Invalid comparison operator: " + operator);
+            };
+        }
+
+        private static IntComparison comparison(String operator) {
+            return switch (operator) {
+                case "==" -> (left, right) -> left == right;
+                case "!=" -> (left, right) -> left != right;
+                case "<" -> (left, right) -> left < right;
+                case "<=" -> (left, right) -> left <= right;
+                case ">" -> (left, right) -> left > right;
+                case ">=" -> (left, right) -> left >= right;
+                default -> throw new IllegalArgumentException("Invalid comparison operator: " + operator);
+            };
+        }
+
+        private static String mirror(String operator) {
+            return switch (operator) {
+                case "<" -> ">";
+                case "<=" -> ">=";
+                case ">" -> "<";
+                case ">=" -> "<=";
+                default -> operator;
+            };
+        }
+
+        private String operand() {
+            if (position >= tokens.size() || !Character.isLetterOrDigit(tokens.get(position).charAt(0)))
+                throw error();
+            return tokens.get(position++);
+        }
+
+        private static boolean isRegister(String operand) {
+            return operand.length() == 1 && operand.charAt(0) >= 'a' && operand.charAt(0) <= 'h';
+        }
+
+        private static int register(String operand) {
+            return Registers.ARCH_MAX_VALUE + operand.charAt(0) - 'a';
+        }
+
+        private int number(String operand) {
+            try {
+                return operand.startsWith("0x") ? Integer.parseInt(operand.substring(2), 16) :
+                        Integer.parseInt(operand);
+            } catch (NumberFormatException exc) {
+                throw new IllegalArgumentException("Invalid operand '" + operand + "' in condition: " + condition);
+            }
+        }
+
+        private boolean accept(String token) {
+            if (position < tokens.size() && tokens.get(position).equals(token)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private IllegalArgumentException error() {
+            return new IllegalArgumentException("Invalid condition at " +
+                    (position < tokens.size() ? "'" + tokens.get(position) + "'" : "end") + ": " + condition);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Breakpoints class
+ * The breakpoints of the debugger: the breakpoints set by the user (see Breakpoint), and the one-shot breakpoint on
+ * the return address of a call, set by the over and up commands. Both are marked in a single bitmap, so the debugger
+ * only looks up a breakpoint when the bit of the current address is set.
+ * The one-shot breakpoint only halts once the guest stack is back at (or below) the depth of the call, so a
+ * recursive call returning to the same address doesn't halt. It is cleared when the device halts, or by run and
+ * into, and a user breakpoint at the same address stays in place (and the other way around).
+ */
+package com.putoet.debugger;
+
+import com.putoet.device.CallStack;
+import com.putoet.device.Instruction;
+import com.putoet.device.Opcode;
+import com.putoet.device.Registers;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class Breakpoints {
+    private final Map<Integer, Breakpoint> breakpoints = new ConcurrentHashMap<>();
+    private final long[] bits = new long[Registers.ARCH_MAX_VALUE / Long.SIZE];
+    private int returnAddress = -1;
+    private int returnDepth;
+
+    /**
+     * Checks if there is a breakpoint (of the user, or the one-shot) at an address
+     *
+     * @param address int
+     * @return boolean
+     */
+    public boolean marked(int address) {
+        return (bits[address / Long.SIZE] & (1L << address)) != 0;
+    }
+
+    /**
+     * Checks if the one-shot breakpoint is hit: it is at the address, and the guest stack is back at the depth of
+     * the call
+     *
+     * @param address int
+     * @param depth current guest stack depth
+     * @return boolean
+     */
+    public boolean returned(int address, int depth) {
+        return address == returnAddress && depth <= returnDepth;
+    }
+
+    /**
+     * Breakpoint of the user at an address
+     *
+     * @param address int
+     * @return Breakpoint, or null when there is none
+     */
+    public Breakpoint get(int address) {
+        return breakpoints.get(address);
+    }
+
+    /**
+     * Add (or replace) a breakpoint of the user
+     *
+     * @param breakpoint Breakpoint
+     */
+    public void add(Breakpoint breakpoint) {
+        breakpoints.put(breakpoint.address(), breakpoint);
+        mark(breakpoint.address());
+    }
+
+    /**
+     * Remove the breakpoint of the user at an address, keeping the one-shot breakpoint at the same address
+     *
+     * @param address int
+     * @return true if there was a breakpoint at the address
+     */
+    public boolean remove(int address) {
+        if (breakpoints.remove(address) == null)
+            return false;
+
+        if (address != returnAddress)
+            unmark(address);
+        return true;
+    }
+
+    /**
+     * Remove all breakpoints of the user, keeping the one-shot breakpoint
+     */
+    public void clear() {
+        breakpoints.keySet().forEach(address -> {
+            if (address != returnAddress)
+                unmark(address);
+        });
+        breakpoints.clear();
+    }
+
+    /**
+     * Breakpoints of the user, ordered by address
+     *
+     * @return List of Breakpoint
+     */
+    public List<Breakpoint> list() {
+        return breakpoints.values().stream().sorted(Comparator.comparingInt(Breakpoint::address)).toList();
+    }
+
+    /**
+     * Set the one-shot breakpoint for over, on the return address of a CALL about to be executed
+     *
+     * @param ip address of the instruction
+     * @param instruction the instruction, or null when none was fetched
+     * @param depth current guest stack depth
+     * @return true if the instruction is a CALL, and the one-shot breakpoint was set
+     */
+    public boolean over(int ip, Instruction instruction, int depth) {
+        if (instruction == null || instruction.opcode() != Opcode.CALL)
+            return false;
+
+        setReturn(ip + instruction.size(), depth);
+        return true;
+    }
+
+    /**
+     * Set the one-shot breakpoint for up, on the return address of the call of the current routine
+     *
+     * @param callStack shadow call stack of the device
+     * @return true if the call stack has a frame, and the one-shot breakpoint was set
+     */
+    public boolean up(CallStack callStack) {
+        final int frames = callStack.size();
+        if (frames == 0)
+            return false;
+
+        setReturn(callStack.callSite(frames - 1) + 2, callStack.depth(frames - 1));
+        return true;
+    }
+
+    /**
+     * Address of the one-shot breakpoint
+     *
+     * @return int, or -1 when it isn't set
+     */
+    public int returnAddress() {
+        return returnAddress;
+    }
+
+    /**
+     * Remove the one-shot breakpoint (if any), keeping a breakpoint of the user at the same address
+     */
+    public void clearReturn() {
+        final int address = returnAddress;
+        if (address < 0)
+            return;
+
+        returnAddress = -1;
+        if (!breakpoints.containsKey(address))
+            unmark(address);
+    }
+
+    private void setReturn(int address, int depth) {
+        clearReturn();
+        returnAddress = address;
+        returnDepth = depth;
+        mark(address);
+    }
+
+    private void mark(int address) {
+        bits[address / Long.SIZE] |= 1L << address;
+    }
+
+    private void unmark(int address) {
+        bits[address / Long.SIZE] &= ~(1L << address);
+    }
+}
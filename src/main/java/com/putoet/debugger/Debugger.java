@@ -3,6 +3,11 @@ package com.putoet.debugger;
 import com.diogonunes.jcolor.Attribute;
 import com.putoet.device.*;
 
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -14,16 +19,19 @@ public class Debugger implements Runnable, DeviceDebugger {
 
     private final Device device;
     private final Keyboard keyboard;
-    private final Set<Integer> breakpoints;
+    private final Breakpoints breakpoints = new Breakpoints();
+    private final MemoryIndex memoryIndex;
+    private final HexDump hexDump;
 
+    private SamplingProfiler profiler;
     private boolean running = true;
     private boolean print = false;
     private int nestedCalls = 0;
+    private volatile Watchpoints.Hit watchpointHit;
 
     private final AtomicBoolean deviceHalted = new AtomicBoolean(false);
     private final AtomicBoolean breakOnNext = new AtomicBoolean(false);
     private final AtomicBoolean breakOnReturn = new AtomicBoolean(false);
-    private final AtomicBoolean breakOnOver = new AtomicBoolean(false);
 
     /**
      * The constructor wraps the device input stream with a Keyboard, and sets itself as the device debugger.
@@ -33,9 +41,22 @@ public class Debugger implements Runnable, DeviceDebugger {
     public Debugger(Device device) {
         this.keyboard = device.in();
         this.device = device;
-        this.breakpoints = new HashSet<>();
+        this.memoryIndex = new MemoryIndex(device.memory());
+        this.hexDump = new HexDump(device.memory());
 
         device.setDebugger(this);
+        device.memory().watchpoints().listener(this::watchpointHit);
+    }
+
+    /**
+     * Called by the memory (on the device thread) after an RMEM or WMEM accessed a watched address, so processing
+     * halts before the next instruction, like a breakpoint.
+     *
+     * @param hit Watchpoints.Hit
+     */
+    private void watchpointHit(Watchpoints.Hit hit) {
+        watchpointHit = hit;
+        breakOnNext.set(true);
     }
 
     /**
@@ -43,13 +64,19 @@ public class Debugger implements Runnable, DeviceDebugger {
      * execution of the instruction. Depending on requested breakpoint settings, processing of the device
      * is halted by Thread.sleep() until a debugger command releases processing again.
      * When the device is halted, the current ip abd instruction are printed to stdout
+     * Breakpoints are looked up in a bitmap first, so only the breakpoint at the current address (if any) is
+     * checked, including its condition and hit count. The commands over and up set a one-shot breakpoint on the
+     * return address of a call (found using the shadow call stack of the device) in the same bitmap, which only
+     * halts at the guest stack depth of the call, so the device doesn't need to inspect the instructions in between
+     * (see Breakpoints).
      *
      * @param ip device IP address
      * @param instruction device next instruction to be executed
      */
     @Override
     public Instruction debug(Register ip, Instruction instruction) {
-        if (breakpoints.contains(ip.get()) || breakOnNext.get()) {
+        final int address = ip.get();
+        if (breakpoints.marked(address) && breakpointHit(address) || breakOnNext.get()) {
             deviceHalted.set(true);
         }
 
@@ -66,6 +93,19 @@ public class Debugger implements Runnable, DeviceDebugger {
         }
 
         if (deviceHalted.get()) {
+            breakpoints.clearReturn();
+            device.metrics().debuggerHalted();
+            final DebuggerHaltEvent event = new DebuggerHaltEvent();
+            event.address = ip.get();
+            event.instruction = instruction.dump(false);
+            event.begin();
+
+            device.publishState();
+            final Watchpoints.Hit hit = watchpointHit;
+            if (hit != null) {
+                watchpointHit = null;
+                System.out.println(colorize(hit.toString(), TXT_COLOR));
+            }
             System.out.println(colorize(deviceState(), TXT_COLOR));
             System.out.println(colorize(currentInstruction(ip, instruction), TXT_COLOR));
             while (deviceHalted.get() && !device.exiting()) {
@@ -74,14 +114,7 @@ public class Debugger implements Runnable, DeviceDebugger {
                 } catch (InterruptedException ignored) {
                 }
             }
-
-            if (breakOnOver.get()) {
-                breakOnOver.set(false);
-                if (instruction.opcode() == Opcode.CALL)
-                    breakOnReturn.set(true);
-                else
-                    breakOnNext.set(true);
-            }
+            event.commit();
 
             return instruction;
         }
@@ -171,6 +204,8 @@ public class Debugger implements Runnable, DeviceDebugger {
             setRegister(command);
         } else if (command.startsWith("wmem")) {
             wmem(command);
+        } else if (command.startsWith("watch")) {
+            watchpoint(command);
         } else if (command.startsWith("br")) {
             breakpoint(command);
         } else if (command.startsWith("dump ")) {
@@ -179,8 +214,15 @@ public class Debugger implements Runnable, DeviceDebugger {
             find(command);
         } else if (command.startsWith("hex ")) {
             hex(command);
+        } else if (command.startsWith("listing ")) {
+            listing(command);
+        } else if (command.startsWith("profile")) {
+            profile(command);
+        } else if (command.startsWith("coverage")) {
+            coverage(command);
         } else {
             switch (command) {
+                case "bt" -> backtrace();
                 case "connect" -> device.setDebugger(this);
                 case "current instruction" -> System.out.println(colorize(currentInstruction(device.ip(), device.currentInstruction()), TXT_COLOR));
                 case "disconnect" -> device.resetDebugger();
@@ -192,7 +234,8 @@ public class Debugger implements Runnable, DeviceDebugger {
                 case "over" -> overInstruction();
                 case "run" -> runInstruction();
                 case "stack" -> stack();
-                case "state" -> System.out.println(colorize(deviceState(), TXT_COLOR));
+                case "state" -> System.out.println(colorize(deviceHalted.get() ? deviceState() :
+                        publishedState(), TXT_COLOR));
                 case "up" -> upInstruction();
                 default -> System.out.println(colorize("Invalid command: " + command, ERR_COLOR));
             }
@@ -232,25 +275,32 @@ public class Debugger implements Runnable, DeviceDebugger {
     }
 
     /**
-     * Set debugger indication that processing should stop when the next RET statement is
-     * encountered and executed.
+     * Set debugger indication that processing should stop when the current routine returns, so after its RET was
+     * executed. When the halted device is in a routine on the shadow call stack, a one-shot breakpoint is set on the
+     * return address of its call. Otherwise (e.g. the call was made during a warm boot), every instruction is
+     * inspected until the next RET, counting nested CALL and RET instructions.
      */
     private void upInstruction() {
-        nestedCalls = 0;
-        breakOnReturn.set(true);
+        if (!deviceHalted.get() || !breakpoints.up(device.callStack())) {
+            nestedCalls = 0;
+            breakOnReturn.set(true);
+        }
         breakOnNext.set(false);
-        breakOnOver.set(false);
         deviceHalted.set(false);
     }
 
     /**
      * Set debugger indication that processing should stop after the next instruction, but before
      * its execution. If the next instruction is a CALL, then stop after the matching RET instruction
-     * was executed.
+     * was executed, using a one-shot breakpoint on the return address at the current guest stack depth.
      */
     private void overInstruction() {
-        nestedCalls = 0;
-        breakOnOver.set(true);
+        if (!deviceHalted.get() ||
+                !breakpoints.over(device.ip().get(), device.currentInstruction(), device.stack().size())) {
+            intoInstruction();
+            return;
+        }
+
         breakOnNext.set(false);
         breakOnReturn.set(false);
         deviceHalted.set(false);
@@ -260,8 +310,8 @@ public class Debugger implements Runnable, DeviceDebugger {
      * Proceed execution until another breakpoint is encountered.
      */
     private void runInstruction() {
+        breakpoints.clearReturn();
         breakOnNext.set(false);
-        breakOnOver.set(false);
         breakOnReturn.set(false);
         deviceHalted.set(false);
     }
@@ -270,9 +320,9 @@ public class Debugger implements Runnable, DeviceDebugger {
      * Stop processing after execution of the next instruction.
      */
     private void intoInstruction() {
+        breakpoints.clearReturn();
         breakOnNext.set(true);
         breakOnReturn.set(false);
-        breakOnOver.set(false);
         deviceHalted.set(false);
     }
 
@@ -319,22 +369,50 @@ public class Debugger implements Runnable, DeviceDebugger {
             the device as an end-of-line).
             
             Debugger commands:
+            br                  - list the breakpoints
+            br + <a> [if <condition>] [after <n>]
+                                - halt before the instruction at address <a>, optionally only when a condition on
+                                  the registers holds (like 'h != 0 && a > 100'), and only after <n> hits
+            br - <a>            - remove the breakpoint at address <a>
+            br -                - remove all breakpoints
+            bt                  - backtrace of the halted device, innermost call first
             connect             - set the device debugger callback (allows stepping through code)
+            coverage            - show the coverage of the last command (code addresses it reached first)
+            coverage start      - start counting executions, reads and writes per address (the access map)
+            coverage stop       - stop counting (and discard the access map)
+            coverage commands   - list the number of code addresses every command reached first
+            coverage csv|heatmap|json <file>
+                                - write the access map as CSV (address,executed,read,written), as a text heatmap,
+                                  or as a JSON coverage summary with the code every command reached first
             disable print       - stops printing instructions before execution
             disconnect          - reset the device debugger callback (disables stepping through code)
             dump <pos>          - dumps the instructions at the specified memory position until a HALT or RET is encountered
             dump smart <pos>    - smart dumps the instructions, which means register values are displayed)
             enable print        - starts printing instructions before execution
             exit                - stops the device
-            find <text>         - find a text string in memory and make a hex dump from that address (if found)
+            find <text>         - find all occurrences of a text in the strings in memory (hex dump if found once)
+            find -i <text>      - find all occurrences of a text in the strings in memory, ignoring case
+            find words <w> ...  - find all occurrences of a sequence of words in memory
             help                - displays this text
+            listing <file>      - write a listing of the complete program (code and data) to a file
             hex <from> <size>   - hex dump <size> blocks of 16 bytes of memory starting at <from> (default size is 8)
+            hex export <file>   - write a hex dump of all of memory to <file>
+            profile             - report the hottest addresses and routines sampled by the profiler
+            profile start <us>  - start the sampling profiler, sampling every <us> micro seconds (default is 1000)
+            profile stop        - stop the sampling profiler (samples remain available)
+            profile reset       - remove all samples collected by the profiler
             into                - execute next statement and halt
             over                - execute nest statement or subroutine in case of a CALL statement and halt
             set <reg> <val>     - set register a-h with the specified value
             stack               - dump contents of the stack
             state               - dump IP and register state
             up                  - execute until and including next RET statement  and halt
+            watch               - list the memory watchpoints
+            watch + <a> [r|w|rw] [<op> <v>]
+                                - halt after a read (RMEM) and/or write (WMEM, the default) of address <a>, optionally
+                                  only when the value read or written compares to <v> using ==, !=, <, <=, > or >=
+            watch - <a>         - remove the watchpoint at address <a>
+            watch -             - remove all watchpoints
             wmem                - write a value to a memory position
             
             For into, up, and over to work, the debugger must be 'connected' first!
@@ -358,11 +436,55 @@ public class Debugger implements Runnable, DeviceDebugger {
     }
 
     /**
-     * Print the device stack values
+     * COMMAND: state (while the device runs)
+     * Return a string with the state of the device as last published by the device (see PublishedState), which is
+     * consistent, as opposed to reading the registers while the device changes them.
+     *
+     * @return string
+     */
+    private String publishedState() {
+        return (device.isConnected() ? "Connected " : "Not connected ") + device.publishedState().read();
+    }
+
+    /**
+     * COMMAND: bt
+     * Print a backtrace of the halted device, using the shadow call stack of the device: the current instruction and
+     * routine, followed by the call site, called routine and guest stack depth of every frame, innermost first, like:
+     *      #0  06050 in 06027
+     *      #1  05489 in 05400, called 06027 (depth 3)
+     * The shadow call stack only holds the calls made since the device started (so not those of a warm boot).
+     */
+    private void backtrace() {
+        if (!deviceHalted.get()) {
+            System.out.println(colorize("Device is running, halt it for a backtrace.", ERR_COLOR));
+            return;
+        }
+
+        final CallStack callStack = device.callStack();
+        final int frames = callStack.size();
+        System.out.println(colorize("#0  %05d in %05d".formatted(device.ip().get(), callStack.routine()), TXT_COLOR));
+        for (int frame = frames - 1; frame >= 0; frame--) {
+            final int caller = frame > 0 ? callStack.target(frame - 1) : 0;
+            System.out.println(colorize("#%-2d %05d in %05d, called %05d (depth %d)".formatted(frames - frame,
+                    callStack.callSite(frame), caller, callStack.target(frame), callStack.depth(frame)), TXT_COLOR));
+        }
+    }
+
+    /**
+     * Print the device stack values. While the device runs, the top of the stack as last published by the device is
+     * printed (see PublishedState).
      */
     private void stack() {
-        final Stack<Integer> stack = device.stack();
-        System.out.println(colorize("Stack (top is last): " + stack.toString(), TXT_COLOR));
+        if (deviceHalted.get()) {
+            final Stack<Integer> stack = device.stack();
+            System.out.println(colorize("Stack (top is last): " + stack.toString(), TXT_COLOR));
+            return;
+        }
+
+        final PublishedState.Snapshot state = device.publishedState().read();
+        System.out.println(colorize("Stack (top is last, depth " + state.stackDepth() + "): " +
+                (state.stackDepth() > state.stackTop().length ? "[..., " : "[") +
+                Arrays.toString(state.stackTop()).substring(1), TXT_COLOR));
     }
 
     /**
@@ -394,54 +516,123 @@ public class Debugger implements Runnable, DeviceDebugger {
         device.registers().set(register, value);
     }
 
+    /**
+     * Check the breakpoint at an address, which counts the hit if its condition is true (see Breakpoint)
+     *
+     * @param address int
+     * @return true if the device must halt
+     */
+    private boolean breakpointHit(int address) {
+        if (breakpoints.returned(address, device.stack().size()))
+            return true;
+
+        final Breakpoint breakpoint = breakpoints.get(address);
+        if (breakpoint == null || !breakpoint.hit(device.registers()))
+            return false;
+
+        System.out.println(colorize("Breakpoint: " + breakpoint, TXT_COLOR));
+        return true;
+    }
+
     /**
      * The breakpoint method lists and update the maintained set of breakpoints. The command without parameters will
      * display an ordered list of breakpoints. Parameters contain an action (+|-) and a breakpoint (optional for
-     * action '-').
+     * action '-'). A new breakpoint can have a condition on the registers, and a number of hits to ignore (see
+     * Breakpoint).
      * For example:
-     *      br              - shows a list of breakpoints
-     *      br + 1400       - sets a breakpoint at address 1200, and show the updated list of breakpoints
-     *      br - 0x0578     - removes the breakpoint at address 1200 (in hex), and show the updated list of breakpoints
-     *      br -            - removes all the breakpoint, and show the updated list of breakpoints
+     *      br                          - shows a list of breakpoints
+     *      br + 1400                   - sets a breakpoint at address 1200, and show the updated list of breakpoints
+     *      br + 5489 if h != 0 && a > 100
+     *                                  - sets a breakpoint at 5489, which only halts when h isn't 0 and a exceeds 100
+     *      br + 5489 after 1000        - sets a breakpoint at 5489, which halts from its 1001st hit on
+     *      br - 0x0578                 - removes the breakpoint at address 1200 (in hex), and show the updated list of
+     *                                    breakpoints
+     *      br -                        - removes all the breakpoint, and show the updated list of breakpoints
      *
      * @param command the full command string
      */
     private void breakpoint(String command) {
         assert command != null;
 
-        final var split = command.split(" ");
+        final var split = command.split(" ", 4);
 
-        if (split.length > 3 ||
-            (split.length == 2 && !split[1].equals("-")) ||
-            (split.length == 3 && !(split[1].equals("-") || split[1].equals("+")))) {
+        if ((split.length == 2 && !split[1].equals("-")) ||
+            (split.length == 3 && !(split[1].equals("-") || split[1].equals("+"))) ||
+            (split.length == 4 && !split[1].equals("+"))) {
             System.out.println(colorize("Invalid breakpoint command:" + command, ERR_COLOR));
             return;
         }
 
-        if (split.length == 2)
-                breakpoints.clear();
-        else if (split.length == 3) {
-            final var action = split[1];
-            final var breakpoint = fromNumber(split[2]);
+        if (split.length == 2) {
+            breakpoints.clear();
+        } else if (split.length > 2) {
+            final var address = fromNumber(split[2]);
 
-            if ("+".equals(action))
-                breakpoints.add(breakpoint);
-            else
-                breakpoints.remove(breakpoint);
+            if ("+".equals(split[1])) {
+                breakpoints.add(Breakpoint.of(address, split.length == 4 ? split[3] : ""));
+            } else {
+                breakpoints.remove(address);
+            }
         }
 
         listBreakpoints();
     }
 
+    /**
+     * The watchpoint method lists and updates the memory watchpoints. The command without parameters will display an
+     * ordered list of watchpoints. Parameters contain an action (+|-) and an address (optional for action '-'). A new
+     * watchpoint watches writes by default, or reads (r), or both (rw), and may have a condition on the value read or
+     * written.
+     * For example:
+     *      watch                   - shows a list of watchpoints
+     *      watch + 2732            - halts after every write to address 2732
+     *      watch + 2732 rw         - halts after every read from and write to address 2732
+     *      watch + 0x0aac w == 5   - halts after a write of 5 to address 2732
+     *      watch + 2732 r > 100    - halts after a read of a value above 100 from address 2732
+     *      watch - 2732            - removes the watchpoint at address 2732
+     *      watch -                 - removes all watchpoints
+     *
+     * @param command the full command string
+     */
+    private void watchpoint(String command) {
+        final var split = command.split(" ");
+        final var watchpoints = device.memory().watchpoints();
+
+        if (split.length == 2 && split[1].equals("-"))
+            watchpoints.clear();
+        else if (split.length == 3 && split[1].equals("-"))
+            watchpoints.remove(fromNumber(split[2]));
+        else if (split.length >= 3 && split.length <= 6 && split.length != 5 && split[1].equals("+")) {
+            final var access = split.length > 3 ? split[3] : "w";
+            if (!Set.of("r", "w", "rw").contains(access)) {
+                System.out.println(colorize("Invalid watchpoint access: " + access, ERR_COLOR));
+                return;
+            }
+            final var operator = split.length == 6 ? Watchpoints.Operator.of(split[4]) : null;
+            final var value = split.length == 6 ? fromNumber(split[5]) : 0;
+            watchpoints.add(new Watchpoints.Watchpoint(fromNumber(split[2]), access.contains("r"),
+                    access.contains("w"), operator, value));
+        } else if (split.length != 1) {
+            System.out.println(colorize("Invalid watchpoint command: " + command, ERR_COLOR));
+            return;
+        }
+
+        final var list = watchpoints.list();
+        if (list.isEmpty())
+            System.out.println(colorize("No watchpoints set.", TXT_COLOR));
+        else
+            list.forEach(watchpoint -> System.out.println(colorize("Watchpoint: " + watchpoint, TXT_COLOR)));
+    }
+
     /**
      * Print an ordered list of breakpoints
      */
     private void listBreakpoints() {
-        if (breakpoints.size() > 0)
-            breakpoints.stream().sorted()
-                .forEach(b -> System.out.println(colorize("Breakpoint: " + b, TXT_COLOR)));
-        else
+        final var list = breakpoints.list();
+        if (list.isEmpty())
             System.out.println(colorize("No breakpoints set.", TXT_COLOR));
+        else
+            list.forEach(b -> System.out.println(colorize("Breakpoint: " + b, TXT_COLOR)));
     }
 
     /**
@@ -471,6 +662,11 @@ public class Debugger implements Runnable, DeviceDebugger {
      * @param command the full command string
      */
     private void hex(String command) {
+        if (command.startsWith("hex export ")) {
+            export(command);
+            return;
+        }
+
         final String[] split = command.substring(4).split(" ");
         final int from = fromNumber(split[0]);
         final int size = split.length == 1 ? 8 : Integer.parseInt(split[1]);
@@ -479,24 +675,196 @@ public class Debugger implements Runnable, DeviceDebugger {
     }
 
     /**
-     * Find the first occurrence of a piece of text in the device memory, and if it is found,
-     * display a hex dump starting at that position - 1 (as string are preceded by a word
-     * indicating their length).
+     * Write a hex dump of all of memory (32768 words, regardless of the last address used) to a file.
+     * For example:
+     *      hex export challenge.hex
+     *
+     * @param command the full command string
+     */
+    private void export(String command) {
+        final Path path = Path.of(command.substring(11).trim());
+        final long start = System.nanoTime();
+        try (var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            new HexDump(device.memory()).export(channel);
+        } catch (IOException exc) {
+            throw new IllegalArgumentException("Failed to export hex dump to " + path, exc);
+        }
+        final long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println(colorize("Hex dump written to " + path.toAbsolutePath() + " in " + millis + " ms", TXT_COLOR));
+    }
+
+    /**
+     * Write a listing of memory to a file, using the disassembly of the device. Code is listed as instructions
+     * with a header for every routine and basic block, anything else is listed as data.
+     * For example:
+     *      listing challenge.lst
+     *
+     * @param command the full command string
+     */
+    private void listing(String command) {
+        final Path path = Path.of(command.substring(8).trim());
+        try (var writer = Files.newBufferedWriter(path)) {
+            device.disassembly().list(writer);
+        } catch (IOException exc) {
+            throw new IllegalArgumentException("Failed to write listing to " + path, exc);
+        }
+        System.out.println(colorize("Listing written to " + path.toAbsolutePath(), TXT_COLOR));
+    }
+
+    /**
+     * Control the sampling profiler, or report the hottest addresses and routines sampled so far. The profiler
+     * samples on its own thread, so it can be started, and reported on, while the device runs.
+     * For example:
+     *      profile             - report the top 10 addresses and routines
+     *      profile start 500   - start sampling every 500 micro seconds
+     *      profile stop        - stop sampling
+     *      profile reset       - remove all samples
+     *
+     * @param command the full command string
+     */
+    private void profile(String command) {
+        final var split = command.split(" ");
+        final var action = split.length > 1 ? split[1] : "report";
+
+        if ("start".equals(action)) {
+            if (profiler != null)
+                profiler.stop();
+            final long interval = split.length > 2 ? fromNumber(split[2]) : SamplingProfiler.DEFAULT_INTERVAL_MICROS;
+            profiler = new SamplingProfiler(device, interval);
+            profiler.start();
+            return;
+        }
+
+        if (profiler == null) {
+            System.out.println(colorize("Profiler not started.", ERR_COLOR));
+            return;
+        }
+
+        switch (action) {
+            case "stop" -> profiler.stop();
+            case "reset" -> profiler.reset();
+            case "report" -> profiler.report(10).forEach(line -> System.out.println(colorize(line, TXT_COLOR)));
+            default -> System.out.println(colorize("Invalid profile command: " + command, ERR_COLOR));
+        }
+    }
+
+    /**
+     * Control the access map of the device (see AccessMap), or report on the code coverage of the commands processed
+     * since it was started. The access map is updated by the device itself, so it can be reported on while the device
+     * runs.
+     * For example:
+     *      coverage                    - show the code addresses the last command reached first
+     *      coverage start              - start counting
+     *      coverage stop               - stop counting
+     *      coverage commands           - list the number of code addresses every command reached first
+     *      coverage csv access.csv     - write the counters per address as CSV
+     *      coverage heatmap access.txt - write a text heatmap of the counters
+     *      coverage json coverage.json - write a JSON coverage summary
+     *
+     * @param command the full command string
+     */
+    private void coverage(String command) {
+        final var split = command.split(" ", 3);
+        final var action = split.length > 1 ? split[1] : "last";
+
+        if ("start".equals(action) || "stop".equals(action)) {
+            device.trackAccess("start".equals(action));
+            return;
+        }
+
+        final AccessMap accessMap = device.accessMap();
+        if (accessMap == null) {
+            System.out.println(colorize("Coverage not started.", ERR_COLOR));
+            return;
+        }
+
+        switch (action) {
+            case "last" -> {
+                final var deltas = accessMap.deltas();
+                final var delta = deltas.get(deltas.size() - 1);
+                System.out.println(colorize("Coverage: %d code addresses executed, '%s' reached %d first: %s"
+                        .formatted(accessMap.covered(), delta.command(), delta.addresses().length,
+                                Arrays.toString(delta.addresses())), TXT_COLOR));
+            }
+            case "commands" -> accessMap.deltas().forEach(delta -> System.out.println(colorize(
+                    "%5d %s".formatted(delta.addresses().length, delta.command()), TXT_COLOR)));
+            case "csv", "heatmap", "json" -> {
+                if (split.length < 3)
+                    throw new IllegalArgumentException("Missing file name: " + command);
+
+                final Path path = Path.of(split[2].trim());
+                try (var writer = Files.newBufferedWriter(path)) {
+                    switch (action) {
+                        case "csv" -> accessMap.writeCsv(writer);
+                        case "heatmap" -> accessMap.writeHeatmap(writer);
+                        default -> accessMap.writeJson(writer);
+                    }
+                } catch (IOException exc) {
+                    throw new IllegalArgumentException("Failed to write coverage to " + path, exc);
+                }
+                System.out.println(colorize("Coverage written to " + path.toAbsolutePath(), TXT_COLOR));
+            }
+            default -> System.out.println(colorize("Invalid coverage command: " + command, ERR_COLOR));
+        }
+    }
+
+    /**
+     * Find all occurrences of a piece of text in the strings in device memory, or of a sequence of words anywhere
+     * in device memory, using the memory index. Each match is listed with the string containing it. When there is
+     * only one match, a hex dump is displayed starting at the length of the string containing it (or at the
+     * matched words).
+     * For example:
+     *      find tablet         - find 'tablet' in all strings
+     *      find -i Tablet      - find 'tablet' in all strings, ignoring case
+     *      find words 19 32768 - find the sequence of words 19 32768 (OUT <a>)
      *
      * @param command the full command
      */
     private void find(String command) {
-        final var text = command.substring(5);
-        final var start = findText(text);
-        if (start.isEmpty())
-            System.out.println(colorize("Text '" + text + "' not found.", ERR_COLOR));
-        else
-            hex("hex " + (start.getAsInt() - 1));
+        var query = command.substring(5);
+        final List<MemoryIndex.Match> matches;
+        if (query.startsWith("words ")) {
+            query = query.substring(6);
+            matches = memoryIndex.find(Arrays.stream(query.split(" ")).mapToInt(this::fromNumber).toArray());
+        } else if (query.startsWith("-i ")) {
+            query = query.substring(3);
+            matches = memoryIndex.find(query, true);
+        } else {
+            matches = memoryIndex.find(query, false);
+        }
+
+        if (matches.isEmpty()) {
+            System.out.println(colorize("'" + query + "' not found.", ERR_COLOR));
+            return;
+        }
+
+        matches.forEach(match -> System.out.println(colorize(match(match), TXT_COLOR)));
+        if (matches.size() == 1) {
+            final var match = matches.get(0);
+            hex("hex " + (match.string() != null ? match.string().address() : match.address()));
+        }
+    }
+
+    /**
+     * Format a match of the find command, like:
+     *      Found at 06123 in string at 06100: 'Take the tablet'
+     *
+     * @param match MemoryIndex.Match
+     * @return formatted string
+     */
+    private static String match(MemoryIndex.Match match) {
+        if (match.string() == null)
+            return "Found at %05d".formatted(match.address());
+
+        return "Found at %05d in string at %05d: '%s'"
+                .formatted(match.address(), match.string().address(), match.string().text().replace("\n", "\\n"));
     }
 
     /**
-     * Create a List<String> with instructions starting at the given address. The individual instructions lines
-     * are formatted and preceded with the address in decimal.
+     * Create a List<String> with instructions starting at the given address, using the disassembly of the device
+     * (so no instructions are fetched). The individual instructions lines are formatted and preceded with the
+     * address in decimal.
      * For example:
      *      1200: SET 32768 1
      *
@@ -507,29 +875,7 @@ public class Debugger implements Runnable, DeviceDebugger {
      * @return ordered list of strings containing the dump
      */
     public List<String> dump(boolean smart, int startAddress, Set<Opcode> exitCriteria) {
-        final List<String> dump = new ArrayList<>();
-        final Interpreter interpreter =
-                new Interpreter(device.registers(), device.memory(), device.stack(), device.in(), device.out());
-
-        final Register ip = new Register();
-        ip.accept(startAddress);
-        try {
-            while (ip.get() <= device.memory().lastAddressUsed()) {
-                var instruction = interpreter.next(ip);
-                dump.add("%05d: %s".formatted(ip.get(), instruction.dump(smart)));
-
-                if (exitCriteria.contains(instruction.opcode()))
-                    break;
-
-                ip.accept(ip.get() + instruction.size());
-            }
-        } catch (RuntimeException exc) {
-            dump.add("Instruction fetch failed at address " + ip.get());
-            dump.add(exc.getMessage());
-            dump.add(exc.getStackTrace()[0].toString());
-        }
-
-        return dump;
+        return device.disassembly().dump(startAddress, exitCriteria, smart ? device.registers() : null);
     }
 
     /**
@@ -537,57 +883,31 @@ public class Debugger implements Runnable, DeviceDebugger {
      * The individual hex dump lines are formatted and preceded with the address in decimal.
      *
      * @param startAddress starting memory address
-     * @param size number of bytes to dump
+     * @param size number of blocks of 16 words to dump
      *
      * @return ordered list of strings containing the dump
      */
     public List<String> hexDump(int startAddress, int size) {
-        final List<String> dump = new ArrayList<>();
+        final List<String> dump = new ArrayList<>(size);
 
         while (size-- > 0) {
             dump.add(hexDump(startAddress));
-            startAddress += 16;
+            startAddress += HexDump.WORDS_PER_LINE;
         }
 
         return dump;
     }
 
     /**
-     * Create one line with a hex memory dump of 32 bytes, starting at the given address.
-     * The individual hex dump lines are formatted into three columns and seperated by '|':
-     * Column 1 - memory address in decimal
-     * Column 2 - 16 2-byte integers in hex value (low byte first, according to architecture)
-     * Column 3 - same 16 integers as characters (non-printable characters are printed as ',' )
+     * Create one line with a hex memory dump of 32 bytes, starting at the given address, formatted by HexDump.
+     * Memory beyond the last address used by the device is shown as '..'.
      *
      * @param startAddress starting memory address
      *
-     * @return ordered list of strings containing the dump
+     * @return the hex dump line
      */
     public String hexDump(int startAddress) {
-        final StringBuilder sb = new StringBuilder();
-        sb.append("%05d".formatted(startAddress)).append(" | ");
-        for (int i = 0; i < 16; i++) {
-            if (startAddress + i < device.memory().lastAddressUsed()) {
-                final byte[] bytes = Memory.intToBytes(device.memory().read(startAddress + i));
-                sb.append("%02x %02x ".formatted(bytes[0], bytes[1]));
-            } else {
-                sb.append(".. .. ");
-            }
-        }
-
-        sb.append("| ");
-        for (int i = 0; i < 16; i++) {
-            if (startAddress + i < device.memory().lastAddressUsed()) {
-                final byte[] bytes = Memory.intToBytes(device.memory().read(startAddress + i));
-                sb.append(String.valueOf((char) bytes[0]).replaceAll("\\P{Print}", "."));
-            } else {
-                sb.append(".");
-            }
-        }
-
-        sb.append(" |");
-
-        return sb.toString();
+        return hexDump.line(startAddress, device.memory().lastAddressUsed());
     }
 
     /**
@@ -608,37 +928,4 @@ public class Debugger implements Runnable, DeviceDebugger {
 
         return Integer.parseInt(number);
     }
-
-    /**
-     * Search device memory for a specified sequence of characters
-     *
-     * @param text String of text to search for
-     * @return optional start address
-     */
-    public OptionalInt findText(String text) {
-        return findText(text.getBytes());
-    }
-
-    /**
-     * Search device memory for a specified sequence of bytes
-     *
-     * @param bytes Sequence (array) of bytes to search for
-     * @return optional start address
-     */
-    public OptionalInt findText(byte[] bytes) {
-
-        for (int start = 0; start < device.memory().lastAddressUsed(); start++) {
-            if (device.memory().read(start) == bytes[0]) {
-                for (int end = 1; end < bytes.length; end++) {
-                    if (device.memory().read(start+end) != bytes[end])
-                        break;
-
-                    if (end == bytes.length - 1)
-                        return OptionalInt.of(start);
-                }
-            }
-        }
-
-        return OptionalInt.empty();
-    }
 }
@@ -0,0 +1,151 @@
+/**
+ * HexDump class
+ * Writes hex dumps of memory, 16 words per line, formatted into three columns separated by '|':
+ * Column 1 - memory address in decimal
+ * Column 2 - 16 2-byte integers in hex value (low byte first, according to architecture)
+ * Column 3 - same 16 integers as characters (non-printable characters are printed as '.')
+ * Words at or beyond the limit passed to the dump methods are shown as ".. .." and '.'.
+ * Every line has the same length, and is encoded in a single pass into a reusable byte array, using a precomputed
+ * table with the two hex digits of every byte value. So, dumping doesn't create any objects per word or line, and
+ * all of memory can be streamed to a file (or any other channel) in one go.
+ * A HexDump reuses its line buffer, so an instance must not be shared between threads.
+ */
+package com.putoet.debugger;
+
+import com.putoet.device.Memory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+public class HexDump {
+    public static final int WORDS_PER_LINE = 16;
+    public static final int LINE_LENGTH = 5 + 3 + WORDS_PER_LINE * 6 + 2 + WORDS_PER_LINE + 2;
+
+    private static final byte[] HEX = new byte[256 * 2];
+    private static final int LINES_PER_BUFFER = 512;
+
+    static {
+        final byte[] digits = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < 256; i++) {
+            HEX[i * 2] = digits[i >> 4];
+            HEX[i * 2 + 1] = digits[i & 0x0f];
+        }
+    }
+
+    private final Memory memory;
+    private final byte[] line = new byte[LINE_LENGTH];
+
+    /**
+     * Constructor
+     *
+     * @param memory Memory to dump
+     */
+    public HexDump(Memory memory) {
+        this.memory = memory;
+    }
+
+    /**
+     * Create one line with a hex dump of 16 words, starting at the given address.
+     *
+     * @param startAddress starting memory address
+     * @param limit first address not to dump
+     * @return String
+     */
+    public String line(int startAddress, int limit) {
+        encode(startAddress, limit, line, 0);
+        return new String(line, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Write a hex dump of a number of lines, starting at the given address, to an Appendable. Every line is
+     * followed by a newline.
+     *
+     * @param out Appendable
+     * @param startAddress starting memory address
+     * @param lines number of lines (blocks of 16 words) to dump
+     * @param limit first address not to dump
+     * @throws IOException when appending to the output fails
+     */
+    public void write(Appendable out, int startAddress, int lines, int limit) throws IOException {
+        while (lines-- > 0) {
+            encode(startAddress, limit, line, 0);
+            for (var b : line)
+                out.append((char) b);
+            out.append('\n');
+            startAddress += WORDS_PER_LINE;
+        }
+    }
+
+    /**
+     * Write a hex dump of all of memory to a channel (e.g. a FileChannel). Lines are encoded into a buffer holding
+     * LINES_PER_BUFFER lines, which is written to the channel when full.
+     *
+     * @param channel WritableByteChannel
+     * @throws IOException when writing to the channel fails
+     */
+    public void export(WritableByteChannel channel) throws IOException {
+        final byte[] buffer = new byte[(LINE_LENGTH + 1) * LINES_PER_BUFFER];
+        final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+
+        int address = 0;
+        while (address < memory.size()) {
+            int offset = 0;
+            for (int i = 0; i < LINES_PER_BUFFER && address < memory.size(); i++) {
+                encode(address, memory.size(), buffer, offset);
+                offset += LINE_LENGTH;
+                buffer[offset++] = '\n';
+                address += WORDS_PER_LINE;
+            }
+
+            byteBuffer.clear().limit(offset);
+            while (byteBuffer.hasRemaining())
+                channel.write(byteBuffer);
+        }
+    }
+
+    /**
+     * Encode one line into a byte array, all three columns in a single pass over the words.
+     */
+    private void encode(int startAddress, int limit, byte[] buffer, int offset) {
+        int address = startAddress;
+        for (int i = 4; i >= 0; i--) {
+            buffer[offset + i] = (byte) ('0' + address % 10);
+            address /= 10;
+        }
+        buffer[offset + 5] = ' ';
+        buffer[offset + 6] = '|';
+        buffer[offset + 7] = ' ';
+
+        final int hex = offset + 8;
+        final int chars = hex + WORDS_PER_LINE * 6 + 2;
+        buffer[chars - 2] = '|';
+        buffer[chars - 1] = ' ';
+        for (int i = 0; i < WORDS_PER_LINE; i++) {
+            final int position = hex + i * 6;
+            if (startAddress + i < limit) {
+                final int word = memory.peek(startAddress + i);
+                final int low = word & 0xff;
+                final int high = (word >> 8) & 0xff;
+                buffer[position] = HEX[low * 2];
+                buffer[position + 1] = HEX[low * 2 + 1];
+                buffer[position + 2] = ' ';
+                buffer[position + 3] = HEX[high * 2];
+                buffer[position + 4] = HEX[high * 2 + 1];
+                buffer[position + 5] = ' ';
+                buffer[chars + i] = (byte) (low >= ' ' && low <= '~' ? low : '.');
+            } else {
+                buffer[position] = '.';
+                buffer[position + 1] = '.';
+                buffer[position + 2] = ' ';
+                buffer[position + 3] = '.';
+                buffer[position + 4] = '.';
+                buffer[position + 5] = ' ';
+                buffer[chars + i] = '.';
+            }
+        }
+        buffer[chars + WORDS_PER_LINE] = ' ';
+        buffer[chars + WORDS_PER_LINE + 1] = '|';
+    }
+}
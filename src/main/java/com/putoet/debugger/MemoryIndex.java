@@ -0,0 +1,231 @@
+/**
+ * MemoryIndex class
+ * Index of the length-prefixed strings in device memory, to search for text without scanning memory word by word
+ * for every query. A string is a word holding the length, followed by that many words holding printable ASCII
+ * characters (or a newline). Memory is scanned from low to high address, and once a string is found, scanning
+ * continues after its last character, so characters of a string are never mistaken for the length of another one.
+ * The index is refreshed before every query, but only for the memory pages whose version changed since the previous
+ * refresh. As a string found before a changed page may extend into it, the scan of a changed page starts at most
+ * MAX_LENGTH words before the page (aligned to an indexed string), and continues after the page until the scan
+ * is back in sync with the strings indexed before.
+ * Queries use Boyer-Moore-Horspool, both for text (optionally ignoring case) within the indexed strings, and for
+ * raw sequences of words in all of memory.
+ */
+package com.putoet.debugger;
+
+import com.putoet.device.Memory;
+
+import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.function.IntUnaryOperator;
+
+public class MemoryIndex {
+    public static final int MIN_LENGTH = 2;
+    public static final int MAX_LENGTH = 1024;
+
+    /**
+     * A length-prefixed string in memory
+     *
+     * @param address address of the length word
+     * @param text characters of the string
+     */
+    public record IndexedString(int address, String text) {
+        public int end() {
+            return address + text.length();
+        }
+    }
+
+    /**
+     * A match of a query in memory
+     *
+     * @param address address of the first matched word
+     * @param string the string containing the match, or null when matching raw words
+     */
+    public record Match(int address, IndexedString string) {}
+
+    private final Memory memory;
+    private final NavigableMap<Integer, IndexedString> strings = new TreeMap<>();
+    private final int[] versions = new int[Memory.PAGES];
+
+    /**
+     * Constructor, the index is built on the first query.
+     *
+     * @param memory Memory to index
+     */
+    public MemoryIndex(Memory memory) {
+        this.memory = memory;
+        Arrays.fill(versions, -1);
+    }
+
+    /**
+     * The strings in the index, ordered by address, after refreshing the index.
+     *
+     * @return Collection of IndexedString
+     */
+    public Collection<IndexedString> strings() {
+        refresh();
+        return Collections.unmodifiableCollection(strings.values());
+    }
+
+    /**
+     * Find all occurrences of a text in the indexed strings.
+     *
+     * @param text String to search for
+     * @param ignoreCase true if the search should ignore case
+     * @return List of matches, ordered by address
+     */
+    public List<Match> find(String text, boolean ignoreCase) {
+        if (text.isEmpty())
+            throw new IllegalArgumentException("Cannot search for an empty text");
+
+        refresh();
+        final String pattern = ignoreCase ? text.toLowerCase() : text;
+        final int[] shift = shiftTable(pattern.length(), i -> pattern.charAt(i));
+        final List<Match> matches = new ArrayList<>();
+        for (var string : strings.values()) {
+            final String haystack = ignoreCase ? string.text().toLowerCase() : string.text();
+            search(haystack.length(), haystack::charAt, pattern.length(), pattern::charAt, shift,
+                    offset -> matches.add(new Match(string.address() + 1 + offset, string)));
+        }
+        return matches;
+    }
+
+    /**
+     * Find all occurrences of a sequence of words in memory, regardless of the strings in the index.
+     *
+     * @param words sequence of words to search for
+     * @return List of matches, ordered by address
+     */
+    public List<Match> find(int... words) {
+        if (words.length == 0)
+            throw new IllegalArgumentException("Cannot search for an empty sequence of words");
+
+        final int[] shift = shiftTable(words.length, i -> words[i]);
+        final List<Match> matches = new ArrayList<>();
+        search(memory.size(), memory::peek, words.length, i -> words[i], shift,
+                offset -> matches.add(new Match(offset, null)));
+        return matches;
+    }
+
+    /**
+     * Rescan the memory pages that were written to since the previous refresh. Consecutive changed pages are
+     * rescanned in one go.
+     */
+    public void refresh() {
+        int page = 0;
+        while (page < Memory.PAGES) {
+            if (versions[page] == memory.pageVersion(page)) {
+                page++;
+                continue;
+            }
+
+            int last = page;
+            while (last + 1 < Memory.PAGES && versions[last + 1] != memory.pageVersion(last + 1))
+                last++;
+
+            for (int i = page; i <= last; i++)
+                versions[i] = memory.pageVersion(i);
+
+            rescan(page * Memory.PAGE_SIZE, (last + 1) * Memory.PAGE_SIZE - 1);
+            page = last + 1;
+        }
+    }
+
+    /**
+     * Rescan the memory range from..to (inclusive). The scan starts at the indexed string covering the position
+     * MAX_LENGTH words before the range (or at that position if no string covers it), as the strings found from
+     * there on may depend on the changed memory. Beyond the range, the scan continues until it reaches a string
+     * that was indexed before, or until it is past all strings that were removed from the index.
+     *
+     * @param from int first changed address
+     * @param to int last changed address
+     */
+    private void rescan(int from, int to) {
+        int pos = Math.max(0, from - MAX_LENGTH);
+        final var floor = strings.floorEntry(pos);
+        if (floor != null && floor.getValue().end() >= pos)
+            pos = floor.getKey();
+
+        int removedEnd = remove(pos, to);
+        while (pos < memory.size() && (pos <= to || pos <= removedEnd)) {
+            if (pos > to && strings.containsKey(pos))
+                return;
+
+            final IndexedString string = string(pos);
+            if (string == null) {
+                pos++;
+                continue;
+            }
+
+            removedEnd = Math.max(removedEnd, remove(pos + 1, string.end()));
+            strings.put(pos, string);
+            pos = string.end() + 1;
+        }
+    }
+
+    /**
+     * Remove the strings with an address in the range from..to (inclusive)
+     *
+     * @return the highest end address of the removed strings (or -1 if none were removed)
+     */
+    private int remove(int from, int to) {
+        final var range = strings.subMap(from, true, to, true);
+        final int end = range.values().stream().mapToInt(IndexedString::end).max().orElse(-1);
+        range.clear();
+        return end;
+    }
+
+    /**
+     * Returns the string at the address, or null if the address doesn't hold a valid length-prefixed string.
+     */
+    private IndexedString string(int address) {
+        final int length = memory.peek(address);
+        if (length < MIN_LENGTH || length > MAX_LENGTH || address + length >= memory.size())
+            return null;
+
+        final char[] text = new char[length];
+        for (int i = 0; i < length; i++) {
+            final int c = memory.peek(address + 1 + i);
+            if (!printable(c))
+                return null;
+            text[i] = (char) c;
+        }
+        return new IndexedString(address, new String(text));
+    }
+
+    private static boolean printable(int c) {
+        return (c >= ' ' && c <= '~') || c == '\n';
+    }
+
+    /**
+     * Boyer-Moore-Horspool bad character shift table. To keep the table small for any word value, the table is
+     * indexed by the low byte of the value, and keeps the smallest shift of all values with that low byte, which
+     * is still a safe shift.
+     */
+    private static int[] shiftTable(int length, IntUnaryOperator pattern) {
+        final int[] shift = new int[256];
+        Arrays.fill(shift, length);
+        for (int i = 0; i < length - 1; i++)
+            shift[pattern.applyAsInt(i) & 0xff] = length - 1 - i;
+        return shift;
+    }
+
+    /**
+     * Boyer-Moore-Horspool search of a pattern in a haystack, reporting the offset of every match (including
+     * overlapping matches).
+     */
+    private static void search(int size, IntUnaryOperator haystack, int length, IntUnaryOperator pattern,
+                               int[] shift, IntConsumer match) {
+        int offset = 0;
+        while (offset + length <= size) {
+            int i = length - 1;
+            while (i >= 0 && haystack.applyAsInt(offset + i) == pattern.applyAsInt(i))
+                i--;
+
+            if (i < 0)
+                match.accept(offset);
+
+            offset += shift[haystack.applyAsInt(offset + length - 1) & 0xff];
+        }
+    }
+}
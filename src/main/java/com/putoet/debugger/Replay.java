@@ -0,0 +1,69 @@
+/**
+ * Replay class
+ * Replays one or more scripts (files with a command per line, like solution.txt) on challenge.bin, and prints the
+ * output of the last one. Every script resumes from the longest prefix it shares with scripts replayed before (in
+ * this run, or in an earlier run, as the checkpoints are written to disk), so iterating on variants of a script only
+ * costs the lines that changed. Lines starting with a '/' are debugger commands, like in solution.txt.
+ * For every script, the number of lines skipped and executed is printed to stderr, followed by the statistics of the
+ * checkpoint cache.
+ * The system property "synacor.checkpoint.cache" holds the directory the checkpoints are written to (default
+ * "synacor-checkpoints" in the temporary directory, "none" keeps them in memory only), and the system property
+ * "synacor.checkpoint.memory" the maximum size of the checkpoints in memory in MB (default 256).
+ * For example:
+ *      java com.putoet.debugger.Replay solution.txt variant.txt
+ */
+package com.putoet.debugger;
+
+import com.putoet.device.*;
+import lombok.SneakyThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class Replay {
+
+    @SneakyThrows
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: Replay <script> [<script> ...]");
+            System.exit(1);
+        }
+
+        final CheckpointCache cache = new CheckpointCache(
+                Long.getLong("synacor.checkpoint.memory", CheckpointCache.DEFAULT_MAX_BYTES >> 20) << 20,
+                spillDirectory(System.getProperty("synacor.checkpoint.cache", "")));
+        final ScriptReplay replay = new ScriptReplay(cache);
+        final BootImage boot = new BootCache(BootCache.defaultDirectory()).image(Autorun.resource("/challenge.bin"));
+
+        byte[] output = new byte[0];
+        for (var script : args) {
+            final List<String> lines = Files.readAllLines(Path.of(script));
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final Crt crt = new Crt(out);
+            final Device device = new Device(new Registers(), new Memory(), new Keyboard(crt), crt);
+            new Debugger(device);
+
+            final long start = System.nanoTime();
+            final ScriptReplay.Result result = replay.replay(device, out, boot, lines);
+            System.err.printf("%s: %s after %d lines skipped and %d executed (%d instructions, %d ms)%n", script,
+                    result.reason(), result.skipped(), result.executed(),
+                    device.metrics().getInstructionsExecuted(), (System.nanoTime() - start) / 1_000_000);
+            output = out.toByteArray();
+        }
+        cache.flush();
+        System.err.println(cache);
+
+        System.out.write(output);
+        System.out.flush();
+    }
+
+    private static Path spillDirectory(String directory) {
+        if ("none".equals(directory))
+            return null;
+
+        return directory.isEmpty() ? Path.of(System.getProperty("java.io.tmpdir"), "synacor-checkpoints") :
+                Path.of(directory);
+    }
+}
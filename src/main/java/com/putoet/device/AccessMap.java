@@ -0,0 +1,251 @@
+/**
+ * AccessMap class
+ * Records, per memory address, how often the device executed an instruction at it, read it using RMEM, and wrote it
+ * using WMEM. The counters are 16-bit and saturate at MAX_COUNT, and are kept in three char arrays of 32K entries,
+ * so the map has a fixed size of 192 KB, and recording an access is an array increment, which makes it cheap enough
+ * to keep enabled for a complete session.
+ * Besides the counters, the map keeps the order in which code addresses were executed for the first time, and which
+ * input line (command) the device was processing at that moment (from reading its first character up until reading
+ * the first character of the next line), so the coverage delta of a command (the code it
+ * reached that no earlier command reached) is available without taking snapshots of the counters. Everything before
+ * the first command is attributed to BOOT.
+ * The map can be exported as CSV (one line per address accessed), as a text heatmap (one character per address, its
+ * darkness growing with the logarithm of the number of accesses), and as a JSON coverage summary with the deltas per
+ * command.
+ * The counters are only written by the device thread, and can be read racily (e.g. by a debugger command) while the
+ * device runs. Instructions skipped by memoization (see Memoizer) or replaced by an intrinsic (see PrintIntrinsic)
+ * aren't recorded.
+ */
+package com.putoet.device;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class AccessMap {
+    public static final int MAX_COUNT = Character.MAX_VALUE;
+    public static final String BOOT = "(boot)";
+    public static final int HEATMAP_WIDTH = 64;
+
+    private static final String HEAT = " .:-=+*#%@";
+
+    private final char[] executed = new char[Registers.ARCH_MAX_VALUE];
+    private final char[] reads = new char[Registers.ARCH_MAX_VALUE];
+    private final char[] writes = new char[Registers.ARCH_MAX_VALUE];
+
+    private int[] reached = new int[1024];
+    private int reachedCount;
+    private final List<String> commands = new ArrayList<>(List.of(BOOT));
+    private int[] commandStart = new int[64];
+    private final StringBuilder line = new StringBuilder();
+    private boolean lineComplete = true;
+
+    /**
+     * Code addresses a command reached first
+     *
+     * @param command input line (without newline), or BOOT
+     * @param addresses int[] addresses in the order they were first executed
+     */
+    public record Delta(String command, int[] addresses) {}
+
+    /**
+     * Count an instruction executed at an address
+     *
+     * @param address int
+     */
+    void executed(int address) {
+        final char count = executed[address];
+        if (count == 0)
+            reached(address);
+        if (count != MAX_COUNT)
+            executed[address] = (char) (count + 1);
+    }
+
+    /**
+     * Count a read of an address by RMEM
+     *
+     * @param address int
+     */
+    void read(int address) {
+        if (reads[address] != MAX_COUNT)
+            reads[address]++;
+    }
+
+    /**
+     * Count a write to an address by WMEM
+     *
+     * @param address int
+     */
+    void written(int address) {
+        if (writes[address] != MAX_COUNT)
+            writes[address]++;
+    }
+
+    /**
+     * Record a character read by an IN instruction. The first character of a line starts the next command, and a
+     * newline completes its text.
+     *
+     * @param character int
+     */
+    synchronized void input(int character) {
+        if (lineComplete) {
+            if (commands.size() == commandStart.length)
+                commandStart = Arrays.copyOf(commandStart, commandStart.length * 2);
+            commandStart[commands.size()] = reachedCount;
+            commands.add("");
+            lineComplete = false;
+        }
+
+        if (character == '\n') {
+            lineComplete = true;
+            line.setLength(0);
+        } else {
+            line.append((char) character);
+            commands.set(commands.size() - 1, line.toString());
+        }
+    }
+
+    private synchronized void reached(int address) {
+        if (reachedCount == reached.length)
+            reached = Arrays.copyOf(reached, reached.length * 2);
+        reached[reachedCount++] = address;
+    }
+
+    /**
+     * Number of times the instruction at an address was executed (saturating at MAX_COUNT)
+     *
+     * @param address int
+     * @return int
+     */
+    public int executions(int address) {
+        return executed[address];
+    }
+
+    /**
+     * Number of times an address was read by RMEM (saturating at MAX_COUNT)
+     *
+     * @param address int
+     * @return int
+     */
+    public int reads(int address) {
+        return reads[address];
+    }
+
+    /**
+     * Number of times an address was written by WMEM (saturating at MAX_COUNT)
+     *
+     * @param address int
+     * @return int
+     */
+    public int writes(int address) {
+        return writes[address];
+    }
+
+    /**
+     * Number of distinct code addresses executed
+     *
+     * @return int
+     */
+    public synchronized int covered() {
+        return reachedCount;
+    }
+
+    /**
+     * Coverage deltas of all commands processed so far, starting with BOOT, including commands that reached no new
+     * code.
+     *
+     * @return List of Delta
+     */
+    public synchronized List<Delta> deltas() {
+        final List<Delta> deltas = new ArrayList<>(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            final int to = i + 1 < commands.size() ? commandStart[i + 1] : reachedCount;
+            deltas.add(new Delta(commands.get(i), Arrays.copyOfRange(reached, commandStart[i], to)));
+        }
+        return deltas;
+    }
+
+    /**
+     * Write the map as CSV, with a header line, and a line per address that was accessed:
+     *      address,executed,read,written
+     *
+     * @param writer Writer
+     * @throws IOException when writing fails
+     */
+    public void writeCsv(Writer writer) throws IOException {
+        writer.write("address,executed,read,written\n");
+        for (int address = 0; address < executed.length; address++) {
+            if (executed[address] != 0 || reads[address] != 0 || writes[address] != 0)
+                writer.write(address + "," + (int) executed[address] + "," + (int) reads[address] + "," +
+                        (int) writes[address] + "\n");
+        }
+    }
+
+    /**
+     * Write the map as a text heatmap, with a line of HEATMAP_WIDTH addresses, preceded by the first address, for
+     * every range of addresses that was accessed. The character of an address is based on its total number of
+     * accesses n, as " .:-=+*#%@".charAt(min(9, 1 + log2(n))).
+     *
+     * @param writer Writer
+     * @throws IOException when writing fails
+     */
+    public void writeHeatmap(Writer writer) throws IOException {
+        final char[] row = new char[HEATMAP_WIDTH];
+        for (int from = 0; from < executed.length; from += HEATMAP_WIDTH) {
+            boolean accessed = false;
+            for (int i = 0; i < HEATMAP_WIDTH; i++) {
+                final int count = executed[from + i] + reads[from + i] + writes[from + i];
+                row[i] = HEAT.charAt(Math.min(HEAT.length() - 1, Integer.SIZE - Integer.numberOfLeadingZeros(count)));
+                accessed |= count != 0;
+            }
+            if (accessed)
+                writer.write("%05d |%s|\n".formatted(from, new String(row)));
+        }
+    }
+
+    /**
+     * Write a JSON coverage summary, with the number of distinct addresses executed, read, and written, and the
+     * coverage delta per command (leaving out commands that reached no new code):
+     *      {"executed":1234,"read":56,"written":78,"commands":[{"command":"(boot)","reached":[...]}, ...]}
+     *
+     * @param writer Writer
+     * @throws IOException when writing fails
+     */
+    public void writeJson(Writer writer) throws IOException {
+        writer.write("{\"executed\":" + count(executed) + ",\"read\":" + count(reads) + ",\"written\":" +
+                count(writes) + ",\"commands\":[");
+        boolean first = true;
+        for (var delta : deltas()) {
+            if (delta.addresses().length == 0)
+                continue;
+
+            writer.write((first ? "" : ",") + "\n{\"command\":\"" + escape(delta.command()) + "\",\"reached\":" +
+                    Arrays.toString(delta.addresses()).replace(" ", "") + "}");
+            first = false;
+        }
+        writer.write("]}\n");
+    }
+
+    private static int count(char[] counters) {
+        int count = 0;
+        for (var counter : counters)
+            if (counter != 0)
+                count++;
+        return count;
+    }
+
+    private static String escape(String text) {
+        final StringBuilder sb = new StringBuilder();
+        for (char c : text.toCharArray()) {
+            if (c == '"' || c == '\\')
+                sb.append('\\').append(c);
+            else if (c < ' ')
+                sb.append("\\u%04x".formatted((int) c));
+            else
+                sb.append(c);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * BootCache class
+ * Directory of boot images (see BootImage), one file per program named after the SHA-256 hash of the program. The
+ * first request for the image of a program boots it cold and stores the image, later requests (also from later
+ * runs of the JVM) read the image from disk, which takes a file read instead of the millions of instructions
+ * challenge.bin executes before its first prompt.
+ * An image that can't be read (damaged, truncated, written by an older version) is replaced by a fresh one. Images are
+ * written to a temporary file first, and then moved into place, so concurrent processes never read a partial image.
+ */
+package com.putoet.device;
+
+import java.io.*;
+import java.nio.file.*;
+
+public class BootCache {
+    private final Path directory;
+    private long hits;
+    private long misses;
+
+    /**
+     * Constructor
+     *
+     * @param directory Path of the directory holding the images, which is created when needed
+     */
+    public BootCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Default cache directory, the value of system property "synacor.boot.cache", or "synacor-boot" in the temporary
+     * directory of the JVM.
+     *
+     * @return Path
+     */
+    public static Path defaultDirectory() {
+        final String directory = System.getProperty("synacor.boot.cache");
+        return directory != null ? Path.of(directory) :
+                Path.of(System.getProperty("java.io.tmpdir"), "synacor-boot");
+    }
+
+    /**
+     * Boot image of a program, read from the cache, or captured (cold boot) and stored in the cache when it's not
+     * available. Failing to store an image is not an error, the image is simply captured again next time.
+     *
+     * @param program little-endian program bytes
+     * @return BootImage
+     */
+    public synchronized BootImage image(byte[] program) {
+        final String hash = BootImage.hash(program);
+        final Path file = file(hash);
+
+        final BootImage cached = load(file, hash);
+        if (cached != null) {
+            hits++;
+            return cached;
+        }
+
+        misses++;
+        final BootImage image = BootImage.capture(program);
+        store(file, image);
+        return image;
+    }
+
+    /**
+     * Remove the image of a program from the cache, so the next request boots it cold.
+     *
+     * @param program little-endian program bytes
+     * @throws IOException in case the image can't be removed
+     */
+    public synchronized void evict(byte[] program) throws IOException {
+        Files.deleteIfExists(file(BootImage.hash(program)));
+    }
+
+    /**
+     * Path of the file holding the image of a program with a given hash
+     *
+     * @param hash String
+     * @return Path
+     */
+    public Path file(String hash) {
+        return directory.resolve(hash + ".boot");
+    }
+
+    /**
+     * Number of images read from the cache
+     *
+     * @return long
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * Number of images that had to be captured
+     *
+     * @return long
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    private static BootImage load(Path file, String hash) {
+        if (!Files.isRegularFile(file))
+            return null;
+
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(file))) {
+            final BootImage image = BootImage.read(is);
+            return hash.equals(image.hash()) ? image : null;
+        } catch (IOException exc) {
+            return null;
+        }
+    }
+
+    private void store(Path file, BootImage image) {
+        try {
+            Files.createDirectories(directory);
+            final Path temp = Files.createTempFile(directory, image.hash(), ".tmp");
+            try {
+                try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                    image.write(os);
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException exc) {
+            // not cached, which only costs another cold boot
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.putoet.device;
+
+import jdk.jfr.*;
+
+/**
+ * JFR event covering the boot phase of a device, from the start of run() up to the first IN instruction, which
+ * is when the program (self-test and decryption done) is ready for input. After a warm boot (from a BootImage) the
+ * boot phase was skipped, and the event is marked as warm.
+ */
+@Name("com.putoet.device.BootComplete")
+@Label("Boot Complete")
+@Category({"Synacor", "Device"})
+@Description("Boot phase of the device, up to the first IN instruction")
+public class BootCompleteEvent extends Event {
+    @Label("Instructions Executed")
+    public long instructions;
+
+    @Label("Warm Boot")
+    @Description("Started from a boot image, so the instructions of the boot phase were skipped")
+    public boolean warm;
+}
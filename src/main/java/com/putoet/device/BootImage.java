@@ -0,0 +1,269 @@
+/**
+ * BootImage class
+ * Immutable state of a device that booted a program up to its first IN instruction: memory (as a ProgramImage),
+ * registers, stack, instruction pointer, and the output written while booting. challenge.bin runs a self-test and
+ * decrypts most of its memory before it asks for input, which takes the same (large) number of instructions on
+ * every start. A device started from a boot image (see Device.boot(BootImage)) skips all of that, and continues as
+ * if it booted itself.
+ * A boot image is identified by the SHA-256 hash of the program it was taken from, and can be written to and read
+ * from a stream, so it can be cached on disk (see BootCache). The stream holds a CRC32 checksum, so a damaged or
+ * truncated image is detected when it is read.
+ * An image can also be taken from any device that stopped waiting for input, which makes it a checkpoint the device
+ * can be started from again (see CheckpointCache).
+ */
+package com.putoet.device;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+public final class BootImage {
+    public static final long MAX_BOOT_INSTRUCTIONS = 100_000_000L;
+    public static final int MAX_STACK = 65_536;
+    public static final int MAX_OUTPUT_BYTES = 64 << 20;
+    public static final int MAX_MEMORY_BYTES = Memory.PAGES * Memory.PAGE_SIZE * 2;
+
+    private static final int MAGIC = 0x53594e42;
+    private static final int VERSION = 1;
+    private static final long SLICE = 100_000L;
+
+    private final String hash;
+    private final ProgramImage memory;
+    private final int[] registers;
+    private final int[] stack;
+    private final int ip;
+    private final byte[] output;
+    private final long instructions;
+
+    private BootImage(String hash, ProgramImage memory, int[] registers, int[] stack, int ip, byte[] output,
+                      long instructions) {
+        this.hash = hash;
+        this.memory = memory;
+        this.registers = registers;
+        this.stack = stack;
+        this.ip = ip;
+        this.output = output;
+        this.instructions = instructions;
+    }
+
+    /**
+     * Boot a program on a new device (a cold boot), and take the image at its first IN instruction, or at its HALT
+     * instruction when it never asks for input.
+     *
+     * @param program little-endian program bytes
+     * @return BootImage
+     * @throws IllegalStateException when the program doesn't ask for input within MAX_BOOT_INSTRUCTIONS
+     */
+    public static BootImage capture(byte[] program) {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final Device device = new Device(new Registers(), new Memory(ProgramImage.of(program)),
+                new Keyboard(OutputStream.nullOutputStream()), new Crt(output));
+
+        StopReason reason = StopReason.BUDGET;
+        while (reason == StopReason.BUDGET && device.metrics().getInstructionsExecuted() < MAX_BOOT_INSTRUCTIONS)
+            reason = device.run(SLICE);
+        if (reason == StopReason.BUDGET)
+            throw new IllegalStateException("Program didn't ask for input within " + MAX_BOOT_INSTRUCTIONS +
+                    " instructions");
+
+        return of(device, hash(program), output.toByteArray());
+    }
+
+    /**
+     * Take an image of a device that stopped, for instance when it waits for input (see Device.run(long)). Used
+     * to checkpoint a device, in which case the hash identifies the checkpoint rather than the program.
+     *
+     * @param device Device that doesn't run
+     * @param hash String identifying the image
+     * @param output all output the device has written
+     * @return BootImage
+     */
+    public static BootImage of(Device device, String hash, byte[] output) {
+        final int[] registers = new int[Registers.REGISTERS];
+        for (int i = 0; i < Registers.REGISTERS; i++)
+            registers[i] = device.registers().get(Registers.ARCH_MAX_VALUE + i);
+
+        return new BootImage(hash, ProgramImage.of(device.memory()), registers,
+                device.stack().stream().mapToInt(Integer::intValue).toArray(), device.ip().get(),
+                output.clone(), device.metrics().getInstructionsExecuted());
+    }
+
+    /**
+     * Create an image from its parts, which are not copied
+     */
+    static BootImage of(String hash, ProgramImage memory, int[] registers, int[] stack, int ip) {
+        return new BootImage(hash, memory, registers, stack, ip, new byte[0], 0);
+    }
+
+    /**
+     * SHA-256 hash of a program, as hexadecimal string
+     *
+     * @param program little-endian program bytes
+     * @return String
+     */
+    public static String hash(byte[] program) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(program));
+        } catch (NoSuchAlgorithmException exc) {
+            throw new IllegalStateException("SHA-256 not available", exc);
+        }
+    }
+
+    /**
+     * Read an image from a stream, written before by write(OutputStream). Every length read is checked against its
+     * bound before it is used, as the checksum can only be checked after reading everything.
+     *
+     * @param is InputStream
+     * @return BootImage
+     * @throws IOException in case of a read error, or when the stream doesn't hold a valid image
+     */
+    public static BootImage read(InputStream is) throws IOException {
+        final CheckedInputStream checked = new CheckedInputStream(is, new CRC32());
+        final DataInputStream in = new DataInputStream(checked);
+        if (in.readInt() != MAGIC || in.readInt() != VERSION)
+            throw new IOException("Not a boot image (or an image of an older version)");
+
+        final String hash = in.readUTF();
+        final int ip = length(in, Registers.ARCH_MAX_VALUE - 1, "instruction pointer");
+        final long instructions = in.readLong();
+        final int[] registers = new int[Registers.REGISTERS];
+        for (int i = 0; i < registers.length; i++)
+            registers[i] = in.readUnsignedShort();
+        final int[] stack = new int[length(in, MAX_STACK, "stack size")];
+        for (int i = 0; i < stack.length; i++)
+            stack[i] = in.readUnsignedShort();
+        final byte[] output = in.readNBytes(length(in, MAX_OUTPUT_BYTES, "output size"));
+        final int memorySize = length(in, MAX_MEMORY_BYTES, "memory size");
+        if (memorySize % 2 != 0)
+            throw new IOException("Invalid boot image memory size " + memorySize);
+        final byte[] memory = in.readNBytes(memorySize);
+
+        final long checksum = checked.getChecksum().getValue();
+        if (in.readLong() != checksum)
+            throw new IOException("Boot image checksum mismatch");
+
+        return new BootImage(hash, ProgramImage.of(memory), registers, stack, ip, output, instructions);
+    }
+
+    private static int length(DataInputStream in, int max, String name) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || length > max)
+            throw new IOException("Invalid boot image " + name + " " + length);
+        return length;
+    }
+
+    /**
+     * Write the image to a stream.
+     *
+     * @param os OutputStream
+     * @throws IOException in case of a write error
+     */
+    public void write(OutputStream os) throws IOException {
+        final CheckedOutputStream checked = new CheckedOutputStream(os, new CRC32());
+        final DataOutputStream out = new DataOutputStream(checked);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(hash);
+        out.writeInt(ip);
+        out.writeLong(instructions);
+        for (var register : registers)
+            out.writeShort(register);
+        out.writeInt(stack.length);
+        for (var value : stack)
+            out.writeShort(value);
+        out.writeInt(output.length);
+        out.write(output);
+
+        final Memory words = new Memory(memory);
+        out.writeInt(memory.length() * 2);
+        for (int address = 0; address < memory.length(); address++) {
+            final int word = words.peek(address);
+            out.write(word);
+            out.write(word >> 8);
+        }
+        out.flush();
+
+        out.writeLong(checked.getChecksum().getValue());
+        out.flush();
+    }
+
+    /**
+     * SHA-256 hash of the program the image was taken from (or the key of a checkpoint)
+     *
+     * @return String
+     */
+    public String hash() {
+        return hash;
+    }
+
+    /**
+     * Memory of the booted device
+     *
+     * @return ProgramImage
+     */
+    public ProgramImage memory() {
+        return memory;
+    }
+
+    /**
+     * Value of a register of the booted device
+     *
+     * @param id register id (32768 - 32775)
+     * @return int
+     */
+    public int register(int id) {
+        Registers.checkId(id);
+        return registers[id - Registers.ARCH_MAX_VALUE];
+    }
+
+    /**
+     * Stack of the booted device, bottom first
+     *
+     * @return int[]
+     */
+    public int[] stack() {
+        return stack.clone();
+    }
+
+    /**
+     * Instruction pointer of the booted device, which points to its first IN instruction
+     *
+     * @return int
+     */
+    public int ip() {
+        return ip;
+    }
+
+    /**
+     * Output written by the device while booting
+     *
+     * @return byte[]
+     */
+    public byte[] output() {
+        return output.clone();
+    }
+
+    /**
+     * Number of instructions the device executed while booting
+     *
+     * @return long
+     */
+    public long instructions() {
+        return instructions;
+    }
+
+    /**
+     * Approximate number of bytes the image occupies on the heap
+     *
+     * @return long
+     */
+    public long size() {
+        final int pageBytes = Memory.PAGE_SIZE * 2;
+        final long pages = (memory.length() + Memory.PAGE_SIZE - 1) / Memory.PAGE_SIZE;
+        return pages * (pageBytes + 16) + output.length + stack.length * 4L + registers.length * 4L + 128;
+    }
+}
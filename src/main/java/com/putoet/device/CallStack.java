@@ -0,0 +1,115 @@
+/**
+ * CallStack class
+ * Shadow call stack maintained by the device next to the guest stack. For every CALL the device records a frame
+ * with the address of the CALL instruction (call site), the called address (target), and the depth of the guest
+ * stack at which the return address was pushed. The frames are kept in primitive arrays which grow when required,
+ * so maintaining the call stack doesn't create any objects while the device is running.
+ * The guest is free to manipulate its stack (e.g. push an address and RET to it), so a RET doesn't simply pop the
+ * top frame, but removes all frames of which the return address was at or above the guest stack depth after the RET.
+ */
+package com.putoet.device;
+
+import java.util.Arrays;
+
+public class CallStack {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] callSites = new int[INITIAL_CAPACITY];
+    private int[] targets = new int[INITIAL_CAPACITY];
+    private int[] depths = new int[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Record a CALL
+     *
+     * @param callSite address of the CALL instruction
+     * @param target called address
+     * @param depth guest stack depth before the return address was pushed
+     */
+    public void call(int callSite, int target, int depth) {
+        if (size == targets.length) {
+            callSites = Arrays.copyOf(callSites, size * 2);
+            targets = Arrays.copyOf(targets, size * 2);
+            depths = Arrays.copyOf(depths, size * 2);
+        }
+
+        callSites[size] = callSite;
+        targets[size] = target;
+        depths[size] = depth;
+        size++;
+    }
+
+    /**
+     * Record a RET, which removes the frames whose return address is no longer on the guest stack
+     *
+     * @param depth guest stack depth after the RET
+     */
+    public void ret(int depth) {
+        while (size > 0 && depths[size - 1] >= depth)
+            size--;
+    }
+
+    /**
+     * Remove all frames
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Number of frames on the call stack
+     *
+     * @return int
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The routine currently executing, which is the target of the top frame, or 0 (the program entry point) if
+     * there are no frames.
+     *
+     * @return int address of the routine
+     */
+    public int routine() {
+        return size == 0 ? 0 : targets[size - 1];
+    }
+
+    /**
+     * Call site of a frame, where frame 0 is the bottom (oldest) frame
+     *
+     * @param frame int
+     * @return int address of the CALL instruction
+     */
+    public int callSite(int frame) {
+        checkFrame(frame);
+        return callSites[frame];
+    }
+
+    /**
+     * Called address of a frame, where frame 0 is the bottom (oldest) frame
+     *
+     * @param frame int
+     * @return int address of the called routine
+     */
+    public int target(int frame) {
+        checkFrame(frame);
+        return targets[frame];
+    }
+
+    /**
+     * Guest stack depth of a frame, where frame 0 is the bottom (oldest) frame
+     *
+     * @param frame int
+     * @return int guest stack depth before the return address was pushed
+     */
+    public int depth(int frame) {
+        checkFrame(frame);
+        return depths[frame];
+    }
+
+    private void checkFrame(int frame) {
+        if (frame < 0 || frame >= size)
+            throw new IllegalArgumentException("Invalid frame " + frame + " for call stack of size " + size);
+    }
+}
@@ -0,0 +1,276 @@
+/**
+ * CheckpointCache class
+ * Least recently used cache of device checkpoints (see BootImage), keyed by the hash of the input consumed by the
+ * device, which ScriptReplay uses to resume a script from the longest prefix of it that was replayed before. A key
+ * is chained from the key of the previous line (see key(String, String)), starting with the hash of the program, so
+ * the key of every prefix of a script is cheap to calculate.
+ * The cache is limited to a maximum number of bytes (estimated, see BootImage.size()). When the limit is exceeded,
+ * the least recently used checkpoints are evicted, and if the cache has a spill directory, they are written to disk
+ * first, from where they are read again when needed. flush() writes all checkpoints to the spill directory, so a
+ * later run of the JVM can resume from them as well.
+ * The cache counts its hits and misses, which are available as CheckpointCacheMXBean.
+ */
+package com.putoet.device;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class CheckpointCache implements CheckpointCacheMXBean {
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    private final long maxBytes;
+    private final Path spillDirectory;
+    private final LinkedHashMap<String, BootImage> checkpoints = new LinkedHashMap<>(64, 0.75f, true);
+
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long diskHits;
+    private long evictions;
+    private long spills;
+    private long linesSkipped;
+    private long linesExecuted;
+
+    /**
+     * Constructor
+     *
+     * @param maxBytes maximum (estimated) number of bytes of the checkpoints in memory
+     * @param spillDirectory Path of the directory evicted checkpoints are written to, or null to discard them
+     */
+    public CheckpointCache(long maxBytes, Path spillDirectory) {
+        this.maxBytes = maxBytes;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Key of the input consumed by a device, after it consumed one more line.
+     *
+     * @param previous key of the input consumed before the line (the hash of the program for the first line)
+     * @param line String line without newline
+     * @return String
+     */
+    public static String key(String previous, String line) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(previous.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            digest.update(line.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException exc) {
+            throw new IllegalStateException("SHA-256 not available", exc);
+        }
+    }
+
+    /**
+     * Register the cache with the platform MBean server as "com.putoet.device:type=CheckpointCache,name={name}".
+     *
+     * @param name String name of the cache
+     * @return ObjectName the cache is registered with
+     */
+    public ObjectName register(String name) {
+        try {
+            final ObjectName objectName = new ObjectName(DeviceMetrics.DOMAIN + ":type=CheckpointCache,name=" +
+                    ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException exc) {
+            throw new IllegalStateException("Failed to register checkpoint cache " + name, exc);
+        }
+    }
+
+    /**
+     * Find the longest prefix with a checkpoint, and count it as hit, or as miss when there is none.
+     *
+     * @param keys keys of the prefixes of a script, shortest first
+     * @return index of the longest key with a checkpoint, or -1
+     */
+    public synchronized int longest(List<String> keys) {
+        for (int i = keys.size() - 1; i >= 0; i--) {
+            final String key = keys.get(i);
+            if (checkpoints.containsKey(key) || (spillDirectory != null && Files.isRegularFile(file(key)))) {
+                hits++;
+                return i;
+            }
+        }
+        misses++;
+        return -1;
+    }
+
+    /**
+     * Checkpoint for a key, from memory or from the spill directory
+     *
+     * @param key String
+     * @return BootImage or null when there is no (readable) checkpoint
+     */
+    public synchronized BootImage get(String key) {
+        final BootImage checkpoint = checkpoints.get(key);
+        if (checkpoint != null || spillDirectory == null)
+            return checkpoint;
+
+        final Path file = file(key);
+        if (!Files.isRegularFile(file))
+            return null;
+
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(file))) {
+            final BootImage spilled = BootImage.read(is);
+            if (!key.equals(spilled.hash()))
+                return null;
+
+            diskHits++;
+            add(key, spilled);
+            return spilled;
+        } catch (IOException exc) {
+            return null;
+        }
+    }
+
+    /**
+     * Add a checkpoint, evicting the least recently used checkpoints when the cache exceeds its limit.
+     *
+     * @param key String
+     * @param checkpoint BootImage
+     */
+    public synchronized void put(String key, BootImage checkpoint) {
+        add(key, checkpoint);
+    }
+
+    /**
+     * Write all checkpoints in memory to the spill directory (if any), which is a no-op for checkpoints already
+     * written before.
+     */
+    public synchronized void flush() {
+        if (spillDirectory != null)
+            checkpoints.forEach(this::spill);
+    }
+
+    /**
+     * Remove all checkpoints from memory (not from the spill directory)
+     */
+    public synchronized void clear() {
+        checkpoints.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Count the lines of a replayed script that were skipped (resumed from a checkpoint) and executed.
+     *
+     * @param skipped int
+     * @param executed int
+     */
+    synchronized void replayed(int skipped, int executed) {
+        linesSkipped += skipped;
+        linesExecuted += executed;
+    }
+
+    private void add(String key, BootImage checkpoint) {
+        final BootImage previous = checkpoints.put(key, checkpoint);
+        if (previous != null)
+            bytes -= previous.size();
+        bytes += checkpoint.size();
+
+        final Iterator<Map.Entry<String, BootImage>> iterator = checkpoints.entrySet().iterator();
+        while (bytes > maxBytes && checkpoints.size() > 1) {
+            final Map.Entry<String, BootImage> eldest = iterator.next();
+            if (spillDirectory != null)
+                spill(eldest.getKey(), eldest.getValue());
+            bytes -= eldest.getValue().size();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    private void spill(String key, BootImage checkpoint) {
+        final Path file = file(key);
+        if (Files.isRegularFile(file))
+            return;
+
+        try {
+            Files.createDirectories(spillDirectory);
+            final Path temp = Files.createTempFile(spillDirectory, key, ".tmp");
+            try {
+                try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                    checkpoint.write(os);
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                spills++;
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException exc) {
+            // not spilled, which only costs replaying the lines again
+        }
+    }
+
+    private Path file(String key) {
+        return spillDirectory.resolve(key + ".checkpoint");
+    }
+
+    @Override
+    public synchronized int getEntries() {
+        return checkpoints.size();
+    }
+
+    @Override
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    @Override
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    @Override
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized long getSpills() {
+        return spills;
+    }
+
+    @Override
+    public synchronized long getLinesSkipped() {
+        return linesSkipped;
+    }
+
+    @Override
+    public synchronized long getLinesExecuted() {
+        return linesExecuted;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("checkpoints: %d (%d KB), hits: %d, misses: %d, disk hits: %d, evictions: %d, " +
+                        "spills: %d, lines skipped: %d, lines executed: %d", getEntries(), getBytes() / 1024,
+                getHits(), getMisses(), getDiskHits(), getEvictions(), getSpills(), getLinesSkipped(),
+                getLinesExecuted());
+    }
+}
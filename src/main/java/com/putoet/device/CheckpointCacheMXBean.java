@@ -0,0 +1,17 @@
+package com.putoet.device;
+
+/**
+ * Management interface of a CheckpointCache, to see how much of the replayed scripts was resumed from checkpoints.
+ */
+public interface CheckpointCacheMXBean {
+    int getEntries();
+    long getBytes();
+    long getMaxBytes();
+    long getHits();
+    long getMisses();
+    long getDiskHits();
+    long getEvictions();
+    long getSpills();
+    long getLinesSkipped();
+    long getLinesExecuted();
+}
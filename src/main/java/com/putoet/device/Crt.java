@@ -5,6 +5,8 @@
  * the stream to prevent loss of output and make is immediately visible in the connected stream.
  * Beware, only write(int) and write(byte[]) reroute to the target output stream, other OutputStream
  * methods are not implemented and thus not connected!
+ * Every line written (up to and including the newline) is recorded as an OutputLineEvent when JFR is recording.
+ * An OutputMatcher can be connected to look for patterns in the characters written, as they are written.
  */
 package com.putoet.device;
 
@@ -13,6 +15,9 @@ import java.io.OutputStream;
 
 public class Crt extends OutputStream {
     private final OutputStream out;
+    private OutputLineEvent lineEvent;
+    private StringBuilder line;
+    private OutputMatcher matcher;
 
     /**
      * Default constructor, reroutes to System.out
@@ -34,11 +39,54 @@ public class Crt extends OutputStream {
     public void write(int b) throws IOException {
         out.write(b);
         flush();
+        lineEvent(b);
+        if (matcher != null)
+            matcher.feed(b);
     }
 
     @Override
     public void write(byte[] bytes) throws IOException {
         out.write(bytes);
         flush();
+        for (var b : bytes)
+            lineEvent(b);
+        if (matcher != null)
+            for (var b : bytes)
+                matcher.feed(b);
+    }
+
+    /**
+     * Connect a matcher, which is fed every character written, on the thread writing it
+     *
+     * @param matcher OutputMatcher, or null to disconnect the matcher
+     */
+    public void matcher(OutputMatcher matcher) {
+        this.matcher = matcher;
+    }
+
+    /**
+     * Start an OutputLineEvent on the first character of a line, and commit it on the newline. The text of the
+     * line is only collected while the event is enabled.
+     *
+     * @param b character written
+     */
+    private void lineEvent(int b) {
+        if (lineEvent == null) {
+            lineEvent = new OutputLineEvent();
+            lineEvent.begin();
+            line = lineEvent.isEnabled() ? new StringBuilder() : null;
+        }
+
+        lineEvent.length++;
+        if (line != null)
+            line.append((char) b);
+
+        if (b == '\n') {
+            if (line != null)
+                lineEvent.text = line.toString();
+            lineEvent.commit();
+            lineEvent = null;
+            line = null;
+        }
     }
 }
@@ -0,0 +1,18 @@
+package com.putoet.device;
+
+import jdk.jfr.*;
+
+/**
+ * JFR event covering the time a device was halted by the debugger.
+ */
+@Name("com.putoet.device.DebuggerHalt")
+@Label("Debugger Halt")
+@Category({"Synacor", "Debugger"})
+@Description("Device halted by the debugger")
+public class DebuggerHaltEvent extends Event {
+    @Label("Address")
+    public int address;
+
+    @Label("Instruction")
+    public String instruction;
+}
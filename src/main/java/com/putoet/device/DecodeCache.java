@@ -0,0 +1,78 @@
+/**
+ * DecodeCache class
+ * Wraps an Interpreter and keeps the fetched Instruction for every memory address, so an instruction executed in a
+ * loop is only fetched (decoded) once, instead of creating a new Instruction object every time it is executed.
+ * Instructions fetched by an interpreter are bound to the IP register, the registers, the stack and the in and out
+ * components of the device, and only copy their operands from memory. So, a cached instruction can be reused as long
+ * as the memory it was fetched from hasn't changed. For every cached instruction the cache stores a stamp computed
+ * from the version of the memory page(s) the instruction was fetched from. When the stamp doesn't match anymore, the
+ * instruction is fetched again.
+ * The cache is allocated per memory page, on the first fetch from the page, so it only takes memory for the pages
+ * holding code that is actually executed.
+ */
+package com.putoet.device;
+
+public class DecodeCache implements ExecutionEngine {
+    private static final int MAX_INSTRUCTION_SIZE = 4;
+
+    private final Interpreter interpreter;
+    private final Memory memory;
+    private final DeviceMetrics metrics;
+    private final Instruction[][] instructions = new Instruction[Memory.PAGES][];
+    private final int[][] stamps = new int[Memory.PAGES][];
+
+    /**
+     * Constructor
+     *
+     * @param interpreter Interpreter used to fetch instructions that are not cached (yet)
+     * @param memory Memory the interpreter fetches its instructions from
+     * @param metrics DeviceMetrics to record cache hits and misses
+     */
+    public DecodeCache(Interpreter interpreter, Memory memory, DeviceMetrics metrics) {
+        this.interpreter = interpreter;
+        this.memory = memory;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Fetch the Instruction at the address pointed to by the IP register, from the cache if the memory it was
+     * fetched from didn't change, or from the interpreter otherwise.
+     *
+     * @param ip Register (instruction pointer)
+     * @return Instruction instance
+     */
+    @Override
+    public Instruction next(Register ip) {
+        final int address = ip.get();
+        final int page = Memory.page(address);
+        final int offset = address % Memory.PAGE_SIZE;
+        final int stamp = stamp(address);
+        if (instructions[page] == null) {
+            instructions[page] = new Instruction[Memory.PAGE_SIZE];
+            stamps[page] = new int[Memory.PAGE_SIZE];
+        }
+
+        final Instruction instruction = instructions[page][offset];
+        if (instruction != null && stamps[page][offset] == stamp) {
+            metrics.decodeCacheHit();
+            return instruction;
+        }
+
+        metrics.decodeCacheMiss();
+        final Instruction fetched = interpreter.next(ip);
+        instructions[page][offset] = fetched;
+        stamps[page][offset] = stamp;
+        return fetched;
+    }
+
+    /**
+     * Stamp of the first and last page an instruction could have been fetched from (see Memory.stamp)
+     *
+     * @param address int
+     * @return int stamp
+     */
+    private int stamp(int address) {
+        final int last = Math.min(address + MAX_INSTRUCTION_SIZE - 1, memory.size() - 1);
+        return memory.stamp(Memory.page(address), Memory.page(last));
+    }
+}
@@ -4,32 +4,76 @@
  * A Device is build from Memory, Registers, an In and Out device, and holds a Stack, an
  * Instruction Pointer (register), the Current Instruction, and a default DeviceDebugger (which
  * does nothing).
- * The Device implements Runnable, so it can run on a separate thread.
+ * The Device implements Runnable, so it can run on a separate thread. Alternatively, it can be run in slices of
+ * a budget of instructions, which never block on input, so many devices can share a thread.
  * A device can load a program from a Resource, an InputStream, and a int[] array. Beware, according
  * to architecture, a program is build from 2-byte words with the low-byte first which is also known
  * as little endian.
  * While running, the set debugger is called after fetching but before execution of the next statement.
  * Fetching means that currentStatement is set to the next to-be-executed statement.
  * The default debugger is the empty implementation of the DeviceDebugger interface.
+ * Instructions are fetched by an ExecutionEngine selected before the device starts. By default, fetched instructions
+ * are kept in a DecodeCache, so instructions are only fetched again after the memory they were fetched from has changed.
+ * While running, the device keeps its DeviceMetrics up to date, which can be registered as MXBean for monitoring.
+ * The device also emits JFR events for the boot phase, input waits, and calls to traced subroutine addresses, so a
+ * flight recording shows what the guest was doing next to the JVM activity.
+ * The device maintains a shadow CallStack next to the guest stack, and publishes the address of every instruction
+ * before its execution, together with the current routine (top of the call stack), as a single sample using a lazy
+ * store, which a SamplingProfiler can read from another thread.
+ * For other threads, the device also publishes a consistent copy of its instruction pointer, registers, and top of
+ * the stack (see PublishedState) at regular instruction boundaries, and whenever it stops, so a debugger can show the
+ * state of a running device without halting it.
+ * Other threads pause, resume, and cancel a running device through its DeviceControl, which the device polls at a
+ * safepoint every DeviceControl.POLL_INTERVAL instructions.
+ * A device can be started from a BootImage, which skips the boot phase of the program (see BootCache).
+ * Optionally, the device memoizes pure subroutines, skipping calls of which the result is known, and replaces calls
+ * of the guest print routine by a single write.
  */
 package com.putoet.device;
 
+import javax.management.ObjectName;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
 
 public class Device implements Runnable, DebuggerSupport {
+    public static final int IDLE = -1;
+    private static final AtomicInteger DEVICE_COUNT = new AtomicInteger();
+
+    private final int id = DEVICE_COUNT.incrementAndGet();
     private final Memory memory;
     private final Registers registers;
     private final Keyboard in;
     private final Crt out;
     private final Register ip = new Register();
     private final Stack<Integer> stack = new Stack<>();
+    private final CallStack callStack = new CallStack();
+    private final AtomicLong sample = new AtomicLong();
+    private final PublishedState publishedState = new PublishedState();
     private final AtomicReference<Instruction> currentInstruction = new AtomicReference<>(null);
+    private final DeviceMetrics metrics = new DeviceMetrics();
+    private final BitSet tracedCalls = new BitSet();
+    private final Deque<GuestCallEvent> callEvents = new ArrayDeque<>();
+
+    private BootCompleteEvent bootEvent;
 
     private DeviceDebugger debugger = DebuggerSupport.DEFAULT_DEBUGGER;
+    private Disassembly disassembly;
+    private ExecutionEngine.Factory engineFactory = ExecutionEngine.Kind.CACHED;
+    private ExecutionEngine engine;
+    private Memoizer memoizer;
+    private PrintIntrinsic printIntrinsic;
+    private AccessMap accessMap;
 
-    private boolean running = false;
+    private final DeviceControl control = new DeviceControl();
+    private long allowance;
+    private long untilSafepoint;
+    private boolean warmBoot = false;
+    private int routine;
+    private int untilPublish = PublishedState.PUBLISH_INTERVAL;
 
     /**
      * Constructor
@@ -89,6 +133,38 @@ public class Device implements Runnable, DebuggerSupport {
             memory.write(offset, program[offset]);
     }
 
+    /**
+     * Start the device from a boot image instead of booting the program (a warm boot): memory, registers, stack and
+     * instruction pointer are taken from the image, and the output written while booting is written again. Must be
+     * called before the device runs. The memory of the device shares the pages of the image until it writes them.
+     *
+     * @param image BootImage
+     * @throws IllegalStateException when the device already runs
+     */
+    public void boot(BootImage image) {
+        if (engine != null)
+            throw new IllegalStateException("Device already started");
+
+        memory.load(image.memory());
+        for (int i = 0; i < Registers.REGISTERS; i++)
+            registers.set(Registers.ARCH_MAX_VALUE + i, image.register(Registers.ARCH_MAX_VALUE + i));
+        stack.clear();
+        for (var value : image.stack())
+            stack.push(value);
+        ip.accept(image.ip());
+        warmBoot = true;
+
+        final byte[] output = image.output();
+        try {
+            out.write(output);
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+        metrics.charactersWritten(output.length);
+        metrics.stackDepth(stack.size());
+        publishState();
+    }
+
     /**
      * Memory component of the device
      *
@@ -143,6 +219,218 @@ public class Device implements Runnable, DebuggerSupport {
         return stack;
     }
 
+    /**
+     * Hash of the state of the device: memory, registers, instruction pointer and stack (see StateHash). Memory and
+     * registers maintain their hash on every write, so only the stack costs time (proportional to its depth, which is
+     * small). Devices in the same state have the same hash, also when one is forked or restored from the other.
+     *
+     * @return long
+     */
+    public long stateHash() {
+        long hash = memory.stateHash() ^ registers.stateHash() ^ StateHash.of(StateHash.IP_ADDRESS, ip.get()) ^
+                StateHash.of(StateHash.STACK_DEPTH_ADDRESS, stack.size());
+        for (int i = 0; i < stack.size(); i++)
+            hash ^= StateHash.of(StateHash.STACK_ADDRESS + i, stack.get(i));
+        return hash;
+    }
+
+    /**
+     * Metrics of the device
+     *
+     * @return DeviceMetrics
+     */
+    public DeviceMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Register the metrics of the device with the platform MBean server, using a name unique within the JVM.
+     *
+     * @return ObjectName the metrics are registered with
+     */
+    public ObjectName registerMBean() {
+        return metrics.register("device-" + id);
+    }
+
+    /**
+     * Emit a GuestCallEvent for every call to one of the specified subroutine addresses, covering the call up to
+     * the matching RET.
+     *
+     * @param addresses subroutine addresses
+     */
+    public void traceCalls(int... addresses) {
+        for (var address : addresses)
+            tracedCalls.set(address);
+    }
+
+    /**
+     * Static analysis of the program in the memory of the device, created on first use.
+     *
+     * @return Disassembly
+     */
+    public synchronized Disassembly disassembly() {
+        if (disassembly == null)
+            disassembly = new Disassembly(memory);
+        return disassembly;
+    }
+
+    /**
+     * Select the engine the device executes guest code with (see ExecutionEngine), which must be done before the
+     * device starts. The default is ExecutionEngine.Kind.CACHED.
+     *
+     * @param factory ExecutionEngine.Factory, like one of the ExecutionEngine.Kind values
+     * @throws IllegalStateException when the device already started
+     */
+    public void engine(ExecutionEngine.Factory factory) {
+        if (engine != null)
+            throw new IllegalStateException("Device already started");
+
+        engineFactory = factory;
+    }
+
+    /**
+     * Factory of the engine the device executes guest code with
+     *
+     * @return ExecutionEngine.Factory
+     */
+    public ExecutionEngine.Factory engine() {
+        return engineFactory;
+    }
+
+    /**
+     * Enable or disable automatic memoization of pure subroutines (see Memoizer). Memoization starts from scratch
+     * every time it is enabled.
+     *
+     * @param enable true to enable memoization
+     */
+    public void memoize(boolean enable) {
+        memoizer = enable ? new Memoizer(registers, memory, stack) : null;
+    }
+
+    /**
+     * Memoizer of the device, if memoization is enabled
+     *
+     * @return Memoizer or null
+     */
+    public Memoizer memoizer() {
+        return memoizer;
+    }
+
+    /**
+     * Set the mode of the intrinsic for the guest print routine (see PrintIntrinsic).
+     *
+     * @param mode PrintIntrinsic.Mode
+     */
+    public void printIntrinsic(PrintIntrinsic.Mode mode) {
+        printIntrinsic = mode == PrintIntrinsic.Mode.OFF ? null :
+                new PrintIntrinsic(memory, registers, out, metrics, mode);
+    }
+
+    /**
+     * Intrinsic for the guest print routine, if enabled
+     *
+     * @return PrintIntrinsic or null
+     */
+    public PrintIntrinsic printIntrinsic() {
+        return printIntrinsic;
+    }
+
+    /**
+     * Enable or disable the AccessMap, which counts instructions executed, and memory read and written, per address.
+     * Counting starts from scratch every time it is enabled.
+     *
+     * @param enable true to enable the AccessMap
+     */
+    public void trackAccess(boolean enable) {
+        accessMap = enable ? new AccessMap() : null;
+        memory.accessMap(accessMap);
+    }
+
+    /**
+     * AccessMap of the device, if enabled
+     *
+     * @return AccessMap or null
+     */
+    public AccessMap accessMap() {
+        return accessMap;
+    }
+
+    /**
+     * Shadow call stack of the device
+     *
+     * @return CallStack
+     */
+    public CallStack callStack() {
+        return callStack;
+    }
+
+    /**
+     * Address of the instruction being executed, and of the routine it belongs to, as last published by the device,
+     * packed in a single long, so both are always from the same instruction. Can be read from any thread.
+     *
+     * @return long (see sampledIp(long) and sampledRoutine(long))
+     */
+    public long sample() {
+        return sample.get();
+    }
+
+    /**
+     * Address of the instruction of a sample, or IDLE when the device was waiting for input
+     *
+     * @param sample long
+     * @return int
+     */
+    public static int sampledIp(long sample) {
+        return (int) sample;
+    }
+
+    /**
+     * Address of the routine of a sample
+     *
+     * @param sample long
+     * @return int
+     */
+    public static int sampledRoutine(long sample) {
+        return (int) (sample >>> 32);
+    }
+
+    /**
+     * Address of the instruction being executed, as last published by the device, or IDLE when the device is
+     * waiting for input. Can be read from any thread.
+     *
+     * @return int
+     */
+    public int sampledIp() {
+        return sampledIp(sample.get());
+    }
+
+    /**
+     * Address of the routine being executed, as last published by the device. Can be read from any thread.
+     *
+     * @return int
+     */
+    public int sampledRoutine() {
+        return sampledRoutine(sample.get());
+    }
+
+    /**
+     * Consistent copy of the state of the device, as last published by the device. Can be read from any thread.
+     *
+     * @return PublishedState
+     */
+    public PublishedState publishedState() {
+        return publishedState;
+    }
+
+    /**
+     * Publish the current state of the device (see PublishedState). The device publishes its state by itself, but a
+     * debugger that halts the device can publish it before waiting. Must be called on the thread running the device.
+     */
+    public void publishState() {
+        untilPublish = PublishedState.PUBLISH_INTERVAL;
+        publishedState.publish(metrics.getInstructionsExecuted(), ip.get(), registers, stack);
+    }
+
     /**
      * Set debugger component of the device
      *
@@ -181,37 +469,307 @@ public class Device implements Runnable, DebuggerSupport {
 
     /**
      * Running the device, creates an Interpreter for fetching instructions from memory, and executes the
-     * instructions one by one, until a HALT instruction is encountered or the running flag was set to false.
+     * instructions one by one, until a HALT instruction is encountered or the device was cancelled. While the
+     * device is paused (see DeviceControl), the thread waits at a safepoint until it is resumed.
      * After fetching of the next instruction and before executing it, the debugger is called with the
      * current IP and Instruction.
      */
     @Override
     public void run() {
-        running = true;
-        final Interpreter interpreter = new Interpreter(registers, memory, stack, in, out);
+        start();
+        while (currentInstruction.get().opcode() != Opcode.HALT) {
+            if (untilSafepoint == 0 && safepoint(true) != null)
+                break;
 
-        currentInstruction.set(interpreter.next(ip()));
-        while (currentInstruction.get().opcode() != Opcode.HALT && running) {
-            var instruction = debugger.debug(ip, currentInstruction.get());
-            instruction.run();
+            untilSafepoint--;
+            step();
+        }
+        publishState();
+    }
 
-            currentInstruction.set(interpreter.next(ip()));
+    /**
+     * Run the device for at most a budget of instructions on the caller's thread, without ever blocking it. The
+     * device stops before a HALT instruction, when it was cancelled or paused (see DeviceControl), or before an IN
+     * instruction when the keyboard has no input ready. The next call continues where the previous one stopped, so a device
+     * can be run in slices, interleaved with other work (or other devices) on the same thread.
+     *
+     * @param budget maximum number of instructions to execute
+     * @return StopReason
+     */
+    public StopReason run(long budget) {
+        start();
+        final StopReason reason = slice(budget, null);
+        publishState();
+        return reason;
+    }
+
+    /**
+     * Run the device like run(budget), but also stop before the first instruction for which the condition holds.
+     * The condition is tested on the caller's thread before every instruction (including the first one), so it
+     * can inspect the instruction pointer, registers, or memory of the device, and should be cheap.
+     *
+     * @param budget maximum number of instructions to execute
+     * @param condition Predicate of Device
+     * @return StopReason, CONDITION when the condition holds
+     */
+    public StopReason run(long budget, Predicate<Device> condition) {
+        start();
+        final StopReason reason = slice(budget, condition);
+        publishState();
+        return reason;
+    }
+
+    /**
+     * Execute at most a budget of instructions, without publishing the state (see run(budget))
+     *
+     * @param budget maximum number of instructions to execute
+     * @param condition Predicate of Device tested before every instruction, or null
+     * @return StopReason
+     */
+    private StopReason slice(long budget, Predicate<Device> condition) {
+        StopReason reason = safepoint(false);
+        if (reason != null)
+            return reason;
+
+        while (budget-- > 0) {
+            if (untilSafepoint == 0 && (reason = safepoint(false)) != null)
+                return reason;
+
+            if (condition != null && condition.test(this))
+                return StopReason.CONDITION;
+
+            final Opcode opcode = currentInstruction.get().opcode();
+            if (opcode == Opcode.HALT)
+                return StopReason.HALTED;
+
+            if (opcode == Opcode.IN && !in.ready()) {
+                sample.lazySet(sample(IDLE));
+                return StopReason.INPUT;
+            }
+
+            untilSafepoint--;
+            step();
         }
+        return StopReason.BUDGET;
+    }
+
+    /**
+     * Poll the control word of the device (see DeviceControl). The fast path only reads the control word, the slow
+     * path publishes the state first, so a paused device shows where it is.
+     *
+     * @param block true to wait while the device is paused
+     * @return null to continue, EXITED when cancelled, PAUSED when paused (without block)
+     */
+    private StopReason safepoint(boolean block) {
+        final long executed = allowance - untilSafepoint;
+        if (control.running()) {
+            allowance = untilSafepoint = DeviceControl.POLL_INTERVAL;
+            return null;
+        }
+
+        publishState();
+        final long granted = control.safepoint(executed, block);
+        allowance = untilSafepoint = Math.max(granted, 0);
+        if (granted < 0)
+            return StopReason.EXITED;
+        return granted == 0 ? StopReason.PAUSED : null;
+    }
+
+    /**
+     * Prepare the device for its first instruction, on the first call to run() or run(budget) only.
+     */
+    private void start() {
+        if (engine != null)
+            return;
+
+        bootEvent = new BootCompleteEvent();
+        bootEvent.begin();
+        engine = engineFactory.create(registers, memory, stack, in, out, metrics);
+        currentInstruction.set(engine.next(ip()));
+    }
+
+    /**
+     * Pass the current instruction through the debugger, execute it, and fetch the next one.
+     */
+    private void step() {
+        var instruction = debugger.debug(ip, currentInstruction.get());
+        execute(instruction);
+
+        currentInstruction.set(engine.next(ip()));
+    }
+
+    /**
+     * Execute a single instruction, and update the device metrics accordingly. Only the instructions that
+     * wait for input, write output, or change the stack depth require additional bookkeeping.
+     *
+     * @param instruction Instruction to execute
+     */
+    private void execute(Instruction instruction) {
+        sample.lazySet(sample(ip.get()));
+        if (accessMap != null)
+            accessMap.executed(ip.get());
+        if (memoizer != null && memoizer.observing())
+            memoizer.instruction(ip.get(), instruction);
+
+        switch (instruction.opcode()) {
+            case IN -> input(instruction);
+            case OUT -> {
+                if (printIntrinsic != null)
+                    printIntrinsic.output(value(instruction.operand(0)));
+                instruction.run();
+                metrics.characterWritten();
+            }
+            case CALL -> call(instruction);
+            case RET -> ret(instruction);
+            case PUSH, POP -> {
+                instruction.run();
+                metrics.stackDepth(stack.size());
+            }
+            default -> instruction.run();
+        }
+        metrics.instructionExecuted();
+        if (--untilPublish == 0)
+            publishState();
+    }
+
+    /**
+     * Sample of an address in the current routine (see sample())
+     *
+     * @param address int
+     * @return long
+     */
+    private long sample(int address) {
+        return (long) routine << 32 | (address & 0xffffffffL);
+    }
+
+    /**
+     * Execute an IN instruction, which may block until input is available. Only a read that has to wait for the
+     * keyboard is recorded as an InputWaitEvent (and counted as input wait time), so a prompt takes a single event,
+     * instead of one for every character of the command. The first IN instruction ends the boot phase of the device.
+     *
+     * @param instruction IN instruction
+     */
+    private void input(Instruction instruction) {
+        if (bootEvent != null) {
+            bootEvent.instructions = metrics.getInstructionsExecuted();
+            bootEvent.warm = warmBoot;
+            bootEvent.commit();
+            bootEvent = null;
+        }
+
+        // the device only waits for the first character of a command, the rest of it is read without waiting
+        if (in.ready()) {
+            read(instruction);
+            return;
+        }
+
+        final InputWaitEvent event = new InputWaitEvent();
+        event.address = ip.get();
+        event.begin();
+        sample.lazySet(sample(IDLE));
+        publishState();
+        final long start = System.nanoTime();
+        read(instruction);
+        metrics.inputWait(System.nanoTime() - start);
+        event.commit();
+    }
+
+    private void read(Instruction instruction) {
+        instruction.run();
+        if (accessMap != null)
+            accessMap.input(registers.get(instruction.operand(0)));
+    }
+
+    /**
+     * Execute a CALL instruction, record it on the shadow call stack, and start a GuestCallEvent when the called
+     * address is traced. When the call is replaced by an intrinsic, or the memoizer has the result of the call, the
+     * device returns from the call immediately.
+     *
+     * @param instruction CALL instruction
+     */
+    private void call(Instruction instruction) {
+        final int callSite = ip.get();
+        instruction.run();
+        if (printIntrinsic != null && printIntrinsic.call(ip.get(), stack.size() - 1)) {
+            ip.accept(stack.pop());
+            if (memoizer != null)
+                memoizer.impure();
+            return;
+        }
+        if (memoizer != null && memoizer.call(ip.get(), stack.size() - 1)) {
+            ip.accept(stack.pop());
+            return;
+        }
+
+        metrics.stackDepth(stack.size());
+        callStack.call(callSite, ip.get(), stack.size() - 1);
+        routine = ip.get();
+
+        if (tracedCalls.get(ip.get())) {
+            final GuestCallEvent event = new GuestCallEvent();
+            event.address = ip.get();
+            event.callSite = callSite;
+            event.stackDepth = stack.size() - 1;
+            event.begin();
+            callEvents.push(event);
+        }
+    }
+
+    /**
+     * Execute a RET instruction, update the shadow call stack, and commit the GuestCallEvent of the traced call it
+     * returns from (if any).
+     * Events of calls the guest never returned from (it manipulated the stack instead) are discarded.
+     *
+     * @param instruction RET instruction
+     */
+    private void ret(Instruction instruction) {
+        instruction.run();
+        metrics.stackDepth(stack.size());
+        callStack.ret(stack.size());
+        routine = callStack.routine();
+        if (memoizer != null)
+            memoizer.returned(stack.size());
+        if (printIntrinsic != null)
+            printIntrinsic.returned(stack.size());
+
+        while (!callEvents.isEmpty() && callEvents.peek().stackDepth > stack.size())
+            callEvents.pop();
+        if (!callEvents.isEmpty() && callEvents.peek().stackDepth == stack.size())
+            callEvents.pop().commit();
+    }
+
+    /**
+     * Value of an operand, which is either a literal value or a register id
+     *
+     * @param operand int
+     * @return int
+     */
+    private int value(int operand) {
+        return Registers.isRegister(operand) ? registers.get(operand) : operand;
+    }
+
+    /**
+     * Control of the device, to pause, resume, or cancel it from another thread
+     *
+     * @return DeviceControl
+     */
+    public DeviceControl control() {
+        return control;
     }
 
     /**
-     * Set the running flag to false, to enforce the run() method to break out of its loop.
+     * Cancel the device (see DeviceControl.cancel()), so run() and run(budget) return at the next safepoint.
      */
     public void exit() {
-        running = false;
+        control.cancel();
     }
 
     /**
-     * Reports the value of the running flag
+     * Reports if the device was cancelled
      *
-     * @return true if the value of the running flag was set to false
+     * @return true if the device was asked to exit
      */
     public boolean exiting() {
-        return !running;
+        return control.state() == DeviceControl.State.CANCELLED;
     }
 }
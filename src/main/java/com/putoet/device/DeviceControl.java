@@ -0,0 +1,218 @@
+/**
+ * DeviceControl class
+ * Lets other threads pause, resume, and cancel a running device, or let it run for a number of instructions and
+ * pause again. The device doesn't check for these requests on every instruction. It polls a control word at a
+ * safepoint every POLL_INTERVAL instructions (and at the start of every run), so a request takes effect within
+ * POLL_INTERVAL instructions, at an instruction boundary, while the hot loop only counts down to the next safepoint.
+ * The control word is read with an opaque load, which the JIT can't hoist out of the loop (unlike a plain field), and
+ * which is as cheap as a plain load. Only when the control word isn't RUN, the device takes the slow path, which
+ * synchronizes on the control to account for a budget, or to pause.
+ * A device running on its own thread (see Device.run()) waits in the safepoint while it is paused, a device run in
+ * slices (see Device.run(budget)) returns PAUSED instead, and returns PAUSED again on every run until it is resumed.
+ * A budget (see runFor()) is counted from the first safepoint after the request, and is exact: the device shortens
+ * the distance to its next safepoint when less than POLL_INTERVAL instructions remain. Cancelling is final.
+ * A device waiting for input in a Keyboard read isn't at a safepoint, so it only notices a request after it got its
+ * input.
+ */
+package com.putoet.device;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+
+public class DeviceControl {
+    public static final int POLL_INTERVAL = 1024;
+
+    /**
+     * State requested for the device
+     */
+    public enum State {
+        /** run freely, or for the remaining budget of a runFor() */
+        RUNNING,
+        /** pause at the next safepoint */
+        PAUSED,
+        /** exit at the next safepoint */
+        CANCELLED
+    }
+
+    private static final int RUN = 0;
+    private static final int BUDGETED = 1;
+    private static final int PAUSE = 2;
+    private static final int CANCEL = 3;
+
+    private static final VarHandle WORD;
+
+    static {
+        try {
+            WORD = MethodHandles.lookup().findVarHandle(DeviceControl.class, "word", int.class);
+        } catch (ReflectiveOperationException exc) {
+            throw new ExceptionInInitializerError(exc);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private int word = RUN;
+
+    private long remaining;
+    private boolean counting;
+    private boolean paused;
+
+    /**
+     * Ask the device to pause at its next safepoint. A cancelled device stays cancelled.
+     */
+    public synchronized void pause() {
+        if (word() != CANCEL)
+            word(PAUSE);
+    }
+
+    /**
+     * Let a paused device continue, without a budget. A cancelled device stays cancelled.
+     */
+    public synchronized void resume() {
+        if (word() != CANCEL) {
+            paused = false;
+            word(RUN);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Let the device run for a number of instructions (counted from its next safepoint), after which it pauses. A
+     * cancelled device stays cancelled.
+     *
+     * @param instructions number of instructions, 0 pauses the device
+     * @throws IllegalArgumentException for a negative number of instructions
+     */
+    public synchronized void runFor(long instructions) {
+        if (instructions < 0)
+            throw new IllegalArgumentException("Invalid number of instructions: " + instructions);
+
+        if (word() != CANCEL) {
+            remaining = instructions;
+            counting = false;
+            if (instructions > 0) {
+                paused = false;
+                word(BUDGETED);
+            } else {
+                word(PAUSE);
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Ask the device to exit at its next safepoint, also when it is paused.
+     */
+    public synchronized void cancel() {
+        word(CANCEL);
+        notifyAll();
+    }
+
+    /**
+     * State requested for the device, which it may not have reached yet (see awaitPaused)
+     *
+     * @return State
+     */
+    public State state() {
+        return switch ((int) WORD.getOpaque(this)) {
+            case RUN, BUDGETED -> State.RUNNING;
+            case PAUSE -> State.PAUSED;
+            default -> State.CANCELLED;
+        };
+    }
+
+    /**
+     * Checks if the device stopped at a safepoint because it was paused (or its budget ran out), and wasn't resumed
+     * (or given a new budget) since.
+     *
+     * @return boolean
+     */
+    public synchronized boolean paused() {
+        return paused;
+    }
+
+    /**
+     * Wait until the device stopped at a safepoint because it was paused, or its budget ran out.
+     *
+     * @param timeout maximum time to wait
+     * @param unit TimeUnit of the timeout
+     * @return true when the device paused, false on a timeout
+     * @throws InterruptedException when interrupted while waiting
+     */
+    public synchronized boolean awaitPaused(long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!paused) {
+            final long left = deadline - System.nanoTime();
+            if (left <= 0)
+                return false;
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+        return true;
+    }
+
+    /**
+     * Fast path of a safepoint, called by the device thread
+     *
+     * @return true when the device can run POLL_INTERVAL instructions without taking the slow path
+     */
+    boolean running() {
+        return (int) WORD.getOpaque(this) == RUN;
+    }
+
+    /**
+     * Slow path of a safepoint, called by the device thread, which accounts for the budget of a runFor(), and
+     * pauses when the budget ran out or a pause was requested.
+     *
+     * @param executed number of instructions executed since the previous safepoint
+     * @param block true to wait while paused, false to return 0 instead
+     * @return number of instructions to execute before the next safepoint, 0 when paused, -1 when cancelled
+     */
+    synchronized long safepoint(long executed, boolean block) {
+        while (true) {
+            switch (word()) {
+                case RUN -> {
+                    paused = false;
+                    return POLL_INTERVAL;
+                }
+                case BUDGETED -> {
+                    // instructions executed before the device saw the request don't count
+                    if (counting)
+                        remaining -= executed;
+                    counting = true;
+                    executed = 0;
+                    if (remaining > 0) {
+                        paused = false;
+                        return Math.min(POLL_INTERVAL, remaining);
+                    }
+                    word(PAUSE);
+                }
+                case PAUSE -> {
+                    if (!paused) {
+                        paused = true;
+                        notifyAll();
+                    }
+                    if (!block)
+                        return 0;
+                    try {
+                        wait();
+                    } catch (InterruptedException exc) {
+                        Thread.currentThread().interrupt();
+                        word(CANCEL);
+                    }
+                }
+                default -> {
+                    paused = false;
+                    return -1;
+                }
+            }
+        }
+    }
+
+    private int word() {
+        return (int) WORD.getOpaque(this);
+    }
+
+    private void word(int value) {
+        WORD.setRelease(this, value);
+    }
+}
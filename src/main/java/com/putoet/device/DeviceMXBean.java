@@ -0,0 +1,17 @@
+package com.putoet.device;
+
+/**
+ * Management interface of a Device, to monitor a running device through JMX (e.g. using JConsole or VisualVM)
+ * without the need to connect a debugger.
+ */
+public interface DeviceMXBean {
+    long getInstructionsExecuted();
+    double getInstructionsPerSecond();
+    int getStackDepth();
+    int getPeakStackDepth();
+    long getInputWaitMillis();
+    long getCharactersWritten();
+    long getDecodeCacheHits();
+    long getDecodeCacheMisses();
+    long getDebuggerHalts();
+}
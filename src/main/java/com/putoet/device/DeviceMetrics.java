@@ -0,0 +1,160 @@
+/**
+ * DeviceMetrics class
+ * Implements the DeviceMXBean and holds the counters of a single device. All counters are plain primitive fields
+ * which are only written by the thread running the device, so the device pays no synchronization cost for keeping
+ * them up to date. Readers (the JMX agent, a debugger) read the fields racily, which means a value can be a few
+ * instructions behind, but that is fine for monitoring purposes.
+ * The number of instructions per second is calculated on request, and smoothed using an exponentially weighted moving
+ * average, so the value doesn't jump around when the JMX client polls at an irregular interval.
+ */
+package com.putoet.device;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+
+public class DeviceMetrics implements DeviceMXBean {
+    public static final String DOMAIN = "com.putoet.device";
+    private static final double SMOOTHING_SECONDS = 5.0;
+
+    private long instructionsExecuted;
+    private int stackDepth;
+    private int peakStackDepth;
+    private long inputWaitNanos;
+    private long charactersWritten;
+    private long decodeCacheHits;
+    private long decodeCacheMisses;
+    private long debuggerHalts;
+
+    private long lastSampleTime = System.nanoTime();
+    private long lastSampleCount;
+    private double instructionsPerSecond;
+
+    private ObjectName objectName;
+
+    /**
+     * Register the metrics with the platform MBean server as "com.putoet.device:type=Device,name={name}".
+     *
+     * @param name String name of the device
+     * @return ObjectName the metrics are registered with
+     */
+    public ObjectName register(String name) {
+        try {
+            final ObjectName objectName = new ObjectName(DOMAIN + ":type=Device,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+            return objectName;
+        } catch (JMException exc) {
+            throw new IllegalStateException("Failed to register device metrics for " + name, exc);
+        }
+    }
+
+    /**
+     * Remove the metrics from the platform MBean server, if they were registered before.
+     */
+    public void unregister() {
+        if (objectName == null)
+            return;
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            objectName = null;
+        } catch (JMException exc) {
+            throw new IllegalStateException("Failed to unregister device metrics " + objectName, exc);
+        }
+    }
+
+    public void instructionExecuted() {
+        instructionsExecuted++;
+    }
+
+    public void stackDepth(int depth) {
+        stackDepth = depth;
+        if (depth > peakStackDepth)
+            peakStackDepth = depth;
+    }
+
+    public void inputWait(long nanos) {
+        inputWaitNanos += nanos;
+    }
+
+    public void characterWritten() {
+        charactersWritten++;
+    }
+
+    public void charactersWritten(int count) {
+        charactersWritten += count;
+    }
+
+    public void decodeCacheHit() {
+        decodeCacheHits++;
+    }
+
+    public void decodeCacheMiss() {
+        decodeCacheMisses++;
+    }
+
+    public void debuggerHalted() {
+        debuggerHalts++;
+    }
+
+    @Override
+    public long getInstructionsExecuted() {
+        return instructionsExecuted;
+    }
+
+    /**
+     * Instructions executed per second since the previous call, smoothed with an exponentially weighted moving
+     * average over roughly SMOOTHING_SECONDS. Only the reader side is synchronized, the device is never blocked.
+     *
+     * @return double
+     */
+    @Override
+    public synchronized double getInstructionsPerSecond() {
+        final long now = System.nanoTime();
+        final long count = instructionsExecuted;
+        final double seconds = (now - lastSampleTime) / 1_000_000_000.0;
+        if (seconds > 0) {
+            final double rate = (count - lastSampleCount) / seconds;
+            final double alpha = 1.0 - Math.exp(-seconds / SMOOTHING_SECONDS);
+            instructionsPerSecond += alpha * (rate - instructionsPerSecond);
+            lastSampleTime = now;
+            lastSampleCount = count;
+        }
+        return instructionsPerSecond;
+    }
+
+    @Override
+    public int getStackDepth() {
+        return stackDepth;
+    }
+
+    @Override
+    public int getPeakStackDepth() {
+        return peakStackDepth;
+    }
+
+    @Override
+    public long getInputWaitMillis() {
+        return inputWaitNanos / 1_000_000;
+    }
+
+    @Override
+    public long getCharactersWritten() {
+        return charactersWritten;
+    }
+
+    @Override
+    public long getDecodeCacheHits() {
+        return decodeCacheHits;
+    }
+
+    @Override
+    public long getDecodeCacheMisses() {
+        return decodeCacheMisses;
+    }
+
+    @Override
+    public long getDebuggerHalts() {
+        return debuggerHalts;
+    }
+}
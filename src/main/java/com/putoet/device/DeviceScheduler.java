@@ -0,0 +1,262 @@
+/**
+ * DeviceScheduler class
+ * Runs many devices on a fixed pool of worker threads, using Device.run(budget). A worker takes a device from the
+ * run queue, runs it for a slice of at most budget instructions, and then:
+ * - queues it again at the tail of the run queue when the budget was used up, so all runnable devices get a turn;
+ * - parks it when it waits for input, was paused (see DeviceControl), or when its SliceListener asks for it, until
+ *   wakeup() is called;
+ * - completes it when it halted or exited, or completes it exceptionally when the guest (or the SliceListener) threw
+ *   an exception, like an invalid instruction, which never takes the worker down.
+ * Devices woken up (typically because input arrived) are queued on a separate interactive queue, which the workers
+ * serve first. So, a runaway guest (like the teleporter check) only shares the workers with other busy devices, and
+ * interactive devices respond within a slice, no matter how many busy devices are queued.
+ * Wakeups never get lost: a device woken up while it runs is queued again as soon as its slice ends.
+ * The scheduler measures the time of each slice, its scheduling overhead, and the queue latency of the devices in
+ * its SchedulerMetrics.
+ */
+package com.putoet.device;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DeviceScheduler implements AutoCloseable {
+    public static final long DEFAULT_BUDGET = 10_000;
+
+    private static final int PARKED = 0;
+    private static final int QUEUED = 1;
+    private static final int RUNNING = 2;
+    private static final int WOKEN = 3;
+    private static final int DONE = 4;
+
+    /**
+     * Callback, called by the worker thread after every slice of a device.
+     */
+    public interface SliceListener {
+        /**
+         * @param reason StopReason of the slice
+         * @return false to park the device until the next wakeup, even if it could continue
+         */
+        boolean afterSlice(StopReason reason);
+    }
+
+    /**
+     * A device scheduled on the scheduler
+     */
+    public final class Task {
+        private final Device device;
+        private final SliceListener listener;
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+        private final CompletableFuture<StopReason> done = new CompletableFuture<>();
+        private long queuedAt = System.nanoTime();
+
+        private Task(Device device, SliceListener listener) {
+            this.device = device;
+            this.listener = listener;
+        }
+
+        /**
+         * Device of the task
+         *
+         * @return Device
+         */
+        public Device device() {
+            return device;
+        }
+
+        /**
+         * Completed with HALTED or EXITED, when the device finished, or exceptionally with the exception thrown by
+         * the device, or its SliceListener
+         *
+         * @return CompletableFuture
+         */
+        public CompletableFuture<StopReason> done() {
+            return done;
+        }
+
+        /**
+         * Make a parked device runnable again, e.g. after offering input to its keyboard. Can be called from any
+         * thread, at any time.
+         */
+        public void wakeup() {
+            while (true) {
+                final int current = state.get();
+                if (current == PARKED && state.compareAndSet(PARKED, QUEUED)) {
+                    metrics.wokenUp();
+                    enqueue(this, interactive);
+                    return;
+                }
+                if (current == RUNNING && state.compareAndSet(RUNNING, WOKEN))
+                    return;
+                if (current == QUEUED || current == WOKEN || current == DONE)
+                    return;
+            }
+        }
+
+        /**
+         * Pause the device, it parks at its next safepoint (within DeviceControl.POLL_INTERVAL instructions).
+         */
+        public void pause() {
+            device.control().pause();
+        }
+
+        /**
+         * Resume a paused device, and make it runnable again.
+         */
+        public void resume() {
+            device.control().resume();
+            wakeup();
+        }
+
+        /**
+         * Ask the device to exit, it completes at its next safepoint.
+         */
+        public void cancel() {
+            device.exit();
+            wakeup();
+        }
+    }
+
+    private final long budget;
+    private final SchedulerMetrics metrics;
+    private final Queue<Task> interactive = new ConcurrentLinkedQueue<>();
+    private final Queue<Task> batch = new ConcurrentLinkedQueue<>();
+    private final Semaphore queued = new Semaphore(0);
+    private final List<Thread> workers = new ArrayList<>();
+
+    private volatile boolean running = true;
+
+    /**
+     * Constructor, starts the worker threads
+     *
+     * @param workers number of worker threads
+     * @param budget number of instructions per slice
+     */
+    public DeviceScheduler(int workers, long budget) {
+        if (workers < 1 || budget < 1)
+            throw new IllegalArgumentException("Invalid number of workers or budget");
+
+        this.budget = budget;
+        this.metrics = new SchedulerMetrics(workers);
+        for (int i = 0; i < workers; i++) {
+            final Thread worker = new Thread(this::work, "device-scheduler-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            this.workers.add(worker);
+        }
+    }
+
+    /**
+     * Metrics of the scheduler
+     *
+     * @return SchedulerMetrics
+     */
+    public SchedulerMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Schedule a device, which is queued to run immediately.
+     *
+     * @param device Device
+     * @return Task to wake up and cancel the device
+     */
+    public Task submit(Device device) {
+        return submit(device, reason -> true);
+    }
+
+    /**
+     * Schedule a device, which is queued to run immediately, and call the listener after every slice.
+     *
+     * @param device Device
+     * @param listener SliceListener
+     * @return Task to wake up and cancel the device
+     */
+    public Task submit(Device device, SliceListener listener) {
+        final Task task = new Task(device, listener);
+        metrics.deviceScheduled();
+        enqueue(task, interactive);
+        return task;
+    }
+
+    /**
+     * Stop the workers. Devices still scheduled are not completed.
+     */
+    @Override
+    public void close() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+    }
+
+    private void enqueue(Task task, Queue<Task> queue) {
+        task.queuedAt = System.nanoTime();
+        queue.offer(task);
+        queued.release();
+    }
+
+    private void work() {
+        while (running) {
+            try {
+                queued.acquire();
+            } catch (InterruptedException exc) {
+                return;
+            }
+
+            final long start = System.nanoTime();
+            Task task = interactive.poll();
+            if (task == null)
+                task = batch.poll();
+
+            final long queueLatency = start - task.queuedAt;
+            task.state.set(RUNNING);
+            final long runStart = System.nanoTime();
+            final StopReason reason;
+            final long runEnd;
+            final boolean proceed;
+            final long listenerEnd;
+            try {
+                reason = task.device.run(budget);
+                runEnd = System.nanoTime();
+                proceed = task.listener.afterSlice(reason);
+                listenerEnd = System.nanoTime();
+            } catch (RuntimeException | Error exc) {
+                // a guest running off the end of memory fails with an OutOfMemoryError
+                task.state.set(DONE);
+                metrics.deviceFailed();
+                task.done.completeExceptionally(exc);
+                continue;
+            }
+            reschedule(task, reason, proceed);
+
+            metrics.slice(runEnd - runStart, (runStart - start) + (System.nanoTime() - listenerEnd),
+                    queueLatency);
+        }
+    }
+
+    private void reschedule(Task task, StopReason reason, boolean proceed) {
+        if (reason == StopReason.HALTED || reason == StopReason.EXITED) {
+            task.state.set(DONE);
+            metrics.deviceFinished();
+            task.done.complete(reason);
+            return;
+        }
+
+        if (reason == StopReason.INPUT || reason == StopReason.PAUSED || !proceed) {
+            if (task.state.compareAndSet(RUNNING, PARKED)) {
+                metrics.parked();
+                return;
+            }
+            // woken up while running
+            task.state.set(QUEUED);
+            enqueue(task, interactive);
+            return;
+        }
+
+        task.state.set(QUEUED);
+        enqueue(task, batch);
+    }
+}
@@ -0,0 +1,282 @@
+/**
+ * DifferentialChecker class
+ * Runs a program on two devices with different execution engines, a trusted reference engine and a candidate, with
+ * the same input, and reports the first instruction after which their states differ. The state of a device is its
+ * state hash (memory, registers, stack, instruction pointer), the output it wrote, and the error it failed with (if
+ * any), so two engines agree when they fail the same way.
+ * In LOCK_STEP mode, the states are compared after every instruction. In PERIODIC mode, the states are compared
+ * every period instructions, and when they differ, the program is run again in lock-step from the last period the
+ * states still agreed on, to find the first instruction that made a difference.
+ * A Divergence holds the number of instructions executed, the address and instruction that made the difference, and
+ * the states of both devices.
+ * For example, to check the SWITCH engine against the INTERPRETER (the reference, as it has no optimizations, like
+ * the DecodeCache of the CACHED engine), using challenge.bin and solution.txt, and a number of random programs (see
+ * RandomProgram):
+ *      java com.putoet.device.DifferentialChecker SWITCH 1000
+ */
+package com.putoet.device;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class DifferentialChecker {
+    public enum Mode { LOCK_STEP, PERIODIC }
+
+    private static final int MAX_MEMORY_DIFFERENCES = 8;
+
+    private final ExecutionEngine.Factory reference;
+    private final ExecutionEngine.Factory candidate;
+    private final Mode mode;
+    private final long period;
+
+    /**
+     * First difference between the reference and the candidate
+     *
+     * @param instructions number of instructions executed by both devices, including the one that made a difference
+     * @param ip address of the instruction that made a difference
+     * @param instruction the instruction that made a difference (as fetched by the reference engine)
+     * @param reference state of the device with the reference engine
+     * @param candidate state of the device with the candidate engine
+     */
+    public record Divergence(long instructions, int ip, String instruction, String reference, String candidate) {
+        @Override
+        public String toString() {
+            return "Divergence after " + instructions + " instructions, at " + ip + ": " + instruction + "\n" +
+                    "  reference: " + reference + "\n" +
+                    "  candidate: " + candidate;
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param reference ExecutionEngine.Factory of the trusted engine
+     * @param candidate ExecutionEngine.Factory of the engine to check
+     * @param mode LOCK_STEP or PERIODIC
+     * @param period number of instructions between comparisons in PERIODIC mode
+     */
+    public DifferentialChecker(ExecutionEngine.Factory reference, ExecutionEngine.Factory candidate, Mode mode,
+                               long period) {
+        this.reference = reference;
+        this.candidate = candidate;
+        this.mode = mode;
+        this.period = mode == Mode.LOCK_STEP ? 1 : period;
+    }
+
+    /**
+     * Run a program on both engines, until both halted, failed, ran out of input, or executed the maximum number of
+     * instructions.
+     *
+     * @param program little-endian program bytes
+     * @param input lines of input (without newline)
+     * @param maxInstructions maximum number of instructions to execute
+     * @return the first Divergence, or null when the engines agree
+     */
+    public Divergence check(byte[] program, List<String> input, long maxInstructions) {
+        final ProgramImage image = ProgramImage.of(program);
+        final Pair pair = new Pair(image, input);
+        long agreed = 0;
+        while (pair.instructions() < maxInstructions) {
+            pair.advance(Math.min(period, maxInstructions - pair.instructions()));
+            if (!pair.agree())
+                return period == 1 ? pair.divergence() : locate(image, input, agreed);
+            if (pair.stopped())
+                break;
+            agreed = pair.instructions();
+        }
+        return null;
+    }
+
+    private Divergence locate(ProgramImage image, List<String> input, long agreed) {
+        final Pair pair = new Pair(image, input);
+        while (pair.instructions() < agreed && !pair.stopped())
+            pair.advance(agreed - pair.instructions());
+        while (!pair.stopped()) {
+            pair.advance(1);
+            if (!pair.agree())
+                return pair.divergence();
+        }
+        return pair.divergence();
+    }
+
+    /**
+     * The devices with the reference and candidate engine
+     */
+    private final class Pair {
+        private final Runner reference;
+        private final Runner candidate;
+        private int ip;
+        private String instruction;
+
+        private Pair(ProgramImage image, List<String> input) {
+            this.reference = new Runner(image, input, DifferentialChecker.this.reference);
+            this.candidate = new Runner(image, input, DifferentialChecker.this.candidate);
+        }
+
+        private long instructions() {
+            return reference.instructions();
+        }
+
+        private void advance(long count) {
+            ip = reference.device.ip().get();
+            final Instruction current = reference.device.currentInstruction();
+            instruction = current != null ? current.dump(true) : "(not fetched)";
+            reference.advance(count);
+            candidate.advance(count);
+        }
+
+        private boolean agree() {
+            return reference.state().equals(candidate.state());
+        }
+
+        private boolean stopped() {
+            return reference.stopped && candidate.stopped;
+        }
+
+        private Divergence divergence() {
+            return new Divergence(instructions(), ip, instruction, reference.describe(candidate),
+                    candidate.describe(reference));
+        }
+    }
+
+    /**
+     * A device with an engine, its input and output
+     */
+    private static final class Runner {
+        private final Device device;
+        private final List<String> input;
+        private final Transcript output = new Transcript();
+        private int nextLine;
+        private boolean stopped;
+        private String error = "";
+
+        private Runner(ProgramImage image, List<String> input, ExecutionEngine.Factory engine) {
+            this.device = new Device(new Registers(), new Memory(image), new Keyboard(OutputStream.nullOutputStream()),
+                    new Crt(output));
+            this.device.engine(engine);
+            this.input = input;
+        }
+
+        private long instructions() {
+            return device.metrics().getInstructionsExecuted();
+        }
+
+        private void advance(long count) {
+            final long target = instructions() + count;
+            try {
+                while (!stopped && instructions() < target) {
+                    switch (device.run(target - instructions())) {
+                        case HALTED, EXITED -> stopped = true;
+                        case INPUT -> {
+                            if (nextLine < input.size())
+                                device.in().accept(input.get(nextLine++) + "\n");
+                            else
+                                stopped = true;
+                        }
+                        case BUDGET -> {}
+                    }
+                }
+            } catch (RuntimeException | Error exc) {
+                stopped = true;
+                error = exc.getClass().getSimpleName();
+            }
+        }
+
+        private String state() {
+            return Long.toHexString(device.stateHash()) + "/" + output.size() + "/" + Long.toHexString(output.hash) +
+                    "/" + stopped + "/" + error;
+        }
+
+        private String describe(Runner other) {
+            final StringBuilder sb = new StringBuilder();
+            sb.append("ip=").append(device.ip().get())
+                    .append(" ").append(device.registers())
+                    .append(" stack=").append(device.stack());
+
+            final List<String> differences = new ArrayList<>();
+            final Memory memory = device.memory();
+            for (int address = 0; address < memory.size() && differences.size() < MAX_MEMORY_DIFFERENCES; address++)
+                if (memory.peek(address) != other.device.memory().peek(address))
+                    differences.add("[" + address + "]=" + memory.peek(address));
+            if (!differences.isEmpty())
+                sb.append(" memory ").append(String.join(" ", differences));
+
+            sb.append(" output=").append(output.size()).append(" bytes");
+            if (output.size() > 0)
+                sb.append(" ending with '").append(output.tail()).append("'");
+            if (!error.isEmpty())
+                sb.append(" failed with ").append(error);
+            else if (stopped)
+                sb.append(" stopped");
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Output of a device, with a running hash, so outputs can be compared in O(1)
+     */
+    private static final class Transcript extends OutputStream {
+        private static final int TAIL = 32;
+
+        private final byte[] tail = new byte[TAIL];
+        private long size;
+        private long hash;
+
+        @Override
+        public void write(int b) {
+            tail[(int) (size++ % TAIL)] = (byte) b;
+            hash = hash * 31 + (b & 0xff);
+        }
+
+        private long size() {
+            return size;
+        }
+
+        private String tail() {
+            final int length = (int) Math.min(size, TAIL);
+            final byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++)
+                bytes[i] = tail[(int) ((size - length + i) % TAIL)];
+            return new String(bytes, StandardCharsets.ISO_8859_1).replace("\n", "\\n");
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        final ExecutionEngine.Kind engine = ExecutionEngine.Kind.valueOf(args.length > 0 ? args[0] : "SWITCH");
+        final int programs = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        final byte[] challenge;
+        final List<String> solution;
+        try (InputStream program = DifferentialChecker.class.getResourceAsStream("/challenge.bin");
+             InputStream script = DifferentialChecker.class.getResourceAsStream("/solution.txt")) {
+            if (program == null)
+                throw new IllegalArgumentException("Invalid resource name '/challenge.bin'");
+            if (script == null)
+                throw new IllegalArgumentException("Invalid resource name '/solution.txt'");
+            challenge = program.readAllBytes();
+            solution = new String(script.readAllBytes(), StandardCharsets.UTF_8).lines()
+                    .filter(line -> !line.startsWith("/"))
+                    .toList();
+        }
+
+        final DifferentialChecker checker = new DifferentialChecker(ExecutionEngine.Kind.INTERPRETER, engine,
+                Mode.PERIODIC, 10_000);
+        final Divergence divergence = checker.check(challenge, solution, 100_000_000L);
+        System.out.println("challenge.bin: " + (divergence == null ? "ok" : divergence));
+
+        int failed = 0;
+        final List<String> input = List.of("abc", "take tablet", "xyz");
+        for (int seed = 0; seed < programs; seed++) {
+            final Divergence random = checker.check(RandomProgram.generate(seed, 200), input, 100_000);
+            if (random != null) {
+                failed++;
+                System.out.println("random program " + seed + ": " + random);
+            }
+        }
+        System.out.println(programs + " random programs, " + failed + " diverged");
+    }
+}
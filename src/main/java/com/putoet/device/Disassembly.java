@@ -0,0 +1,400 @@
+/**
+ * Disassembly class
+ * Static analysis of the program in memory, without fetching (creating) instructions and without affecting the
+ * memory's last-address-used value. Every address is decoded as if an instruction starts there, so any address can
+ * be dumped instantly. From the entry points (address 0 and any address added using addEntry()) the control flow
+ * is followed to mark which addresses hold code, and to build the basic blocks, the control flow graph and the call
+ * graph. While following the control flow, registers set to a constant (SET <a> 1287) are tracked, so a jump or
+ * call through such a register (CALL <a>) can be followed as well. Other jumps and calls through a register can't
+ * be followed statically, so routines that are only called that way are not marked as code, unless they are added
+ * as entry point.
+ * The analysis is cached, and refreshed on request for the memory pages whose version changed since the previous
+ * refresh: only those pages are decoded again, and the control flow is only followed again if the control flow
+ * reached a changed page before.
+ * A disassembly is meant to be used by tools (debugger, profiler) on other threads than the device, so all public
+ * methods are synchronized. The device itself never uses it, so it is never blocked.
+ */
+package com.putoet.device;
+
+import java.io.IOException;
+import java.util.*;
+
+public class Disassembly {
+    private static final int INVALID = -1;
+    private static final int DATA_PER_LINE = 8;
+
+    /**
+     * A basic block, a sequence of instructions that is only entered at the start, and only left at the end
+     *
+     * @param start address of the first instruction
+     * @param end address of the last instruction
+     * @param successors addresses of the blocks control flows to after the last instruction (if known statically)
+     * @param calls addresses of routines called from within the block (if known statically)
+     */
+    public record BasicBlock(int start, int end, List<Integer> successors, List<Integer> calls) {}
+
+    private final Memory memory;
+    private final int[] opcodes;
+    private final int[] versions = new int[Memory.PAGES];
+    private final Set<Integer> entries = new TreeSet<>(Set.of(0));
+
+    private BitSet code = new BitSet();
+    private BitSet instructions = new BitSet();
+    private BitSet reached = new BitSet();
+    private NavigableMap<Integer, BasicBlock> blocks = new TreeMap<>();
+    private Map<Integer, Set<Integer>> callGraph = new TreeMap<>();
+    private Map<Integer, Integer> resolved = new HashMap<>();
+    private boolean analyzed = false;
+
+    /**
+     * Constructor, the analysis is done on the first query.
+     *
+     * @param memory Memory holding the program
+     */
+    public Disassembly(Memory memory) {
+        this.memory = memory;
+        this.opcodes = new int[memory.size()];
+        Arrays.fill(versions, -1);
+    }
+
+    /**
+     * Add an entry point (e.g. a routine only called through a register) to follow the control flow from.
+     *
+     * @param address int
+     */
+    public synchronized void addEntry(int address) {
+        if (entries.add(address))
+            analyzed = false;
+    }
+
+    /**
+     * Decode the pages changed since the previous refresh, and follow the control flow again if needed.
+     */
+    public synchronized void refresh() {
+        boolean codeChanged = !analyzed;
+        for (int page = 0; page < Memory.PAGES; page++) {
+            final int version = memory.pageVersion(page);
+            if (versions[page] == version)
+                continue;
+
+            versions[page] = version;
+            final int from = page * Memory.PAGE_SIZE;
+            final int to = from + Memory.PAGE_SIZE;
+            for (int address = from; address < to; address++)
+                opcodes[address] = decode(address);
+
+            // instructions starting up to 3 words before the page have operands in the page
+            if (!codeChanged)
+                codeChanged = reached.previousSetBit(to - 1) >= Math.max(0, from - 3);
+        }
+
+        if (codeChanged)
+            analyze();
+    }
+
+    /**
+     * Checks if the address holds code, which means it is part of an instruction reachable from an entry point.
+     *
+     * @param address int
+     * @return true if the address holds code
+     */
+    public synchronized boolean isCode(int address) {
+        refresh();
+        return code.get(address);
+    }
+
+    /**
+     * The Opcode of the instruction starting at the address, or null if the word isn't a valid opcode.
+     *
+     * @param address int
+     * @return Opcode or null
+     */
+    public synchronized Opcode opcode(int address) {
+        refresh();
+        return opcodes[address] == INVALID ? null : Opcode.of(opcodes[address]);
+    }
+
+    /**
+     * The basic block containing the address, or null if the address doesn't hold code
+     *
+     * @param address int
+     * @return BasicBlock or null
+     */
+    public synchronized BasicBlock block(int address) {
+        refresh();
+        final var block = blocks.floorEntry(address);
+        return block != null && block.getValue().end() >= address && code.get(address) ? block.getValue() : null;
+    }
+
+    /**
+     * All basic blocks, ordered by address
+     *
+     * @return Collection of BasicBlock
+     */
+    public synchronized Collection<BasicBlock> blocks() {
+        refresh();
+        return List.copyOf(blocks.values());
+    }
+
+    /**
+     * The call graph, which maps every routine (entry points and called addresses) on the routines it calls
+     *
+     * @return Map of routine address to called routine addresses
+     */
+    public synchronized Map<Integer, Set<Integer>> callGraph() {
+        refresh();
+        final Map<Integer, Set<Integer>> copy = new TreeMap<>();
+        callGraph.forEach((routine, callees) -> copy.put(routine, Set.copyOf(callees)));
+        return copy;
+    }
+
+    /**
+     * Format the instruction at the address like "01518: PUSH <b>", or like "06068: data 1234" when the word
+     * isn't a valid opcode, or the instruction doesn't fit in memory.
+     *
+     * @param address int
+     * @param registers if not null, register values are added to register operands (smart dump)
+     * @return String
+     */
+    public synchronized String format(int address, Registers registers) {
+        refresh();
+        return "%05d: %s".formatted(address, instruction(address, registers));
+    }
+
+    /**
+     * Format the instruction at the address like "PUSH <b>", or like "data 1234" when the word isn't a valid
+     * opcode, or the instruction doesn't fit in memory.
+     *
+     * @param address int
+     * @return String
+     */
+    public synchronized String instruction(int address) {
+        refresh();
+        return instruction(address, null);
+    }
+
+    private String instruction(int address, Registers registers) {
+        final int size = size(address);
+        if (size == 0)
+            return "data " + memory.peek(address);
+
+        final int[] operand = new int[size - 1];
+        for (int i = 0; i < operand.length; i++)
+            operand[i] = memory.peek(address + 1 + i);
+        return InstructionBase.format(Opcode.of(opcodes[address]), operand, registers);
+    }
+
+    /**
+     * Create a List<String> with instructions starting at the given address, up to and including the first
+     * instruction with an opcode from the exit criteria, or the first word that isn't a valid instruction.
+     *
+     * @param startAddress starting memory address
+     * @param exitCriteria end instruction (to stop the dump)
+     * @param registers if not null, register values are added to register operands (smart dump)
+     * @return ordered list of strings containing the dump
+     */
+    public synchronized List<String> dump(int startAddress, Set<Opcode> exitCriteria, Registers registers) {
+        refresh();
+        final List<String> dump = new ArrayList<>();
+        int address = startAddress;
+        while (address < memory.size()) {
+            dump.add("%05d: %s".formatted(address, instruction(address, registers)));
+            final int size = size(address);
+            if (size == 0 || exitCriteria.contains(Opcode.of(opcodes[address])))
+                break;
+            address += size;
+        }
+        return dump;
+    }
+
+    /**
+     * Stream a listing of memory, up to and including the last address used, to an Appendable (e.g. a Writer).
+     * Code is listed as instructions, with a header line for every routine and every basic block. Everything
+     * else is listed as data, with DATA_PER_LINE words per line.
+     *
+     * @param out Appendable
+     * @throws IOException when appending to the output fails
+     */
+    public synchronized void list(Appendable out) throws IOException {
+        refresh();
+        final int end = memory.lastAddressUsed();
+        int address = 0;
+        while (address <= end) {
+            if (instructions.get(address)) {
+                if (callGraph.containsKey(address))
+                    out.append("\n; routine ").append("%05d".formatted(address)).append("\n");
+                else if (blocks.containsKey(address))
+                    out.append("; block\n");
+                out.append("%05d: %s".formatted(address, instruction(address, null))).append("\n");
+                address += size(address);
+            } else {
+                out.append("%05d: data".formatted(address));
+                for (int i = 0; i < DATA_PER_LINE && address <= end && !instructions.get(address); i++)
+                    out.append(" ").append(String.valueOf(memory.peek(address++)));
+                out.append("\n");
+            }
+        }
+    }
+
+    /**
+     * Size of the instruction at the address (in words), or 0 if it isn't a valid instruction
+     */
+    private int size(int address) {
+        if (opcodes[address] == INVALID)
+            return 0;
+
+        final int size = 1 + Opcode.of(opcodes[address]).operands();
+        return address + size <= memory.size() ? size : 0;
+    }
+
+    private int decode(int address) {
+        final int word = memory.peek(address);
+        return Opcode.isOpcode(word) ? word : INVALID;
+    }
+
+    /**
+     * The statically known target of the jump or call at the address, or INVALID if the operand is a register
+     * without a known value.
+     */
+    private int target(int address, int operand) {
+        return operand < memory.size() ? operand : resolved.getOrDefault(address, INVALID);
+    }
+
+    /**
+     * Track the registers holding a constant after the instruction at the address. A SET with a literal value
+     * makes the register constant, any other instruction writing a register makes it unknown, and a CALL makes
+     * all registers unknown (as the called routine may change them).
+     */
+    private void track(int address, Opcode opcode, int[] constants) {
+        final int register = memory.peek(address + 1);
+        switch (opcode) {
+            case SET, POP, EQ, GT, ADD, MULT, MOD, AND, OR, NOT, RMEM, IN -> {
+                if (Registers.isRegister(register)) {
+                    final int value = memory.peek(address + 2);
+                    constants[register - Registers.ARCH_MAX_VALUE] =
+                            opcode == Opcode.SET && value < memory.size() ? value : INVALID;
+                }
+            }
+            case CALL -> Arrays.fill(constants, INVALID);
+            default -> {}
+        }
+    }
+
+    /**
+     * Follow the control flow from all entry points and called routines, to mark code, find the block leaders,
+     * and build the basic blocks and the call graph.
+     */
+    private void analyze() {
+        final BitSet code = new BitSet();
+        final BitSet instructions = new BitSet();
+        final BitSet reached = new BitSet();
+        final BitSet leaders = new BitSet();
+        final Map<Integer, Set<Integer>> callGraph = new TreeMap<>();
+        final Map<Integer, Integer> resolved = new HashMap<>();
+        this.resolved = resolved;
+
+        final Deque<Integer> routines = new ArrayDeque<>(entries);
+        while (!routines.isEmpty()) {
+            final int routine = routines.pop();
+            if (callGraph.containsKey(routine) || size(routine) == 0)
+                continue;
+
+            final Set<Integer> callees = new TreeSet<>();
+            callGraph.put(routine, callees);
+            leaders.set(routine);
+
+            final Deque<Integer> work = new ArrayDeque<>(List.of(routine));
+            final BitSet visited = new BitSet();
+            while (!work.isEmpty()) {
+                int address = work.pop();
+                final int[] constants = new int[Registers.REGISTERS];
+                Arrays.fill(constants, INVALID);
+                while (!visited.get(address)) {
+                    visited.set(address);
+                    final int size = size(address);
+                    if (size == 0) {
+                        reached.set(address);
+                        break;
+                    }
+
+                    instructions.set(address);
+                    code.set(address, address + size);
+                    reached.set(address, address + size);
+                    final Opcode opcode = Opcode.of(opcodes[address]);
+                    final int operand = size > 1 ? memory.peek(address + size - 1) : INVALID;
+                    if (Registers.isRegister(operand) && constants[operand - Registers.ARCH_MAX_VALUE] != INVALID
+                            && (opcode == Opcode.CALL || opcode == Opcode.JMP || opcode == Opcode.JT || opcode == Opcode.JF))
+                        resolved.put(address, constants[operand - Registers.ARCH_MAX_VALUE]);
+
+                    final int target = target(address, operand);
+                    if (opcode == Opcode.CALL && target != INVALID) {
+                        callees.add(target);
+                        routines.push(target);
+                    } else if (opcode == Opcode.JMP || opcode == Opcode.JT || opcode == Opcode.JF) {
+                        if (target != INVALID) {
+                            leaders.set(target);
+                            work.push(target);
+                        }
+                        if (opcode != Opcode.JMP)
+                            leaders.set(address + size);
+                    }
+                    track(address, opcode, constants);
+
+                    if (opcode == Opcode.JMP || opcode == Opcode.RET || opcode == Opcode.HALT)
+                        break;
+                    address += size;
+                }
+            }
+        }
+
+        this.code = code;
+        this.instructions = instructions;
+        this.reached = reached;
+        this.callGraph = callGraph;
+        this.blocks = blocks(instructions, leaders);
+        this.analyzed = true;
+    }
+
+    /**
+     * Split the code into basic blocks, a block ends at a branch (JMP, JT, JF), RET, HALT, or right before the
+     * next leader.
+     */
+    private NavigableMap<Integer, BasicBlock> blocks(BitSet instructions, BitSet leaders) {
+        final NavigableMap<Integer, BasicBlock> blocks = new TreeMap<>();
+        int address = instructions.nextSetBit(0);
+        while (address >= 0) {
+            final int start = address;
+            final List<Integer> calls = new ArrayList<>();
+            final List<Integer> successors = new ArrayList<>();
+            while (true) {
+                final int size = size(address);
+                final Opcode opcode = Opcode.of(opcodes[address]);
+                final int target = size > 1 ? target(address, memory.peek(address + size - 1)) : INVALID;
+                final int next = address + size;
+
+                if (opcode == Opcode.CALL && target != INVALID)
+                    calls.add(target);
+
+                if (opcode == Opcode.JMP || opcode == Opcode.JT || opcode == Opcode.JF) {
+                    if (target != INVALID)
+                        successors.add(target);
+                    if (opcode != Opcode.JMP)
+                        successors.add(next);
+                    break;
+                }
+                if (opcode == Opcode.RET || opcode == Opcode.HALT)
+                    break;
+                if (!instructions.get(next) || leaders.get(next)) {
+                    if (instructions.get(next))
+                        successors.add(next);
+                    break;
+                }
+                address = next;
+            }
+
+            blocks.put(start, new BasicBlock(start, address, List.copyOf(successors), List.copyOf(calls)));
+            address = instructions.nextSetBit(address + size(address));
+        }
+        return blocks;
+    }
+}
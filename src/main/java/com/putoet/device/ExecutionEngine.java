@@ -0,0 +1,66 @@
+/**
+ * ExecutionEngine interface
+ * The way a device executes guest code: an engine fetches the Instruction at the instruction pointer, bound to the
+ * registers, memory, stack and in and out components of the device, which the device executes after passing it
+ * through the debugger. A device creates its engine when it starts (see Device.engine(Factory)), so all engines
+ * share the bookkeeping of the device (metrics, call stack, memoizer, intrinsics).
+ * Engines are interchangeable, so a faster engine can be checked against a trusted one, by running both over the
+ * same program and input (see DifferentialChecker).
+ */
+package com.putoet.device;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Stack;
+
+public interface ExecutionEngine {
+    /**
+     * Fetch the Instruction at the address pointed to by the IP register. The instruction is valid until the next
+     * fetch, an engine may reuse the instruction object.
+     *
+     * @param ip Register (instruction pointer)
+     * @return Instruction
+     */
+    Instruction next(Register ip);
+
+    /**
+     * Creates the engine of a device
+     */
+    @FunctionalInterface
+    interface Factory {
+        ExecutionEngine create(Registers registers, Memory memory, Stack<Integer> stack, InputStream in,
+                               OutputStream out, DeviceMetrics metrics);
+    }
+
+    /**
+     * The engines available to a device
+     */
+    enum Kind implements Factory {
+        /** Interpreter, which creates a new Instruction object for every instruction executed */
+        INTERPRETER {
+            @Override
+            public ExecutionEngine create(Registers registers, Memory memory, Stack<Integer> stack, InputStream in,
+                                          OutputStream out, DeviceMetrics metrics) {
+                return new Interpreter(registers, memory, stack, in, out);
+            }
+        },
+
+        /** Interpreter with a DecodeCache, which reuses instructions as long as their memory doesn't change */
+        CACHED {
+            @Override
+            public ExecutionEngine create(Registers registers, Memory memory, Stack<Integer> stack, InputStream in,
+                                          OutputStream out, DeviceMetrics metrics) {
+                return new DecodeCache(new Interpreter(registers, memory, stack, in, out), memory, metrics);
+            }
+        },
+
+        /** SwitchEngine, which decodes into a single reused instruction, executed by a switch on its opcode */
+        SWITCH {
+            @Override
+            public ExecutionEngine create(Registers registers, Memory memory, Stack<Integer> stack, InputStream in,
+                                          OutputStream out, DeviceMetrics metrics) {
+                return new SwitchEngine(registers, memory, stack, in, out);
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Expect class
+ * Expect-style scripting on a SynacorVm: instead of queueing all input up front (and hoping the program asks for it
+ * in the expected order), a script waits for a pattern in the output before every step, like the "What do you do?"
+ * prompt, and can branch on which of a number of patterns showed up first:
+ *      expect.boot();
+ *      expect.expect("What do you do?");
+ *      expect.send("use tablet");
+ *      if (expect.expect("writing \"", "What do you do?").index() == 0)
+ *          code = expect.expect("\"").output();
+ * The device runs on the caller's thread, only as long as it takes to write a match (see OutputMatcher), so a script
+ * runs as fast as the device, with no delays, and always takes the same path for the same output.
+ * The output following a match, that the device wrote in the same run (like the rest of a bulk write by the print
+ * intrinsic), is kept, and searched first by the next expect, so no output is skipped or searched twice.
+ */
+package com.putoet.device;
+
+public class Expect {
+    public static final long DEFAULT_MAX_INSTRUCTIONS = SynacorVm.MAX_LINE_INSTRUCTIONS;
+
+    private final SynacorVm vm;
+    private String pending = "";
+
+    /**
+     * Result of an expect
+     *
+     * @param index index of the pattern that matched, -1 when none matched
+     * @param pattern the pattern that matched, or null
+     * @param output output since the previous expect, up to and including the match
+     * @param reason StopReason of the device, CONDITION when a pattern matched
+     */
+    public record Match(int index, String pattern, String output, StopReason reason) {
+        /**
+         * Checks if a pattern matched
+         *
+         * @return boolean
+         */
+        public boolean matched() {
+            return index >= 0;
+        }
+    }
+
+    /**
+     * Constructor
+     *
+     * @param vm SynacorVm
+     */
+    public Expect(SynacorVm vm) {
+        this.vm = vm;
+    }
+
+    /**
+     * (Re)start the program (see SynacorVm.boot()), keeping its boot output for the first expect.
+     */
+    public void boot() {
+        pending = vm.boot();
+    }
+
+    /**
+     * Type a line, which the program reads during the next expect
+     *
+     * @param line String without newline
+     * @throws IllegalStateException when the program wasn't booted
+     */
+    public void send(String line) {
+        checkBooted();
+        vm.device().in().accept(line + "\n");
+    }
+
+    /**
+     * Run the program until one of the patterns shows up in its output, within DEFAULT_MAX_INSTRUCTIONS
+     *
+     * @param patterns String... patterns
+     * @return Match
+     */
+    public Match expect(String... patterns) {
+        return expect(new OutputMatcher(patterns), DEFAULT_MAX_INSTRUCTIONS);
+    }
+
+    /**
+     * Run the program until the matcher matches its output. The output kept from the previous expect is searched
+     * first. The program stops without a match when it waits for input that wasn't sent, halts, or executed
+     * maxInstructions, in which case all output written is returned, and is not searched again.
+     *
+     * @param matcher OutputMatcher, which is reset first, so it can be reused
+     * @param maxInstructions maximum number of instructions to execute
+     * @return Match
+     * @throws IllegalStateException when the program wasn't booted
+     */
+    public Match expect(OutputMatcher matcher, long maxInstructions) {
+        checkBooted();
+        matcher.reset();
+        final int fed = matcher.feed(pending);
+        if (matcher.matched() >= 0)
+            return match(matcher, pending, fed, StopReason.CONDITION);
+
+        StopReason reason = vm.lastStopReason();
+        String output = pending;
+        if (reason != StopReason.HALTED && reason != StopReason.EXITED) {
+            final Crt crt = vm.device().out();
+            crt.matcher(matcher);
+            try {
+                reason = vm.runUntil(device -> matcher.matched() >= 0, maxInstructions);
+            } finally {
+                crt.matcher(null);
+            }
+            output = pending + vm.output();
+        }
+
+        if (matcher.matched() >= 0)
+            return match(matcher, output, (int) matcher.position(), reason);
+
+        pending = "";
+        return new Match(-1, null, output, reason);
+    }
+
+    private Match match(OutputMatcher matcher, String output, int end, StopReason reason) {
+        pending = output.substring(end);
+        return new Match(matcher.matched(), matcher.pattern(matcher.matched()), output.substring(0, end), reason);
+    }
+
+    private void checkBooted() {
+        if (vm.device() == null)
+            throw new IllegalStateException("Program not booted");
+    }
+
+    /**
+     * SynacorVm running the program
+     *
+     * @return SynacorVm
+     */
+    public SynacorVm vm() {
+        return vm;
+    }
+}
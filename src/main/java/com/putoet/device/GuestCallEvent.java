@@ -0,0 +1,21 @@
+package com.putoet.device;
+
+import jdk.jfr.*;
+
+/**
+ * JFR event covering a guest CALL to one of the traced subroutine addresses, from the CALL up to its matching RET.
+ */
+@Name("com.putoet.device.GuestCall")
+@Label("Guest Call")
+@Category({"Synacor", "Device"})
+@Description("Guest subroutine call, from CALL to the matching RET")
+public class GuestCallEvent extends Event {
+    @Label("Address")
+    public int address;
+
+    @Label("Call Site")
+    public int callSite;
+
+    @Label("Stack Depth")
+    public int stackDepth;
+}
@@ -0,0 +1,131 @@
+/**
+ * InputSource interface
+ * Source of commands for a Keyboard, which pulls the next command only when the device needs input, so a script is
+ * streamed line by line instead of being loaded (and queued) as a whole. This gives natural backpressure: a source is
+ * never read ahead of the device, and a script of any length runs in constant memory.
+ * A source skips blank lines and comments (lines starting with '#') itself, once per line, so the keyboard passes
+ * every command it gets from a source on to the device (after the debugger).
+ * Sources are available for files, classpath resources (which also works for resources packaged in a jar), and
+ * generators, which produce commands programmatically.
+ */
+package com.putoet.device;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+
+public interface InputSource extends Closeable {
+    /**
+     * Next command, without newline, called on the thread of the device when its keyboard needs input
+     *
+     * @return String, or null when the source is exhausted
+     * @throws UncheckedIOException when reading the source fails
+     */
+    String next();
+
+    /**
+     * Release the resources of the source, called by the keyboard when the source is exhausted or replaced
+     */
+    @Override
+    default void close() {}
+
+    /**
+     * Checks if a line is a command, and not a blank line or a comment (starting with '#')
+     *
+     * @param line String, with or without newline
+     * @return boolean
+     */
+    static boolean isCommand(String line) {
+        return !line.isBlank() && !line.startsWith("#");
+    }
+
+    /**
+     * Source streaming the commands from a reader, which is closed when the source is closed
+     *
+     * @param reader BufferedReader
+     * @return InputSource
+     */
+    static InputSource of(BufferedReader reader) {
+        return new InputSource() {
+            @Override
+            public String next() {
+                try {
+                    String line = reader.readLine();
+                    while (line != null && !isCommand(line))
+                        line = reader.readLine();
+                    return line;
+                } catch (IOException exc) {
+                    throw new UncheckedIOException(exc);
+                }
+            }
+
+            @Override
+            public void close() {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                }
+            }
+        };
+    }
+
+    /**
+     * Source streaming the commands from a file
+     *
+     * @param file Path
+     * @return InputSource
+     * @throws UncheckedIOException when the file can't be opened
+     */
+    static InputSource file(Path file) {
+        try {
+            return of(Files.newBufferedReader(file, StandardCharsets.UTF_8));
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+    }
+
+    /**
+     * Source streaming the commands from a classpath resource
+     *
+     * @param resourceName String, like "/solution.txt"
+     * @return InputSource
+     * @throws IllegalArgumentException when there is no such resource
+     */
+    static InputSource resource(String resourceName) {
+        final InputStream is = InputSource.class.getResourceAsStream(resourceName);
+        if (is == null)
+            throw new IllegalArgumentException("Invalid resource name '" + resourceName + "'");
+
+        return of(new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Source of generated commands, asking the generator for the next line only when the device needs input
+     *
+     * @param generator Supplier of lines, returning null when it is exhausted
+     * @return InputSource
+     */
+    static InputSource generator(Supplier<String> generator) {
+        return () -> {
+            String line = generator.get();
+            while (line != null && !isCommand(line))
+                line = generator.get();
+            return line;
+        };
+    }
+
+    /**
+     * Source of a fixed list of commands
+     *
+     * @param lines List of String
+     * @return InputSource
+     */
+    static InputSource of(List<String> lines) {
+        final Iterator<String> iterator = lines.iterator();
+        return generator(() -> iterator.hasNext() ? iterator.next() : null);
+    }
+}
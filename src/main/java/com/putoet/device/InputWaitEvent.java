@@ -0,0 +1,18 @@
+package com.putoet.device;
+
+import jdk.jfr.*;
+
+/**
+ * JFR event covering the time a device is blocked on an IN instruction, waiting for the keyboard. The device only
+ * records the event when the keyboard has no character ready, so a command typed at a prompt takes a single event,
+ * and waits shorter than the threshold are not recorded.
+ */
+@Name("com.putoet.device.InputWait")
+@Label("Input Wait")
+@Category({"Synacor", "Device"})
+@Description("Device blocked on an IN instruction waiting for input")
+@Threshold("1 ms")
+public class InputWaitEvent extends Event {
+    @Label("Address")
+    public int address;
+}
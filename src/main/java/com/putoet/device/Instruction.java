@@ -3,6 +3,7 @@ package com.putoet.device;
 public interface Instruction extends Runnable {
     Opcode opcode();
     int size();
+    int operand(int index);
     void execute();
 
     String dump(boolean smart);
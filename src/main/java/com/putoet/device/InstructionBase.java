@@ -68,6 +68,17 @@ public class InstructionBase implements Instruction {
         return opcode;
     }
 
+    /**
+     * Operand of the instruction, as fetched from memory (so a register id, not the register value)
+     *
+     * @param index int operand index
+     * @return int
+     */
+    @Override
+    public int operand(int index) {
+        return operand[index];
+    }
+
     /**
      * Execute the feature of the instruction (calculation, comparison, etc). This method should be overridden for
      * instructions that do not manipulate the IP register, and rely on run() to perform the IP upgrade for them.
@@ -106,18 +117,55 @@ public class InstructionBase implements Instruction {
      */
     @Override
     public String dump(boolean smart) {
+        return format(opcode, operand, smart ? registers : null);
+    }
+
+    /**
+     * String representation of the instruction, without register values
+     *
+     * @return String
+     */
+    @Override
+    public String toString() {
+        return dump(false);
+    }
+
+    /**
+     * Creates a string representation of an instruction. Register ID's (32768+ values) are replaced with a letter
+     * using Registers.asLetter(id) for readability. The operand of an OUT instruction is displayed as a character.
+     * This method is shared by fetched instructions and tools that decode memory without fetching instructions.
+     *
+     * @param opcode Opcode
+     * @param operand operand values
+     * @param registers if not null, and if an operand refers to a register, adds the value of the register between
+     *                  parenthesis
+     * @return String
+     */
+    public static String format(Opcode opcode, int[] operand, Registers registers) {
         final StringBuilder sb = new StringBuilder();
         sb.append(opcode);
         for (var op : operand) {
             sb.append(" ");
             if (Registers.isRegister(op)) {
                 sb.append(Registers.asLetter(op));
-                if (smart)
-                    sb.append(" (").append(registers.get(op)).append(")");
+                if (registers != null) {
+                    sb.append(" (");
+                    if (opcode == Opcode.OUT)
+                        sb.append("'").append(character(registers.get(op))).append("'");
+                    else
+                        sb.append(registers.get(op));
+                    sb.append(")");
+                }
             }
+            else if (opcode == Opcode.OUT)
+                sb.append("'").append(character(op)).append("'");
             else
                 sb.append(op);
         }
         return sb.toString();
     }
+
+    private static String character(int c) {
+        return c == '\n' ? "\\n" : String.valueOf((char) c);
+    }
 }
@@ -17,7 +17,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Stack;
 
-public class Interpreter {
+public class Interpreter implements ExecutionEngine {
     public static final int ILLEGAL_NUMBER = 32776;
 
     private final Registers registers;
@@ -50,8 +50,9 @@ public class Interpreter {
      * @param ip Register (instruction pointer)
      * @return Instruction instance
      */
+    @Override
     public Instruction next(Register ip) {
-        var opcode = Opcode.values()[memory.read(ip.get())];
+        var opcode = Opcode.of(memory.read(ip.get()));
 
         return switch (opcode) {
             case HALT -> new InstructionBase(opcode, ip);
@@ -185,7 +186,7 @@ public class Interpreter {
             case RMEM -> new InstructionBase(opcode, 2, ip, memory, registers) {
                 @Override
                 public void execute() {
-                    final var value = memory.read(value(ip, registers, operand[1]));
+                    final var value = memory.rmem(value(ip, registers, operand[1]));
                     registers.set(operand[0], value);
                 }
             };
@@ -195,7 +196,7 @@ public class Interpreter {
                 public void execute() {
                     final var value = value(ip, registers, operand[1]);
                     final var address = value(ip, registers, operand[0]);
-                    memory.write(address, value);
+                    memory.wmem(address, value);
                 }
             };
 
@@ -223,25 +224,6 @@ public class Interpreter {
                     final var value = value(ip, registers, operand[0]);
                     out.write(value);
                 }
-
-                @Override
-                public String dump(boolean smart) {
-                    final StringBuilder sb = new StringBuilder();
-                    sb.append(opcode);
-                    for (var op : operand) {
-                        sb.append(" ");
-                        if (Registers.isRegister(op)) {
-                            sb.append(Registers.asLetter(op));
-                            if (smart)
-                                sb.append(" ('")
-                                        .append(registers.get(op) == '\n' ? "\\n" : (char) registers.get(op))
-                                        .append("')");
-                        }
-                        else
-                            sb.append("'").append(op == '\n' ? "\\n" : (char) op).append("'");
-                    }
-                    return sb.toString();
-                }
             };
 
             case IN -> new InstructionBase(opcode, 1, ip, memory, registers) {
@@ -6,10 +6,16 @@
  * Beware, from InputStream only read() is implemented, so any other InputStream methods should not be used!
  * All words requested by the device are passed on to it, through the implemented read() method. Any commands passed
  * through the Consumer, or keyboard interface are offered to a queue, from which the read() method fetches the
- * commands one by one, sending each command character as a separate int value.
+ * commands one by one, sending each command character as a separate int value. The queue is unbounded, so a command
+ * is never dropped, and producers that may run ahead of the device (like a network session) limit themselves using
+ * pending(). Blank lines and comments (lines starting with '#') are dropped when they are offered.
+ * A script is best not offered to the queue as a whole, but set as the InputSource of the keyboard, from which the
+ * keyboard pulls the next command only when the queue is empty and the device needs input, so the script is streamed
+ * in constant memory. Commands from the source come before the commands offered to the queue.
  * This approach allows for automatic replay of a scenario, by using the keyboard as Consumer when the keyboard input
  * is fetched when run() executes on a separate thread. It also allows for a separate external debugger to offer
  * commands.
+ * A device that must not block its thread on input can check ready() before reading.
  * Each character offered to the In component is echoed to an OutputStream connected to the keyboard on construction.
  * This class uses com.diogonunes.jcolor to colorize the echoed character to the OutputStream.
  */
@@ -22,15 +28,16 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Queue;
 import java.util.Scanner;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.function.Consumer;
 
 import static com.diogonunes.jcolor.Ansi.colorize;
 
 public class Keyboard extends InputStream implements Runnable, Consumer<String>, DebuggerSupport {
     public static final Attribute TXT_COLOR = Attribute.GREEN_TEXT();
-    private final Queue<String> queue = new ArrayBlockingQueue <>(1000);
+    private final Queue<String> queue = new LinkedBlockingQueue<>();
     private final OutputStream out;
+    private volatile InputSource source;
     private String currentCommand = null;
     private DeviceDebugger debugger = DebuggerSupport.DEFAULT_DEBUGGER;
 
@@ -52,7 +59,7 @@ public class Keyboard extends InputStream implements Runnable, Consumer<String>,
      * This method offers the next available character of the current command to the In component. When no more
      * characters are available from the current command, a new current command if polled from the command queue.
      * WHen there is no (new) current command, the method sleeps for 100 milliseconds before checking again.
-     * Commands are strings, and empty strings are ignored.
+     * Commands are strings, and empty strings are ignored (see ready()).
      * Before a character is passed to the In component it is echoed to the configured OutputStream with color
      * (using com.diogonunes.jcolor).
      *
@@ -61,30 +68,11 @@ public class Keyboard extends InputStream implements Runnable, Consumer<String>,
      */
     @Override
     public int read() throws IOException {
-        // while no command available
-        while (currentCommand == null) {
-            offset = 0;
-            currentCommand = queue.poll();
-
-            // ignore empty commands
-            if ("\n".equals(currentCommand))
-                currentCommand = null;
-
-            // If command starts with # it's comment, just ignore it
-            if (currentCommand != null && currentCommand.startsWith("#"))
-                currentCommand = null;
-
-            // Pass the command through the debugger first
-            if (currentCommand != null) {
-                currentCommand = debugger.debug(currentCommand);
-            }
-
-            // if no command available sleep for a while
-            if (currentCommand == null) {
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException ignored) {
-                }
+        // while no command available, sleep for a while
+        while (!ready()) {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
             }
         }
 
@@ -98,6 +86,69 @@ public class Keyboard extends InputStream implements Runnable, Consumer<String>,
         return c;
     }
 
+    /**
+     * Checks if a character is available for the In component, so read() will not block. If the current command
+     * is finished, the next command is taken from the input source, or when there is none (left), polled from the
+     * command queue, and passed through the debugger, so a device can check for input without blocking its thread.
+     *
+     * @return true if read() will return immediately
+     */
+    public boolean ready() {
+        while (currentCommand == null) {
+            offset = 0;
+            currentCommand = nextCommand();
+
+            // no command available
+            if (currentCommand == null)
+                return false;
+
+            // Pass the command through the debugger first
+            currentCommand = debugger.debug(currentCommand);
+        }
+        return true;
+    }
+
+    /**
+     * Next command from the input source, closing the source when it is exhausted, or from the queue
+     *
+     * @return String (including final newline), or null when there is none
+     */
+    private String nextCommand() {
+        final InputSource current = source;
+        if (current != null) {
+            final String command = current.next();
+            if (command != null)
+                return command + "\n";
+
+            current.close();
+            source = null;
+        }
+        return queue.poll();
+    }
+
+    /**
+     * Set the input source the keyboard reads commands from, before the commands in the queue. A previous source is
+     * closed, so the source should be set before the device starts, or while it waits for input.
+     *
+     * @param source InputSource, or null to only read from the queue
+     */
+    public void source(InputSource source) {
+        final InputSource previous = this.source;
+        this.source = source;
+        if (previous != null)
+            previous.close();
+    }
+
+    /**
+     * Number of commands waiting in the queue (not counting the command currently being read, nor the commands of
+     * the input source).
+     *
+     * @return int
+     */
+    public int pending() {
+        return queue.size();
+    }
+
     /**
      * When running (on a separate thread) the run() method read lines from System.in using a Scanner, and offers
      * the entered commands (with an added newline) to the keyboard queue for processing.
@@ -115,13 +166,15 @@ public class Keyboard extends InputStream implements Runnable, Consumer<String>,
     }
 
     /**
-     * Adds the provided command (which must include a newline) to the queue for processing by the device.
+     * Adds the provided command (which must include a newline) to the queue for processing by the device, unless
+     * it's a blank line or a comment.
      *
      * @param command String (including final newline)
      */
     @Override
     public void accept(String command) {
-        queue.offer(command);
+        if (InputSource.isCommand(command))
+            queue.offer(command);
     }
 
     /**
@@ -0,0 +1,190 @@
+/**
+ * MemoTable class
+ * Bounded hash map of the results of a memoized guest routine, keyed by the values of its input registers. All
+ * entries live in a single int array (open addressing with linear probing), so the table doesn't create any
+ * objects per entry. An entry holds the key, the mask of the registers the routine wrote, and the final values of
+ * all registers (only the written ones are used).
+ * The table doubles in capacity while it is more than half full, or when an entry cannot be placed within MAX_PROBES
+ * slots of its home slot, up to its maximum capacity. From then on, such an entry replaces the entry in its home
+ * slot.
+ */
+package com.putoet.device;
+
+public class MemoTable {
+    public static final int MAX_PROBES = 8;
+    public static final int INITIAL_CAPACITY = 1024;
+    private static final int EMPTY = -1;
+
+    private final int keys;
+    private final int stride;
+    private final int maxCapacity;
+    private int capacity;
+    private int size;
+    private int[] table;
+
+    /**
+     * Constructor
+     *
+     * @param keys number of key values (input registers)
+     * @param maxCapacity maximum number of entries, rounded up to a power of 2
+     */
+    public MemoTable(int keys, int maxCapacity) {
+        this.keys = keys;
+        this.stride = keys + 1 + Registers.REGISTERS;
+        this.maxCapacity = Math.max(INITIAL_CAPACITY, Integer.highestOneBit(maxCapacity - 1) << 1);
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        this.capacity = capacity;
+        this.size = 0;
+        this.table = new int[capacity * stride];
+        for (int slot = 0; slot < capacity; slot++)
+            table[slot * stride + keys] = EMPTY;
+    }
+
+    /**
+     * Number of entries in the table
+     *
+     * @return int
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Number of slots allocated for entries
+     *
+     * @return int
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Remove all entries
+     */
+    public void clear() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Find the entry for a key
+     *
+     * @param key int[] with (at least) the number of key values of the table
+     * @return slot of the entry, or -1 when not found
+     */
+    public int find(int[] key) {
+        final int home = hash(key) & (capacity - 1);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            final int slot = (home + probe) & (capacity - 1);
+            if (table[slot * stride + keys] == EMPTY)
+                return -1;
+            if (matches(slot, key))
+                return slot;
+        }
+        return -1;
+    }
+
+    /**
+     * Mask of the registers written by the routine, for the entry in a slot
+     *
+     * @param slot int
+     * @return int bit mask (bit 0 is register a)
+     */
+    public int writeMask(int slot) {
+        return table[slot * stride + keys];
+    }
+
+    /**
+     * Final value of a register, for the entry in a slot
+     *
+     * @param slot int
+     * @param register int register index (0 is register a)
+     * @return int
+     */
+    public int value(int slot, int register) {
+        return table[slot * stride + keys + 1 + register];
+    }
+
+    /**
+     * Add (or replace) the entry for a key
+     *
+     * @param key int[] key values
+     * @param writeMask int mask of the registers written by the routine
+     * @param values int[] final values of all registers
+     */
+    public void put(int[] key, int writeMask, int[] values) {
+        if (size * 2 > capacity && capacity < maxCapacity)
+            grow();
+
+        int target = slot(key);
+        while (target < 0 && capacity < maxCapacity) {
+            grow();
+            target = slot(key);
+        }
+        if (target < 0)
+            target = hash(key) & (capacity - 1);
+        else if (table[target * stride + keys] == EMPTY)
+            size++;
+
+        final int offset = target * stride;
+        System.arraycopy(key, 0, table, offset, keys);
+        table[offset + keys] = writeMask;
+        System.arraycopy(values, 0, table, offset + keys + 1, Registers.REGISTERS);
+    }
+
+    /**
+     * The slot holding the key, or the first empty slot within MAX_PROBES of its home slot, or -1 if none
+     */
+    private int slot(int[] key) {
+        final int home = hash(key) & (capacity - 1);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            final int slot = (home + probe) & (capacity - 1);
+            if (table[slot * stride + keys] == EMPTY || matches(slot, key))
+                return slot;
+        }
+        return -1;
+    }
+
+    private void grow() {
+        final int[] old = table;
+        final int oldCapacity = capacity;
+        allocate(capacity * 2);
+
+        final int[] key = new int[keys];
+        final int[] values = new int[Registers.REGISTERS];
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            final int offset = slot * stride;
+            if (old[offset + keys] == EMPTY)
+                continue;
+
+            System.arraycopy(old, offset, key, 0, keys);
+            System.arraycopy(old, offset + keys + 1, values, 0, Registers.REGISTERS);
+            put(key, old[offset + keys], values);
+        }
+    }
+
+    private boolean matches(int slot, int[] key) {
+        final int offset = slot * stride;
+        for (int i = 0; i < keys; i++)
+            if (table[offset + i] != key[i])
+                return false;
+        return true;
+    }
+
+    private int hash(int[] key) {
+        int hash = 0x9E3779B9;
+        for (int i = 0; i < keys; i++) {
+            hash = (hash ^ key[i]) * 0x85EBCA6B;
+            hash ^= hash >>> 13;
+        }
+        hash *= 0xC2B2AE35;
+        return hash ^ (hash >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        return "MemoTable[keys=" + keys + ", size=" + size + ", capacity=" + capacity + "]";
+    }
+}
@@ -0,0 +1,485 @@
+/**
+ * Memoizer class
+ * Detects guest subroutines that behave as pure functions of their input registers, and caches their results, so
+ * a repeated call with the same input is skipped. A call is pure when, up to its matching RET, it (and any routine
+ * it calls) executes no HALT, IN, OUT, or WMEM, and never pops below its own return address. Its inputs are the
+ * registers read before they were written, and its result is the set of registers it wrote, with their final values.
+ * As the input registers can depend on the path taken, the input mask of a routine is the union of the inputs of all
+ * its calls, and a call reading a register outside the mask widens the mask (which clears the cached results).
+ * A routine can also read memory (code and RMEM), so the memoizer keeps the memory pages read by a routine, and
+ * clears its results when one of those pages changes.
+ * Detection is profile-driven:
+ * - PROFILING: the first PROFILE_CALLS calls are observed, the routine is IMPURE as soon as one of them isn't pure,
+ *   and IGNORED when none of them took more than MIN_COST instructions (not worth caching);
+ * - VALIDATING: calls are executed and observed, and their results are cached, and compared with the cached result
+ *   for the same input, until VALIDATE_HITS cached results were confirmed;
+ * - MEMOIZED: a call with a cached result is skipped, other calls are executed and observed to cache their result.
+ * Results are kept in a bounded MemoTable per routine (of at most MAX_ENTRIES), and the capacity of all tables
+ * together is bounded by a budget (MAX_TOTAL_ENTRIES by default). When a table grows beyond the budget, the tables of
+ * the routines with the fewest hits are evicted: their results are dropped, and the routine is profiled again.
+ * A recursive routine like the teleporter check, which is a
+ * function of its input registers only, collapses from exponential to (roughly) the number of distinct inputs.
+ * Only calls are observed (and only while a pure call may be in progress), and observation only updates the bit
+ * masks of the innermost call, which are merged into the calling frame when it returns.
+ * Beware, a skipped call doesn't hit the breakpoints inside the routine.
+ */
+package com.putoet.device;
+
+import java.util.Arrays;
+import java.util.Stack;
+
+public class Memoizer {
+    public static final int PROFILE_CALLS = 16;
+    public static final int VALIDATE_HITS = 16;
+    public static final int MIN_COST = 16;
+    public static final int MAX_ENTRIES = 1 << 18;
+    public static final int MAX_TOTAL_ENTRIES = 1 << 19;
+
+    public enum State { PROFILING, VALIDATING, MEMOIZED, IMPURE, IGNORED }
+
+    private static final class Routine {
+        private State state = State.PROFILING;
+        private int pureCalls;
+        private long maxCost;
+        private int validated;
+        private int inputMask;
+        private final long[] pages = new long[2];
+        private int stamp;
+        private MemoTable table;
+        private long hits;
+    }
+
+    private final Registers registers;
+    private final Memory memory;
+    private final Stack<Integer> stack;
+    private final Routine[] routines;
+
+    private int frames;
+    private int impureBelow;
+    private int[] frameRoutine = new int[64];
+    private int[] frameDepth = new int[64];
+    private int[] frameRead = new int[64];
+    private int[] frameWrite = new int[64];
+    private long[] frameStart = new long[64];
+    private long[] framePages = new long[64 * 2];
+    private int[] frameEntry = new int[64 * Registers.REGISTERS];
+    private int[] frameExpectedMask = new int[64];
+    private int[] frameExpected = new int[64 * Registers.REGISTERS];
+
+    private long instructions;
+    private long hits;
+    private long misses;
+    private int budget = MAX_TOTAL_ENTRIES;
+    private int allocated;
+    private long evictions;
+    private final int[] key = new int[Registers.REGISTERS];
+    private final int[] values = new int[Registers.REGISTERS];
+
+    /**
+     * Constructor
+     *
+     * @param registers Registers of the device
+     * @param memory Memory of the device
+     * @param stack Stack of the device
+     */
+    public Memoizer(Registers registers, Memory memory, Stack<Integer> stack) {
+        this.registers = registers;
+        this.memory = memory;
+        this.stack = stack;
+        this.routines = new Routine[memory.size()];
+    }
+
+    /**
+     * Number of calls skipped, because their result was cached
+     *
+     * @return long
+     */
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * Number of calls to memoized routines that were executed, because their result wasn't cached
+     *
+     * @return long
+     */
+    public long misses() {
+        return misses;
+    }
+
+    /**
+     * Number of tables evicted to stay within the budget
+     *
+     * @return long
+     */
+    public long evictions() {
+        return evictions;
+    }
+
+    /**
+     * Set the budget for the capacity of all tables together (MAX_TOTAL_ENTRIES by default)
+     *
+     * @param entries int number of entries
+     * @throws IllegalArgumentException for a budget below MemoTable.INITIAL_CAPACITY
+     */
+    public void budget(int entries) {
+        if (entries < MemoTable.INITIAL_CAPACITY)
+            throw new IllegalArgumentException("Invalid budget: " + entries);
+
+        budget = entries;
+    }
+
+    /**
+     * Memoization state of the routine at an address
+     *
+     * @param address int
+     * @return State, or null when the routine was never called
+     */
+    public State state(int address) {
+        return routines[address] != null ? routines[address].state : null;
+    }
+
+    /**
+     * Checks if the memoizer needs to see the instructions being executed, which is only the case while a call that
+     * is still pure is in progress.
+     *
+     * @return true if instruction() must be called before executing an instruction
+     */
+    public boolean observing() {
+        return frames > impureBelow;
+    }
+
+    /**
+     * Observe an instruction before its execution, only to be called while observing().
+     *
+     * @param address address of the instruction
+     * @param instruction Instruction
+     */
+    public void instruction(int address, Instruction instruction) {
+        instructions++;
+        final int top = frames - 1;
+        page(top, Memory.page(address));
+        page(top, Memory.page(address + instruction.size() - 1));
+
+        switch (instruction.opcode()) {
+            case HALT, IN, OUT, WMEM -> impure();
+            case RET -> {
+                if (stack.size() != frameDepth[top] + 1)
+                    impure();
+            }
+            case POP -> {
+                if (stack.size() <= frameDepth[top] + 1)
+                    impure();
+                else
+                    write(top, instruction.operand(0));
+            }
+            case SET, NOT -> {
+                read(top, instruction.operand(1));
+                write(top, instruction.operand(0));
+            }
+            case EQ, GT, ADD, MULT, MOD, AND, OR -> {
+                read(top, instruction.operand(1));
+                read(top, instruction.operand(2));
+                write(top, instruction.operand(0));
+            }
+            case PUSH, JMP, CALL -> read(top, instruction.operand(0));
+            case JT, JF -> {
+                read(top, instruction.operand(0));
+                read(top, instruction.operand(1));
+            }
+            case RMEM -> {
+                final int operand = instruction.operand(1);
+                read(top, operand);
+                page(top, Memory.page(Registers.isRegister(operand) ? registers.get(operand) : operand));
+                write(top, instruction.operand(0));
+            }
+            case NOOP -> {}
+        }
+    }
+
+    /**
+     * Handle a call, after the CALL instruction was executed (so the return address is on the stack). When the
+     * routine is memoized, and the result for the current input registers is cached, the registers are set to the
+     * result, and the caller must return from the routine immediately (pop the return address into the IP).
+     *
+     * @param target address of the called routine
+     * @param depth size of the stack before the CALL pushed the return address
+     * @return true if the call was skipped
+     */
+    public boolean call(int target, int depth) {
+        Routine routine = routines[target];
+        if (routine == null)
+            routine = routines[target] = new Routine();
+
+        int expected = -1;
+        if (routine.state == State.VALIDATING || routine.state == State.MEMOIZED) {
+            refresh(routine);
+            key(routine, null, 0);
+            final int slot = routine.table.find(key);
+            if (slot >= 0 && routine.state == State.MEMOIZED) {
+                apply(routine, slot);
+                routine.hits++;
+                hits++;
+                return true;
+            }
+            if (routine.state == State.MEMOIZED)
+                misses++;
+            expected = slot;
+        }
+
+        final boolean candidate = routine.state == State.PROFILING || routine.state == State.VALIDATING ||
+                routine.state == State.MEMOIZED;
+        if (candidate || observing())
+            push(routine, target, depth, expected);
+
+        return false;
+    }
+
+    /**
+     * Handle a return, after the RET instruction was executed. Completes the calls with a return address above the
+     * current top of the stack.
+     *
+     * @param depth size of the stack after the RET popped the return address
+     */
+    public void returned(int depth) {
+        while (frames > 0 && frameDepth[frames - 1] >= depth)
+            complete();
+    }
+
+    private void push(Routine routine, int target, int depth, int expected) {
+        if (frames == frameRoutine.length)
+            grow();
+
+        final int frame = frames++;
+        frameRoutine[frame] = target;
+        frameDepth[frame] = depth;
+        frameRead[frame] = 0;
+        frameWrite[frame] = 0;
+        frameStart[frame] = instructions;
+        framePages[frame * 2] = 0;
+        framePages[frame * 2 + 1] = 0;
+        for (int i = 0; i < Registers.REGISTERS; i++)
+            frameEntry[frame * Registers.REGISTERS + i] = register(i);
+
+        frameExpectedMask[frame] = expected >= 0 ? routine.table.writeMask(expected) : -1;
+        if (expected >= 0)
+            for (int i = 0; i < Registers.REGISTERS; i++)
+                frameExpected[frame * Registers.REGISTERS + i] = routine.table.value(expected, i);
+    }
+
+    private void complete() {
+        final int frame = --frames;
+        final boolean pure = frame >= impureBelow;
+        if (impureBelow > frames)
+            impureBelow = frames;
+
+        if (pure && frame > 0) {
+            final int parent = frame - 1;
+            frameRead[parent] |= frameRead[frame] & ~frameWrite[parent];
+            frameWrite[parent] |= frameWrite[frame];
+            framePages[parent * 2] |= framePages[frame * 2];
+            framePages[parent * 2 + 1] |= framePages[frame * 2 + 1];
+        }
+
+        final Routine routine = routines[frameRoutine[frame]];
+        if (routine.state == State.IMPURE || routine.state == State.IGNORED)
+            return;
+
+        if (!pure) {
+            routine.state = State.IMPURE;
+            table(routine, null);
+            return;
+        }
+
+        record(routine, frame);
+    }
+
+    /**
+     * Record the result of a pure call, and move the routine to its next state when it's due.
+     */
+    private void record(Routine routine, int frame) {
+        routine.pureCalls++;
+        routine.maxCost = Math.max(routine.maxCost, instructions - frameStart[frame]);
+
+        final int inputMask = routine.inputMask | frameRead[frame];
+        final long low = routine.pages[0] | framePages[frame * 2];
+        final long high = routine.pages[1] | framePages[frame * 2 + 1];
+        final boolean widened = inputMask != routine.inputMask || low != routine.pages[0] || high != routine.pages[1];
+        if (widened) {
+            routine.inputMask = inputMask;
+            routine.pages[0] = low;
+            routine.pages[1] = high;
+            if (routine.table != null)
+                table(routine, new MemoTable(Integer.bitCount(inputMask), MAX_ENTRIES));
+        }
+
+        switch (routine.state) {
+            case PROFILING -> {
+                if (routine.pureCalls >= PROFILE_CALLS) {
+                    routine.state = routine.maxCost >= MIN_COST ? State.VALIDATING : State.IGNORED;
+                    if (routine.state == State.VALIDATING)
+                        table(routine, new MemoTable(Integer.bitCount(routine.inputMask), MAX_ENTRIES));
+                }
+                return;
+            }
+            case VALIDATING -> {
+                if (!widened && frameExpectedMask[frame] >= 0) {
+                    if (!matches(frame)) {
+                        routine.state = State.IMPURE;
+                        table(routine, null);
+                        return;
+                    }
+                    if (++routine.validated >= VALIDATE_HITS)
+                        routine.state = State.MEMOIZED;
+                }
+            }
+        }
+
+        refresh(routine);
+        key(routine, frameEntry, frame * Registers.REGISTERS);
+        for (int i = 0; i < Registers.REGISTERS; i++)
+            values[i] = register(i);
+        final int capacity = routine.table.capacity();
+        routine.table.put(key, frameWrite[frame], values);
+        allocated += routine.table.capacity() - capacity;
+        if (allocated > budget)
+            evict(routine);
+    }
+
+    /**
+     * Replace the table of a routine (null to drop it), keeping track of the capacity of all tables
+     */
+    private void table(Routine routine, MemoTable table) {
+        if (routine.table != null)
+            allocated -= routine.table.capacity();
+        routine.table = table;
+        if (table != null)
+            allocated += table.capacity();
+    }
+
+    /**
+     * Evict the tables of the routines with the fewest hits, until all tables fit in the budget again. The table of
+     * the routine that just grew is only evicted when it doesn't fit by itself. An evicted routine starts profiling
+     * again, keeping its input mask and pages.
+     */
+    private void evict(Routine current) {
+        while (allocated > budget) {
+            Routine coldest = null;
+            for (var routine : routines)
+                if (routine != null && routine != current && routine.table != null &&
+                        (coldest == null || routine.hits < coldest.hits))
+                    coldest = routine;
+            if (coldest == null)
+                coldest = current;
+
+            table(coldest, null);
+            coldest.state = State.PROFILING;
+            coldest.pureCalls = 0;
+            coldest.maxCost = 0;
+            coldest.validated = 0;
+            coldest.hits = 0;
+            evictions++;
+            if (coldest == current)
+                return;
+        }
+    }
+
+    /**
+     * Checks if the result of a call matches the cached result it was validated against
+     */
+    private boolean matches(int frame) {
+        if (frameExpectedMask[frame] != frameWrite[frame])
+            return false;
+
+        for (int i = 0; i < Registers.REGISTERS; i++)
+            if ((frameWrite[frame] & (1 << i)) != 0 && frameExpected[frame * Registers.REGISTERS + i] != register(i))
+                return false;
+        return true;
+    }
+
+    /**
+     * Set the registers to a cached result. When the call is skipped within an observed call, the skipped call is
+     * accounted for in the observed call, as if it was executed.
+     */
+    private void apply(Routine routine, int slot) {
+        final int writeMask = routine.table.writeMask(slot);
+        if (observing()) {
+            final int top = frames - 1;
+            frameRead[top] |= routine.inputMask & ~frameWrite[top];
+            frameWrite[top] |= writeMask;
+            framePages[top * 2] |= routine.pages[0];
+            framePages[top * 2 + 1] |= routine.pages[1];
+        }
+
+        for (int i = 0; i < Registers.REGISTERS; i++)
+            if ((writeMask & (1 << i)) != 0)
+                registers.set(Registers.ARCH_MAX_VALUE + i, routine.table.value(slot, i));
+    }
+
+    /**
+     * Clear the cached results of a routine when one of the memory pages it reads has changed
+     */
+    private void refresh(Routine routine) {
+        final int stamp = memory.stamp(routine.pages);
+        if (stamp != routine.stamp) {
+            allocated -= routine.table.capacity();
+            routine.table.clear();
+            allocated += routine.table.capacity();
+            routine.stamp = stamp;
+        }
+    }
+
+    /**
+     * Fill the key with the values of the input registers of the routine, from the given register values, or from
+     * the current registers if null.
+     */
+    private void key(Routine routine, int[] from, int offset) {
+        int count = 0;
+        for (int i = 0; i < Registers.REGISTERS; i++)
+            if ((routine.inputMask & (1 << i)) != 0)
+                key[count++] = from != null ? from[offset + i] : register(i);
+    }
+
+    private int register(int index) {
+        return registers.get(Registers.ARCH_MAX_VALUE + index);
+    }
+
+    private void read(int frame, int operand) {
+        if (Registers.isRegister(operand)) {
+            final int bit = 1 << (operand - Registers.ARCH_MAX_VALUE);
+            if ((frameWrite[frame] & bit) == 0)
+                frameRead[frame] |= bit;
+        }
+    }
+
+    private void write(int frame, int operand) {
+        if (Registers.isRegister(operand))
+            frameWrite[frame] |= 1 << (operand - Registers.ARCH_MAX_VALUE);
+    }
+
+    private void page(int frame, int page) {
+        if (page < Memory.PAGES)
+            framePages[frame * 2 + page / Long.SIZE] |= 1L << (page % Long.SIZE);
+    }
+
+    /**
+     * Mark all calls in progress as impure, also used for effects the memoizer cannot observe (like the output of
+     * an intrinsic)
+     */
+    public void impure() {
+        impureBelow = frames;
+    }
+
+    private void grow() {
+        final int size = frameRoutine.length * 2;
+        frameRoutine = Arrays.copyOf(frameRoutine, size);
+        frameDepth = Arrays.copyOf(frameDepth, size);
+        frameRead = Arrays.copyOf(frameRead, size);
+        frameWrite = Arrays.copyOf(frameWrite, size);
+        frameStart = Arrays.copyOf(frameStart, size);
+        framePages = Arrays.copyOf(framePages, size * 2);
+        frameEntry = Arrays.copyOf(frameEntry, size * Registers.REGISTERS);
+        frameExpectedMask = Arrays.copyOf(frameExpectedMask, size);
+        frameExpected = Arrays.copyOf(frameExpected, size * Registers.REGISTERS);
+    }
+}
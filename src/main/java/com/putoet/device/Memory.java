@@ -5,19 +5,132 @@
  * The read and write operations return/take unsigned integer values that get converted from/to little-endian
  * ordered bytes. While accessing memory, there is no checking of memory boundaries, so if an address points outside
  * or the memory, an ArrayIndexOutOfBounds will be thrown.
+ * Memory is divided into pages of PAGE_SIZE words. Every write increases the version of the page it lands in, so
+ * components caching information derived from memory (like decoded instructions) can cheaply detect that their
+ * cached information is outdated.
+ * Pages are allocated on their first write (until then they share a page of zeroes), and memory can be created from
+ * a shared ProgramImage, in which case a page of the image is only copied when it is written to (copy-on-write).
+ * So, the memory footprint of a device is limited to the pages it actually writes.
+ * Memory maintains a 64-bit hash of its contents (see StateHash), updated on every write, so stateHash() is O(1).
+ * Addresses which shouldn't count for the state (like a move counter) can be left out of the hash.
+ * Observers can track which pages changed since they last looked, using the page versions (see changedPages).
+ * Reads and writes by the RMEM and WMEM instructions go through rmem and wmem, which check the memory watchpoints,
+ * and count the access in the AccessMap of the device (if any).
  */
 package com.putoet.device;
 
+import java.util.Arrays;
+import java.util.BitSet;
+
 public class Memory {
-    private final byte[] memory = new byte[Registers.ARCH_MAX_VALUE * 2];
+    public static final int PAGE_SIZE = 256;
+    public static final int PAGES = Registers.ARCH_MAX_VALUE / PAGE_SIZE;
+
+    private static final byte[] ZERO_PAGE = new byte[PAGE_SIZE * 2];
+
+    private final byte[][] pages = new byte[PAGES][];
+    private final boolean[] owned = new boolean[PAGES];
+    private final int[] pageVersion = new int[PAGES];
+    private final long[] ignored = new long[PAGES * PAGE_SIZE / Long.SIZE];
     private int lastAddressUsed = 0;
+    private long stateHash = 0;
+    private final Watchpoints watchpoints = new Watchpoints();
+    private AccessMap accessMap;
+
+    /**
+     * Constructor for empty memory
+     */
+    public Memory() {
+        Arrays.fill(pages, ZERO_PAGE);
+    }
+
+    /**
+     * Constructor for memory holding a program, which shares the pages of the image until they are written to.
+     *
+     * @param image ProgramImage
+     */
+    public Memory(ProgramImage image) {
+        load(image);
+    }
+
+    /**
+     * Replace the contents of memory with a program image, sharing the pages of the image until they are written
+     * to. The version of every page is increased, so cached information derived from memory is outdated.
+     *
+     * @param image ProgramImage
+     */
+    public void load(ProgramImage image) {
+        for (int page = 0; page < PAGES; page++) {
+            final byte[] bytes = image.page(page);
+            pages[page] = bytes != null ? bytes : ZERO_PAGE;
+            owned[page] = false;
+            pageVersion[page]++;
+        }
+        lastAddressUsed = Math.max(0, image.length() - 1) * 2;
+
+        stateHash = image.stateHash();
+        for (int i = 0; i < ignored.length; i++) {
+            for (long bits = ignored[i]; bits != 0; bits &= bits - 1) {
+                final int address = i * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                stateHash ^= StateHash.of(address, peek(address));
+            }
+        }
+    }
+
+    /**
+     * Hash of the contents of memory, leaving out ignored addresses (see StateHash)
+     *
+     * @return long
+     */
+    public long stateHash() {
+        return stateHash;
+    }
+
+    /**
+     * Leave a range of addresses out of the state hash, or take them into account again.
+     *
+     * @param from first address
+     * @param to address after the last address
+     * @param ignore true to leave the addresses out of the state hash
+     */
+    public void ignoreInStateHash(int from, int to, boolean ignore) {
+        for (int address = from; address < to; address++) {
+            if (ignored(address) != ignore) {
+                ignored[address / Long.SIZE] ^= 1L << address;
+                stateHash ^= StateHash.of(address, peek(address));
+            }
+        }
+    }
+
+    /**
+     * Checks if an address is left out of the state hash
+     *
+     * @param address int
+     * @return boolean
+     */
+    public boolean ignored(int address) {
+        return (ignored[address / Long.SIZE] & (1L << address)) != 0;
+    }
 
     /**
      * Memory size in words (size in bytes divided by 2)
      * @return int
      */
     public int size() {
-        return memory.length / 2;
+        return PAGES * PAGE_SIZE;
+    }
+
+    /**
+     * Number of pages owned by this memory, as opposed to pages shared with a program image (or the page of zeroes)
+     *
+     * @return int
+     */
+    public int ownedPages() {
+        int count = 0;
+        for (var page : owned)
+            if (page)
+                count++;
+        return count;
     }
 
     /**
@@ -33,17 +146,78 @@ public class Memory {
      * Write an integer value into memory at the specified address. The max integer value is 0xffff, the rest is
      * simply discarded. A java integer is 2 words, so the high word is ignored and removed before converting the
      * value into low-byte/high-byte.
-     * This method updates the last-address-used value.
+     * This method updates the last-address-used value, and the version of the page the address belongs to.
      *
      * @param address int
      * @param value int
      */
     public void write(int address, int value) {
-        address *= 2;
-        final byte[] bytes = intToBytes(value);
-        memory[address] = bytes[0];
-        memory[address + 1] = bytes[1];
-        lastAddressUsed = Math.max(lastAddressUsed, address);
+        final int page = page(address);
+        pageVersion[page]++;
+        if (!owned[page]) {
+            pages[page] = pages[page].clone();
+            owned[page] = true;
+        }
+
+        final byte[] bytes = pages[page];
+        final int offset = offset(address);
+        if (!ignored(address))
+            stateHash ^= StateHash.change(address, bytesToInt(bytes[offset], bytes[offset + 1]), value & 0xffff);
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >> 8);
+        lastAddressUsed = Math.max(lastAddressUsed, address * 2);
+    }
+
+    /**
+     * Watchpoints on this memory, which are checked by rmem and wmem
+     *
+     * @return Watchpoints
+     */
+    public Watchpoints watchpoints() {
+        return watchpoints;
+    }
+
+    /**
+     * Set the AccessMap which counts the reads and writes by rmem and wmem
+     *
+     * @param accessMap AccessMap or null
+     */
+    void accessMap(AccessMap accessMap) {
+        this.accessMap = accessMap;
+    }
+
+    /**
+     * Read a value for an RMEM instruction, like read, reporting it when the address is watched.
+     *
+     * @param address int
+     * @return int
+     */
+    public int rmem(int address) {
+        final int value = read(address);
+        if (accessMap != null)
+            accessMap.read(address);
+        if (watchpoints.reads(address))
+            watchpoints.read(address, value);
+        return value;
+    }
+
+    /**
+     * Write a value for a WMEM instruction, like write, reporting it when the address is watched.
+     *
+     * @param address int
+     * @param value int
+     */
+    public void wmem(int address, int value) {
+        if (accessMap != null)
+            accessMap.written(address);
+        if (!watchpoints.writes(address)) {
+            write(address, value);
+            return;
+        }
+
+        final int from = peek(address);
+        write(address, value);
+        watchpoints.written(address, from, value & 0xffff);
     }
 
     /**
@@ -53,9 +227,111 @@ public class Memory {
      * @return int
      */
     public int read(int address) {
-        address *= 2;
-        lastAddressUsed = Math.max(lastAddressUsed, address);
-        return bytesToInt(memory[address] ,memory[address + 1]);
+        lastAddressUsed = Math.max(lastAddressUsed, address * 2);
+        return peek(address);
+    }
+
+    /**
+     * The page a word address belongs to.
+     *
+     * @param address int
+     * @return int page number
+     */
+    public static int page(int address) {
+        return address / PAGE_SIZE;
+    }
+
+    /**
+     * Version of a memory page, which is increased on every write to a word in the page. The version only
+     * tells if a page was changed since an earlier version was retrieved, the value itself has no meaning.
+     *
+     * @param page int page number
+     * @return int
+     */
+    public int pageVersion(int page) {
+        return pageVersion[page];
+    }
+
+    /**
+     * Stamp of a set of pages, to detect that one of them was written to since an earlier stamp was taken. Page
+     * versions only increase, so the sum of the versions of the pages changes whenever one of those pages is written
+     * to.
+     *
+     * @param pages long[] bit set of page numbers (bit n of pages[i] is page i * 64 + n)
+     * @return int stamp
+     */
+    public int stamp(long[] pages) {
+        int stamp = 0;
+        for (int i = 0; i < pages.length; i++) {
+            long bits = pages[i];
+            while (bits != 0) {
+                stamp += pageVersion[i * Long.SIZE + Long.numberOfTrailingZeros(bits)];
+                bits &= bits - 1;
+            }
+        }
+        return stamp;
+    }
+
+    /**
+     * Stamp of a range of pages, like stamp(long[])
+     *
+     * @param first int first page number
+     * @param last int last page number (inclusive)
+     * @return int stamp
+     */
+    public int stamp(int first, int last) {
+        int stamp = 0;
+        for (int page = first; page <= last; page++)
+            stamp += pageVersion[page];
+        return stamp;
+    }
+
+    /**
+     * Pages changed since an earlier call, detected by their version (so a page written with the value it already
+     * held counts as changed). The array holds the page versions of the earlier call (all 0 on the first call), and is
+     * updated to the current versions, so any number of observers can track the changes of the same memory.
+     *
+     * @param versions int[PAGES] page versions of the earlier call
+     * @return BitSet of the changed page numbers
+     */
+    public BitSet changedPages(int[] versions) {
+        final BitSet changed = new BitSet(PAGES);
+        for (int page = 0; page < PAGES; page++) {
+            if (versions[page] != pageVersion[page]) {
+                changed.set(page);
+                versions[page] = pageVersion[page];
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Bytes of a page, which are shared with the caller, and must never be modified. The memory no longer owns the
+     * page, so its next write to the page copies it first (copy-on-write), and the shared bytes never change.
+     *
+     * @param page int page number
+     * @return byte[]
+     */
+    byte[] sharePage(int page) {
+        owned[page] = false;
+        return pages[page];
+    }
+
+    /**
+     * Read a two byte integer value from memory at the given address, without updating the last-address-used value.
+     * Used by tools (debugger, analysis) to inspect memory without affecting the device.
+     *
+     * @param address int
+     * @return int
+     */
+    public int peek(int address) {
+        final byte[] bytes = pages[page(address)];
+        final int offset = offset(address);
+        return bytesToInt(bytes[offset], bytes[offset + 1]);
+    }
+
+    private static int offset(int address) {
+        return (address % PAGE_SIZE) * 2;
     }
 
     /**
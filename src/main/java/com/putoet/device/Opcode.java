@@ -1,8 +1,47 @@
 package com.putoet.device;
 
 /**
- * Valid Instruction operation codes
+ * Valid Instruction operation codes, with the number of operands of each instruction
  */
 public enum Opcode {
-    HALT, SET, PUSH, POP, EQ, GT, JMP, JT, JF, ADD, MULT, MOD, AND, OR, NOT, RMEM, WMEM, CALL, RET, OUT, IN, NOOP
+    HALT(0), SET(2), PUSH(1), POP(1), EQ(3), GT(3), JMP(1), JT(2), JF(2), ADD(3), MULT(3), MOD(3), AND(3), OR(3),
+    NOT(2), RMEM(2), WMEM(2), CALL(1), RET(0), OUT(1), IN(1), NOOP(0);
+
+    private static final Opcode[] OPCODES = values();
+
+    private final int operands;
+
+    Opcode(int operands) {
+        this.operands = operands;
+    }
+
+    /**
+     * Number of operands of the instruction
+     *
+     * @return int
+     */
+    public int operands() {
+        return operands;
+    }
+
+    /**
+     * Checks if a word is a valid operation code
+     *
+     * @param word int
+     * @return true if the word is a valid operation code
+     */
+    public static boolean isOpcode(int word) {
+        return word >= 0 && word < OPCODES.length;
+    }
+
+    /**
+     * The Opcode for a word, without creating a copy of values() every time. Throws an
+     * ArrayIndexOutOfBoundsException for an invalid operation code (just like values()[word] would do).
+     *
+     * @param word int
+     * @return Opcode
+     */
+    public static Opcode of(int word) {
+        return OPCODES[word];
+    }
 }
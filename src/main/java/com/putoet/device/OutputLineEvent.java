@@ -0,0 +1,19 @@
+package com.putoet.device;
+
+import jdk.jfr.*;
+
+/**
+ * JFR event covering the output of a single line on the Crt, from the first character up to and including the
+ * newline which flushes the line.
+ */
+@Name("com.putoet.device.OutputLine")
+@Label("Output Line")
+@Category({"Synacor", "Device"})
+@Description("Line of text written by the device")
+public class OutputLineEvent extends Event {
+    @Label("Length")
+    public int length;
+
+    @Label("Text")
+    public String text;
+}
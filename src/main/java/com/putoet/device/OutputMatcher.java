@@ -0,0 +1,173 @@
+/**
+ * OutputMatcher class
+ * Finds the first occurrence of any of a set of patterns in the output of a device, one byte at a time, as the Crt
+ * writes it (see Crt.matcher()), so the output is never collected into a string to search it. The patterns are
+ * compiled into an Aho-Corasick automaton, turned into a complete transition table (a state per prefix of a pattern,
+ * and a next state per byte), so feeding a byte is a single table lookup, no matter how many patterns there are, or
+ * how much they overlap.
+ * When several patterns end at the same byte, the one listed first wins. After a match, the matcher ignores further
+ * bytes until it is reset, so the match and its position stay available.
+ * Patterns are matched byte by byte, so they can only hold characters up to 255 (like the output of a device).
+ */
+package com.putoet.device;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+public class OutputMatcher {
+    private static final int ALPHABET = 256;
+
+    private final List<String> patterns;
+    private final int[] next;
+    private final int[] match;
+
+    private int state;
+    private int matched = -1;
+    private long position;
+
+    /**
+     * Constructor, compiles the patterns
+     *
+     * @param patterns String... patterns, at least one, none of them empty
+     * @throws IllegalArgumentException for no patterns, an empty pattern, or a pattern with characters above 255
+     */
+    public OutputMatcher(String... patterns) {
+        if (patterns.length == 0)
+            throw new IllegalArgumentException("No patterns to match");
+        this.patterns = List.of(patterns);
+
+        int size = 1;
+        for (var pattern : patterns) {
+            if (pattern.isEmpty())
+                throw new IllegalArgumentException("Empty pattern");
+            for (int i = 0; i < pattern.length(); i++)
+                if (pattern.charAt(i) >= ALPHABET)
+                    throw new IllegalArgumentException("Invalid character in pattern: " + pattern);
+            size += pattern.length();
+        }
+
+        // trie of the patterns, -1 for a missing transition
+        final int[] trie = new int[size * ALPHABET];
+        Arrays.fill(trie, -1);
+        match = new int[size];
+        Arrays.fill(match, -1);
+        int states = 1;
+        for (int index = 0; index < patterns.length; index++) {
+            int current = 0;
+            for (int i = 0; i < patterns[index].length(); i++) {
+                final int transition = current * ALPHABET + patterns[index].charAt(i);
+                if (trie[transition] < 0)
+                    trie[transition] = states++;
+                current = trie[transition];
+            }
+            if (match[current] < 0)
+                match[current] = index;
+        }
+
+        // complete the transitions breadth first, following the failure link of a state for a missing transition
+        next = Arrays.copyOf(trie, states * ALPHABET);
+        final int[] failure = new int[states];
+        final Deque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ALPHABET; c++) {
+            if (next[c] < 0) {
+                next[c] = 0;
+            } else {
+                failure[next[c]] = 0;
+                queue.add(next[c]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            final int current = queue.poll();
+            final int fallback = match[failure[current]];
+            if (fallback >= 0 && (match[current] < 0 || fallback < match[current]))
+                match[current] = fallback;
+
+            for (int c = 0; c < ALPHABET; c++) {
+                final int transition = current * ALPHABET + c;
+                if (next[transition] < 0) {
+                    next[transition] = next[failure[current] * ALPHABET + c];
+                } else {
+                    failure[next[transition]] = next[failure[current] * ALPHABET + c];
+                    queue.add(next[transition]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Feed the next byte of the output
+     *
+     * @param b int byte
+     * @return true when a pattern (now or before) matched
+     */
+    public boolean feed(int b) {
+        if (matched >= 0)
+            return true;
+
+        position++;
+        state = next[state * ALPHABET + (b & 0xff)];
+        matched = match[state];
+        return matched >= 0;
+    }
+
+    /**
+     * Feed a text, up to the end of the first match
+     *
+     * @param text CharSequence with characters up to 255
+     * @return number of characters fed, the length of the text when no pattern matched
+     */
+    public int feed(CharSequence text) {
+        for (int i = 0; i < text.length(); i++)
+            if (feed(text.charAt(i)))
+                return i + 1;
+        return text.length();
+    }
+
+    /**
+     * Forget the bytes fed, and the match, to start matching again
+     */
+    public void reset() {
+        state = 0;
+        matched = -1;
+        position = 0;
+    }
+
+    /**
+     * Index of the pattern that matched
+     *
+     * @return int, or -1 when no pattern matched (yet)
+     */
+    public int matched() {
+        return matched;
+    }
+
+    /**
+     * Number of bytes fed since the last reset, up to and including the end of the match
+     *
+     * @return long
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * Pattern of an index
+     *
+     * @param index int
+     * @return String
+     */
+    public String pattern(int index) {
+        return patterns.get(index);
+    }
+
+    /**
+     * Patterns in the order they were listed
+     *
+     * @return List of String
+     */
+    public List<String> patterns() {
+        return patterns;
+    }
+}
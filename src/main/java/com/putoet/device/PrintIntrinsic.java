@@ -0,0 +1,220 @@
+/**
+ * PrintIntrinsic class
+ * Replaces calls of the guest print routine with a single buffered write. The guest prints a length-prefixed string
+ * by calling a "for each character" routine with the string address in <a> and a callback in <b>, which is called
+ * with every character in <a>. The callback either writes the character (OUT <a>), or decrypts it first, using an
+ * xor routine with the key in <c>. So, every character costs a call, a couple of instructions, and a write to the
+ * Crt (which flushes).
+ * The routines are recognised by their code, not by their address: the called routine must match the "for each"
+ * routine, and the callback must match one of the two callbacks (with an xor routine that matches as well). Jump
+ * targets within a routine are matched relative to the start of the routine. When they match, the string is decoded
+ * in Java, written to the Crt in one go, and the registers are set as the guest routine would leave them (<b> holds
+ * the length of the string, all other registers are unchanged).
+ * In VALIDATE mode, the guest routine is executed as usual, and the characters it writes and the registers it
+ * leaves are compared with the result of the intrinsic, every mismatch is counted (and the last one kept).
+ */
+package com.putoet.device;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Stack;
+
+public class PrintIntrinsic {
+    public enum Mode { OFF, ON, VALIDATE }
+
+    private static final int A = 32768, B = 32769, C = 32770, D = 32771, E = 32772, F = 32773, G = 32774;
+    private static final int ANY = -1;
+
+    // relative addresses in a template are encoded as REL + offset from the start of the routine
+    private static final int REL = 1 << 20;
+
+    private static final int[] FOR_EACH = {
+            2, A, 2, D, 2, E, 2, F, 2, G,           // PUSH a, d, e, f, g
+            1, G, A, 1, F, B,                       // SET g a, SET f b
+            15, E, A, 1, B, 0,                      // RMEM e a, SET b 0
+            9, D, 1, B,                             // loop: ADD d 1 b
+            5, A, D, E,                             // GT a d e
+            7, A, REL + 49,                         // JT a done
+            9, D, D, G, 15, A, D,                   // ADD d d g, RMEM a d
+            17, F,                                  // CALL f
+            9, B, B, 1, 7, B, REL + 22,             // ADD b b 1, JT b loop
+            3, G, 3, F, 3, E, 3, D, 3, A,           // done: POP g, f, e, d, a
+            18                                      // RET
+    };
+    private static final int[] PLAIN = {19, A, 18};
+    private static final int[] DECRYPT = {2, B, 1, B, C, 17, ANY, 19, A, 3, B, 18};
+    private static final int[] XOR = {2, B, 2, C, 12, C, A, B, 14, C, C, 13, A, A, B, 12, A, A, C, 3, C, 3, B, 18};
+
+    private final Memory memory;
+    private final Registers registers;
+    private final Crt out;
+    private final DeviceMetrics metrics;
+    private final Mode mode;
+
+    private long calls;
+    private long mismatches;
+    private String lastMismatch;
+
+    private int pendingDepth = -1;
+    private byte[] expected;
+    private int expectedLength;
+    private final int[] expectedRegisters = new int[Registers.REGISTERS];
+    private final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+
+    /**
+     * Constructor
+     *
+     * @param memory Memory of the device
+     * @param registers Registers of the device
+     * @param out Crt of the device
+     * @param metrics DeviceMetrics of the device
+     * @param mode ON to replace the print routine, VALIDATE to compare it
+     */
+    public PrintIntrinsic(Memory memory, Registers registers, Crt out, DeviceMetrics metrics, Mode mode) {
+        this.memory = memory;
+        this.registers = registers;
+        this.out = out;
+        this.metrics = metrics;
+        this.mode = mode;
+    }
+
+    /**
+     * Number of calls of the print routine that were recognised (and replaced, or validated)
+     *
+     * @return long
+     */
+    public long calls() {
+        return calls;
+    }
+
+    /**
+     * Number of validated calls for which the guest routine and the intrinsic didn't agree
+     *
+     * @return long
+     */
+    public long mismatches() {
+        return mismatches;
+    }
+
+    /**
+     * Description of the last mismatch, or null if there was none
+     *
+     * @return String
+     */
+    public String lastMismatch() {
+        return lastMismatch;
+    }
+
+    /**
+     * Handle a call, after the CALL instruction was executed. When the called routine and the callback in <b> are
+     * recognised, and the mode is ON, the string is written and the registers are set, and the caller must return
+     * from the routine immediately (pop the return address into the IP).
+     *
+     * @param target address of the called routine
+     * @param depth size of the stack before the CALL pushed the return address
+     * @return true if the call was replaced
+     */
+    public boolean call(int target, int depth) {
+        if (pendingDepth >= 0 || !matches(target, FOR_EACH))
+            return false;
+
+        final int callback = registers.get(B);
+        final boolean decrypt;
+        if (matches(callback, PLAIN))
+            decrypt = false;
+        else if (matches(callback, DECRYPT) && matches(memory.peek(callback + 6), XOR))
+            decrypt = true;
+        else
+            return false;
+
+        final int address = registers.get(A);
+        final int length = memory.peek(address);
+        if (address + length >= memory.size())
+            return false;
+
+        final int key = registers.get(C);
+        final byte[] text = new byte[length];
+        for (int i = 0; i < length; i++) {
+            final int c = memory.peek(address + 1 + i);
+            text[i] = (byte) (decrypt ? (c ^ key) & 0x7fff : c);
+        }
+
+        calls++;
+        if (mode == Mode.VALIDATE) {
+            pendingDepth = depth;
+            expected = text;
+            expectedLength = length;
+            for (int i = 0; i < Registers.REGISTERS; i++)
+                expectedRegisters[i] = registers.get(A + i);
+            expectedRegisters[B - A] = length;
+            actual.reset();
+            return false;
+        }
+
+        try {
+            out.write(text);
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+        metrics.charactersWritten(length);
+        registers.set(B, length);
+        return true;
+    }
+
+    /**
+     * Record a character written by the guest, while a call is being validated
+     *
+     * @param c character
+     */
+    public void output(int c) {
+        if (pendingDepth >= 0)
+            actual.write(c);
+    }
+
+    /**
+     * Handle a return, after the RET instruction was executed. Compares the result of the guest routine with the
+     * intrinsic, when it returns from a call being validated.
+     *
+     * @param depth size of the stack after the RET popped the return address
+     */
+    public void returned(int depth) {
+        if (pendingDepth < 0 || depth > pendingDepth)
+            return;
+
+        pendingDepth = -1;
+        final byte[] written = actual.toByteArray();
+        if (!Arrays.equals(expected, written)) {
+            mismatch("wrote '" + new String(written) + "' instead of '" + new String(expected) + "'");
+            return;
+        }
+        for (int i = 0; i < Registers.REGISTERS; i++) {
+            if (registers.get(A + i) != expectedRegisters[i]) {
+                mismatch("register " + Registers.asLetter(A + i) + " is " + registers.get(A + i) + " instead of " +
+                        expectedRegisters[i] + " after printing " + expectedLength + " characters");
+                return;
+            }
+        }
+    }
+
+    private void mismatch(String description) {
+        mismatches++;
+        lastMismatch = description;
+    }
+
+    /**
+     * Checks if the code at an address matches a template
+     */
+    private boolean matches(int address, int[] template) {
+        if (address < 0 || address + template.length >= memory.size())
+            return false;
+
+        for (int i = 0; i < template.length; i++) {
+            final int expected = template[i] >= REL ? address + template[i] - REL : template[i];
+            if (expected != ANY && memory.peek(address + i) != expected)
+                return false;
+        }
+        return true;
+    }
+}
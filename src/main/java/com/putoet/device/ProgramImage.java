@@ -0,0 +1,151 @@
+/**
+ * ProgramImage class
+ * Immutable image of a program (little-endian 2-byte words, like challenge.bin), divided into memory pages. An image
+ * is loaded once, and can be shared by any number of Memory instances (on any number of threads), which only copy
+ * a page of the image when they write to it. So, many devices running the same program share the memory they
+ * only read from. As challenge.bin decrypts most of its memory while booting, an image is best taken from the memory
+ * of a device that already booted (see of(Memory)), after which devices only copy the pages they write while playing.
+ */
+package com.putoet.device;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+public final class ProgramImage {
+    private final byte[][] pages;
+    private final int length;
+    private final long stateHash;
+
+    private ProgramImage(byte[] program) {
+        this(pages(program), Math.min(Memory.PAGES * Memory.PAGE_SIZE, (program.length + 1) / 2));
+    }
+
+    private ProgramImage(byte[][] pages, int length) {
+        this.pages = pages;
+        this.length = length;
+
+        long hash = 0;
+        for (int address = 0; address < length; address++) {
+            final byte[] page = pages[Memory.page(address)];
+            final int offset = (address % Memory.PAGE_SIZE) * 2;
+            if (page != null)
+                hash ^= StateHash.of(address, Memory.bytesToInt(page[offset], page[offset + 1]));
+        }
+        this.stateHash = hash;
+    }
+
+    private static byte[][] pages(byte[] program) {
+        final int pageBytes = Memory.PAGE_SIZE * 2;
+        final int count = Math.min(Memory.PAGES, (program.length + pageBytes - 1) / pageBytes);
+        final byte[][] pages = new byte[count][];
+        for (int i = 0; i < count; i++)
+            pages[i] = Arrays.copyOfRange(program, i * pageBytes, (i + 1) * pageBytes);
+        return pages;
+    }
+
+    /**
+     * Create an image from pages (of PAGE_SIZE words) which are shared with the image, and must never be modified.
+     * The image ends with the last page that isn't all zeroes.
+     *
+     * @param pages byte[PAGES][] pages, null for a page of zeroes
+     * @return ProgramImage
+     */
+    static ProgramImage of(byte[][] pages) {
+        int count = pages.length;
+        while (count > 0 && (pages[count - 1] == null || isZero(pages[count - 1])))
+            count--;
+        return new ProgramImage(Arrays.copyOf(pages, count), count * Memory.PAGE_SIZE);
+    }
+
+    private static boolean isZero(byte[] page) {
+        for (var b : page)
+            if (b != 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * Create an image from a little-endian byte array (a missing high byte of the last word is taken as 0)
+     *
+     * @param program byte[]
+     * @return ProgramImage
+     */
+    public static ProgramImage of(byte[] program) {
+        return new ProgramImage(program);
+    }
+
+    /**
+     * Create an image from a little-endian byte stream
+     *
+     * @param is InputStream
+     * @return ProgramImage
+     * @throws IOException in case of any read error from the InputStream.
+     */
+    public static ProgramImage of(InputStream is) throws IOException {
+        return new ProgramImage(is.readAllBytes());
+    }
+
+    /**
+     * Create an image from the current contents of memory, up to and including its last address used
+     *
+     * @param memory Memory
+     * @return ProgramImage
+     */
+    public static ProgramImage of(Memory memory) {
+        final byte[] program = new byte[(memory.lastAddressUsed() + 1) * 2];
+        for (int address = 0; address <= memory.lastAddressUsed(); address++) {
+            final int word = memory.peek(address);
+            program[address * 2] = (byte) word;
+            program[address * 2 + 1] = (byte) (word >> 8);
+        }
+        return new ProgramImage(program);
+    }
+
+    /**
+     * Create an image from a resource. Any exception during loading is wrapped in an IllegalArgumentException and
+     * rethrown.
+     *
+     * @param resourceName name of the resource to be loaded
+     * @return ProgramImage
+     */
+    public static ProgramImage ofResource(String resourceName) {
+        try (InputStream is = ProgramImage.class.getResourceAsStream(resourceName)) {
+            if (is == null)
+                throw new IllegalArgumentException("Invalid resource name '" + resourceName + "'");
+
+            return of(is);
+        } catch (IOException exc) {
+            throw new IllegalArgumentException("Failed to load resource " + resourceName, exc);
+        }
+    }
+
+    /**
+     * Length of the program in words
+     *
+     * @return int
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Hash of the contents of the image (see StateHash), which is the state hash of memory loaded with the image
+     *
+     * @return long
+     */
+    public long stateHash() {
+        return stateHash;
+    }
+
+    /**
+     * Bytes of a page of the image, or null when the page is beyond the end of the program. The returned array is
+     * shared, and must never be modified.
+     *
+     * @param page int page number
+     * @return byte[]
+     */
+    byte[] page(int page) {
+        return page < pages.length ? pages[page] : null;
+    }
+}
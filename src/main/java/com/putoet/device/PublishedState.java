@@ -0,0 +1,135 @@
+/**
+ * PublishedState class
+ * Consistent view of the state of a running device (instruction pointer, registers, and the top of the stack), for
+ * other threads, like a debugger console. Reading the registers or stack of a running device directly from another
+ * thread gives torn results (a register set by one instruction next to a register set by a later one), so the device
+ * publishes a copy of its state at instruction boundaries, every PUBLISH_INTERVAL instructions and whenever it stops
+ * (for input, at the end of a slice, on HALT, or in a debugger halt).
+ * The copy is protected by a seqlock: the device thread makes the sequence number odd, writes the copy, and makes the
+ * sequence number even again. A reader copies the state between two reads of the sequence number, and retries when
+ * the sequence number was odd or changed, so readers never block the device, and the device never waits for a reader.
+ * The version of a Snapshot (the number of publications) tells how recent the snapshot is.
+ */
+package com.putoet.device;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Stack;
+
+public class PublishedState {
+    public static final int PUBLISH_INTERVAL = 1024;
+    public static final int STACK_TOP = 16;
+
+    private static final VarHandle SEQUENCE;
+
+    static {
+        try {
+            SEQUENCE = MethodHandles.lookup().findVarHandle(PublishedState.class, "sequence", long.class);
+        } catch (ReflectiveOperationException exc) {
+            throw new ExceptionInInitializerError(exc);
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private long sequence;
+
+    private long instructions;
+    private int ip;
+    private final int[] registers = new int[Registers.REGISTERS];
+    private int stackDepth;
+    private final int[] stackTop = new int[STACK_TOP];
+
+    /**
+     * Published state of a device
+     *
+     * @param version number of times the state was published
+     * @param instructions number of instructions executed
+     * @param ip address of the next instruction
+     * @param registers values of the registers a-h
+     * @param stackDepth number of entries on the stack
+     * @param stackTop at most STACK_TOP entries from the top of the stack, top is last
+     */
+    public record Snapshot(long version, long instructions, int ip, int[] registers, int stackDepth, int[] stackTop) {
+        /**
+         * Value of a register
+         *
+         * @param id int register id (32768 to 32775)
+         * @return int
+         */
+        public int register(int id) {
+            Registers.checkId(id);
+            return registers[id - Registers.ARCH_MAX_VALUE];
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder();
+            sb.append("IP=[").append(ip).append("], Registers=['a'=").append(registers[0]);
+            for (int i = 1; i < registers.length; i++)
+                sb.append(", ").append((char) (i + 'a')).append('=').append(registers[i]);
+            return sb.append("] after ").append(instructions).append(" instructions").toString();
+        }
+    }
+
+    /**
+     * Publish the state of a device, which must be called from the thread running the device.
+     *
+     * @param instructions number of instructions executed
+     * @param ip address of the next instruction
+     * @param registers Registers
+     * @param stack the stack
+     */
+    void publish(long instructions, int ip, Registers registers, Stack<Integer> stack) {
+        final long sequence = (long) SEQUENCE.getOpaque(this);
+        SEQUENCE.setOpaque(this, sequence + 1);
+        VarHandle.storeStoreFence();
+
+        this.instructions = instructions;
+        this.ip = ip;
+        for (int i = 0; i < Registers.REGISTERS; i++)
+            this.registers[i] = registers.get(Registers.ARCH_MAX_VALUE + i);
+        final int depth = stack.size();
+        final int top = Math.min(depth, STACK_TOP);
+        for (int i = 0; i < top; i++)
+            stackTop[i] = stack.get(depth - top + i);
+        this.stackDepth = depth;
+
+        SEQUENCE.setRelease(this, sequence + 2);
+    }
+
+    /**
+     * Read the last published state, which can be called from any thread, and never blocks the device.
+     *
+     * @return Snapshot
+     */
+    public Snapshot read() {
+        final int[] registers = new int[Registers.REGISTERS];
+        final int[] stackTop = new int[STACK_TOP];
+        while (true) {
+            final long before = (long) SEQUENCE.getAcquire(this);
+            if ((before & 1) == 0) {
+                final long instructions = this.instructions;
+                final int ip = this.ip;
+                System.arraycopy(this.registers, 0, registers, 0, Registers.REGISTERS);
+                final int stackDepth = this.stackDepth;
+                System.arraycopy(this.stackTop, 0, stackTop, 0, STACK_TOP);
+                VarHandle.loadLoadFence();
+
+                if ((long) SEQUENCE.getOpaque(this) == before)
+                    return new Snapshot(before / 2, instructions, ip, registers, stackDepth,
+                            Arrays.copyOf(stackTop, Math.min(stackDepth, STACK_TOP)));
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Number of times the state was published
+     *
+     * @return long
+     */
+    public long version() {
+        return (long) SEQUENCE.getAcquire(this) / 2;
+    }
+}
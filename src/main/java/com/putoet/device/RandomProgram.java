@@ -0,0 +1,122 @@
+/**
+ * RandomProgram class
+ * Generates random (but mostly valid) programs, to check execution engines against each other (see
+ * DifferentialChecker). A program is a sequence of random instructions, with operands that are registers or values,
+ * and jump and call targets that point to the start of an instruction, followed by a HALT. A part of the memory
+ * writes land in the program itself, so the generated programs also modify their own code, which is exactly where
+ * engines that cache decoded instructions can go wrong.
+ * Random programs can loop forever, fail (pop an empty stack, divide by zero, run into an invalid opcode), and read
+ * input, so they are meant to run with an instruction limit, and with some input lines.
+ */
+package com.putoet.device;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public final class RandomProgram {
+    private static final Opcode[] OPCODES = {
+            Opcode.SET, Opcode.SET, Opcode.PUSH, Opcode.POP, Opcode.EQ, Opcode.GT, Opcode.JMP, Opcode.JT, Opcode.JF,
+            Opcode.ADD, Opcode.ADD, Opcode.MULT, Opcode.MOD, Opcode.AND, Opcode.OR, Opcode.NOT, Opcode.RMEM,
+            Opcode.WMEM, Opcode.WMEM, Opcode.CALL, Opcode.RET, Opcode.OUT, Opcode.IN, Opcode.NOOP
+    };
+    private static final int DATA_SIZE = 64;
+    private static final int PROLOGUE = 8;
+
+    private RandomProgram() {}
+
+    /**
+     * Generate a random program
+     *
+     * @param seed long seed of the random generator, the same seed always generates the same program
+     * @param instructions number of instructions
+     * @return little-endian program bytes
+     */
+    public static byte[] generate(long seed, int instructions) {
+        final Random random = new Random(seed);
+        final List<Opcode> opcodes = new ArrayList<>(instructions);
+        final List<Integer> starts = new ArrayList<>(instructions);
+        int size = 0;
+        for (int i = 0; i < instructions; i++) {
+            final Opcode opcode = OPCODES[random.nextInt(OPCODES.length)];
+            opcodes.add(opcode);
+            starts.add(size);
+            size += 1 + opcode.operands();
+        }
+
+        // the program starts by pushing a number of return addresses, so it doesn't fail on its first RET or POP
+        for (int i = 0; i < PROLOGUE; i++) {
+            opcodes.add(i, Opcode.PUSH);
+            starts.replaceAll(start -> start + 2);
+            starts.add(i, i * 2);
+        }
+        final int programSize = size + PROLOGUE * 2 + 1;
+
+        final int[] words = new int[programSize + DATA_SIZE];
+        int address = 0;
+        for (var opcode : opcodes) {
+            words[address++] = opcode.ordinal();
+            switch (opcode) {
+                case SET, NOT -> {
+                    words[address++] = register(random);
+                    words[address++] = value(random);
+                }
+                case PUSH -> words[address++] = address < PROLOGUE * 2 ? target(random, starts) : value(random);
+                case OUT -> words[address++] = character(random);
+                case POP, IN -> words[address++] = register(random);
+                case EQ, GT, ADD, MULT, MOD, AND, OR -> {
+                    words[address++] = register(random);
+                    words[address++] = value(random);
+                    words[address++] = opcode == Opcode.MOD && random.nextInt(2) == 0 ?
+                            1 + random.nextInt(Registers.ARCH_MAX_VALUE - 1) : value(random);
+                }
+                case JMP, CALL -> words[address++] = target(random, starts);
+                case JT, JF -> {
+                    words[address++] = value(random);
+                    words[address++] = target(random, starts);
+                }
+                case RMEM -> {
+                    words[address++] = register(random);
+                    words[address++] = random.nextInt(programSize + DATA_SIZE);
+                }
+                case WMEM -> {
+                    words[address++] = random.nextInt(4) == 0 ? random.nextInt(programSize) :
+                            programSize + random.nextInt(DATA_SIZE);
+                    words[address++] = random.nextInt(4) == 0 ? random.nextInt(Opcode.values().length) :
+                            value(random);
+                }
+                default -> {}
+            }
+        }
+        words[address] = Opcode.HALT.ordinal();
+        for (int i = programSize; i < words.length; i++)
+            words[i] = random.nextInt(Registers.ARCH_MAX_VALUE);
+
+        final byte[] program = new byte[words.length * 2];
+        for (int i = 0; i < words.length; i++) {
+            program[i * 2] = (byte) words[i];
+            program[i * 2 + 1] = (byte) (words[i] >> 8);
+        }
+        return program;
+    }
+
+    private static int register(Random random) {
+        return Registers.ARCH_MAX_VALUE + random.nextInt(Registers.REGISTERS);
+    }
+
+    private static int value(Random random) {
+        return switch (random.nextInt(3)) {
+            case 0 -> register(random);
+            case 1 -> random.nextInt(16);
+            default -> random.nextInt(Registers.ARCH_MAX_VALUE);
+        };
+    }
+
+    private static int character(Random random) {
+        return random.nextInt(2) == 0 ? register(random) : 'a' + random.nextInt(26);
+    }
+
+    private static int target(Random random, List<Integer> starts) {
+        return random.nextInt(8) == 0 ? register(random) : starts.get(random.nextInt(starts.size()));
+    }
+}
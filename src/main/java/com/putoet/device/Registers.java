@@ -2,6 +2,7 @@
  * Registers class
  * Holds a set of 8 registers, with an ID ranging form 32768 to 32775 which corresponds to the names
  * 'a' through 'h' (although the individual registers ar unaware of any name).
+ * The registers maintain a 64-bit hash of their values (see StateHash), updated on every set.
  */
 package com.putoet.device;
 
@@ -10,6 +11,7 @@ public class Registers {
     public static final int REGISTERS = 8;
 
     private final Register[] registers = new Register[REGISTERS];
+    private long stateHash = 0;
 
     /**
      * Constructor, creates 8 new Register instances
@@ -24,6 +26,7 @@ public class Registers {
      */
     public void clear() {
         for (Register register : registers) register.accept(0);
+        stateHash = 0;
     }
 
     /**
@@ -66,7 +69,18 @@ public class Registers {
      */
     public void set(int id, int value) {
         checkId(id);
-        registers[id - ARCH_MAX_VALUE].accept(value);
+        final Register register = registers[id - ARCH_MAX_VALUE];
+        stateHash ^= StateHash.change(id, register.get(), value);
+        register.accept(value);
+    }
+
+    /**
+     * Hash of the values of the registers (see StateHash), maintained on every set, so it's O(1)
+     *
+     * @return long
+     */
+    public long stateHash() {
+        return stateHash;
     }
 
     /**
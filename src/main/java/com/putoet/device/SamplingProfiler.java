@@ -0,0 +1,187 @@
+/**
+ * SamplingProfiler class
+ * Builds a statistical profile of a running device, without adding any cost to the device itself. A background
+ * (daemon) thread periodically samples the instruction pointer and the current routine (the top of the shadow call
+ * stack), which the device publishes together, with a single lazy (ordered) store, before executing an instruction,
+ * so an address is never counted for a routine it doesn't belong to. Each sample
+ * increases the counter for the sampled address and routine, unless the device was waiting for input, in which
+ * case the sample is counted as idle.
+ * The counters are only written by the sampling thread, and can be read racily (e.g. by a debugger command)
+ * while the device runs. The memory used by the profiler is fixed (two counters per memory address), so the
+ * profiler can be kept enabled for the whole session.
+ */
+package com.putoet.device;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+
+public class SamplingProfiler implements Runnable {
+    public static final long DEFAULT_INTERVAL_MICROS = 1000;
+
+    private final Device device;
+    private final long intervalNanos;
+    private final int[] addressSamples;
+    private final int[] routineSamples;
+    private long samples;
+    private long idleSamples;
+
+    private volatile boolean running = false;
+    private Thread thread;
+
+    /**
+     * Constructor
+     *
+     * @param device Device to profile
+     * @param intervalMicros sampling interval in microseconds
+     */
+    public SamplingProfiler(Device device, long intervalMicros) {
+        if (intervalMicros <= 0)
+            throw new IllegalArgumentException("Invalid sampling interval " + intervalMicros);
+
+        this.device = device;
+        this.intervalNanos = TimeUnit.MICROSECONDS.toNanos(intervalMicros);
+        this.addressSamples = new int[device.memory().size()];
+        this.routineSamples = new int[device.memory().size()];
+    }
+
+    /**
+     * Start sampling on a new daemon thread (if not sampling already)
+     */
+    public synchronized void start() {
+        if (running)
+            return;
+
+        running = true;
+        thread = new Thread(this, "sampling-profiler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop sampling, the collected samples remain available
+     */
+    public synchronized void stop() {
+        running = false;
+        if (thread != null)
+            thread.interrupt();
+        thread = null;
+    }
+
+    /**
+     * Reports if the profiler is sampling
+     *
+     * @return true if sampling
+     */
+    public boolean running() {
+        return running;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            sample();
+            LockSupport.parkNanos(intervalNanos);
+        }
+    }
+
+    /**
+     * Take a single sample of the IP and routine published by the device
+     */
+    public void sample() {
+        samples++;
+
+        final long sample = device.sample();
+        final int address = Device.sampledIp(sample);
+        if (address == Device.IDLE) {
+            idleSamples++;
+            return;
+        }
+
+        addressSamples[address]++;
+        routineSamples[Device.sampledRoutine(sample)]++;
+    }
+
+    /**
+     * Total number of samples taken
+     *
+     * @return long
+     */
+    public long samples() {
+        return samples;
+    }
+
+    /**
+     * Number of samples taken while the device was waiting for input
+     *
+     * @return long
+     */
+    public long idleSamples() {
+        return idleSamples;
+    }
+
+    /**
+     * Number of samples taken for the address
+     *
+     * @param address int
+     * @return int
+     */
+    public int addressSamples(int address) {
+        return addressSamples[address];
+    }
+
+    /**
+     * Number of samples taken while executing the routine (excluding routines called by it)
+     *
+     * @param routine int routine address
+     * @return int
+     */
+    public int routineSamples(int routine) {
+        return routineSamples[routine];
+    }
+
+    /**
+     * Reset all collected samples
+     */
+    public void reset() {
+        Arrays.fill(addressSamples, 0);
+        Arrays.fill(routineSamples, 0);
+        samples = 0;
+        idleSamples = 0;
+    }
+
+    /**
+     * Create a report of the hottest addresses and routines, each line formatted as address, number of samples,
+     * and percentage of all samples taken while the device wasn't idle. Hot addresses are followed by the
+     * instruction at that address, taken from the disassembly of the device.
+     *
+     * @param top number of addresses and routines to report
+     * @return ordered list of strings containing the report
+     */
+    public List<String> report(int top) {
+        final long total = Math.max(1, samples - idleSamples);
+        final List<String> report = new ArrayList<>();
+        report.add("Samples: " + samples + " (idle " + idleSamples + ")");
+        report.add("Hot addresses:");
+        hottest(addressSamples, top).forEach(address -> report.add(
+                "%05d: %8d %5.1f%%  %s".formatted(address, addressSamples[address],
+                        100.0 * addressSamples[address] / total, device.disassembly().instruction(address))));
+        report.add("Hot routines:");
+        hottest(routineSamples, top).forEach(routine -> report.add(
+                "%05d: %8d %5.1f%%".formatted(routine, routineSamples[routine], 100.0 * routineSamples[routine] / total)));
+        return report;
+    }
+
+    private static List<Integer> hottest(int[] counters, int top) {
+        return IntStream.range(0, counters.length)
+                .filter(address -> counters[address] > 0)
+                .boxed()
+                .sorted(Comparator.comparingInt((Integer address) -> counters[address]).reversed())
+                .limit(top)
+                .toList();
+    }
+}
@@ -0,0 +1,17 @@
+package com.putoet.device;
+
+/**
+ * Management interface of a DeviceScheduler, to monitor fairness and scheduling overhead through JMX.
+ */
+public interface SchedulerMXBean {
+    int getWorkers();
+    int getScheduledDevices();
+    long getSlices();
+    long getParks();
+    long getWakeups();
+    long getFailedDevices();
+    double getAverageSliceMicros();
+    double getAverageOverheadNanos();
+    double getAverageQueueLatencyMicros();
+    long getMaxQueueLatencyMicros();
+}
@@ -0,0 +1,145 @@
+/**
+ * SchedulerMetrics class
+ * Implements the SchedulerMXBean and holds the counters of a DeviceScheduler. Unlike DeviceMetrics, the counters
+ * are written by all worker threads of the scheduler, so they are kept in LongAdders, which don't make the workers
+ * contend on a single cache line.
+ * Per slice, the scheduler records the time spent running the device, the time spent on scheduling around it
+ * (taking the device from the run queue, updating its state, and queueing it again), and the time the device
+ * waited in the run queue before it got a worker (the queue latency, which shows how fair the scheduler is).
+ */
+package com.putoet.device;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+public class SchedulerMetrics implements SchedulerMXBean {
+    private final int workers;
+    private final AtomicInteger scheduledDevices = new AtomicInteger();
+    private final LongAdder slices = new LongAdder();
+    private final LongAdder parks = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder wakeups = new LongAdder();
+    private final LongAdder sliceNanos = new LongAdder();
+    private final LongAdder overheadNanos = new LongAdder();
+    private final LongAdder queueLatencyNanos = new LongAdder();
+    private final LongAccumulator maxQueueLatencyNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Constructor
+     *
+     * @param workers number of worker threads of the scheduler
+     */
+    public SchedulerMetrics(int workers) {
+        this.workers = workers;
+    }
+
+    /**
+     * Register the metrics with the platform MBean server as "com.putoet.device:type=Scheduler,name={name}".
+     *
+     * @param name String name of the scheduler
+     * @return ObjectName the metrics are registered with
+     */
+    public ObjectName register(String name) {
+        try {
+            final ObjectName objectName = new ObjectName(DeviceMetrics.DOMAIN + ":type=Scheduler,name=" +
+                    ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException exc) {
+            throw new IllegalStateException("Failed to register scheduler metrics for " + name, exc);
+        }
+    }
+
+    public void deviceScheduled() {
+        scheduledDevices.incrementAndGet();
+    }
+
+    public void deviceFinished() {
+        scheduledDevices.decrementAndGet();
+    }
+
+    public void deviceFailed() {
+        scheduledDevices.decrementAndGet();
+        failures.increment();
+    }
+
+    public void slice(long runNanos, long overheadNanos, long queueLatencyNanos) {
+        slices.increment();
+        sliceNanos.add(runNanos);
+        this.overheadNanos.add(overheadNanos);
+        this.queueLatencyNanos.add(queueLatencyNanos);
+        maxQueueLatencyNanos.accumulate(queueLatencyNanos);
+    }
+
+    public void parked() {
+        parks.increment();
+    }
+
+    public void wokenUp() {
+        wakeups.increment();
+    }
+
+    @Override
+    public int getWorkers() {
+        return workers;
+    }
+
+    @Override
+    public int getScheduledDevices() {
+        return scheduledDevices.get();
+    }
+
+    @Override
+    public long getSlices() {
+        return slices.sum();
+    }
+
+    @Override
+    public long getParks() {
+        return parks.sum();
+    }
+
+    @Override
+    public long getFailedDevices() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getWakeups() {
+        return wakeups.sum();
+    }
+
+    @Override
+    public double getAverageSliceMicros() {
+        return average(sliceNanos) / 1_000.0;
+    }
+
+    /**
+     * Average time per slice spent on scheduling, rather than on running the device
+     *
+     * @return double
+     */
+    @Override
+    public double getAverageOverheadNanos() {
+        return average(overheadNanos);
+    }
+
+    @Override
+    public double getAverageQueueLatencyMicros() {
+        return average(queueLatencyNanos) / 1_000.0;
+    }
+
+    @Override
+    public long getMaxQueueLatencyMicros() {
+        return maxQueueLatencyNanos.get() / 1_000;
+    }
+
+    private double average(LongAdder nanos) {
+        final long count = slices.sum();
+        return count == 0 ? 0.0 : (double) nanos.sum() / count;
+    }
+}
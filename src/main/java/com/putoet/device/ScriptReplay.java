@@ -0,0 +1,95 @@
+/**
+ * ScriptReplay class
+ * Replays a script (lines of input, like solution.txt) on a device, resuming from the checkpoint of the longest
+ * prefix of the script found in a CheckpointCache. Every time the device stops for input after a line of the
+ * script, it is checkpointed, so a variant of a script only executes the lines after the prefix it shares with
+ * scripts replayed before.
+ * A checkpoint holds the state of the device (memory, registers, stack, instruction pointer) and all output written
+ * up to that point, but not the state of a connected debugger (like breakpoints) or a memoizer.
+ */
+package com.putoet.device;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ScriptReplay {
+    public static final long MAX_LINE_INSTRUCTIONS = 100_000_000L;
+    private static final long SLICE = 100_000L;
+
+    private final CheckpointCache cache;
+
+    /**
+     * Result of a replay
+     *
+     * @param reason StopReason why the replay stopped, INPUT when all lines were consumed
+     * @param skipped number of lines resumed from a checkpoint
+     * @param executed number of lines executed
+     */
+    public record Result(StopReason reason, int skipped, int executed) {}
+
+    /**
+     * Constructor
+     *
+     * @param cache CheckpointCache
+     */
+    public ScriptReplay(CheckpointCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Replay a script on a device which didn't run yet. The device is started from the checkpoint of the longest
+     * prefix of the script in the cache (or from the boot image when there is none), after which the remaining lines
+     * are fed to the keyboard of the device one by one. The replay stops when all lines are consumed, or when the
+     * device halts, exits, or doesn't ask for input within MAX_LINE_INSTRUCTIONS after a line.
+     *
+     * @param device Device which didn't run yet
+     * @param output the stream the Crt (and keyboard echo) of the device write to
+     * @param boot BootImage of the program
+     * @param script lines of input, without newlines
+     * @return Result
+     */
+    public Result replay(Device device, ByteArrayOutputStream output, BootImage boot, List<String> script) {
+        final List<String> keys = new ArrayList<>(script.size());
+        String key = boot.hash();
+        for (var line : script) {
+            key = CheckpointCache.key(key, line);
+            keys.add(key);
+        }
+
+        int next = 0;
+        BootImage start = boot;
+        for (int index = cache.longest(keys); index >= 0; index--) {
+            final BootImage checkpoint = cache.get(keys.get(index));
+            if (checkpoint != null) {
+                start = checkpoint;
+                next = index + 1;
+                break;
+            }
+        }
+        device.boot(start);
+
+        final int skipped = next;
+        int executed = 0;
+        StopReason reason = StopReason.INPUT;
+        while (next < script.size() && reason == StopReason.INPUT) {
+            device.in().accept(script.get(next) + "\n");
+            executed++;
+            reason = run(device);
+            if (reason == StopReason.INPUT)
+                cache.put(keys.get(next), BootImage.of(device, keys.get(next), output.toByteArray()));
+            next++;
+        }
+
+        cache.replayed(skipped, executed);
+        return new Result(reason, skipped, executed);
+    }
+
+    private static StopReason run(Device device) {
+        final long limit = device.metrics().getInstructionsExecuted() + MAX_LINE_INSTRUCTIONS;
+        StopReason reason = device.run(SLICE);
+        while (reason == StopReason.BUDGET && device.metrics().getInstructionsExecuted() < limit)
+            reason = device.run(SLICE);
+        return reason;
+    }
+}
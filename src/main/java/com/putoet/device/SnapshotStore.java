@@ -0,0 +1,263 @@
+/**
+ * SnapshotStore class
+ * History of snapshots of a device (memory, registers, stack and instruction pointer), for instance one per command,
+ * which only stores the memory pages that changed since the previous snapshot. The changed pages are found using the
+ * page versions of the memory (see Memory.changedPages), and taken over without copying them (the memory copies a
+ * page on its next write instead, see Memory.sharePage). Pages are deduplicated by content, so a page that returns to
+ * an earlier content (or equals another page) is stored once.
+ * Every KEYFRAME_INTERVAL snapshots, the full page table is stored (a keyframe), so reconstructing a snapshot takes
+ * at most KEYFRAME_INTERVAL deltas. A snapshot is reconstructed as a BootImage, from which a device can be started.
+ * Compaction removes snapshots which are no longer needed, and the pages only they referred to.
+ */
+package com.putoet.device;
+
+import java.util.*;
+import java.util.function.IntPredicate;
+
+public class SnapshotStore {
+    public static final int KEYFRAME_INTERVAL = 64;
+
+    private final Device device;
+    private final int[] versions = new int[Memory.PAGES];
+    private final Page[] current = new Page[Memory.PAGES];
+    private final List<Snapshot> snapshots = new ArrayList<>();
+    private Map<Page, Page> pool = new HashMap<>();
+    private int nextId;
+    private int sinceKeyframe;
+
+    private static final class Page {
+        private final byte[] bytes;
+        private final long hash;
+
+        private Page(byte[] bytes) {
+            this.bytes = bytes;
+            long hash = 0;
+            for (int i = 0; i < bytes.length; i += 2)
+                hash ^= StateHash.of(i / 2, Memory.bytesToInt(bytes[i], bytes[i + 1]));
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Page page && hash == page.hash && Arrays.equals(bytes, page.bytes);
+        }
+    }
+
+    private record Snapshot(int id, long stateHash, int ip, int[] registers, int[] stack, int[] pages,
+                            Page[] contents, Page[] keyframe) {}
+
+    /**
+     * Constructor
+     *
+     * @param device Device to take snapshots of
+     */
+    public SnapshotStore(Device device) {
+        this.device = device;
+    }
+
+    /**
+     * Take a snapshot of the device, which must not run while the snapshot is taken (e.g. it waits for input).
+     *
+     * @return int id of the snapshot
+     */
+    public synchronized int record() {
+        final Memory memory = device.memory();
+        final BitSet changed = memory.changedPages(versions);
+        final int[] pages = new int[changed.cardinality()];
+        final Page[] contents = new Page[pages.length];
+        int count = 0;
+        for (int page = changed.nextSetBit(0); page >= 0; page = changed.nextSetBit(page + 1)) {
+            final Page content = intern(memory.sharePage(page));
+            if (content != current[page]) {
+                current[page] = content;
+                pages[count] = page;
+                contents[count++] = content;
+            }
+        }
+
+        final int[] registers = new int[Registers.REGISTERS];
+        for (int i = 0; i < Registers.REGISTERS; i++)
+            registers[i] = device.registers().get(Registers.ARCH_MAX_VALUE + i);
+        final int[] stack = device.stack().stream().mapToInt(Integer::intValue).toArray();
+
+        final Snapshot snapshot = new Snapshot(nextId++, device.stateHash(), device.ip().get(), registers, stack,
+                Arrays.copyOf(pages, count), Arrays.copyOf(contents, count), keyframe() ? current.clone() : null);
+        snapshots.add(snapshot);
+        return snapshot.id();
+    }
+
+    /**
+     * Reconstruct a snapshot
+     *
+     * @param id int id of the snapshot
+     * @return BootImage of the snapshot, without output
+     * @throws NoSuchElementException when there is no snapshot with the id (anymore)
+     */
+    public synchronized BootImage snapshot(int id) {
+        final int index = index(id);
+        final Page[] table = table(index);
+        final byte[][] pages = new byte[Memory.PAGES][];
+        for (int page = 0; page < Memory.PAGES; page++)
+            pages[page] = table[page] != null ? table[page].bytes : null;
+
+        final Snapshot snapshot = snapshots.get(index);
+        return BootImage.of(Long.toHexString(snapshot.stateHash()), ProgramImage.of(pages),
+                snapshot.registers().clone(), snapshot.stack().clone(), snapshot.ip());
+    }
+
+    /**
+     * State hash of the device when the snapshot was taken (see Device.stateHash())
+     *
+     * @param id int id of the snapshot
+     * @return long
+     */
+    public synchronized long stateHash(int id) {
+        return snapshots.get(index(id)).stateHash();
+    }
+
+    /**
+     * Remove the snapshots that don't need to be kept, and the pages only they referred to. The deltas of the kept
+     * snapshots are recalculated, so any snapshot can still be reconstructed.
+     *
+     * @param keep IntPredicate which is true for the id of a snapshot to keep
+     * @return number of snapshots removed
+     */
+    public synchronized int compact(IntPredicate keep) {
+        final List<Snapshot> kept = new ArrayList<>();
+        final Page[] table = new Page[Memory.PAGES];
+        final Page[] previous = new Page[Memory.PAGES];
+        pool = new HashMap<>();
+        sinceKeyframe = 0;
+
+        for (var snapshot : snapshots) {
+            if (snapshot.keyframe() != null)
+                System.arraycopy(snapshot.keyframe(), 0, table, 0, Memory.PAGES);
+            else
+                for (int i = 0; i < snapshot.pages().length; i++)
+                    table[snapshot.pages()[i]] = snapshot.contents()[i];
+            if (!keep.test(snapshot.id()))
+                continue;
+
+            final int[] pages = new int[Memory.PAGES];
+            final Page[] contents = new Page[Memory.PAGES];
+            int count = 0;
+            for (int page = 0; page < Memory.PAGES; page++) {
+                if (table[page] != previous[page]) {
+                    previous[page] = table[page];
+                    pages[count] = page;
+                    contents[count++] = intern(table[page]);
+                }
+            }
+            kept.add(new Snapshot(snapshot.id(), snapshot.stateHash(), snapshot.ip(), snapshot.registers(),
+                    snapshot.stack(), Arrays.copyOf(pages, count), Arrays.copyOf(contents, count),
+                    keyframe() ? table.clone() : null));
+        }
+        for (int page = 0; page < Memory.PAGES; page++)
+            current[page] = intern(current[page]);
+        // the next snapshot can't be a delta, as the last snapshot (the state current refers to) may be removed
+        sinceKeyframe = 0;
+
+        final int removed = snapshots.size() - kept.size();
+        snapshots.clear();
+        snapshots.addAll(kept);
+        return removed;
+    }
+
+    /**
+     * Ids of the snapshots in the store, oldest first
+     *
+     * @return int[]
+     */
+    public synchronized int[] ids() {
+        return snapshots.stream().mapToInt(Snapshot::id).toArray();
+    }
+
+    /**
+     * Number of snapshots in the store
+     *
+     * @return int
+     */
+    public synchronized int size() {
+        return snapshots.size();
+    }
+
+    /**
+     * Number of distinct pages in the store
+     *
+     * @return int
+     */
+    public synchronized int pages() {
+        return pool.size();
+    }
+
+    /**
+     * Approximate number of bytes the store occupies on the heap
+     *
+     * @return long
+     */
+    public synchronized long bytes() {
+        long bytes = pool.size() * (Memory.PAGE_SIZE * 2L + 64);
+        for (var snapshot : snapshots) {
+            bytes += 128 + snapshot.registers().length * 4L + snapshot.stack().length * 4L +
+                    snapshot.pages().length * 12L;
+            if (snapshot.keyframe() != null)
+                bytes += Memory.PAGES * 8L;
+        }
+        return bytes;
+    }
+
+    private boolean keyframe() {
+        if (sinceKeyframe == 0) {
+            sinceKeyframe = KEYFRAME_INTERVAL - 1;
+            return true;
+        }
+        sinceKeyframe--;
+        return false;
+    }
+
+    private Page intern(byte[] bytes) {
+        return intern(new Page(bytes));
+    }
+
+    private Page intern(Page page) {
+        if (page == null)
+            return null;
+
+        final Page pooled = pool.putIfAbsent(page, page);
+        return pooled != null ? pooled : page;
+    }
+
+    private int index(int id) {
+        int low = 0, high = snapshots.size() - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int middleId = snapshots.get(middle).id();
+            if (middleId == id)
+                return middle;
+            if (middleId < id)
+                low = middle + 1;
+            else
+                high = middle - 1;
+        }
+        throw new NoSuchElementException("No snapshot " + id);
+    }
+
+    private Page[] table(int index) {
+        int keyframe = index;
+        while (snapshots.get(keyframe).keyframe() == null)
+            keyframe--;
+
+        final Page[] table = snapshots.get(keyframe).keyframe().clone();
+        for (int i = keyframe + 1; i <= index; i++) {
+            final Snapshot snapshot = snapshots.get(i);
+            for (int j = 0; j < snapshot.pages().length; j++)
+                table[snapshot.pages()[j]] = snapshot.contents()[j];
+        }
+        return table;
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * StateHash class
+ * Hash functions for the incremental 64-bit state hash of Memory and Registers (and Device, which combines them). The
+ * hash of a state is the xor of the hash of every (address, value) pair in it, so a write only needs to xor out the
+ * hash of the old pair and xor in the hash of the new one, which makes the hash of a state available in O(1).
+ * The hash of a pair with value 0 is 0, so empty memory has hash 0, and only the non-zero words of a program image
+ * need to be hashed. The hash of a pair is mix(address, value) ^ mix(address, 0), where mix is a bijective 64-bit
+ * finalizer (a shortened splitmix64) of the address and value, so two states that differ in a single word never have
+ * the same hash. Registers, the instruction pointer and the stack use addresses above the memory addresses.
+ * The hash only depends on the contents of a state, never on how it was reached, so it is the same for forked and
+ * restored devices, and for every run of the JVM.
+ */
+package com.putoet.device;
+
+public final class StateHash {
+    public static final int IP_ADDRESS = Registers.ARCH_MAX_VALUE + Registers.REGISTERS;
+    public static final int STACK_DEPTH_ADDRESS = IP_ADDRESS + 1;
+    public static final int STACK_ADDRESS = STACK_DEPTH_ADDRESS + 1;
+
+    private static final long SEED = 0x5ca1ab1e_0dd5eedL;
+
+    private StateHash() {}
+
+    /**
+     * Hash of an (address, value) pair, which is 0 for value 0
+     *
+     * @param address int
+     * @param value int
+     * @return long
+     */
+    public static long of(int address, int value) {
+        return change(address, 0, value);
+    }
+
+    /**
+     * Change of the hash of a state when the value at an address changes from one value to another, to be xor-ed
+     * into the hash of the state
+     *
+     * @param address int
+     * @param from int old value
+     * @param to int new value
+     * @return long
+     */
+    public static long change(int address, int from, int to) {
+        return from == to ? 0L : mix(address, from) ^ mix(address, to);
+    }
+
+    private static long mix(int address, int value) {
+        long z = SEED + (((long) address << 16) | (value & 0xffff)) * 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 29)) * 0xbf58476d1ce4e5b9L;
+        return z ^ (z >>> 32);
+    }
+}
@@ -0,0 +1,19 @@
+package com.putoet.device;
+
+/**
+ * Reason why Device.run(budget) (or Device.run(budget, condition)) returned control to its caller
+ */
+public enum StopReason {
+    /** the next instruction is HALT */
+    HALTED,
+    /** the device was asked to exit */
+    EXITED,
+    /** the next instruction is IN, and no input is available */
+    INPUT,
+    /** the device was paused, or its runFor budget ran out (see DeviceControl) */
+    PAUSED,
+    /** the budget of instructions was used up */
+    BUDGET,
+    /** the condition passed to Device.run(budget, condition) holds for the next instruction */
+    CONDITION
+}
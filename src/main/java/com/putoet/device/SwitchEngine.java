@@ -0,0 +1,157 @@
+/**
+ * SwitchEngine class
+ * Execution engine which doesn't create an object per instruction: it decodes the instruction at the IP into a single
+ * reused instruction (opcode and operands), which executes by a switch on its opcode. Fetching reads the same memory
+ * words as the Interpreter (so there is nothing to invalidate when the program modifies itself), and executing has
+ * the same semantics and the same errors (invalid numbers, an empty stack).
+ * As the instruction is reused, it's only valid until the next fetch.
+ */
+package com.putoet.device;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Stack;
+
+public class SwitchEngine implements ExecutionEngine {
+    private final Registers registers;
+    private final Memory memory;
+    private final Stack<Integer> stack;
+    private final InputStream in;
+    private final OutputStream out;
+    private final Current current = new Current();
+
+    /**
+     * Constructor
+     *
+     * @param registers Registers component
+     * @param memory Memory component
+     * @param stack Stack component
+     * @param in In component
+     * @param out Out component
+     */
+    public SwitchEngine(Registers registers, Memory memory, Stack<Integer> stack, InputStream in, OutputStream out) {
+        this.registers = registers;
+        this.memory = memory;
+        this.stack = stack;
+        this.in = in;
+        this.out = out;
+    }
+
+    @Override
+    public Instruction next(Register ip) {
+        final int address = ip.get();
+        final Opcode opcode = Opcode.of(memory.read(address));
+        final int count = opcode.operands();
+        if (count > 0 && address + count >= memory.size())
+            throw new OutOfMemoryError("IP=" + address + " using operand " + count);
+
+        current.ip = ip;
+        current.opcode = opcode;
+        current.count = count;
+        for (int i = 0; i < count; i++)
+            current.operand[i] = memory.read(address + i + 1);
+        return current;
+    }
+
+    private final class Current implements Instruction {
+        private final int[] operand = new int[3];
+        private Register ip;
+        private Opcode opcode;
+        private int count;
+
+        @Override
+        public Opcode opcode() {
+            return opcode;
+        }
+
+        @Override
+        public int size() {
+            return 1 + count;
+        }
+
+        @Override
+        public int operand(int index) {
+            if (index >= count)
+                throw new ArrayIndexOutOfBoundsException(index);
+            return operand[index];
+        }
+
+        @Override
+        public void execute() {
+            switch (opcode) {
+                case SET -> registers.set(operand[0], value(1));
+                case PUSH -> stack.push(value(0));
+                case POP -> registers.set(operand[0], stack.pop());
+                case EQ -> registers.set(operand[0], value(1) == value(2) ? 1 : 0);
+                case GT -> registers.set(operand[0], value(1) > value(2) ? 1 : 0);
+                case ADD -> registers.set(operand[0], (value(1) + value(2)) % Registers.ARCH_MAX_VALUE);
+                case MULT -> registers.set(operand[0], (value(1) * value(2)) % Registers.ARCH_MAX_VALUE);
+                case MOD -> registers.set(operand[0], (value(1) % value(2)) % Registers.ARCH_MAX_VALUE);
+                case AND -> registers.set(operand[0], value(1) & value(2));
+                case OR -> registers.set(operand[0], value(1) | value(2));
+                case NOT -> registers.set(operand[0], (~value(1)) & 0b0111_1111_1111_1111);
+                case RMEM -> registers.set(operand[0], memory.rmem(value(1)));
+                case WMEM -> {
+                    final int value = value(1);
+                    memory.wmem(value(0), value);
+                }
+                case OUT -> {
+                    try {
+                        out.write(value(0));
+                    } catch (IOException exc) {
+                        throw new UncheckedIOException(exc);
+                    }
+                }
+                case IN -> {
+                    try {
+                        final int value = in.read();
+                        registers.set(operand[0], value);
+                    } catch (IOException exc) {
+                        throw new UncheckedIOException(exc);
+                    }
+                }
+                case HALT, JMP, JT, JF, CALL, RET, NOOP -> {}
+            }
+        }
+
+        @Override
+        public void run() {
+            switch (opcode) {
+                case JMP -> ip.accept(value(0));
+                case JT -> ip.accept(value(0) != 0 ? value(1) : ip.get() + 3);
+                case JF -> ip.accept(value(0) == 0 ? value(1) : ip.get() + 3);
+                case CALL -> {
+                    stack.push(ip.get() + 2);
+                    ip.accept(value(0));
+                }
+                case RET -> ip.accept(stack.pop());
+                default -> {
+                    execute();
+                    ip.accept(ip.get() + 1 + count);
+                }
+            }
+        }
+
+        @Override
+        public String dump(boolean smart) {
+            return InstructionBase.format(opcode, Arrays.copyOf(operand, count), smart ? registers : null);
+        }
+
+        @Override
+        public String toString() {
+            return dump(false);
+        }
+
+        private int value(int index) {
+            final int number = operand[index];
+            if (number >= Interpreter.ILLEGAL_NUMBER)
+                throw new IllegalStateException("Invalid number encountered '" + number + "' for instruction at " +
+                        ip.get());
+
+            return Registers.isRegister(number) ? registers.get(number) : number;
+        }
+    }
+}
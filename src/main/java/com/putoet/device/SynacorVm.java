@@ -0,0 +1,131 @@
+/**
+ * SynacorVm class
+ * Synchronous embedding API over a Device, for tools that drive a program command by command: boot() starts the
+ * program, send(line) types a line and returns the output the program writes until it asks for the next line, and
+ * runUntil(condition, maxInstructions) runs until a condition on the device holds. Everything runs on the caller's
+ * thread, so there are no threads, no System.in, and no sleeps involved.
+ * The device is started from a BootImage (see BootCache), so booting (also to start over) costs a copy of the
+ * registers and stack, as the memory shares the pages of the image until the program writes them. The guest print
+ * routine is replaced by a bulk write (see PrintIntrinsic), the keyboard doesn't echo the lines sent, and the output
+ * is collected in a single buffer that is reused for every command, so a command costs little more than the
+ * instructions the program executes for it.
+ * A SynacorVm is not thread-safe, use one per thread.
+ */
+package com.putoet.device;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Predicate;
+
+public class SynacorVm {
+    public static final long MAX_LINE_INSTRUCTIONS = ScriptReplay.MAX_LINE_INSTRUCTIONS;
+
+    private final BootImage image;
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private Device device;
+    private StopReason reason;
+
+    /**
+     * Constructor, using the boot image of a program
+     *
+     * @param image BootImage
+     */
+    public SynacorVm(BootImage image) {
+        this.image = image;
+    }
+
+    /**
+     * Constructor, boots the program cold to capture its boot image (see BootImage.capture). Use a BootCache and
+     * SynacorVm(BootImage) to skip the cold boot.
+     *
+     * @param program little-endian program bytes
+     */
+    public SynacorVm(byte[] program) {
+        this(BootImage.capture(program));
+    }
+
+    /**
+     * (Re)start the program from its boot image, discarding the state of a previous run.
+     *
+     * @return String output written while booting
+     */
+    public String boot() {
+        output.reset();
+        device = new Device(new Registers(), new Memory(), new Keyboard(OutputStream.nullOutputStream()),
+                new Crt(output));
+        device.printIntrinsic(PrintIntrinsic.Mode.ON);
+        device.boot(image);
+        reason = device.run(MAX_LINE_INSTRUCTIONS);
+        return output();
+    }
+
+    /**
+     * Send a line of input to the program, and run it until it asks for the next line, halts, or doesn't ask for
+     * input within MAX_LINE_INSTRUCTIONS (see lastStopReason()). Empty lines and lines starting with '#' are ignored
+     * by the keyboard.
+     *
+     * @param line String without newline
+     * @return String output written since the previous call
+     * @throws IllegalStateException when the program wasn't booted, or halted
+     */
+    public String send(String line) {
+        checkRunning();
+        device.in().accept(line + "\n");
+        reason = device.run(MAX_LINE_INSTRUCTIONS);
+        return output();
+    }
+
+    /**
+     * Run the program until the condition holds before the next instruction (CONDITION), it asks for input that
+     * wasn't sent (INPUT), it halts (HALTED), or it executed maxInstructions (BUDGET). The condition is also tested
+     * before the first instruction, so a condition that still holds stops the program immediately. The output
+     * written is kept until the next call of output() or send().
+     *
+     * @param condition Predicate of Device, like device -> device.ip().get() == 5489
+     * @param maxInstructions maximum number of instructions to execute
+     * @return StopReason
+     * @throws IllegalStateException when the program wasn't booted, or halted
+     */
+    public StopReason runUntil(Predicate<Device> condition, long maxInstructions) {
+        checkRunning();
+        reason = device.run(maxInstructions, condition);
+        return reason;
+    }
+
+    /**
+     * Output written since the previous call of output(), send(), or boot(), which is removed from the buffer
+     *
+     * @return String
+     */
+    public String output() {
+        final String text = output.toString(StandardCharsets.ISO_8859_1);
+        output.reset();
+        return text;
+    }
+
+    /**
+     * Reason the program stopped on the last call of boot(), send(), or runUntil()
+     *
+     * @return StopReason, or null when the program wasn't booted
+     */
+    public StopReason lastStopReason() {
+        return reason;
+    }
+
+    /**
+     * Device running the program, to inspect (or change) its state between calls
+     *
+     * @return Device, or null when the program wasn't booted
+     */
+    public Device device() {
+        return device;
+    }
+
+    private void checkRunning() {
+        if (device == null)
+            throw new IllegalStateException("Program not booted");
+        if (reason == StopReason.HALTED || reason == StopReason.EXITED)
+            throw new IllegalStateException("Program stopped (" + reason + ")");
+    }
+}
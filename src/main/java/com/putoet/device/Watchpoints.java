@@ -0,0 +1,230 @@
+/**
+ * Watchpoints class
+ * Memory watchpoints of a device: a watchpoint reports every RMEM read from, and/or every WMEM write to, a memory
+ * address, optionally only when the value read or written matches a condition (like "== 5" or "!= 0"). Reports go to
+ * a listener, like the debugger, which halts the device on the next instruction.
+ * The watched addresses are kept in two bitmaps (one for reads, one for writes), which the memory tests on RMEM and
+ * WMEM only (see Memory.rmem and Memory.wmem), so instruction fetches don't check them, and execution without
+ * watchpoints pays no more than a bit test per memory access. The watchpoints themselves (with their conditions) are
+ * only looked up for a watched address.
+ * Memory accessed by an intrinsic (see PrintIntrinsic) or skipped by memoization (see Memoizer) is not reported.
+ */
+package com.putoet.device;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+public class Watchpoints {
+    /**
+     * Comparison of the value read or written with the value of a watchpoint condition
+     */
+    public enum Operator {
+        EQ("=="), NE("!="), LT("<"), LE("<="), GT(">"), GE(">=");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        /**
+         * Operator for a symbol
+         *
+         * @param symbol one of ==, !=, <, <=, >, >=
+         * @return Operator
+         * @throws IllegalArgumentException for an unknown symbol
+         */
+        public static Operator of(String symbol) {
+            for (var operator : values())
+                if (operator.symbol.equals(symbol))
+                    return operator;
+
+            throw new IllegalArgumentException("Invalid watchpoint condition operator: " + symbol);
+        }
+
+        /**
+         * Compare a value read or written with the value of a condition
+         *
+         * @param actual int value read or written
+         * @param value int value of the condition
+         * @return boolean
+         */
+        public boolean test(int actual, int value) {
+            return switch (this) {
+                case EQ -> actual == value;
+                case NE -> actual != value;
+                case LT -> actual < value;
+                case LE -> actual <= value;
+                case GT -> actual > value;
+                case GE -> actual >= value;
+            };
+        }
+
+        @Override
+        public String toString() {
+            return symbol;
+        }
+    }
+
+    /**
+     * Watchpoint on a memory address
+     *
+     * @param address watched address
+     * @param read true to report reads (RMEM)
+     * @param write true to report writes (WMEM)
+     * @param operator condition operator, or null to report every access
+     * @param value condition value
+     */
+    public record Watchpoint(int address, boolean read, boolean write, Operator operator, int value) {
+        public Watchpoint {
+            if (address < 0 || address >= Registers.ARCH_MAX_VALUE)
+                throw new IllegalArgumentException("Invalid watchpoint address: " + address);
+            if (!read && !write)
+                throw new IllegalArgumentException("Watchpoint at " + address + " watches nothing");
+        }
+
+        /**
+         * Checks the condition of the watchpoint against the value read or written
+         *
+         * @param actual int value read or written
+         * @return true when the watchpoint has no condition, or the value matches it
+         */
+        public boolean matches(int actual) {
+            return operator == null || operator.test(actual, value);
+        }
+
+        @Override
+        public String toString() {
+            return "%05d %s".formatted(address, (read ? "r" : "") + (write ? "w" : "")) +
+                    (operator != null ? " " + operator + " " + value : "");
+        }
+    }
+
+    /**
+     * Reported access to a watched address
+     *
+     * @param watchpoint Watchpoint that matched
+     * @param write true for a write, false for a read
+     * @param from value before the access
+     * @param to value after the access (the same as from for a read)
+     */
+    public record Hit(Watchpoint watchpoint, boolean write, int from, int to) {
+        @Override
+        public String toString() {
+            return write ?
+                    "Watchpoint %05d written: %d -> %d".formatted(watchpoint.address(), from, to) :
+                    "Watchpoint %05d read: %d".formatted(watchpoint.address(), to);
+        }
+    }
+
+    private static final Consumer<Hit> NO_LISTENER = hit -> {};
+
+    private final long[] reads = new long[Registers.ARCH_MAX_VALUE / Long.SIZE];
+    private final long[] writes = new long[Registers.ARCH_MAX_VALUE / Long.SIZE];
+    private final Map<Integer, Watchpoint> watchpoints = new TreeMap<>();
+    private Consumer<Hit> listener = NO_LISTENER;
+
+    /**
+     * Set the listener for accesses to watched addresses, which is called on the device thread, after the access.
+     *
+     * @param listener Consumer of Hit, or null to remove the listener
+     */
+    public synchronized void listener(Consumer<Hit> listener) {
+        this.listener = listener != null ? listener : NO_LISTENER;
+    }
+
+    /**
+     * Add a watchpoint, replacing the watchpoint at the same address (if any)
+     *
+     * @param watchpoint Watchpoint
+     */
+    public synchronized void add(Watchpoint watchpoint) {
+        remove(watchpoint.address());
+        watchpoints.put(watchpoint.address(), watchpoint);
+        if (watchpoint.read())
+            reads[watchpoint.address() / Long.SIZE] |= 1L << watchpoint.address();
+        if (watchpoint.write())
+            writes[watchpoint.address() / Long.SIZE] |= 1L << watchpoint.address();
+    }
+
+    /**
+     * Remove the watchpoint at an address
+     *
+     * @param address int
+     * @return true if there was a watchpoint at the address
+     */
+    public synchronized boolean remove(int address) {
+        if (address < 0 || address >= Registers.ARCH_MAX_VALUE)
+            return false;
+
+        reads[address / Long.SIZE] &= ~(1L << address);
+        writes[address / Long.SIZE] &= ~(1L << address);
+        return watchpoints.remove(address) != null;
+    }
+
+    /**
+     * Remove all watchpoints
+     */
+    public synchronized void clear() {
+        watchpoints.clear();
+        Arrays.fill(reads, 0L);
+        Arrays.fill(writes, 0L);
+    }
+
+    /**
+     * Watchpoints ordered by address
+     *
+     * @return List of Watchpoint
+     */
+    public synchronized List<Watchpoint> list() {
+        return List.copyOf(watchpoints.values());
+    }
+
+    /**
+     * Checks if reads from an address are watched
+     *
+     * @param address int
+     * @return boolean
+     */
+    boolean reads(int address) {
+        return (reads[address / Long.SIZE] & (1L << address)) != 0;
+    }
+
+    /**
+     * Checks if writes to an address are watched
+     *
+     * @param address int
+     * @return boolean
+     */
+    boolean writes(int address) {
+        return (writes[address / Long.SIZE] & (1L << address)) != 0;
+    }
+
+    /**
+     * Report a read from a watched address, if the value matches the watchpoint condition
+     *
+     * @param address int
+     * @param value int value read
+     */
+    synchronized void read(int address, int value) {
+        final Watchpoint watchpoint = watchpoints.get(address);
+        if (watchpoint != null && watchpoint.read() && watchpoint.matches(value))
+            listener.accept(new Hit(watchpoint, false, value, value));
+    }
+
+    /**
+     * Report a write to a watched address, if the new value matches the watchpoint condition
+     *
+     * @param address int
+     * @param from int value before the write
+     * @param to int value written
+     */
+    synchronized void written(int address, int from, int to) {
+        final Watchpoint watchpoint = watchpoints.get(address);
+        if (watchpoint != null && watchpoint.write() && watchpoint.matches(to))
+            listener.accept(new Hit(watchpoint, true, from, to));
+    }
+}
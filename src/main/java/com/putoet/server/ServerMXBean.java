@@ -0,0 +1,11 @@
+package com.putoet.server;
+
+/**
+ * Management interface of a SynacorServer, to monitor the sessions through JMX (e.g. using JConsole or VisualVM).
+ */
+public interface ServerMXBean {
+    int getActiveSessions();
+    long getTotalSessions();
+    long getRejectedSessions();
+    long getLimitedSessions();
+}
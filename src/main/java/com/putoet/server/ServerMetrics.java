@@ -0,0 +1,78 @@
+/**
+ * ServerMetrics class
+ * Implements the ServerMXBean and holds the session counters of a SynacorServer. Like DeviceMetrics, the counters
+ * are plain primitive fields, which are only written by the server thread (the thread running the selector), and
+ * read racily by the JMX agent.
+ */
+package com.putoet.server;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+public class ServerMetrics implements ServerMXBean {
+    public static final String DOMAIN = "com.putoet.server";
+
+    private int activeSessions;
+    private long totalSessions;
+    private long rejectedSessions;
+    private long limitedSessions;
+
+    /**
+     * Register the metrics with the platform MBean server as "com.putoet.server:type=Server,name={name}".
+     *
+     * @param name String name of the server
+     * @return ObjectName the metrics are registered with
+     */
+    public ObjectName register(String name) {
+        try {
+            final ObjectName objectName = new ObjectName(DOMAIN + ":type=Server,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException exc) {
+            throw new IllegalStateException("Failed to register server metrics for " + name, exc);
+        }
+    }
+
+    public void sessionOpened() {
+        activeSessions++;
+        totalSessions++;
+    }
+
+    public void sessionClosed() {
+        activeSessions--;
+    }
+
+    public void sessionRejected() {
+        rejectedSessions++;
+    }
+
+    public void sessionLimited() {
+        limitedSessions++;
+    }
+
+    @Override
+    public int getActiveSessions() {
+        return activeSessions;
+    }
+
+    @Override
+    public long getTotalSessions() {
+        return totalSessions;
+    }
+
+    @Override
+    public long getRejectedSessions() {
+        return rejectedSessions;
+    }
+
+    /**
+     * Number of sessions closed because they exceeded the line length or instruction limit
+     *
+     * @return long
+     */
+    @Override
+    public long getLimitedSessions() {
+        return limitedSessions;
+    }
+}
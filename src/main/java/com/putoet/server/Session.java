@@ -0,0 +1,216 @@
+/**
+ * Session class
+ * A single client connection of the SynacorServer, with its own Device, Keyboard, and Crt. The Keyboard is fed
+ * with the lines received from the connection (carriage returns and non-ASCII bytes, like telnet negotiation, are
+ * dropped), and the Crt writes to a SessionOutput, which is drained into the connection. The Keyboard doesn't echo
+ * input, as the client already shows what was typed.
+ * A session doesn't own a thread. Its device is scheduled on the DeviceScheduler of the server, which parks it while
+ * it waits for input, or while the client doesn't keep up with the output. The session wakes its device up when a
+ * line arrives, or when the output was sent.
+ * The scheduler calls afterSlice() on its worker thread, all other methods are called by the server thread.
+ */
+package com.putoet.server;
+
+import com.putoet.device.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+public class Session {
+    private static final int READ_BUFFER_SIZE = 512;
+
+    private final SocketChannel channel;
+    private final SessionLimits limits;
+    private final Keyboard keyboard;
+    private final SessionOutput output = new SessionOutput();
+    private final Device device;
+    private final StringBuilder line = new StringBuilder();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+    private SelectionKey key;
+    private DeviceScheduler.Task task;
+    private volatile boolean throttled = false;
+    private volatile boolean finished = false;
+    private volatile boolean limited = false;
+
+    /**
+     * Constructor, creates a device started from the boot image, with memory sharing the pages of the image, so the
+     * session only allocates the memory pages its device writes to. The guest print routine is replaced by a bulk
+     * write.
+     *
+     * @param channel SocketChannel of the connection
+     * @param image BootImage
+     * @param limits SessionLimits
+     */
+    public Session(SocketChannel channel, BootImage image, SessionLimits limits) {
+        this.channel = channel;
+        this.limits = limits;
+        this.keyboard = new Keyboard(OutputStream.nullOutputStream());
+        this.device = new Device(new Registers(), new Memory(), keyboard, new Crt(output));
+        this.device.printIntrinsic(PrintIntrinsic.Mode.ON);
+        this.device.boot(image);
+    }
+
+    /**
+     * Device of the session
+     *
+     * @return Device
+     */
+    public Device device() {
+        return device;
+    }
+
+    /**
+     * Set the selection key of the connection, after registering it with the selector of the server.
+     *
+     * @param key SelectionKey
+     */
+    public void key(SelectionKey key) {
+        this.key = key;
+    }
+
+    /**
+     * Schedule the device of the session. When the device fails (which skips the end of its slice), the client gets
+     * an error line, and the session is finished.
+     *
+     * @param scheduler DeviceScheduler
+     * @param listener called after every slice of the device, and when it failed, on the worker thread
+     */
+    public void schedule(DeviceScheduler scheduler, Runnable listener) {
+        task = scheduler.submit(device, reason -> {
+            final boolean proceed = afterSlice(reason);
+            listener.run();
+            return proceed;
+        });
+        task.done().whenComplete((reason, exc) -> {
+            if (exc == null)
+                return;
+
+            message("Device failed: " + exc.getClass().getSimpleName() + ".");
+            finished = true;
+            listener.run();
+        });
+    }
+
+    /**
+     * Checks if the session was closed, or must be closed, because it exceeded a limit
+     *
+     * @return true if the session exceeded a limit
+     */
+    public boolean limited() {
+        return limited;
+    }
+
+    /**
+     * Read the available bytes from the connection, and pass every complete line to the keyboard.
+     *
+     * @return false if the connection was closed by the client, or the session exceeded the line length limit
+     * @throws IOException when reading from the connection fails
+     */
+    public boolean read() throws IOException {
+        readBuffer.clear();
+        if (channel.read(readBuffer) < 0)
+            return false;
+
+        readBuffer.flip();
+        while (readBuffer.hasRemaining()) {
+            final int b = readBuffer.get();
+            if (b == '\n') {
+                keyboard.accept(line.append('\n').toString());
+                line.setLength(0);
+                task.wakeup();
+            } else if (b >= ' ' && b < 127) {
+                if (line.length() >= limits.maxLineLength()) {
+                    limited = true;
+                    return false;
+                }
+                line.append((char) b);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Handle the end of a slice of the device. A session that halted, or exceeded the instruction limit, is
+     * finished. A session is throttled (its device parked) while the client is too far behind on the output.
+     *
+     * @param reason StopReason of the device
+     * @return false if the device must be parked
+     */
+    private boolean afterSlice(StopReason reason) {
+        switch (reason) {
+            case HALTED, EXITED -> finished = true;
+            case BUDGET, INPUT -> {
+                if (limits.maxInstructions() > 0
+                        && device.metrics().getInstructionsExecuted() >= limits.maxInstructions()) {
+                    message("Instruction limit exceeded.");
+                    limited = true;
+                    finished = true;
+                    device.exit();
+                    return false;
+                }
+            }
+        }
+
+        throttled = output.size() >= limits.maxOutputBytes();
+        return !throttled;
+    }
+
+    /**
+     * Write a message from the server to the client, on a line of its own
+     *
+     * @param text String without newline
+     */
+    private void message(String text) {
+        output.write('\n');
+        for (var c : text.toCharArray())
+            output.write(c);
+        output.write('\n');
+    }
+
+    /**
+     * Send the waiting output to the client, and update the interest of the connection: reading while the keyboard
+     * has room for more lines, writing while output is waiting.
+     *
+     * @return false if the session is finished and all output was sent, so it can be closed
+     * @throws IOException when writing to the connection fails
+     */
+    public boolean flush() throws IOException {
+        final boolean drained = output.drainTo(channel);
+        if (finished && drained)
+            return false;
+
+        if (throttled && output.size() < limits.maxOutputBytes()) {
+            throttled = false;
+            task.wakeup();
+        }
+
+        int ops = 0;
+        if (!finished && keyboard.pending() < limits.maxPendingLines())
+            ops |= SelectionKey.OP_READ;
+        if (!drained)
+            ops |= SelectionKey.OP_WRITE;
+        if (key.interestOps() != ops)
+            key.interestOps(ops);
+        return true;
+    }
+
+    /**
+     * Close the connection and stop the device.
+     */
+    public void close() {
+        if (task != null)
+            task.cancel();
+        else
+            device.exit();
+        if (key != null)
+            key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
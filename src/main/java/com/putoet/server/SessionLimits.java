@@ -0,0 +1,23 @@
+package com.putoet.server;
+
+/**
+ * Limits enforced by the SynacorServer, on the number of sessions, and on each individual session.
+ *
+ * @param maxSessions maximum number of concurrent sessions, further connections are rejected
+ * @param maxLineLength maximum length of an input line, a session sending a longer line is closed
+ * @param maxPendingLines maximum number of input lines waiting for the device, the server stops reading from
+ *                        the connection until the device has consumed some of them
+ * @param maxOutputBytes maximum number of output bytes waiting to be sent, the device is not run until the
+ *                       client has received some of them
+ * @param maxInstructions maximum number of instructions executed by a session (0 is unlimited), a session
+ *                        exceeding it is closed
+ */
+public record SessionLimits(int maxSessions, int maxLineLength, int maxPendingLines, int maxOutputBytes,
+                            long maxInstructions) {
+    public static final SessionLimits DEFAULT = new SessionLimits(10_000, 256, 100, 64 * 1024, 0);
+
+    public SessionLimits {
+        if (maxSessions < 1 || maxLineLength < 1 || maxPendingLines < 1 || maxOutputBytes < 1 || maxInstructions < 0)
+            throw new IllegalArgumentException("Invalid session limits");
+    }
+}
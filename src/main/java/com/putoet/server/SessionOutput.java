@@ -0,0 +1,60 @@
+/**
+ * SessionOutput class
+ * Output stream of a session, connected to the Crt of its device. Bytes written by the device are collected in a
+ * growing buffer (translating '\n' into "\r\n" for telnet clients), which the server drains into the socket
+ * channel whenever the channel accepts more data. So, the device never blocks on a slow client, and the server
+ * uses the size of the buffer to stop running the device when the client doesn't keep up.
+ */
+package com.putoet.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+public class SessionOutput extends OutputStream {
+    private byte[] buffer = new byte[256];
+    private int count;
+
+    @Override
+    public synchronized void write(int b) {
+        if (b == '\n')
+            append('\r');
+        append(b);
+    }
+
+    private void append(int b) {
+        if (count == buffer.length)
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        buffer[count++] = (byte) b;
+    }
+
+    /**
+     * Number of bytes waiting to be sent
+     *
+     * @return int
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Write as many waiting bytes to the channel as it accepts without blocking.
+     *
+     * @param channel WritableByteChannel in non-blocking mode
+     * @return true if all waiting bytes were written
+     * @throws IOException when writing to the channel fails
+     */
+    public synchronized boolean drainTo(WritableByteChannel channel) throws IOException {
+        if (count == 0)
+            return true;
+
+        final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, count);
+        channel.write(byteBuffer);
+        final int written = byteBuffer.position();
+        System.arraycopy(buffer, written, buffer, 0, count - written);
+        count -= written;
+        return count == 0;
+    }
+}
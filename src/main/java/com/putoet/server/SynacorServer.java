@@ -0,0 +1,227 @@
+/**
+ * SynacorServer class
+ * Hosts many concurrent Synacor sessions in one JVM. The server accepts TCP connections on a local port (usable
+ * with telnet or netcat), and gives each connection its own Session, with a Device running the same program.
+ * All connections are handled by a single NIO selector on the server thread, and devices don't own a thread
+ * either: they run in slices on the worker pool of a DeviceScheduler, which parks devices waiting for input until
+ * a line arrives. After every slice, the session is handed back to the server thread to send its output. So,
+ * thousands of mostly idle sessions cost no threads. The program is booted once, and every session starts from the
+ * resulting BootImage: it skips the boot phase, and its memory shares the pages of the image, so a session only
+ * allocates the memory pages its device writes to.
+ * The SessionLimits are enforced per session, and the session counters are available as ServerMXBean.
+ * For example:
+ *      java com.putoet.server.SynacorServer 2323
+ *      nc localhost 2323
+ */
+package com.putoet.server;
+
+import com.putoet.device.BootImage;
+import com.putoet.device.DeviceScheduler;
+import lombok.SneakyThrows;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class SynacorServer implements Runnable {
+    public static final int DEFAULT_PORT = 2323;
+
+    private final BootImage image;
+    private final SessionLimits limits;
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Set<Session> sessions = new LinkedHashSet<>();
+    private final Queue<Session> flushes = new ConcurrentLinkedQueue<>();
+    private final DeviceScheduler scheduler;
+
+    private volatile boolean running = true;
+
+    /**
+     * Constructor, boots the program, and binds the server to the address, but doesn't accept connections until it
+     * runs.
+     *
+     * @param program byte[] program to load in the device of every session (little-endian words)
+     * @param address InetSocketAddress to listen on (port 0 binds to any free port)
+     * @param limits SessionLimits
+     * @throws IOException when the server cannot bind to the address
+     */
+    public SynacorServer(byte[] program, InetSocketAddress address, SessionLimits limits) throws IOException {
+        this.image = BootImage.capture(program);
+        this.limits = limits;
+        this.scheduler = new DeviceScheduler(Runtime.getRuntime().availableProcessors(),
+                DeviceScheduler.DEFAULT_BUDGET);
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    @SneakyThrows
+    public static void main(String[] args) {
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        final byte[] program;
+        try (InputStream is = SynacorServer.class.getResourceAsStream("/challenge.bin")) {
+            if (is == null)
+                throw new IllegalArgumentException("Invalid resource name '/challenge.bin'");
+            program = is.readAllBytes();
+        }
+
+        final var address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        final SynacorServer server = new SynacorServer(program, address, SessionLimits.DEFAULT);
+        server.metrics().register("port-" + server.port());
+        server.scheduler().metrics().register("port-" + server.port());
+        System.out.println("Synacor server listening on " + address);
+        server.run();
+    }
+
+    /**
+     * Port the server listens on
+     *
+     * @return int
+     */
+    public int port() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Session counters of the server
+     *
+     * @return ServerMetrics
+     */
+    public ServerMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Scheduler running the devices of the sessions
+     *
+     * @return DeviceScheduler
+     */
+    public DeviceScheduler scheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Accept connections, read input, and write output, until the server is stopped.
+     */
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+
+                final var keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid())
+                        continue;
+
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+
+                    final Session session = (Session) key.attachment();
+                    if (key.isReadable())
+                        read(session);
+                    if (key.isValid() && key.isWritable())
+                        flush(session);
+                }
+
+                Session session;
+                while ((session = flushes.poll()) != null)
+                    flush(session);
+            }
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        } finally {
+            List.copyOf(sessions).forEach(this::close);
+            scheduler.close();
+            try {
+                selector.close();
+                serverChannel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Stop the server, and close all sessions.
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void accept() throws IOException {
+        final SocketChannel channel = serverChannel.accept();
+        if (channel == null)
+            return;
+
+        if (sessions.size() >= limits.maxSessions()) {
+            metrics.sessionRejected();
+            channel.write(ByteBuffer.wrap("Server busy, try again later.\r\n".getBytes(StandardCharsets.US_ASCII)));
+            channel.close();
+            return;
+        }
+
+        channel.configureBlocking(false);
+        final Session session = new Session(channel, image, limits);
+        session.key(channel.register(selector, SelectionKey.OP_READ, session));
+        sessions.add(session);
+        metrics.sessionOpened();
+        session.schedule(scheduler, () -> {
+            flushes.offer(session);
+            selector.wakeup();
+        });
+    }
+
+    private void read(Session session) {
+        try {
+            if (!session.read())
+                close(session);
+            else
+                flush(session);
+        } catch (IOException exc) {
+            close(session);
+        }
+    }
+
+    private void flush(Session session) {
+        if (!sessions.contains(session))
+            return;
+
+        try {
+            if (!session.flush())
+                close(session);
+        } catch (IOException exc) {
+            close(session);
+        }
+    }
+
+    private void close(Session session) {
+        if (!sessions.remove(session))
+            return;
+
+        if (session.limited())
+            metrics.sessionLimited();
+        session.close();
+        metrics.sessionClosed();
+    }
+}
@@ -0,0 +1,82 @@
+package com.putoet.debugger;
+
+import com.putoet.device.Registers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BreakpointTest {
+    private static final int A = 32768, B = 32769, H = 32775;
+
+    private Registers registers;
+
+    @BeforeEach
+    void setup() {
+        registers = new Registers();
+    }
+
+    @Test
+    void unconditional() {
+        final Breakpoint breakpoint = Breakpoint.of(5489, "");
+        assertTrue(breakpoint.hit(registers));
+        assertTrue(breakpoint.hit(registers));
+        assertEquals(2, breakpoint.hits());
+        assertEquals("5489 (hits 2)", breakpoint.toString());
+    }
+
+    @Test
+    void condition() {
+        final Breakpoint breakpoint = Breakpoint.of(5489, "if h != 0 && a > 100");
+        assertFalse(breakpoint.hit(registers));
+        registers.set(H, 1);
+        assertFalse(breakpoint.hit(registers));
+        registers.set(A, 101);
+        assertTrue(breakpoint.hit(registers));
+        assertEquals(1, breakpoint.hits());
+        assertEquals("5489 if h != 0 && a > 100 (hits 1)", breakpoint.toString());
+    }
+
+    @Test
+    void after() {
+        final Breakpoint breakpoint = Breakpoint.of(1000, "if a == 1 after 2");
+        registers.set(A, 1);
+        assertFalse(breakpoint.hit(registers));
+        registers.set(A, 2);
+        assertFalse(breakpoint.hit(registers));
+        registers.set(A, 1);
+        assertFalse(breakpoint.hit(registers));
+        assertTrue(breakpoint.hit(registers));
+        assertEquals("1000 if a == 1 after 2 (hits 3)", breakpoint.toString());
+
+        assertFalse(Breakpoint.of(1000, "after 1").hit(registers));
+    }
+
+    @Test
+    void compile() {
+        registers.set(A, 1);
+        registers.set(B, 0x100);
+        assertTrue(Breakpoint.compile("(a == 1 || a == 2) && !(b < 0x100)").test(registers));
+        assertFalse(Breakpoint.compile("a == 1 && b != 256").test(registers));
+        assertTrue(Breakpoint.compile("a == 2 || a == 3 || b == 256").test(registers));
+        assertTrue(Breakpoint.compile("!a > 1").test(registers));
+        assertTrue(Breakpoint.compile("300 > b").test(registers));
+        assertTrue(Breakpoint.compile("b>=a&&a<=b").test(registers));
+        assertTrue(Breakpoint.compile("c == d").test(registers));
+        assertFalse(Breakpoint.compile("1 == 2").test(registers));
+    }
+
+    @Test
+    void invalid() {
+        assertThrows(IllegalArgumentException.class, () -> Breakpoint.compile("a = 1"));
+        assertThrows(IllegalArgumentException.class, () -> Breakpoint.compile("a == "));
+        assertThrows(IllegalArgumentException.class, () -> Breakpoint.compile("a == 1 &&"));
+        assertThrows(IllegalArgumentException.class, () -> Breakpoint.compile("(a == 1"));
+        assertThrows(IllegalArgumentException.class, () -> Breakpoint.compile("a == 1)"));
+        assertThrows(IllegalArgumentException.class, () -> Breakpoint.compile("a == x"));
+        assertThrows(IllegalArgumentException.class, () -> Breakpoint.compile("a =< 1"));
+        assertThrows(IllegalArgumentException.class, () -> Breakpoint.of(1, "when a == 1"));
+        assertThrows(IllegalArgumentException.class, () -> Breakpoint.of(1, "after -1"));
+        assertThrows(IllegalArgumentException.class, () -> Breakpoint.of(32768, ""));
+    }
+}
@@ -0,0 +1,116 @@
+package com.putoet.debugger;
+
+import com.putoet.device.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Stack;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BreakpointsTest {
+    private Breakpoints breakpoints;
+    private Interpreter interpreter;
+    private Memory memory;
+
+    @BeforeEach
+    void setup() {
+        breakpoints = new Breakpoints();
+        memory = new Memory();
+        interpreter = new Interpreter(new Registers(), memory, new Stack<>(),
+                new Keyboard(OutputStream.nullOutputStream()), new Crt(OutputStream.nullOutputStream()));
+    }
+
+    private Instruction instruction(int address, int... words) {
+        for (int i = 0; i < words.length; i++)
+            memory.write(address + i, words[i]);
+        final Register ip = new Register();
+        ip.accept(address);
+        return interpreter.next(ip);
+    }
+
+    @Test
+    void overRecursion() {
+        // 100: CALL 200, at guest stack depth 3
+        assertTrue(breakpoints.over(100, instruction(100, 17, 200), 3));
+        assertEquals(102, breakpoints.returnAddress());
+        assertTrue(breakpoints.marked(102));
+
+        // a recursive call of the same routine from the same call site returns to 102 at a deeper stack
+        assertFalse(breakpoints.returned(102, 5));
+        assertFalse(breakpoints.returned(101, 3));
+        assertTrue(breakpoints.returned(102, 3));
+
+        breakpoints.clearReturn();
+        assertEquals(-1, breakpoints.returnAddress());
+        assertFalse(breakpoints.marked(102));
+        assertFalse(breakpoints.returned(102, 3));
+    }
+
+    @Test
+    void overNoCall() {
+        // 100: NOOP
+        assertFalse(breakpoints.over(100, instruction(100, 21), 0));
+        assertFalse(breakpoints.over(100, null, 0));
+        assertEquals(-1, breakpoints.returnAddress());
+    }
+
+    @Test
+    void up() {
+        final CallStack callStack = new CallStack();
+        assertFalse(breakpoints.up(callStack));
+        assertEquals(-1, breakpoints.returnAddress());
+
+        callStack.call(100, 200, 0);
+        callStack.call(210, 300, 1);
+        assertTrue(breakpoints.up(callStack));
+        assertEquals(212, breakpoints.returnAddress());
+        assertFalse(breakpoints.returned(212, 2));
+        assertTrue(breakpoints.returned(212, 1));
+    }
+
+    @Test
+    void userBreakpointAtReturnAddress() {
+        breakpoints.add(Breakpoint.of(102, ""));
+        assertTrue(breakpoints.over(100, instruction(100, 17, 200), 0));
+
+        // clearing the one-shot keeps the breakpoint of the user
+        breakpoints.clearReturn();
+        assertTrue(breakpoints.marked(102));
+        assertNotNull(breakpoints.get(102));
+
+        // removing the breakpoint of the user keeps the one-shot
+        assertTrue(breakpoints.over(100, instruction(100, 17, 200), 0));
+        assertTrue(breakpoints.remove(102));
+        assertFalse(breakpoints.remove(102));
+        assertTrue(breakpoints.marked(102));
+        assertTrue(breakpoints.returned(102, 0));
+    }
+
+    @Test
+    void clearAll() {
+        breakpoints.add(Breakpoint.of(500, ""));
+        breakpoints.add(Breakpoint.of(102, "if a == 1"));
+        assertTrue(breakpoints.over(100, instruction(100, 17, 200), 0));
+
+        // br - removes the breakpoints of the user, but not the one-shot of a pending over
+        breakpoints.clear();
+        assertEquals(List.of(), breakpoints.list());
+        assertFalse(breakpoints.marked(500));
+        assertNull(breakpoints.get(102));
+        assertTrue(breakpoints.marked(102));
+        assertTrue(breakpoints.returned(102, 0));
+
+        breakpoints.clearReturn();
+        assertFalse(breakpoints.marked(102));
+    }
+
+    @Test
+    void list() {
+        breakpoints.add(Breakpoint.of(500, ""));
+        breakpoints.add(Breakpoint.of(100, ""));
+        assertEquals(List.of(100, 500), breakpoints.list().stream().map(Breakpoint::address).toList());
+    }
+}
@@ -0,0 +1,59 @@
+package com.putoet.debugger;
+
+import com.putoet.device.Memory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HexDumpTest {
+    private Memory memory;
+    private HexDump hexDump;
+
+    @BeforeEach
+    void setup() {
+        memory = new Memory();
+        hexDump = new HexDump(memory);
+        memory.write(16, 'H');
+        memory.write(17, 'i');
+        memory.write(18, 0x1234);
+        memory.write(19, 0x7fff);
+    }
+
+    @Test
+    void line() {
+        final String line = hexDump.line(16, 20);
+        assertEquals(HexDump.LINE_LENGTH, line.length());
+        assertEquals("00016 | 48 00 69 00 34 12 ff 7f .. .. .. .. .. .. .. .. .. .. .. .. .. .. .. .. " +
+                ".. .. .. .. .. .. .. .. " +
+                "| Hi4............. |", line);
+        assertEquals("00000 | 00 00 00 00 .. .. .. .. .. .. .. .. .. .. .. .. .. .. .. .. .. .. .. .. " +
+                ".. .. .. .. .. .. .. .. | ................ |", hexDump.line(0, 2));
+    }
+
+    @Test
+    void write() throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        hexDump.write(sb, 0, 2, 20);
+        final String[] lines = sb.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(hexDump.line(0, 20), lines[0]);
+        assertEquals(hexDump.line(16, 20), lines[1]);
+    }
+
+    @Test
+    void export() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        hexDump.export(Channels.newChannel(out));
+
+        final String[] lines = out.toString(StandardCharsets.US_ASCII).split("\n");
+        assertEquals(memory.size() / HexDump.WORDS_PER_LINE, lines.length);
+        assertEquals(hexDump.line(16, memory.size()), lines[1]);
+        assertTrue(lines[lines.length - 1].startsWith("32752 | 00 00 "));
+    }
+}
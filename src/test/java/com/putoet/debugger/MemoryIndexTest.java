@@ -0,0 +1,94 @@
+package com.putoet.debugger;
+
+import com.putoet.device.Memory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryIndexTest {
+    private Memory memory;
+    private MemoryIndex index;
+
+    @BeforeEach
+    void setup() {
+        memory = new Memory();
+        index = new MemoryIndex(memory);
+    }
+
+    private void write(int address, String text) {
+        memory.write(address, text.length());
+        for (int i = 0; i < text.length(); i++)
+            memory.write(address + 1 + i, text.charAt(i));
+    }
+
+    @Test
+    void strings() {
+        write(100, "Take the tablet");
+        write(116, "Use the tablet");
+        write(2000, "x");
+
+        final var strings = List.copyOf(index.strings());
+        assertEquals(2, strings.size());
+        assertEquals(new MemoryIndex.IndexedString(100, "Take the tablet"), strings.get(0));
+        assertEquals(new MemoryIndex.IndexedString(116, "Use the tablet"), strings.get(1));
+    }
+
+    @Test
+    void find() {
+        write(100, "Take the tablet");
+        write(116, "Use the Tablet");
+
+        final var matches = index.find("tablet", false);
+        assertEquals(1, matches.size());
+        assertEquals(110, matches.get(0).address());
+        assertEquals(100, matches.get(0).string().address());
+
+        final var ignoreCase = index.find("TABLET", true);
+        assertEquals(2, ignoreCase.size());
+        assertEquals(125, ignoreCase.get(1).address());
+
+        assertEquals(3, index.find("e", false).stream().filter(m -> m.string().address() == 116).count());
+        assertTrue(index.find("tablets", false).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> index.find("", false));
+    }
+
+    @Test
+    void refresh() {
+        write(100, "Take the tablet");
+        assertEquals(1, index.find("tablet", false).size());
+
+        write(100, "Take the lamp");
+        assertTrue(index.find("tablet", false).isEmpty());
+        assertEquals(1, index.find("lamp", false).size());
+
+        // a string spanning two pages, changed in the second page only
+        write(Memory.PAGE_SIZE * 3 - 5, "across the page boundary");
+        assertEquals(1, index.find("boundary", false).size());
+        memory.write(Memory.PAGE_SIZE * 3 + 13, 'x');
+        assertTrue(index.find("boundary", false).isEmpty());
+        assertEquals(1, index.find("bxundary", false).size());
+
+        // invalidating a string, makes its characters available for scanning
+        memory.write(Memory.PAGE_SIZE * 3 - 5, 0);
+        assertTrue(index.find("bxundary", false).isEmpty());
+    }
+
+    @Test
+    void findWords() {
+        memory.write(10, 19);
+        memory.write(11, 32768);
+        memory.write(500, 19);
+        memory.write(501, 32768);
+        memory.write(502, 19);
+
+        final var matches = index.find(19, 32768);
+        assertEquals(2, matches.size());
+        assertEquals(10, matches.get(0).address());
+        assertEquals(500, matches.get(1).address());
+        assertNull(matches.get(0).string());
+        assertEquals(3, index.find(19).size());
+    }
+}
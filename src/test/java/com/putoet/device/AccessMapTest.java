@@ -0,0 +1,107 @@
+package com.putoet.device;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccessMapTest {
+    private static final int A = 32768, B = 32769, C = 32770;
+
+    // 0: IN a, EQ b a 10, JF b 0, RMEM c 100, WMEM 100 c, JMP 0
+    private static final byte[] PROGRAM = BootImageTest.bytes(20, A, 4, B, A, 10, 8, B, 0, 15, C, 100,
+            16, 100, C, 6, 0);
+
+    private static Device device() {
+        final Device device = new Device(new Registers(), new Memory(ProgramImage.of(PROGRAM)),
+                new Keyboard(OutputStream.nullOutputStream()), new Crt(OutputStream.nullOutputStream()));
+        device.trackAccess(true);
+        return device;
+    }
+
+    private static void run(Device device, String... lines) {
+        for (var line : lines) {
+            assertEquals(StopReason.INPUT, device.run(1000));
+            device.in().accept(line + "\n");
+        }
+        assertEquals(StopReason.INPUT, device.run(1000));
+    }
+
+    @Test
+    void counters() {
+        final Device device = device();
+        run(device, "ab", "c");
+
+        final AccessMap accessMap = device.accessMap();
+        assertEquals(5, accessMap.executions(0));
+        assertEquals(5, accessMap.executions(2));
+        assertEquals(2, accessMap.executions(9));
+        assertEquals(0, accessMap.executions(1));
+        assertEquals(2, accessMap.reads(100));
+        assertEquals(2, accessMap.writes(100));
+        assertEquals(0, accessMap.reads(101));
+        assertEquals(6, accessMap.covered());
+    }
+
+    @Test
+    void saturate() {
+        final AccessMap accessMap = new AccessMap();
+        for (int i = 0; i < AccessMap.MAX_COUNT + 10; i++)
+            accessMap.read(7);
+        assertEquals(AccessMap.MAX_COUNT, accessMap.reads(7));
+    }
+
+    @Test
+    void deltas() {
+        final Device device = device();
+        run(device, "ab", "c", "d e");
+
+        final List<AccessMap.Delta> deltas = device.accessMap().deltas();
+        assertEquals(List.of(AccessMap.BOOT, "ab", "c", "d e"), deltas.stream().map(AccessMap.Delta::command).toList());
+        assertArrayEquals(new int[] {0}, deltas.get(0).addresses());
+        assertArrayEquals(new int[] {2, 6, 9, 12, 15}, deltas.get(1).addresses());
+        assertEquals(0, deltas.get(2).addresses().length);
+        assertEquals(0, deltas.get(3).addresses().length);
+    }
+
+    @Test
+    void export() throws IOException {
+        final Device device = device();
+        run(device, "x");
+        final AccessMap accessMap = device.accessMap();
+
+        final StringWriter csv = new StringWriter();
+        accessMap.writeCsv(csv);
+        assertEquals("""
+                address,executed,read,written
+                0,2,0,0
+                2,2,0,0
+                6,2,0,0
+                9,1,0,0
+                12,1,0,0
+                15,1,0,0
+                100,0,1,1
+                """, csv.toString());
+
+        final StringWriter heatmap = new StringWriter();
+        accessMap.writeHeatmap(heatmap);
+        final String[] rows = heatmap.toString().split("\n");
+        assertEquals(2, rows.length);
+        assertEquals("00000 |: :   :  .  .  .", rows[0].substring(0, 23));
+        assertTrue(rows[1].startsWith("00064 |" + " ".repeat(36) + ":"), rows[1]);
+
+        final StringWriter json = new StringWriter();
+        accessMap.writeJson(json);
+        assertEquals("""
+                {"executed":6,"read":1,"written":1,"commands":[
+                {"command":"(boot)","reached":[0]},
+                {"command":"x","reached":[2,6,9,12,15]}]}
+                """, json.toString());
+        assertTrue(Arrays.stream(rows).allMatch(row -> row.length() == AccessMap.HEATMAP_WIDTH + 8));
+    }
+}
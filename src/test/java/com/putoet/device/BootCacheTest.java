@@ -0,0 +1,69 @@
+package com.putoet.device;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BootCacheTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void image() throws IOException {
+        final BootCache cache = new BootCache(directory.resolve("boot"));
+        final BootImage first = cache.image(BootImageTest.PROGRAM);
+        assertEquals(0, cache.hits());
+        assertEquals(1, cache.misses());
+        assertTrue(Files.isRegularFile(cache.file(first.hash())));
+
+        final BootImage second = new BootCache(directory.resolve("boot")).image(BootImageTest.PROGRAM);
+        assertEquals(first.ip(), second.ip());
+        assertArrayEquals(first.output(), second.output());
+
+        final BootImage again = cache.image(BootImageTest.PROGRAM);
+        assertEquals(1, cache.hits());
+        assertEquals(first.ip(), again.ip());
+
+        Files.write(cache.file(first.hash()), new byte[] {1, 2, 3});
+        cache.image(BootImageTest.PROGRAM);
+        assertEquals(2, cache.misses());
+        assertTrue(Files.size(cache.file(first.hash())) > 3);
+
+        cache.evict(BootImageTest.PROGRAM);
+        assertFalse(Files.exists(cache.file(first.hash())));
+        try (var files = Files.list(directory.resolve("boot"))) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void damagedLengths() throws IOException {
+        final BootCache cache = new BootCache(directory.resolve("boot"));
+        final BootImage image = cache.image(BootImageTest.PROGRAM);
+        final Path file = cache.file(image.hash());
+        final byte[] valid = Files.readAllBytes(file);
+
+        // magic, version, hash, ip and instruction count, registers, then the stack, output, and memory sizes
+        final int stack = 4 + 4 + 2 + image.hash().length() + 4 + 8 + Registers.REGISTERS * 2;
+        final int output = stack + 4 + image.stack().length * 2;
+        final int memory = output + 4 + image.output().length;
+        long misses = cache.misses();
+        for (int offset : new int[] {stack, output, memory}) {
+            for (byte high : new byte[] {(byte) 0x80, 0x7f, (byte) 0xff}) {
+                final byte[] damaged = valid.clone();
+                damaged[offset] = high;
+                Files.write(file, damaged);
+
+                final BootImage fresh = cache.image(BootImageTest.PROGRAM);
+                assertEquals(++misses, cache.misses());
+                assertEquals(image.ip(), fresh.ip());
+                assertArrayEquals(valid, Files.readAllBytes(file));
+            }
+        }
+    }
+}
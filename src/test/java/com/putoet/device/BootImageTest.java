@@ -0,0 +1,116 @@
+package com.putoet.device;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BootImageTest {
+    private static final int A = 32768, B = 32769;
+
+    // OUT 'H', OUT 'i', SET a 7, PUSH a, WMEM 1000 42, IN b, HALT
+    static final byte[] PROGRAM = bytes(19, 'H', 19, 'i', 1, A, 7, 2, A, 16, 1000, 42, 20, B, 0);
+
+    // OUT '>', IN a, OUT a, HALT after 'q', prompt again after a newline
+    static final byte[] ECHO = bytes(19, '>', 20, A, 19, A, 4, B, A, 'q', 7, B, 23, 4, B, A, '\n', 7, B, 0, 6, 2,
+            0, 0);
+
+    static byte[] bytes(int... words) {
+        final byte[] bytes = new byte[words.length * 2];
+        for (int i = 0; i < words.length; i++) {
+            bytes[i * 2] = (byte) words[i];
+            bytes[i * 2 + 1] = (byte) (words[i] >> 8);
+        }
+        return bytes;
+    }
+
+    @Test
+    void capture() {
+        final BootImage image = BootImage.capture(PROGRAM);
+        assertEquals(BootImage.hash(PROGRAM), image.hash());
+        assertEquals(12, image.ip());
+        assertEquals(7, image.register(A));
+        assertArrayEquals(new int[] {7}, image.stack());
+        assertEquals("Hi", new String(image.output()));
+        assertEquals(5, image.instructions());
+        assertEquals(42, new Memory(image.memory()).peek(1000));
+    }
+
+    @Test
+    void captureHalt() {
+        final BootImage image = BootImage.capture(bytes(19, 'H', 0));
+        assertEquals(2, image.ip());
+        assertEquals("H", new String(image.output()));
+    }
+
+    @Test
+    void writeRead() throws IOException {
+        final BootImage image = BootImage.capture(PROGRAM);
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        image.write(os);
+
+        final BootImage copy = BootImage.read(new ByteArrayInputStream(os.toByteArray()));
+        assertEquals(image.hash(), copy.hash());
+        assertEquals(image.ip(), copy.ip());
+        assertEquals(image.register(A), copy.register(A));
+        assertArrayEquals(image.stack(), copy.stack());
+        assertArrayEquals(image.output(), copy.output());
+        assertEquals(image.instructions(), copy.instructions());
+        assertEquals(42, new Memory(copy.memory()).peek(1000));
+
+        final byte[] damaged = os.toByteArray();
+        damaged[damaged.length - 20] ^= 1;
+        assertThrows(IOException.class, () -> BootImage.read(new ByteArrayInputStream(damaged)));
+    }
+
+    @Test
+    void warmBoot() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final Registers registers = new Registers();
+        final Keyboard keyboard = new Keyboard(OutputStream.nullOutputStream());
+        final Device device = new Device(registers, new Memory(), keyboard, new Crt(out));
+        device.boot(BootImage.capture(PROGRAM));
+        keyboard.accept("x\n");
+        device.run();
+
+        assertEquals("Hi", out.toString());
+        assertEquals('x', registers.get(B));
+        assertEquals(7, registers.get(A));
+        assertEquals(1, device.metrics().getInstructionsExecuted());
+        assertThrows(IllegalStateException.class, () -> device.boot(BootImage.capture(PROGRAM)));
+    }
+
+    @Test
+    void challenge() throws IOException {
+        final byte[] program;
+        try (var is = getClass().getResourceAsStream("/challenge.bin")) {
+            assertNotNull(is);
+            program = is.readAllBytes();
+        }
+        final BootImage image = BootImage.capture(program);
+        assertTrue(image.instructions() > 100_000);
+
+        final ByteArrayOutputStream coldOut = new ByteArrayOutputStream();
+        final Device cold = new Device(new Registers(), new Memory(ProgramImage.of(program)),
+                new Keyboard(OutputStream.nullOutputStream()), new Crt(coldOut));
+        final ByteArrayOutputStream warmOut = new ByteArrayOutputStream();
+        final Device warm = new Device(new Registers(), new Memory(),
+                new Keyboard(OutputStream.nullOutputStream()), new Crt(warmOut));
+        warm.boot(image);
+
+        for (var command : new String[] {"look\n", "go doorway\n", "take tablet\n"}) {
+            while (cold.run(100_000) != StopReason.INPUT) ;
+            assertEquals(StopReason.INPUT, warm.run(100_000));
+            assertEquals(coldOut.toString(), warmOut.toString());
+            assertEquals(cold.registers().toString(), warm.registers().toString());
+            assertEquals(cold.ip().get(), warm.ip().get());
+            assertEquals(cold.stack(), warm.stack());
+            cold.in().accept(command);
+            warm.in().accept(command);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.putoet.device;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CallStackTest {
+    private CallStack callStack;
+
+    @BeforeEach
+    void setup() {
+        callStack = new CallStack();
+    }
+
+    @Test
+    void call() {
+        assertEquals(0, callStack.routine());
+        callStack.call(10, 100, 0);
+        callStack.call(110, 200, 3);
+
+        assertEquals(2, callStack.size());
+        assertEquals(200, callStack.routine());
+        assertEquals(10, callStack.callSite(0));
+        assertEquals(100, callStack.target(0));
+        assertEquals(3, callStack.depth(1));
+        assertThrows(IllegalArgumentException.class, () -> callStack.target(2));
+    }
+
+    @Test
+    void ret() {
+        callStack.call(10, 100, 0);
+        callStack.call(110, 200, 3);
+
+        callStack.ret(4);
+        assertEquals(2, callStack.size());
+        callStack.ret(3);
+        assertEquals(1, callStack.size());
+        assertEquals(100, callStack.routine());
+        callStack.ret(0);
+        assertEquals(0, callStack.size());
+    }
+
+    @Test
+    void grow() {
+        for (int i = 0; i < 1000; i++)
+            callStack.call(i, i + 1, i);
+
+        assertEquals(1000, callStack.size());
+        assertEquals(1000, callStack.routine());
+        callStack.ret(500);
+        assertEquals(500, callStack.routine());
+    }
+}
@@ -0,0 +1,67 @@
+package com.putoet.device;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Stack;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecodeCacheTest {
+    private Memory memory;
+    private Register ip;
+    private DeviceMetrics metrics;
+    private DecodeCache cache;
+
+    @BeforeEach
+    void setup() {
+        memory = new Memory();
+        ip = new Register();
+        metrics = new DeviceMetrics();
+        final Interpreter interpreter = new Interpreter(new Registers(), memory, new Stack<>(),
+                InputStream.nullInputStream(), OutputStream.nullOutputStream());
+        cache = new DecodeCache(interpreter, memory, metrics);
+
+        // ADD <a> 1 2; NOOP
+        memory.write(0, Opcode.ADD.ordinal());
+        memory.write(1, 32768);
+        memory.write(2, 1);
+        memory.write(3, 2);
+        memory.write(4, Opcode.NOOP.ordinal());
+    }
+
+    @Test
+    void next() {
+        final Instruction first = cache.next(ip);
+        assertEquals(Opcode.ADD, first.opcode());
+        assertSame(first, cache.next(ip));
+        assertEquals(1, metrics.getDecodeCacheMisses());
+        assertEquals(1, metrics.getDecodeCacheHits());
+    }
+
+    @Test
+    void invalidate() {
+        final Instruction first = cache.next(ip);
+        memory.write(3, 7);
+
+        final Instruction second = cache.next(ip);
+        assertNotSame(first, second);
+        assertEquals("ADD <a> 1 7", second.dump(false));
+        assertEquals(2, metrics.getDecodeCacheMisses());
+    }
+
+    @Test
+    void invalidateNextPage() {
+        ip.accept(Memory.PAGE_SIZE - 2);
+        memory.write(Memory.PAGE_SIZE - 2, Opcode.SET.ordinal());
+        memory.write(Memory.PAGE_SIZE - 1, 32768);
+        memory.write(Memory.PAGE_SIZE, 1);
+
+        final Instruction first = cache.next(ip);
+        memory.write(Memory.PAGE_SIZE, 2);
+        assertEquals("SET <a> 2", cache.next(ip).dump(false));
+        assertNotSame(first, cache.next(ip));
+    }
+}
@@ -0,0 +1,95 @@
+package com.putoet.device;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceControlTest {
+    private Device device;
+
+    @BeforeEach
+    void setup() {
+        device = new Device(new Registers(), new Memory(), new Keyboard(OutputStream.nullOutputStream()),
+                new Crt(OutputStream.nullOutputStream()));
+        // ADD <a> <a> 1, JMP 0
+        device.load(9, 32768, 32768, 1, 6, 0);
+    }
+
+    private long instructions() {
+        return device.metrics().getInstructionsExecuted();
+    }
+
+    @Test
+    void pauseSlice() {
+        assertEquals(StopReason.BUDGET, device.run(100));
+
+        device.control().pause();
+        assertEquals(StopReason.PAUSED, device.run(100));
+        assertEquals(StopReason.PAUSED, device.run(100));
+        assertEquals(100, instructions());
+        assertTrue(device.control().paused());
+
+        device.control().resume();
+        assertFalse(device.control().paused());
+        assertEquals(StopReason.BUDGET, device.run(100));
+        assertEquals(200, instructions());
+    }
+
+    @Test
+    void runForSlice() {
+        assertEquals(StopReason.BUDGET, device.run(100));
+
+        device.control().runFor(2_500);
+        assertEquals(StopReason.BUDGET, device.run(1_000));
+        assertEquals(StopReason.PAUSED, device.run(10_000));
+        assertEquals(2_600, instructions());
+        assertEquals(DeviceControl.State.PAUSED, device.control().state());
+
+        device.control().runFor(3);
+        assertEquals(StopReason.PAUSED, device.run(10_000));
+        assertEquals(2_603, instructions());
+
+        assertThrows(IllegalArgumentException.class, () -> device.control().runFor(-1));
+    }
+
+    @Test
+    void cancel() {
+        device.control().pause();
+        device.exit();
+        assertTrue(device.exiting());
+        assertEquals(StopReason.EXITED, device.run(100));
+
+        device.control().resume();
+        assertEquals(StopReason.EXITED, device.run(100));
+        assertEquals(0, instructions());
+    }
+
+    @Test
+    void thread() throws InterruptedException {
+        final Thread thread = new Thread(device);
+        thread.start();
+
+        device.control().pause();
+        assertTrue(device.control().awaitPaused(5, TimeUnit.SECONDS));
+        final long paused = instructions();
+        assertEquals(paused, device.publishedState().read().instructions());
+        Thread.sleep(20);
+        assertEquals(paused, instructions());
+
+        device.control().runFor(5_000);
+        assertTrue(device.control().awaitPaused(5, TimeUnit.SECONDS));
+        assertEquals(paused + 5_000, instructions());
+
+        device.control().resume();
+        while (device.publishedState().read().instructions() < paused + 100_000)
+            Thread.onSpinWait();
+
+        device.exit();
+        thread.join(5_000);
+        assertFalse(thread.isAlive());
+    }
+}
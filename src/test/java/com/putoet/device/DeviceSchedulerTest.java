@@ -0,0 +1,127 @@
+package com.putoet.device;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceSchedulerTest {
+    private DeviceScheduler scheduler;
+
+    @BeforeEach
+    void setup() {
+        scheduler = new DeviceScheduler(1, 1_000);
+    }
+
+    @AfterEach
+    void teardown() {
+        scheduler.close();
+    }
+
+    private static Device device(ByteArrayOutputStream out, int... program) {
+        final Device device = new Device(new Registers(), new Memory(),
+                new Keyboard(OutputStream.nullOutputStream()), new Crt(out));
+        device.load(program);
+        return device;
+    }
+
+    @Test
+    void halt() throws Exception {
+        // OUT 'a', HALT
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final var task = scheduler.submit(device(out, 19, 'a', 0));
+        assertEquals(StopReason.HALTED, task.done().get(5, TimeUnit.SECONDS));
+        assertEquals("a", out.toString());
+        assertEquals(0, scheduler.metrics().getScheduledDevices());
+    }
+
+    @Test
+    void interactiveNotStarved() throws Exception {
+        // JMP 0, runs forever
+        final var runaway = scheduler.submit(device(new ByteArrayOutputStream(), 6, 0));
+
+        // IN <a>, OUT <a>, JMP 0
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final Device echo = device(out, 20, 32768, 19, 32768, 6, 0);
+        final var task = scheduler.submit(echo);
+        for (int i = 0; i < 500 && scheduler.metrics().getParks() == 0; i++)
+            Thread.sleep(10);
+        assertEquals(1, scheduler.metrics().getParks());
+
+        echo.in().accept("hi\n");
+        task.wakeup();
+        for (int i = 0; i < 500 && out.size() < 3; i++)
+            Thread.sleep(10);
+        assertEquals("hi\n", out.toString());
+
+        runaway.cancel();
+        assertEquals(StopReason.EXITED, runaway.done().get(5, TimeUnit.SECONDS));
+        task.cancel();
+        assertEquals(StopReason.EXITED, task.done().get(5, TimeUnit.SECONDS));
+
+        assertTrue(scheduler.metrics().getSlices() > 2);
+        assertTrue(scheduler.metrics().getWakeups() >= 1);
+    }
+
+    @Test
+    void pause() throws Exception {
+        // JMP 0, runs forever
+        final Device device = device(new ByteArrayOutputStream(), 6, 0);
+        final var task = scheduler.submit(device);
+
+        task.pause();
+        assertTrue(device.control().awaitPaused(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 500 && scheduler.metrics().getParks() == 0; i++)
+            Thread.sleep(10);
+        assertEquals(1, scheduler.metrics().getParks());
+
+        task.resume();
+        assertFalse(device.control().paused());
+        task.cancel();
+        assertEquals(StopReason.EXITED, task.done().get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void failure() throws Exception {
+        // POP <a> on an empty stack
+        final var failing = scheduler.submit(device(new ByteArrayOutputStream(), 3, 32768));
+        final ExecutionException exc = assertThrows(ExecutionException.class,
+                () -> failing.done().get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RuntimeException.class, exc.getCause());
+
+        // the worker survives, and runs the next device
+        final var listenerFails = scheduler.submit(device(new ByteArrayOutputStream(), 21, 0), reason -> {
+            throw new IllegalStateException("listener");
+        });
+        assertThrows(ExecutionException.class, () -> listenerFails.done().get(5, TimeUnit.SECONDS));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final var halting = scheduler.submit(device(out, 19, 'a', 0));
+        assertEquals(StopReason.HALTED, halting.done().get(5, TimeUnit.SECONDS));
+        assertEquals("a", out.toString());
+        assertEquals(2, scheduler.metrics().getFailedDevices());
+        assertEquals(0, scheduler.metrics().getScheduledDevices());
+    }
+
+    @Test
+    void endOfMemory() throws Exception {
+        // JMP 32766, where a SET has its operands beyond the end of memory
+        final Device device = device(new ByteArrayOutputStream(), 6, 32766);
+        device.memory().write(32766, 1);
+        final var failing = scheduler.submit(device);
+        final ExecutionException exc = assertThrows(ExecutionException.class,
+                () -> failing.done().get(5, TimeUnit.SECONDS));
+        assertInstanceOf(OutOfMemoryError.class, exc.getCause());
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final var halting = scheduler.submit(device(out, 19, 'a', 0));
+        assertEquals(StopReason.HALTED, halting.done().get(5, TimeUnit.SECONDS));
+        assertEquals(1, scheduler.metrics().getFailedDevices());
+    }
+}
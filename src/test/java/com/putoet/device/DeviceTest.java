@@ -36,6 +36,42 @@ class DeviceTest {
         verify(out).write('a' + 4);
     }
 
+    @Test
+    void metrics() {
+        device.load(9,32768,32769,4,19,32768, 2,32768, 3,32769, 0);
+        registers.set(32769, 'a');
+
+        device.run();
+        final DeviceMetrics metrics = device.metrics();
+        assertEquals(4, metrics.getInstructionsExecuted());
+        assertEquals(1, metrics.getCharactersWritten());
+        assertEquals(1, metrics.getPeakStackDepth());
+        assertEquals(0, metrics.getStackDepth());
+        assertEquals(5, metrics.getDecodeCacheMisses());
+    }
+
+    @Test
+    void runBudget() {
+        // ADD <a> <a> 1, JMP 0
+        device.load(9,32768,32768,1, 6,0);
+        assertEquals(StopReason.BUDGET, device.run(10));
+        assertEquals(5, registers.get(32768));
+        assertEquals(StopReason.BUDGET, device.run(10));
+        assertEquals(10, registers.get(32768));
+
+        device.exit();
+        assertEquals(StopReason.EXITED, device.run(10));
+    }
+
+    @Test
+    void runUntilInput() {
+        // OUT 'a', IN <a>, HALT
+        device.load(19,'a', 20,32768, 0);
+        assertEquals(StopReason.INPUT, device.run(10));
+        assertEquals(Device.IDLE, device.sampledIp());
+        assertEquals(1, device.metrics().getInstructionsExecuted());
+    }
+
     @Test
     void sub1531() {
 //        SET <a> 26851
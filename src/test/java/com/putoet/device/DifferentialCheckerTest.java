@@ -0,0 +1,91 @@
+package com.putoet.device;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DifferentialCheckerTest {
+    private static final int A = 32768, B = 32769;
+    private static final List<String> INPUT = List.of("abc", "take tablet", "xyz");
+    // lock-step compares the state hash after every instruction, so keep this small, DifferentialChecker.main()
+    // checks many more (and longer) programs
+    private static final int PROGRAMS = 10;
+    private static final int MAX_INSTRUCTIONS = 1_000;
+
+    // an engine which gets ADD wrong when the result is 2
+    private static final ExecutionEngine.Factory FAULTY = (registers, memory, stack, in, out, metrics) -> {
+        final Interpreter interpreter = new Interpreter(registers, memory, stack, in, out);
+        return ip -> {
+            final Instruction instruction = interpreter.next(ip);
+            if (instruction.opcode() != Opcode.ADD)
+                return instruction;
+
+            return new Instruction() {
+                public Opcode opcode() { return instruction.opcode(); }
+                public int size() { return instruction.size(); }
+                public int operand(int index) { return instruction.operand(index); }
+                public void execute() { instruction.execute(); }
+                public String dump(boolean smart) { return instruction.dump(smart); }
+
+                public void run() {
+                    instruction.run();
+                    if (registers.get(operand(0)) == 2)
+                        registers.set(operand(0), 3);
+                }
+            };
+        };
+    };
+
+    @Test
+    void randomPrograms() {
+        for (var engine : List.of(ExecutionEngine.Kind.CACHED, ExecutionEngine.Kind.SWITCH)) {
+            final DifferentialChecker checker = new DifferentialChecker(ExecutionEngine.Kind.INTERPRETER, engine,
+                    DifferentialChecker.Mode.LOCK_STEP, 0);
+            for (int seed = 0; seed < PROGRAMS; seed++)
+                assertNull(checker.check(RandomProgram.generate(seed, 100), INPUT, MAX_INSTRUCTIONS),
+                        engine + " " + seed);
+        }
+    }
+
+    @Test
+    void challenge() throws IOException {
+        final byte[] program;
+        try (var is = getClass().getResourceAsStream("/challenge.bin")) {
+            assertNotNull(is);
+            program = is.readAllBytes();
+        }
+        for (var engine : List.of(ExecutionEngine.Kind.CACHED, ExecutionEngine.Kind.SWITCH)) {
+            final DifferentialChecker checker = new DifferentialChecker(ExecutionEngine.Kind.INTERPRETER, engine,
+                    DifferentialChecker.Mode.PERIODIC, 10_000);
+            assertNull(checker.check(program, List.of("take tablet", "use tablet", "doorway", "north"), 2_000_000),
+                    engine.toString());
+        }
+    }
+
+    @Test
+    void divergence() {
+        // SET a 1, OUT 'x', ADD b a 0, ADD b a a, OUT 'y', HALT
+        final byte[] program = BootImageTest.bytes(1, A, 1, 19, 'x', 9, B, A, 0, 9, B, A, A, 19, 'y', 0);
+        for (var mode : DifferentialChecker.Mode.values()) {
+            final DifferentialChecker checker = new DifferentialChecker(ExecutionEngine.Kind.CACHED, FAULTY, mode, 4);
+            final DifferentialChecker.Divergence divergence = checker.check(program, List.of(), 100);
+            assertNotNull(divergence, mode.toString());
+            assertEquals(4, divergence.instructions());
+            assertEquals(9, divergence.ip());
+            assertEquals("ADD <b> (1) <a> (1) <a> (1)", divergence.instruction());
+            assertTrue(divergence.reference().contains("b=2"), divergence.reference());
+            assertTrue(divergence.candidate().contains("b=3"), divergence.candidate());
+            assertTrue(divergence.candidate().contains("ending with 'x'"), divergence.candidate());
+        }
+    }
+
+    @Test
+    void agree() {
+        final DifferentialChecker checker = new DifferentialChecker(ExecutionEngine.Kind.INTERPRETER, FAULTY,
+                DifferentialChecker.Mode.PERIODIC, 1000);
+        assertNull(checker.check(BootImageTest.bytes(9, B, A, 1, 19, B, 0), List.of(), 100));
+    }
+}
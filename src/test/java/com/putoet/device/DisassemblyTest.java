@@ -0,0 +1,108 @@
+package com.putoet.device;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DisassemblyTest {
+    private Memory memory;
+    private Disassembly disassembly;
+
+    @BeforeEach
+    void setup() {
+        memory = new Memory();
+        disassembly = new Disassembly(memory);
+
+        //  0: SET <a> 3
+        //  3: CALL 12
+        //  5: JT <a> 3
+        //  8: OUT 'x'
+        // 10: HALT
+        // 11: data 30000
+        // 12: ADD <a> <a> 32767
+        // 16: RET
+        load(0, 1, 32768, 3, 17, 12, 7, 32768, 3, 19, 'x', 0, 30000, 9, 32768, 32768, 32767, 18);
+    }
+
+    private void load(int address, int... words) {
+        for (var word : words)
+            memory.write(address++, word);
+    }
+
+    @Test
+    void code() {
+        assertTrue(disassembly.isCode(0));
+        assertTrue(disassembly.isCode(2));
+        assertTrue(disassembly.isCode(10));
+        assertFalse(disassembly.isCode(11));
+        assertTrue(disassembly.isCode(16));
+        assertFalse(disassembly.isCode(17));
+        assertEquals(Opcode.CALL, disassembly.opcode(3));
+        assertNull(disassembly.opcode(11));
+    }
+
+    @Test
+    void blocks() {
+        final var blocks = List.copyOf(disassembly.blocks());
+        assertEquals(4, blocks.size());
+        assertEquals(new Disassembly.BasicBlock(0, 0, List.of(3), List.of()), blocks.get(0));
+        assertEquals(new Disassembly.BasicBlock(3, 5, List.of(3, 8), List.of(12)), blocks.get(1));
+        assertEquals(new Disassembly.BasicBlock(8, 10, List.of(), List.of()), blocks.get(2));
+        assertEquals(new Disassembly.BasicBlock(12, 16, List.of(), List.of()), blocks.get(3));
+        assertEquals(blocks.get(1), disassembly.block(4));
+        assertNull(disassembly.block(11));
+    }
+
+    @Test
+    void callGraph() {
+        final var callGraph = disassembly.callGraph();
+        assertEquals(Set.of(0, 12), callGraph.keySet());
+        assertEquals(Set.of(12), callGraph.get(0));
+        assertEquals(Set.of(), callGraph.get(12));
+    }
+
+    @Test
+    void refresh() {
+        assertFalse(disassembly.isCode(17));
+
+        // replace the RET with a JMP to 18, and put a HALT at 18
+        load(16, 6, 18, 0);
+        assertTrue(disassembly.isCode(18));
+        assertEquals(new Disassembly.BasicBlock(12, 16, List.of(18), List.of()), disassembly.block(12));
+    }
+
+    @Test
+    void dump() {
+        assertEquals(List.of("00012: ADD <a> <a> 32767", "00016: RET"),
+                disassembly.dump(12, Set.of(Opcode.RET, Opcode.HALT), null));
+
+        final Registers registers = new Registers();
+        registers.set(32768, 5);
+        assertEquals("00005: JT <a> (5) 3", disassembly.format(5, registers));
+        assertEquals("OUT 'x'", disassembly.instruction(8));
+        assertEquals("00011: data 30000", disassembly.format(11, null));
+    }
+
+    @Test
+    void list() throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        disassembly.list(sb);
+        final var lines = sb.toString().lines().toList();
+        assertEquals("; routine 00000", lines.get(1));
+        assertEquals("00000: SET <a> 3", lines.get(2));
+        assertTrue(lines.contains("00011: data 30000"));
+        assertTrue(lines.contains("; routine 00012"));
+    }
+
+    @Test
+    void lastAddressUsed() {
+        final int lastAddressUsed = memory.lastAddressUsed();
+        disassembly.dump(0, Set.of(Opcode.HALT), null);
+        assertEquals(lastAddressUsed, memory.lastAddressUsed());
+    }
+}
@@ -0,0 +1,56 @@
+package com.putoet.device;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpectTest {
+    @Test
+    void expect() {
+        final Expect expect = new Expect(new SynacorVm(BootImageTest.ECHO));
+        assertThrows(IllegalStateException.class, () -> expect.send("ab"));
+        expect.boot();
+
+        assertEquals(new Expect.Match(0, ">", ">", StopReason.CONDITION), expect.expect(">"));
+        expect.send("abcd");
+        expect.send("xy");
+        assertEquals(new Expect.Match(0, "bc", "abc", StopReason.CONDITION), expect.expect("bc", "x"));
+        assertEquals(new Expect.Match(1, "x", "d\n>x", StopReason.CONDITION), expect.expect("bc", "x"));
+
+        final Expect.Match none = expect.expect("z");
+        assertFalse(none.matched());
+        assertEquals("y\n>", none.output());
+        assertEquals(StopReason.INPUT, none.reason());
+
+        expect.send("q");
+        assertEquals(new Expect.Match(-1, null, "q", StopReason.HALTED), expect.expect("z"));
+        assertEquals(new Expect.Match(-1, null, "", StopReason.HALTED), expect.expect("z"));
+    }
+
+    @Test
+    void challenge() throws IOException {
+        final byte[] program;
+        try (var is = getClass().getResourceAsStream("/challenge.bin")) {
+            assertNotNull(is);
+            program = is.readAllBytes();
+        }
+        final Expect expect = new Expect(new SynacorVm(BootImage.capture(program)));
+        final OutputMatcher prompt = new OutputMatcher("What do you do?");
+
+        expect.boot();
+        assertTrue(expect.expect(prompt, Expect.DEFAULT_MAX_INSTRUCTIONS).output().contains("== Foothills =="));
+        expect.send("take tablet");
+        assertTrue(expect.expect("Taken.").matched());
+        assertEquals("\n\nWhat do you do?", expect.expect(prompt, Expect.DEFAULT_MAX_INSTRUCTIONS).output());
+        expect.send("use tablet");
+
+        // the print intrinsic writes the text of the tablet at once, so the code follows the match in the same run
+        final Expect.Match tablet = expect.expect("writing \"", "What do you do?");
+        assertEquals(0, tablet.index());
+        final String code = expect.expect("\"").output();
+        assertEquals(13, code.length());
+        assertTrue(expect.expect(prompt, Expect.DEFAULT_MAX_INSTRUCTIONS).output().startsWith(" on the tablet."));
+    }
+}
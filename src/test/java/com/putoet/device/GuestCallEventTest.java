@@ -0,0 +1,46 @@
+package com.putoet.device;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GuestCallEventTest {
+
+    @Test
+    void tracedCall() throws Exception {
+        final Device device = new Device(new Registers(), new Memory(), new Keyboard(OutputStream.nullOutputStream()),
+                new Crt(OutputStream.nullOutputStream()));
+        // CALL 10; CALL 13; HALT; ... 10: NOOP; NOOP; RET; 13: RET
+        device.load(17, 10, 17, 13, 0, 0, 0, 0, 0, 0, 21, 21, 18, 18);
+        device.traceCalls(10);
+
+        final List<RecordedEvent> events;
+        final Path file = Files.createTempFile("guest-call", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(GuestCallEvent.class);
+            recording.start();
+            device.run();
+            recording.stop();
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        final List<RecordedEvent> calls = events.stream()
+                .filter(event -> event.getEventType().getName().equals("com.putoet.device.GuestCall"))
+                .toList();
+        assertEquals(1, calls.size());
+        assertEquals(10, calls.get(0).getInt("address"));
+        assertEquals(0, calls.get(0).getInt("callSite"));
+        assertEquals(0, calls.get(0).getInt("stackDepth"));
+    }
+}
@@ -0,0 +1,48 @@
+package com.putoet.device;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InputWaitEventTest {
+
+    @Test
+    void onePerCommand() throws Exception {
+        final Device device = new Device(new Registers(), new Memory(), new Keyboard(OutputStream.nullOutputStream()),
+                new Crt(OutputStream.nullOutputStream()));
+        // IN a; IN a; IN a; IN a; HALT
+        device.load(20, 32768, 20, 32768, 20, 32768, 20, 32768, 0);
+
+        final List<RecordedEvent> events;
+        final Path file = Files.createTempFile("input-wait", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(InputWaitEvent.class).withoutThreshold();
+            recording.start();
+            final Thread thread = new Thread(device);
+            thread.start();
+            Thread.sleep(50);
+            device.in().accept("abc\n");
+            thread.join(5_000);
+            assertFalse(thread.isAlive());
+            recording.stop();
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        final List<RecordedEvent> waits = events.stream()
+                .filter(event -> event.getEventType().getName().equals("com.putoet.device.InputWait"))
+                .toList();
+        assertEquals(1, waits.size());
+        assertEquals(0, waits.get(0).getInt("address"));
+    }
+}
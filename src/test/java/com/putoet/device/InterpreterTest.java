@@ -7,6 +7,8 @@ import org.mockito.Mockito;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Stack;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -299,6 +301,7 @@ class InterpreterTest {
         when(memory.read(0)).thenReturn(15);
         when(memory.read(1)).thenReturn(32768);
         when(memory.read(2)).thenReturn(0);
+        when(memory.rmem(0)).thenReturn(15);
         when(memory.size()).thenReturn(3);
 
         final var instruction = interpreter.next(ip);
@@ -320,10 +323,48 @@ class InterpreterTest {
         assertEquals(Opcode.WMEM, instruction.opcode());
         instruction.run();
 
-        verify(memory, times(1)).write(0, 1);
+        verify(memory, times(1)).wmem(0, 1);
         assertEquals(3, ip.get());
     }
 
+    @Test
+    void rmemWatchpoint() {
+        // RMEM <a> 3, with a read watchpoint on 3
+        final Memory real = new Memory();
+        real.write(0, 15);
+        real.write(1, 32768);
+        real.write(2, 3);
+        real.write(3, 42);
+        final List<Watchpoints.Hit> hits = new ArrayList<>();
+        real.watchpoints().listener(hits::add);
+        real.watchpoints().add(new Watchpoints.Watchpoint(3, true, false, null, 0));
+
+        new Interpreter(registers, real, stack, in, out).next(ip).run();
+
+        assertEquals(42, registers.get(32768));
+        assertEquals(1, hits.size());
+        assertFalse(hits.get(0).write());
+        assertEquals(42, hits.get(0).to());
+    }
+
+    @Test
+    void wmemWatchpoint() {
+        // WMEM 3 7, with a write watchpoint on 3
+        final Memory real = new Memory();
+        real.write(0, 16);
+        real.write(1, 3);
+        real.write(2, 7);
+        real.write(3, 5);
+        final List<Watchpoints.Hit> hits = new ArrayList<>();
+        real.watchpoints().listener(hits::add);
+        real.watchpoints().add(new Watchpoints.Watchpoint(3, false, true, null, 0));
+
+        new Interpreter(registers, real, stack, in, out).next(ip).run();
+
+        assertEquals(7, real.read(3));
+        assertEquals(List.of(new Watchpoints.Hit(real.watchpoints().list().get(0), true, 5, 7)), hits);
+    }
+
     @Test
     void call() {
         when(memory.read(0)).thenReturn(17);
@@ -0,0 +1,91 @@
+package com.putoet.device;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyboardTest {
+
+    @Test
+    void ready() throws IOException {
+        final Keyboard keyboard = new Keyboard(OutputStream.nullOutputStream());
+        assertFalse(keyboard.ready());
+
+        keyboard.accept("\n");
+        keyboard.accept("# comment\n");
+        assertEquals(0, keyboard.pending());
+        assertFalse(keyboard.ready());
+
+        keyboard.accept("go\n");
+        assertTrue(keyboard.ready());
+        assertEquals('g', keyboard.read());
+        assertEquals('o', keyboard.read());
+        assertTrue(keyboard.ready());
+        assertEquals('\n', keyboard.read());
+        assertFalse(keyboard.ready());
+    }
+
+    private static String line(Keyboard keyboard) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        while (keyboard.ready()) {
+            final int c = keyboard.read();
+            if (c == '\n')
+                return sb.toString();
+            sb.append((char) c);
+        }
+        return null;
+    }
+
+    @Test
+    void noLoss() throws IOException {
+        final Keyboard keyboard = new Keyboard(OutputStream.nullOutputStream());
+        for (int i = 0; i < 5_000; i++)
+            keyboard.accept(i + "\n");
+        assertEquals(5_000, keyboard.pending());
+        for (int i = 0; i < 5_000; i++)
+            assertEquals(String.valueOf(i), line(keyboard));
+        assertNull(line(keyboard));
+    }
+
+    @Test
+    void source() throws IOException {
+        final Keyboard keyboard = new Keyboard(OutputStream.nullOutputStream());
+        final int[] generated = {0};
+        keyboard.source(InputSource.generator(() -> {
+            final int n = generated[0]++;
+            return n < 1_000_000 ? (n % 10 == 0 ? "# " + n : "go " + n) : null;
+        }));
+        keyboard.accept("typed\n");
+
+        assertEquals("go 1", line(keyboard));
+        assertEquals(2, generated[0]);
+        for (int n = 2; n < 1_000_000; n++)
+            if (n % 10 != 0)
+                assertEquals("go " + n, line(keyboard));
+        assertEquals("typed", line(keyboard));
+        assertNull(line(keyboard));
+    }
+
+    @Test
+    void resource() {
+        final InputSource source = InputSource.resource("/solution.txt");
+        final String first = source.next();
+        assertTrue(InputSource.isCommand(first));
+        source.close();
+
+        assertThrows(IllegalArgumentException.class, () -> InputSource.resource("/missing.txt"));
+        assertEquals(List.of("a", "b"), drain(InputSource.of(List.of("", "a", "# c", " ", "b"))));
+    }
+
+    private static List<String> drain(InputSource source) {
+        final List<String> lines = new ArrayList<>();
+        for (String line = source.next(); line != null; line = source.next())
+            lines.add(line);
+        return lines;
+    }
+}
@@ -0,0 +1,39 @@
+package com.putoet.device;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoTableTest {
+
+    @Test
+    void putAndFind() {
+        final MemoTable table = new MemoTable(2, 1 << 16);
+        final int[] values = new int[Registers.REGISTERS];
+        for (int i = 0; i < 10_000; i++) {
+            values[0] = i * 3;
+            table.put(new int[] {i, i + 1}, 0b1, values);
+        }
+        assertEquals(10_000, table.size());
+
+        final int slot = table.find(new int[] {42, 43});
+        assertTrue(slot >= 0);
+        assertEquals(0b1, table.writeMask(slot));
+        assertEquals(126, table.value(slot, 0));
+        assertEquals(-1, table.find(new int[] {42, 42}));
+
+        table.clear();
+        assertEquals(0, table.size());
+        assertEquals(-1, table.find(new int[] {42, 43}));
+    }
+
+    @Test
+    void bounded() {
+        final MemoTable table = new MemoTable(1, 1024);
+        final int[] values = new int[Registers.REGISTERS];
+        for (int i = 0; i < 100_000; i++)
+            table.put(new int[] {i}, 0, values);
+        assertTrue(table.size() <= 1024);
+        assertTrue(table.find(new int[] {99_999}) >= 0);
+    }
+}
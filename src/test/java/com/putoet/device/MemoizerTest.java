@@ -0,0 +1,113 @@
+package com.putoet.device;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoizerTest {
+    private static final int A = 32768, B = 32769, C = 32770, D = 32771, E = 32772, F = 32773, H = 32775;
+
+    private Registers registers;
+    private Memory memory;
+    private Device device;
+    private ByteArrayOutputStream out;
+
+    @BeforeEach
+    void setup() {
+        registers = new Registers();
+        memory = new Memory();
+        out = new ByteArrayOutputStream();
+        device = new Device(registers, memory, new Keyboard(OutputStream.nullOutputStream()), new Crt(out));
+        device.memoize(true);
+    }
+
+    private void load(int address, int... program) {
+        for (int i = 0; i < program.length; i++)
+            memory.write(address + i, program[i]);
+    }
+
+    @Test
+    void teleporter() {
+        // SET a 4, SET b 1, CALL 100, HALT
+        load(0, 1, A, 4, 1, B, 1, 17, 100, 0);
+        // the teleporter check routine (6027 in challenge.bin)
+        load(100,
+                7, A, 108,              // 100: JT a 108
+                9, A, B, 1,             // 103: ADD a b 1
+                18,                     // 107: RET
+                7, B, 121,              // 108: JT b 121
+                9, A, A, 32767,         // 111: ADD a a 32767
+                1, B, H,                // 115: SET b h
+                17, 100,                // 118: CALL 100
+                18,                     // 120: RET
+                2, A,                   // 121: PUSH a
+                9, B, B, 32767,         // 123: ADD b b 32767
+                17, 100,                // 127: CALL 100
+                1, B, A,                // 129: SET b a
+                3, A,                   // 132: POP a
+                9, A, A, 32767,         // 134: ADD a a 32767
+                17, 100,                // 138: CALL 100
+                18);                    // 140: RET
+        registers.set(H, 25734);
+
+        assertEquals(StopReason.HALTED, device.run(100_000_000));
+        assertEquals(6, registers.get(A));
+        assertEquals(Memoizer.State.MEMOIZED, device.memoizer().state(100));
+        assertTrue(device.memoizer().hits() > device.memoizer().misses());
+    }
+
+    @Test
+    void impure() {
+        // 0: SET a 'x', CALL 100, JMP 3
+        load(0, 1, A, 'x', 17, 100, 6, 3);
+        // 100: OUT a, then spend some instructions, RET
+        load(100, 19, A, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 18);
+
+        assertEquals(StopReason.BUDGET, device.run(10_000));
+        assertEquals(Memoizer.State.IMPURE, device.memoizer().state(100));
+        assertEquals(0, device.memoizer().hits());
+        assertTrue(out.size() > 100);
+    }
+
+    @Test
+    void memoryDependency() {
+        // 0: CALL 100, ADD a a 1, WMEM 500 a, JMP 0
+        load(0, 17, 100, 9, A, A, 1, 16, 500, A, 6, 0);
+        // 100: RMEM a 500, 16 x NOOP, RET
+        load(100, 15, A, 500, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 18);
+
+        // every call reads the value written after the previous call (22 instructions per iteration)
+        device.run(22 * 40);
+        assertEquals(40, registers.get(A));
+        assertEquals(Memoizer.State.VALIDATING, device.memoizer().state(100));
+        assertEquals(0, device.memoizer().hits());
+    }
+
+    @Test
+    void budget() {
+        device.memoizer().budget(3 * MemoTable.INITIAL_CAPACITY);
+        // 0: SET c 20, CALL 300, ADD c c -1, JT c 3 (call the cold routine 20 times)
+        load(0, 1, C, 20, 17, 300, 9, C, C, 32767, 7, C, 3);
+        // 12: CALL 100, CALL 200, ADD a a 1, JMP 12 (call the hot routine, and the one with a new input every time)
+        load(12, 17, 100, 17, 200, 9, A, A, 1, 6, 12);
+        // 100: ADD d e 1, 200: ADD b a 1, 300: ADD d f 1, each followed by 16 x NOOP, RET
+        for (var routine : new int[][] {{100, D, E}, {200, B, A}, {300, D, F}}) {
+            load(routine[0], 9, routine[1], routine[2], 1);
+            for (int i = 0; i < 16; i++)
+                memory.write(routine[0] + 4 + i, 21);
+            memory.write(routine[0] + 20, 18);
+        }
+
+        // the table of the routine at 200 grows beyond the budget after 512 entries (about 22 instructions per input)
+        device.run(22 * 640);
+        assertTrue(registers.get(A) > 520);
+        assertEquals(1, device.memoizer().evictions());
+        assertEquals(Memoizer.State.PROFILING, device.memoizer().state(300));
+        assertEquals(Memoizer.State.MEMOIZED, device.memoizer().state(100));
+        assertEquals(Memoizer.State.VALIDATING, device.memoizer().state(200));
+    }
+}
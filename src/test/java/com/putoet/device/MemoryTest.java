@@ -33,4 +33,61 @@ class MemoryTest {
         memory.write(13, 31);
         assertEquals(31, memory.read(13));
     }
-}
\ No newline at end of file
+
+    @Test
+    void peek() {
+        memory.write(13, 31);
+        assertEquals(31, memory.peek(13));
+        memory.peek(113);
+        assertEquals(13, memory.lastAddressUsed());
+    }
+
+    @Test
+    void pageVersion() {
+        final int version = memory.pageVersion(1);
+        memory.read(Memory.PAGE_SIZE);
+        assertEquals(version, memory.pageVersion(1));
+        memory.write(Memory.PAGE_SIZE, 1);
+        assertNotEquals(version, memory.pageVersion(1));
+        assertEquals(0, memory.pageVersion(0));
+    }
+
+    @Test
+    void stamp() {
+        final long[] pages = {1L << 1 | 1L << 3, 0};
+        final int stamp = memory.stamp(pages);
+        final int range = memory.stamp(1, 3);
+        memory.write(2 * Memory.PAGE_SIZE, 1);
+        assertEquals(stamp, memory.stamp(pages));
+        assertNotEquals(range, memory.stamp(1, 3));
+        memory.write(3 * Memory.PAGE_SIZE, 1);
+        assertNotEquals(stamp, memory.stamp(pages));
+    }
+
+    @Test
+    void copyOnWrite() {
+        final ProgramImage image = ProgramImage.of(new byte[] {9, 0, 1, -128, 7});
+        assertEquals(3, image.length());
+
+        final Memory first = new Memory(image);
+        final Memory second = new Memory(image);
+        assertEquals(0x8001, first.read(1));
+        assertEquals(7, second.read(2));
+        assertEquals(2, first.lastAddressUsed());
+        assertEquals(0, first.ownedPages());
+
+        first.write(1, 42);
+        first.write(Memory.PAGE_SIZE * 5, 1);
+        assertEquals(42, first.read(1));
+        assertEquals(9, first.read(0));
+        assertEquals(0x8001, second.read(1));
+        assertEquals(2, first.ownedPages());
+        assertEquals(0, second.ownedPages());
+        assertEquals(0, memory.read(Memory.PAGE_SIZE * 5));
+
+        final Memory snapshot = new Memory(ProgramImage.of(first));
+        assertEquals(42, snapshot.read(1));
+        assertEquals(1, snapshot.read(Memory.PAGE_SIZE * 5));
+        assertEquals(Memory.PAGE_SIZE * 5, snapshot.lastAddressUsed());
+    }
+}
@@ -31,4 +31,19 @@ class OpcodeTest {
         assertEquals(20, Opcode.IN.ordinal());
         assertEquals(21, Opcode.NOOP.ordinal());
     }
-}
\ No newline at end of file
+
+    @Test
+    void operands() {
+        assertEquals(0, Opcode.HALT.operands());
+        assertEquals(3, Opcode.ADD.operands());
+        assertEquals(1, Opcode.CALL.operands());
+    }
+
+    @Test
+    void of() {
+        assertTrue(Opcode.isOpcode(21));
+        assertFalse(Opcode.isOpcode(22));
+        assertEquals(Opcode.WMEM, Opcode.of(16));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> Opcode.of(22));
+    }
+}
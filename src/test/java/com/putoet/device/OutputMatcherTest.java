@@ -0,0 +1,66 @@
+package com.putoet.device;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutputMatcherTest {
+
+    @Test
+    void overlapping() {
+        final OutputMatcher matcher = new OutputMatcher("he", "she", "his", "hers");
+        // "she" and "he" both end at the 'e', the first listed wins
+        assertEquals(4, matcher.feed("ushers"));
+        assertEquals(0, matcher.matched());
+        assertEquals("he", matcher.pattern(matcher.matched()));
+        assertEquals(4, matcher.position());
+
+        // ignores bytes after a match, until reset
+        assertTrue(matcher.feed('x'));
+        assertEquals(4, matcher.position());
+
+        matcher.reset();
+        assertEquals(-1, matcher.matched());
+        assertEquals(4, matcher.feed("ahisx"));
+        assertEquals(2, matcher.matched());
+
+        final OutputMatcher reversed = new OutputMatcher("she", "he");
+        assertEquals(4, reversed.feed("ushers"));
+        assertEquals("she", reversed.pattern(reversed.matched()));
+    }
+
+    @Test
+    void fallback() {
+        final OutputMatcher matcher = new OutputMatcher("aab");
+        assertFalse(matcher.feed('a'));
+        assertFalse(matcher.feed('a'));
+        assertFalse(matcher.feed('a'));
+        assertTrue(matcher.feed('b'));
+        assertEquals(4, matcher.position());
+
+        matcher.reset();
+        assertEquals(5, matcher.feed("abaab"));
+        matcher.reset();
+        assertEquals(4, matcher.feed("abab"));
+        assertEquals(-1, matcher.matched());
+    }
+
+    @Test
+    void firstListedWins() {
+        // both end at the same byte
+        final OutputMatcher matcher = new OutputMatcher("do?", "What do you do?");
+        assertEquals(15, matcher.feed("What do you do?"));
+        assertEquals(0, matcher.matched());
+
+        final OutputMatcher reversed = new OutputMatcher("What do you do?", "do?");
+        reversed.feed("What do you do?");
+        assertEquals(0, reversed.matched());
+    }
+
+    @Test
+    void invalid() {
+        assertThrows(IllegalArgumentException.class, OutputMatcher::new);
+        assertThrows(IllegalArgumentException.class, () -> new OutputMatcher("a", ""));
+        assertThrows(IllegalArgumentException.class, () -> new OutputMatcher("\u2603"));
+    }
+}
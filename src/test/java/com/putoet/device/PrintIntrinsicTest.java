@@ -0,0 +1,84 @@
+package com.putoet.device;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrintIntrinsicTest {
+    private static final int A = 32768, B = 32769, C = 32770, D = 32771, E = 32772, F = 32773, G = 32774;
+    private static final int KEY = 0x1234;
+
+    private Registers registers;
+    private Memory memory;
+    private Device device;
+    private ByteArrayOutputStream out;
+
+    @BeforeEach
+    void setup() {
+        registers = new Registers();
+        memory = new Memory();
+        out = new ByteArrayOutputStream();
+        device = new Device(registers, memory, new Keyboard(OutputStream.nullOutputStream()), new Crt(out));
+
+        // SET a 300, SET b 200, CALL 100, SET a 310, SET b 210, SET c KEY, CALL 100, HALT
+        load(0, 1, A, 300, 1, B, 200, 17, 100, 1, A, 310, 1, B, 210, 1, C, KEY, 17, 100, 0);
+        // for each character routine, like 1458 in challenge.bin
+        load(100, 2, A, 2, D, 2, E, 2, F, 2, G, 1, G, A, 1, F, B, 15, E, A, 1, B, 0, 9, D, 1, B, 5, A, D, E,
+                7, A, 149, 9, D, D, G, 15, A, D, 17, F, 9, B, B, 1, 7, B, 122, 3, G, 3, F, 3, E, 3, D, 3, A, 18);
+        // callbacks, like 1528 and 1531
+        load(200, 19, A, 18);
+        load(210, 2, B, 1, B, C, 17, 230, 19, A, 3, B, 18);
+        // xor, like 2125
+        load(230, 2, B, 2, C, 12, C, A, B, 14, C, C, 13, A, A, B, 12, A, A, C, 3, C, 3, B, 18);
+        // strings
+        load(300, 3, 'H', 'i', ' ');
+        load(310, 3, 'Y' ^ KEY, 'o' ^ KEY, '\n' ^ KEY);
+    }
+
+    private void load(int address, int... words) {
+        for (int i = 0; i < words.length; i++)
+            memory.write(address + i, words[i]);
+    }
+
+    @Test
+    void off() {
+        device.run();
+        assertEquals("Hi Yo\n", out.toString());
+        assertNull(device.printIntrinsic());
+    }
+
+    @Test
+    void on() {
+        device.printIntrinsic(PrintIntrinsic.Mode.ON);
+        device.run();
+        assertEquals("Hi Yo\n", out.toString());
+        assertEquals(2, device.printIntrinsic().calls());
+        assertEquals(3, registers.get(B));
+        assertEquals(310, registers.get(A));
+        assertEquals(6, device.metrics().getCharactersWritten());
+        assertEquals(7, device.metrics().getInstructionsExecuted());
+    }
+
+    @Test
+    void validate() {
+        device.printIntrinsic(PrintIntrinsic.Mode.VALIDATE);
+        device.run();
+        assertEquals("Hi Yo\n", out.toString());
+        assertEquals(2, device.printIntrinsic().calls());
+        assertEquals(0, device.printIntrinsic().mismatches());
+    }
+
+    @Test
+    void unrecognised() {
+        // callback 200 writes the character twice
+        load(200, 19, A, 19, A, 18);
+        device.printIntrinsic(PrintIntrinsic.Mode.ON);
+        device.run();
+        assertEquals("HHii  Yo\n", out.toString());
+        assertEquals(1, device.printIntrinsic().calls());
+    }
+}
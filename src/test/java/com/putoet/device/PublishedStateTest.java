@@ -0,0 +1,91 @@
+package com.putoet.device;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.util.Stack;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PublishedStateTest {
+    private static final int A = 32768, B = 32769;
+
+    @Test
+    void device() {
+        final Device device = new Device(new Registers(), new Memory(), new Keyboard(OutputStream.nullOutputStream()),
+                new Crt(OutputStream.nullOutputStream()));
+        // SET a 7, PUSH 1, PUSH 2, ADD b a 1, IN a, HALT
+        device.load(1, A, 7, 2, 1, 2, 2, 9, B, A, 1, 20, A, 0);
+        assertEquals(0, device.publishedState().version());
+
+        assertEquals(StopReason.BUDGET, device.run(2));
+        PublishedState.Snapshot state = device.publishedState().read();
+        assertEquals(1, state.version());
+        assertEquals(2, state.instructions());
+        assertEquals(5, state.ip());
+        assertEquals(7, state.register(A));
+        assertEquals(1, state.stackDepth());
+        assertArrayEquals(new int[] {1}, state.stackTop());
+
+        assertEquals(StopReason.INPUT, device.run(100));
+        state = device.publishedState().read();
+        assertEquals(11, state.ip());
+        assertEquals(8, state.register(B));
+        assertArrayEquals(new int[] {1, 2}, state.stackTop());
+        assertEquals("IP=[11], Registers=['a'=7, b=8, c=0, d=0, e=0, f=0, g=0, h=0] after 4 instructions",
+                state.toString());
+        assertEquals(Device.IDLE, device.sampledIp());
+    }
+
+    @Test
+    void stackTop() {
+        final PublishedState published = new PublishedState();
+        final Stack<Integer> stack = new Stack<>();
+        for (int i = 0; i < PublishedState.STACK_TOP + 5; i++)
+            stack.push(i);
+        published.publish(0, 0, new Registers(), stack);
+
+        final PublishedState.Snapshot state = published.read();
+        assertEquals(PublishedState.STACK_TOP + 5, state.stackDepth());
+        assertEquals(PublishedState.STACK_TOP, state.stackTop().length);
+        assertEquals(5, state.stackTop()[0]);
+        assertEquals(PublishedState.STACK_TOP + 4, state.stackTop()[PublishedState.STACK_TOP - 1]);
+    }
+
+    @Test
+    void consistent() throws InterruptedException {
+        // the writer publishes states in which all registers and the ip have the same value, so a torn read shows
+        final PublishedState published = new PublishedState();
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<String> torn = new AtomicReference<>();
+        final Thread writer = new Thread(() -> {
+            final Registers registers = new Registers();
+            final Stack<Integer> stack = new Stack<>();
+            for (int value = 1; value <= 200_000; value++) {
+                for (int i = 0; i < Registers.REGISTERS; i++)
+                    registers.set(A + i, value & 0x7fff);
+                published.publish(value, value & 0x7fff, registers, stack);
+            }
+            done.set(true);
+        });
+        writer.start();
+
+        long reads = 0, last = 0;
+        while (!done.get() || reads == 0) {
+            final PublishedState.Snapshot state = published.read();
+            reads++;
+            for (int i = 0; i < Registers.REGISTERS; i++)
+                if (state.registers()[i] != state.ip() || (state.instructions() & 0x7fff) != state.ip())
+                    torn.compareAndSet(null, state.toString());
+            if (state.version() < last)
+                torn.compareAndSet(null, "version " + state.version() + " after " + last);
+            last = state.version();
+        }
+        writer.join();
+
+        assertNull(torn.get());
+        assertEquals(200_000, published.version());
+    }
+}
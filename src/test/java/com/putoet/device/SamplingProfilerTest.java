@@ -0,0 +1,53 @@
+package com.putoet.device;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SamplingProfilerTest {
+    private Device device;
+    private SamplingProfiler profiler;
+
+    @BeforeEach
+    void setup() {
+        device = new Device(new Registers(), new Memory(), new Keyboard(OutputStream.nullOutputStream()),
+                new Crt(OutputStream.nullOutputStream()));
+        profiler = new SamplingProfiler(device, SamplingProfiler.DEFAULT_INTERVAL_MICROS);
+    }
+
+    @Test
+    void sample() {
+        // CALL 3; HALT; 3: NOOP; HALT
+        device.load(17, 3, 0, 21, 0);
+        device.run();
+
+        profiler.sample();
+        profiler.sample();
+        assertEquals(2, profiler.samples());
+        assertEquals(2, profiler.addressSamples(3));
+        assertEquals(2, profiler.routineSamples(3));
+
+        profiler.reset();
+        assertEquals(0, profiler.samples());
+        assertEquals(0, profiler.addressSamples(3));
+    }
+
+    @Test
+    void report() {
+        device.load(17, 3, 0, 21, 0);
+        device.run();
+        profiler.sample();
+
+        final var report = profiler.report(5);
+        assertEquals("Samples: 1 (idle 0)", report.get(0));
+        assertTrue(report.contains("00003:        1 100.0%  NOOP"));
+    }
+
+    @Test
+    void invalidInterval() {
+        assertThrows(IllegalArgumentException.class, () -> new SamplingProfiler(device, 0));
+    }
+}
@@ -0,0 +1,103 @@
+package com.putoet.device;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScriptReplayTest {
+    @TempDir
+    Path directory;
+
+    private BootImage boot;
+
+    @BeforeEach
+    void setup() {
+        boot = BootImage.capture(BootImageTest.ECHO);
+    }
+
+    private String replay(ScriptReplay replay, List<String> script, ScriptReplay.Result expected) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final Device device = new Device(new Registers(), new Memory(), new Keyboard(OutputStream.nullOutputStream()),
+                new Crt(out));
+        assertEquals(expected, replay.replay(device, out, boot, script));
+        return out.toString();
+    }
+
+    @Test
+    void replay() {
+        final CheckpointCache cache = new CheckpointCache(CheckpointCache.DEFAULT_MAX_BYTES, null);
+        final ScriptReplay replay = new ScriptReplay(cache);
+
+        final String first = replay(replay, List.of("ab", "cd", "ef"),
+                new ScriptReplay.Result(StopReason.INPUT, 0, 3));
+        assertEquals(">ab\n>cd\n>ef\n>", first);
+        assertEquals(3, cache.getEntries());
+        assertEquals(1, cache.getMisses());
+
+        final String second = replay(replay, List.of("ab", "cd", "xy", "q"),
+                new ScriptReplay.Result(StopReason.HALTED, 2, 2));
+        assertEquals(">ab\n>cd\n>xy\n>q", second);
+        assertEquals(1, cache.getHits());
+        assertEquals(4, cache.getEntries());
+
+        assertEquals(first, replay(replay, List.of("ab", "cd", "ef"),
+                new ScriptReplay.Result(StopReason.INPUT, 3, 0)));
+        assertEquals(5, cache.getLinesSkipped());
+        assertEquals(5, cache.getLinesExecuted());
+    }
+
+    @Test
+    void spill() {
+        final long size = boot.size() + 32;
+        final CheckpointCache cache = new CheckpointCache(size * 2, directory);
+        final ScriptReplay replay = new ScriptReplay(cache);
+
+        replay(replay, List.of("a", "b", "c", "d"), new ScriptReplay.Result(StopReason.INPUT, 0, 4));
+        assertEquals(2, cache.getEntries());
+        assertEquals(2, cache.getEvictions());
+        assertEquals(2, cache.getSpills());
+
+        assertEquals(">a\n>b\n>x\n>", replay(replay, List.of("a", "b", "x"),
+                new ScriptReplay.Result(StopReason.INPUT, 2, 1)));
+        assertEquals(1, cache.getDiskHits());
+
+        cache.flush();
+        final CheckpointCache later = new CheckpointCache(size * 2, directory);
+        assertEquals(">a\n>b\n>c\n>d\n>", replay(new ScriptReplay(later), List.of("a", "b", "c", "d"),
+                new ScriptReplay.Result(StopReason.INPUT, 4, 0)));
+        assertEquals(1, later.getDiskHits());
+    }
+
+    @Test
+    void key() {
+        final String first = CheckpointCache.key(boot.hash(), "ab");
+        assertEquals(first, CheckpointCache.key(boot.hash(), "ab"));
+        assertNotEquals(first, CheckpointCache.key(boot.hash(), "ba"));
+        assertNotEquals(CheckpointCache.key(first, "cd"), CheckpointCache.key(boot.hash(), "ab\ncd"));
+    }
+
+    @Test
+    void damagedSpill() throws IOException {
+        final CheckpointCache cache = new CheckpointCache(CheckpointCache.DEFAULT_MAX_BYTES, directory);
+        replay(new ScriptReplay(cache), List.of("a"), new ScriptReplay.Result(StopReason.INPUT, 0, 1));
+        cache.flush();
+        cache.clear();
+
+        // a negative stack size, which is read before the checksum can be checked
+        final String key = CheckpointCache.key(boot.hash(), "a");
+        final Path file = directory.resolve(key + ".checkpoint");
+        final byte[] damaged = Files.readAllBytes(file);
+        damaged[4 + 4 + 2 + key.length() + 4 + 8 + Registers.REGISTERS * 2] = (byte) 0x80;
+        Files.write(file, damaged);
+        assertNull(cache.get(key));
+    }
+}
@@ -0,0 +1,126 @@
+package com.putoet.device;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotStoreTest {
+    private static final int A = 32768, B = 32769;
+
+    private Device device;
+    private SnapshotStore store;
+
+    @BeforeEach
+    void setup() {
+        // IN a, WMEM 1000 a, ADD b b 1, WMEM 2000 b, JMP 0
+        device = new Device(new Registers(), new Memory(), new Keyboard(OutputStream.nullOutputStream()),
+                new Crt(OutputStream.nullOutputStream()));
+        device.load(20, A, 16, 1000, A, 9, B, B, 1, 16, 2000, B, 6, 0);
+        store = new SnapshotStore(device);
+    }
+
+    private Device restore(int id) {
+        final Device restored = new Device(new Registers(), new Memory(), new Keyboard(OutputStream.nullOutputStream()),
+                new Crt(OutputStream.nullOutputStream()));
+        restored.boot(store.snapshot(id));
+        return restored;
+    }
+
+    private List<Integer> type(String input) {
+        final List<Integer> ids = new ArrayList<>();
+        for (var c : input.toCharArray()) {
+            device.in().accept(String.valueOf(c));
+            assertEquals(StopReason.INPUT, device.run(100));
+            ids.add(store.record());
+        }
+        return ids;
+    }
+
+    @Test
+    void record() {
+        assertEquals(StopReason.INPUT, device.run(100));
+        final int first = store.record();
+        assertEquals(1, store.pages());
+
+        final List<Integer> ids = type("abab");
+        assertEquals(5, store.size());
+        // page 0 (code), page 3 (1000) with 'a' or 'b', and page 7 (2000) with every count
+        assertEquals(1 + 2 + 4, store.pages());
+
+        final Device restored = restore(ids.get(1));
+        assertEquals('b', restored.memory().peek(1000));
+        assertEquals(2, restored.memory().peek(2000));
+        assertEquals(2, restored.registers().get(B));
+        assertEquals(store.stateHash(ids.get(1)), restored.stateHash());
+        assertEquals(device.stateHash(), restore(ids.get(3)).stateHash());
+        assertEquals(0, restore(first).memory().peek(1000));
+
+        restored.in().accept("c");
+        assertEquals(StopReason.INPUT, restored.run(100));
+        assertEquals('c', restored.memory().peek(1000));
+        assertEquals('b', restore(ids.get(1)).memory().peek(1000));
+
+        device.in().accept("c");
+        assertEquals(StopReason.INPUT, device.run(100));
+        assertEquals('b', restore(ids.get(3)).memory().peek(1000));
+    }
+
+    @Test
+    void keyframes() {
+        assertEquals(StopReason.INPUT, device.run(100));
+        final List<Integer> ids = type("x".repeat(SnapshotStore.KEYFRAME_INTERVAL * 2 + 3));
+        for (int i = 0; i < ids.size(); i += 7)
+            assertEquals(i + 1, restore(ids.get(i)).memory().peek(2000));
+        assertEquals(device.stateHash(), restore(ids.get(ids.size() - 1)).stateHash());
+    }
+
+    @Test
+    void compact() {
+        assertEquals(StopReason.INPUT, device.run(100));
+        final List<Integer> ids = type("abcdefghij");
+        final long bytes = store.bytes();
+        final int pages = store.pages();
+
+        assertEquals(7, store.compact(id -> id % 3 == 2));
+        assertArrayEquals(new int[] {ids.get(2), ids.get(5), ids.get(8)}, store.ids());
+        assertTrue(store.pages() < pages);
+        assertTrue(store.bytes() < bytes);
+        assertEquals('f', restore(ids.get(5)).memory().peek(1000));
+        assertEquals(9, restore(ids.get(8)).memory().peek(2000));
+        assertThrows(NoSuchElementException.class, () -> store.snapshot(ids.get(4)));
+
+        final int next = type("k").get(0);
+        assertEquals(11, restore(next).memory().peek(2000));
+        assertEquals(device.stateHash(), store.stateHash(next));
+    }
+
+    @Test
+    void compactRemovesLast() {
+        // SET c 4096, IN a, WMEM c a, ADD c c 256, JMP 3: every input is written to the next page
+        final int C = 32770;
+        device = new Device(new Registers(), new Memory(), new Keyboard(OutputStream.nullOutputStream()),
+                new Crt(OutputStream.nullOutputStream()));
+        device.load(1, C, 4096, 20, A, 16, C, A, 9, C, C, 256, 6, 3);
+        store = new SnapshotStore(device);
+
+        final List<Integer> ids = type("DEF");
+        assertEquals(2, store.compact(id -> id == ids.get(0)));
+
+        final int next = type("G").get(0);
+        final Device restored = restore(next);
+        assertEquals('D', restored.memory().peek(4096));
+        assertEquals('E', restored.memory().peek(4352));
+        assertEquals('F', restored.memory().peek(4608));
+        assertEquals('G', restored.memory().peek(4864));
+        assertEquals(device.stateHash(), restored.stateHash());
+        assertEquals(store.stateHash(next), restored.stateHash());
+        assertEquals('D', restore(ids.get(0)).memory().peek(4096));
+        assertEquals(0, restore(ids.get(0)).memory().peek(4352));
+    }
+}
@@ -0,0 +1,131 @@
+package com.putoet.device;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StateHashTest {
+    private static final int A = 32768;
+
+    @Test
+    void memory() {
+        final Memory memory = new Memory();
+        assertEquals(0, memory.stateHash());
+
+        memory.write(13, 31);
+        final long hash = memory.stateHash();
+        assertNotEquals(0, hash);
+        memory.write(13, 31);
+        assertEquals(hash, memory.stateHash());
+        memory.write(14, 1);
+        memory.write(14, 0);
+        assertEquals(hash, memory.stateHash());
+
+        final Memory other = new Memory();
+        other.write(100, 7);
+        other.write(13, 31);
+        other.write(100, 0);
+        assertEquals(hash, other.stateHash());
+    }
+
+    @Test
+    void fork() {
+        final Random random = new Random(42);
+        final Memory memory = new Memory(ProgramImage.of(new byte[] {1, 2, 3, 4}));
+        for (int i = 0; i < 1000; i++)
+            memory.write(random.nextInt(memory.size()), random.nextInt(1 << 16));
+
+        final ProgramImage image = ProgramImage.of(memory);
+        assertEquals(memory.stateHash(), image.stateHash());
+        assertEquals(memory.stateHash(), new Memory(image).stateHash());
+    }
+
+    @Test
+    void ignore() {
+        final Memory memory = new Memory();
+        memory.write(13, 31);
+        final long hash = memory.stateHash();
+
+        memory.ignoreInStateHash(100, 102, true);
+        assertTrue(memory.ignored(101));
+        assertFalse(memory.ignored(102));
+        memory.write(101, 5);
+        assertEquals(hash, memory.stateHash());
+
+        memory.ignoreInStateHash(100, 102, false);
+        assertNotEquals(hash, memory.stateHash());
+        memory.write(101, 0);
+        assertEquals(hash, memory.stateHash());
+
+        memory.ignoreInStateHash(13, 14, true);
+        memory.load(ProgramImage.of(new byte[] {1, 0}));
+        assertEquals(StateHash.of(0, 1), memory.stateHash());
+    }
+
+    @Test
+    void registers() {
+        final Registers registers = new Registers();
+        assertEquals(0, registers.stateHash());
+        registers.set(A, 1);
+        assertNotEquals(0, registers.stateHash());
+        assertEquals(StateHash.of(A, 1), registers.stateHash());
+        registers.set(A, 0);
+        assertEquals(0, registers.stateHash());
+    }
+
+    @Test
+    void device() {
+        final BootImage image = BootImage.capture(BootImageTest.PROGRAM);
+        final Device first = new Device(new Registers(), new Memory(), new Keyboard(OutputStream.nullOutputStream()),
+                new Crt(OutputStream.nullOutputStream()));
+        first.boot(image);
+        final Device second = new Device(new Registers(), new Memory(ProgramImage.of(BootImageTest.PROGRAM)),
+                new Keyboard(OutputStream.nullOutputStream()), new Crt(OutputStream.nullOutputStream()));
+        assertNotEquals(first.stateHash(), second.stateHash());
+
+        assertEquals(StopReason.INPUT, second.run(100));
+        assertEquals(first.stateHash(), second.stateHash());
+
+        second.stack().push(0);
+        assertNotEquals(first.stateHash(), second.stateHash());
+    }
+
+    @Test
+    void collisions() {
+        // states differing from a random memory in two words, all distinct, must have distinct hashes
+        final Random random = new Random(7);
+        final Memory memory = new Memory();
+        for (int address = 0; address < memory.size(); address++)
+            memory.write(address, random.nextInt(Registers.ARCH_MAX_VALUE));
+
+        final Map<Long, Long> states = new HashMap<>();
+        int collisions = 0;
+        for (int i = 0; i < 500_000; i++) {
+            final int first = random.nextInt(memory.size());
+            final int second = random.nextInt(memory.size());
+            final int firstValue = random.nextInt(Registers.ARCH_MAX_VALUE);
+            final int secondValue = random.nextInt(Registers.ARCH_MAX_VALUE);
+            if (first == second || memory.peek(first) == firstValue || memory.peek(second) == secondValue)
+                continue;
+
+            final int firstOld = memory.peek(first), secondOld = memory.peek(second);
+            memory.write(first, firstValue);
+            memory.write(second, secondValue);
+            final long state = first < second ?
+                    (long) first << 47 | (long) firstValue << 32 | (long) second << 15 | secondValue :
+                    (long) second << 47 | (long) secondValue << 32 | (long) first << 15 | firstValue;
+            final Long previous = states.put(memory.stateHash(), state);
+            if (previous != null && previous != state)
+                collisions++;
+            memory.write(first, firstOld);
+            memory.write(second, secondOld);
+        }
+        assertEquals(0, collisions);
+        assertTrue(states.size() > 490_000);
+    }
+}
@@ -0,0 +1,63 @@
+package com.putoet.device;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SynacorVmTest {
+    private static final int A = 32768, B = 32769;
+
+    @Test
+    void send() {
+        final SynacorVm vm = new SynacorVm(BootImageTest.ECHO);
+        assertThrows(IllegalStateException.class, () -> vm.send("ab"));
+
+        assertEquals(">", vm.boot());
+        assertEquals(StopReason.INPUT, vm.lastStopReason());
+        assertEquals("ab\n>", vm.send("ab"));
+        assertEquals("", vm.send(""));
+        assertEquals("q", vm.send("q"));
+        assertEquals(StopReason.HALTED, vm.lastStopReason());
+        assertThrows(IllegalStateException.class, () -> vm.send("cd"));
+
+        assertEquals(">", vm.boot());
+        assertEquals("cd\n>", vm.send("cd"));
+    }
+
+    @Test
+    void runUntil() {
+        final SynacorVm vm = new SynacorVm(BootImageTest.ECHO);
+        vm.boot();
+
+        assertEquals(StopReason.INPUT, vm.runUntil(device -> device.ip().get() == 6, 100));
+        vm.device().in().accept("xy\n");
+        assertEquals(StopReason.CONDITION, vm.runUntil(device -> device.ip().get() == 6, 100));
+        assertEquals(StopReason.CONDITION, vm.runUntil(device -> device.ip().get() == 6, 100));
+        assertEquals('x', vm.device().registers().get(A));
+        assertEquals("x", vm.output());
+
+        assertEquals(StopReason.BUDGET, vm.runUntil(device -> false, 3));
+        assertEquals(StopReason.INPUT, vm.runUntil(device -> false, 100));
+        assertEquals("y\n>", vm.output());
+    }
+
+    @Test
+    void challenge() throws IOException {
+        final byte[] program;
+        try (var is = getClass().getResourceAsStream("/challenge.bin")) {
+            assertNotNull(is);
+            program = is.readAllBytes();
+        }
+        final SynacorVm vm = new SynacorVm(BootImage.capture(program));
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(vm.boot().contains("What do you do?"));
+            assertTrue(vm.send("take tablet").contains("Taken."));
+            for (int j = 0; j < 100; j++)
+                assertTrue(vm.send("look").contains("Foothills"));
+            assertEquals(StopReason.INPUT, vm.lastStopReason());
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.putoet.device;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WatchpointsTest {
+    private static final int A = 32768, B = 32769;
+
+    // SET a 5, WMEM 100 a, RMEM b 100, WMEM 100 0, RMEM b 101, WMEM 101 7, HALT
+    private static final byte[] PROGRAM = BootImageTest.bytes(1, A, 5, 16, 100, A, 15, B, 100, 16, 100, 0,
+            15, B, 101, 16, 101, 7, 0);
+
+    private static List<String> run(ExecutionEngine.Kind engine, Watchpoints.Watchpoint... watchpoints) {
+        final Memory memory = new Memory(ProgramImage.of(PROGRAM));
+        final Device device = new Device(new Registers(), memory, new Keyboard(OutputStream.nullOutputStream()),
+                new Crt(OutputStream.nullOutputStream()));
+        device.engine(engine);
+
+        final List<String> hits = new ArrayList<>();
+        for (var watchpoint : watchpoints)
+            memory.watchpoints().add(watchpoint);
+        memory.watchpoints().listener(hit -> hits.add(device.ip().get() + " " + hit));
+        assertEquals(StopReason.HALTED, device.run(100));
+        return hits;
+    }
+
+    @Test
+    void access() {
+        for (var engine : ExecutionEngine.Kind.values()) {
+            assertEquals(List.of("3 Watchpoint 00100 written: 0 -> 5", "9 Watchpoint 00100 written: 5 -> 0"),
+                    run(engine, new Watchpoints.Watchpoint(100, false, true, null, 0)));
+            assertEquals(List.of("6 Watchpoint 00100 read: 5"),
+                    run(engine, new Watchpoints.Watchpoint(100, true, false, null, 0)));
+            assertEquals(List.of("12 Watchpoint 00101 read: 0", "15 Watchpoint 00101 written: 0 -> 7"),
+                    run(engine, new Watchpoints.Watchpoint(101, true, true, null, 0)));
+        }
+    }
+
+    @Test
+    void condition() {
+        assertEquals(List.of("9 Watchpoint 00100 written: 5 -> 0"),
+                run(ExecutionEngine.Kind.CACHED, new Watchpoints.Watchpoint(100, false, true,
+                        Watchpoints.Operator.of("=="), 0)));
+        assertEquals(List.of("3 Watchpoint 00100 written: 0 -> 5", "6 Watchpoint 00100 read: 5"),
+                run(ExecutionEngine.Kind.CACHED, new Watchpoints.Watchpoint(100, true, true,
+                        Watchpoints.Operator.of(">"), 4)));
+        assertThrows(IllegalArgumentException.class, () -> Watchpoints.Operator.of("=<"));
+    }
+
+    @Test
+    void fetch() {
+        // instruction fetches don't hit watchpoints, even on the code itself
+        assertTrue(run(ExecutionEngine.Kind.INTERPRETER, new Watchpoints.Watchpoint(0, true, true, null, 0),
+                new Watchpoints.Watchpoint(4, true, true, null, 0)).isEmpty());
+    }
+
+    @Test
+    void manage() {
+        final Watchpoints watchpoints = new Watchpoints();
+        watchpoints.add(new Watchpoints.Watchpoint(300, true, false, null, 0));
+        watchpoints.add(new Watchpoints.Watchpoint(200, false, true, Watchpoints.Operator.NE, 0));
+        assertTrue(watchpoints.reads(300));
+        assertFalse(watchpoints.writes(300));
+        assertEquals("[00200 w != 0, 00300 r]", watchpoints.list().toString());
+
+        watchpoints.add(new Watchpoints.Watchpoint(300, false, true, null, 0));
+        assertFalse(watchpoints.reads(300));
+        assertTrue(watchpoints.writes(300));
+
+        assertTrue(watchpoints.remove(200));
+        assertFalse(watchpoints.remove(200));
+        assertFalse(watchpoints.writes(200));
+        watchpoints.clear();
+        assertTrue(watchpoints.list().isEmpty());
+        assertFalse(watchpoints.writes(300));
+        assertThrows(IllegalArgumentException.class, () -> new Watchpoints.Watchpoint(32768, true, true, null, 0));
+        assertThrows(IllegalArgumentException.class, () -> new Watchpoints.Watchpoint(1, false, false, null, 0));
+    }
+}
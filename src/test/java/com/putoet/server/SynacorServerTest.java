@@ -0,0 +1,114 @@
+package com.putoet.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SynacorServerTest {
+    // IN <a>, OUT <a>, JMP 0
+    private static final int[] ECHO = {20, 32768, 19, 32768, 6, 0};
+
+    private SynacorServer server;
+    private Thread thread;
+
+    @BeforeEach
+    void setup() throws IOException {
+        start(ECHO);
+    }
+
+    private void start(int[] words) throws IOException {
+        final byte[] program = new byte[words.length * 2];
+        for (int i = 0; i < words.length; i++) {
+            program[i * 2] = (byte) words[i];
+            program[i * 2 + 1] = (byte) (words[i] >> 8);
+        }
+
+        final var address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        server = new SynacorServer(program, address, new SessionLimits(2, 16, 10, 1024, 0));
+        thread = new Thread(server);
+        thread.start();
+    }
+
+    @AfterEach
+    void teardown() throws InterruptedException {
+        server.stop();
+        thread.join(5000);
+    }
+
+    private Socket connect() throws IOException {
+        final Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.port());
+        socket.setSoTimeout(5000);
+        return socket;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1 && c != '\n')
+            sb.append((char) c);
+        return sb.toString();
+    }
+
+    private void awaitActiveSessions(int expected) throws InterruptedException {
+        for (int i = 0; i < 500 && server.metrics().getActiveSessions() != expected; i++)
+            Thread.sleep(10);
+        assertEquals(expected, server.metrics().getActiveSessions());
+    }
+
+    @Test
+    void sessions() throws IOException, InterruptedException {
+        try (Socket first = connect(); Socket second = connect()) {
+            first.getOutputStream().write("hello\r\n".getBytes(StandardCharsets.US_ASCII));
+            second.getOutputStream().write("world\n".getBytes(StandardCharsets.US_ASCII));
+            assertEquals("hello\r", readLine(first.getInputStream()));
+            assertEquals("world\r", readLine(second.getInputStream()));
+            awaitActiveSessions(2);
+
+            try (Socket third = connect()) {
+                assertEquals("Server busy, try again later.\r", readLine(third.getInputStream()));
+                assertEquals(-1, third.getInputStream().read());
+            }
+        }
+
+        awaitActiveSessions(0);
+        assertEquals(2, server.metrics().getTotalSessions());
+        assertEquals(1, server.metrics().getRejectedSessions());
+    }
+
+    @Test
+    void lineLimit() throws IOException, InterruptedException {
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write("this line is too long\n".getBytes(StandardCharsets.US_ASCII));
+            assertEquals(-1, socket.getInputStream().read());
+        }
+
+        awaitActiveSessions(0);
+        assertEquals(1, server.metrics().getLimitedSessions());
+    }
+
+    @Test
+    void failure() throws IOException, InterruptedException {
+        server.stop();
+        thread.join(5000);
+        // IN <a>, POP <b> on an empty stack
+        start(new int[] {20, 32768, 3, 32769});
+
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write("x\n".getBytes(StandardCharsets.US_ASCII));
+            assertEquals("\r", readLine(socket.getInputStream()));
+            assertTrue(readLine(socket.getInputStream()).startsWith("Device failed: "));
+            assertEquals(-1, socket.getInputStream().read());
+        }
+
+        awaitActiveSessions(0);
+    }
+}